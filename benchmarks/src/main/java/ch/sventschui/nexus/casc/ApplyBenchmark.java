@@ -0,0 +1,128 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.fakes.FakeNexus;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The full apply path of {@link NexusCascPlugin} against in-memory managers with artificial latency per call:
+ * applying a config to an empty Nexus, reconciling without drift and reconciling after a repository was deleted.
+ * <p>
+ * Every invocation is a single apply, so this runs in single shot mode. The worker pool size can be changed through
+ * NEXUS_CASC_WORKERS like in Nexus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ApplyBenchmark {
+    @Param({"100", "1000"})
+    private int entities;
+
+    @Param({"0", "500"})
+    private long latencyMicros;
+
+    private Path directory;
+    private Path config;
+    private FakeNexus nexus;
+    private NexusCascPlugin plugin;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("casc-bench");
+        config = directory.resolve("nexus.yml");
+        Files.write(config, ConfigGenerator.generate(entities, entities).getBytes(StandardCharsets.UTF_8));
+        nexus = new FakeNexus(latencyMicros, directory.resolve("work").toFile());
+    }
+
+    /**
+     * Every invocation starts a new plugin against an empty Nexus without fingerprints, except for the config cache
+     */
+    @Setup(Level.Invocation)
+    public void freshNexus() throws Exception {
+        nexus.reset();
+        Files.deleteIfExists(directory.resolve("work/casc/fingerprints.properties"));
+        plugin = plugin();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Benchmarks.delete(directory);
+    }
+
+    @Benchmark
+    public long applyToEmptyNexus() throws Exception {
+        plugin.startWith(config.toString());
+        return nexus.getCalls();
+    }
+
+    /**
+     * Reconciling when nothing changed, the state is shared by all invocations
+     */
+    @State(Scope.Benchmark)
+    public static class Applied {
+        private ApplyBenchmark benchmark;
+
+        @Setup(Level.Trial)
+        public void setUp(ApplyBenchmark benchmark) throws Exception {
+            this.benchmark = benchmark;
+        }
+
+        @Setup(Level.Invocation)
+        public void apply() throws Exception {
+            benchmark.plugin.startWith(benchmark.config.toString());
+        }
+    }
+
+    @Benchmark
+    public long reconcileWithoutDrift(Applied applied) {
+        plugin.reconcile();
+        return nexus.getCalls();
+    }
+
+    @Benchmark
+    public long reconcileDeletedRepository(Applied applied) {
+        nexus.getRepositories().remove("hosted-0");
+        plugin.reconcile();
+        return nexus.getCalls();
+    }
+
+    private NexusCascPlugin plugin() throws Exception {
+        return new NexusCascPlugin(
+                nexus.coreApi(),
+                nexus.securityApi(),
+                nexus.cleanupPolicyStorage(),
+                new Interpolator(),
+                nexus.repositoryManager(),
+                nexus.blobStoreManager(),
+                nexus.realmManager(),
+                nexus.capabilityRegistry(),
+                nexus.applicationDirectories(),
+                nexus.taskScheduler(),
+                new MetricRegistry(),
+                nexus.securityConfigurationManager(),
+                new HealthCheckRegistry(),
+                nexus.selectorManager(),
+                nexus.eventManager());
+    }
+}
@@ -0,0 +1,87 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.fakes.FakeNexus;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applying content selectors, privileges and nested roles together with the users having them to an empty Nexus.
+ * The authorization caches are flushed once per apply, the number of flushes is returned.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AuthorizationBenchmark {
+    @Param({"100", "1000"})
+    private int roles;
+
+    @Param({"0", "500"})
+    private long latencyMicros;
+
+    private Path directory;
+    private Path config;
+    private FakeNexus nexus;
+    private NexusCascPlugin plugin;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("casc-bench");
+        config = directory.resolve("nexus.yml");
+        Files.write(config, ConfigGenerator.generate(0, roles * 10, roles).getBytes(StandardCharsets.UTF_8));
+        nexus = new FakeNexus(latencyMicros, directory.resolve("work").toFile());
+    }
+
+    @Setup(Level.Invocation)
+    public void freshNexus() throws Exception {
+        nexus.reset();
+        Files.deleteIfExists(directory.resolve("work/casc/fingerprints.properties"));
+        plugin = new NexusCascPlugin(
+                nexus.coreApi(),
+                nexus.securityApi(),
+                nexus.cleanupPolicyStorage(),
+                new Interpolator(),
+                nexus.repositoryManager(),
+                nexus.blobStoreManager(),
+                nexus.realmManager(),
+                nexus.capabilityRegistry(),
+                nexus.applicationDirectories(),
+                nexus.taskScheduler(),
+                new MetricRegistry(),
+                nexus.securityConfigurationManager(),
+                new HealthCheckRegistry(),
+                nexus.selectorManager(),
+                nexus.eventManager());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Benchmarks.delete(directory);
+    }
+
+    @Benchmark
+    public long applyToEmptyNexus() throws Exception {
+        plugin.startWith(config.toString());
+        return nexus.getAuthorizationFlushes();
+    }
+}
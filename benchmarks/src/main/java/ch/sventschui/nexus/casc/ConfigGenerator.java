@@ -0,0 +1,128 @@
+package ch.sventschui.nexus.casc;
+
+/**
+ * Generates configs with the given number of repositories and users, shaped like real ones: a few blob stores and
+ * cleanup policies, hosted and proxy repositories referencing them, a group for every 20 repositories and values
+ * taken from env vars with defaults. Roles, if any, each have a privilege with a content selector, nest each other as
+ * a tree and are spread over the users.
+ */
+final class ConfigGenerator {
+    private static final int REPOSITORIES_PER_BLOB_STORE = 100;
+    private static final int MEMBERS_PER_GROUP = 20;
+
+    private ConfigGenerator() {
+    }
+
+    static String generate(int repositories, int users) {
+        return generate(repositories, users, 0);
+    }
+
+    static String generate(int repositories, int users, int roles) {
+        StringBuilder yaml = new StringBuilder(repositories * 300 + users * 200);
+        int blobStores = Math.max(1, repositories / REPOSITORIES_PER_BLOB_STORE);
+
+        yaml.append("core:\n")
+                .append("  baseUrl: ${CASC_BENCH_BASE_URL:\"https://nexus.example.org\"}\n")
+                .append("security:\n")
+                .append("  anonymousAccess: false\n")
+                .append("  pruneUsers: true\n")
+                .append("  realms:\n")
+                .append("    - name: NexusAuthenticatingRealm\n      enabled: true\n")
+                .append("    - name: DockerToken\n      enabled: true\n");
+        if (roles > 0) {
+            yaml.append("  pruneRoles: true\n")
+                    .append("  contentSelectors:\n");
+            for (int i = 0; i < roles; i++) {
+                yaml.append("    - name: selector-").append(i).append('\n')
+                        .append("      expression: format == \"maven2\" and path =^ \"/org/example/team").append(i).append("/\"\n");
+            }
+            yaml.append("  privileges:\n");
+            for (int i = 0; i < roles; i++) {
+                yaml.append("    - name: privilege-").append(i).append('\n')
+                        .append("      type: repository-content-selector\n")
+                        .append("      properties:\n")
+                        .append("        contentSelector: selector-").append(i).append('\n')
+                        .append("        repository: \"*\"\n")
+                        .append("        actions: read,browse\n");
+            }
+            yaml.append("  roles:\n");
+            for (int i = 0; i < roles; i++) {
+                yaml.append("    - id: role-").append(i).append('\n')
+                        .append("      privileges:\n        - privilege-").append(i).append('\n');
+                if (i > 0) {
+                    yaml.append("      roles:\n        - role-").append((i - 1) / 2).append('\n');
+                }
+            }
+        }
+        yaml.append("  users:\n");
+        for (int i = 0; i < users; i++) {
+            yaml.append("    - username: user-").append(i).append('\n')
+                    .append("      firstName: User\n")
+                    .append("      lastName: \"").append(i).append("\"\n")
+                    .append("      email: user-").append(i).append("@example.org\n")
+                    .append("      password: ${CASC_BENCH_PASSWORD:\"secret\"}\n")
+                    .append("      updateExistingPassword: true\n")
+                    .append("      roles:\n")
+                    .append("        - source: default\n          role: nx-anonymous\n");
+            if (roles > 0) {
+                yaml.append("        - source: default\n          role: role-").append(i % roles).append('\n');
+            }
+        }
+
+        yaml.append("repository:\n")
+                .append("  pruneBlobStores: true\n")
+                .append("  pruneCleanupPolicies: true\n")
+                .append("  pruneRepositories: true\n")
+                .append("  blobStores:\n");
+        for (int i = 0; i < blobStores; i++) {
+            yaml.append("    - name: blobs-").append(i).append('\n')
+                    .append("      type: File\n")
+                    .append("      attributes:\n        file:\n          path: /nexus-data/blobs/blobs-").append(i).append('\n');
+        }
+
+        yaml.append("  cleanupPolicies:\n")
+                .append("    - name: snapshots\n      format: maven2\n      mode: delete\n")
+                .append("      criteria:\n        lastDownloaded: 2592000\n");
+
+        yaml.append("  repositories:\n");
+        for (int i = 0; i < repositories; i++) {
+            String blobStore = "blobs-" + (i / REPOSITORIES_PER_BLOB_STORE % blobStores);
+            if (i % MEMBERS_PER_GROUP == MEMBERS_PER_GROUP - 1) {
+                yaml.append("    - name: group-").append(i).append('\n')
+                        .append("      recipeName: maven2-group\n")
+                        .append("      attributes:\n")
+                        .append("        storage:\n          blobStoreName: ").append(blobStore).append('\n')
+                        .append("        group:\n          memberNames:\n");
+                for (int member = i - MEMBERS_PER_GROUP + 1; member < i; member++) {
+                    yaml.append("            - ").append(name(member)).append('\n');
+                }
+            } else if (i % 2 == 0) {
+                yaml.append("    - name: ").append(name(i)).append('\n')
+                        .append("      recipeName: maven2-hosted\n")
+                        .append("      attributes:\n")
+                        .append("        storage:\n          blobStoreName: ").append(blobStore).append('\n')
+                        .append("          writePolicy: ALLOW_ONCE\n")
+                        .append("        cleanup:\n          policyName:\n            - snapshots\n")
+                        .append("        maven:\n          versionPolicy: RELEASE\n          layoutPolicy: STRICT\n");
+            } else {
+                yaml.append("    - name: ").append(name(i)).append('\n')
+                        .append("      recipeName: maven2-proxy\n")
+                        .append("      attributes:\n")
+                        .append("        storage:\n          blobStoreName: ").append(blobStore).append('\n')
+                        .append("        proxy:\n          remoteUrl: ${CASC_BENCH_REMOTE_").append(i % 10)
+                        .append(":\"https://repo").append(i % 10).append(".example.org/maven2/\"}\n")
+                        .append("          contentMaxAge: 1440\n")
+                        .append("        httpclient:\n          blocked: false\n          autoBlock: true\n");
+            }
+        }
+
+        yaml.append("capabilities:\n")
+                .append("  - type: rapture.settings\n    attributes:\n      title: Nexus\n");
+
+        return yaml.toString();
+    }
+
+    private static String name(int i) {
+        return (i % 2 == 0 ? "hosted-" : "proxy-") + i;
+    }
+}
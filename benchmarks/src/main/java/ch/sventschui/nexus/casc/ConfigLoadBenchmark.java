@@ -0,0 +1,87 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.Config;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading generated configs: parsing and binding the whole document (with and without reading every entity, which
+ * interpolates it), streaming it and hitting the config cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigLoadBenchmark {
+    @Param({"100", "1000", "10000"})
+    private int entities;
+
+    private Path directory;
+    private List<Path> sources;
+    private ConfigLoader loader;
+    private ConfigCache cache;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("casc-bench");
+        Path config = directory.resolve("nexus.yml");
+        Files.write(config, ConfigGenerator.generate(entities, entities).getBytes(StandardCharsets.UTF_8));
+
+        sources = Collections.singletonList(config);
+        loader = new ConfigLoader(new Interpolator(), 1);
+        cache = new ConfigCache(directory.resolve("cache"));
+        cache.store(loader.load(sources));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Benchmarks.delete(directory);
+    }
+
+    @Benchmark
+    public Object load() throws IOException {
+        return loader.load(sources).getConfig();
+    }
+
+    @Benchmark
+    public Object loadAndRead(Blackhole blackhole) throws IOException {
+        Config config = loader.load(sources).getConfig();
+        config.getSecurity().getUsers().forEach(blackhole::consume);
+        config.getRepository().getRepositories().forEach(blackhole::consume);
+        return config;
+    }
+
+    @Benchmark
+    public Object stream(Blackhole blackhole) throws IOException {
+        try (Reader reader = Files.newBufferedReader(sources.get(0), StandardCharsets.UTF_8)) {
+            return new ConfigStreamReader(new Interpolator()).read(reader, (list, entry) -> blackhole.consume(entry));
+        }
+    }
+
+    @Benchmark
+    public Object cached() {
+        return cache.load(sources, loader).getConfig();
+    }
+}
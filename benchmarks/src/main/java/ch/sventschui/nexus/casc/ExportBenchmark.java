@@ -0,0 +1,98 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.fakes.FakeNexus;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exporting the live state of a Nexus that a generated config was applied to, into a writer that only counts the
+ * characters. Run with {@code -prof gc} to see the allocation per export.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportBenchmark {
+    @Param({"100", "1000", "10000"})
+    private int entities;
+
+    private Path directory;
+    private NexusCascPlugin plugin;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("casc-bench");
+        Path config = directory.resolve("nexus.yml");
+        Files.write(config, ConfigGenerator.generate(entities, entities, entities / 10).getBytes(StandardCharsets.UTF_8));
+
+        FakeNexus nexus = new FakeNexus(0, directory.resolve("work").toFile());
+        plugin = new NexusCascPlugin(
+                nexus.coreApi(),
+                nexus.securityApi(),
+                nexus.cleanupPolicyStorage(),
+                new Interpolator(),
+                nexus.repositoryManager(),
+                nexus.blobStoreManager(),
+                nexus.realmManager(),
+                nexus.capabilityRegistry(),
+                nexus.applicationDirectories(),
+                nexus.taskScheduler(),
+                new MetricRegistry(),
+                nexus.securityConfigurationManager(),
+                new HealthCheckRegistry(),
+                nexus.selectorManager(),
+                nexus.eventManager());
+        plugin.startWith(config.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Benchmarks.delete(directory);
+    }
+
+    @Benchmark
+    public long export() throws IOException {
+        CountingWriter writer = new CountingWriter();
+        plugin.exportTo(writer);
+        return writer.count;
+    }
+
+    private static final class CountingWriter extends Writer {
+        private long count;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ch.sventschui.nexus.casc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interpolation of a whole generated config, with a warm template cache like on a reload
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpolatorBenchmark {
+    @Param({"100", "1000", "10000"})
+    private int entities;
+
+    private Interpolator interpolator;
+    private String document;
+
+    @Setup
+    public void setUp() {
+        interpolator = new Interpolator();
+        document = ConfigGenerator.generate(entities, entities);
+    }
+
+    @Benchmark
+    public String interpolate() {
+        return interpolator.interpolate(document);
+    }
+
+    @Benchmark
+    public Object referencedFiles() {
+        return interpolator.referencedFiles(document);
+    }
+}
@@ -0,0 +1,137 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.Config;
+import ch.sventschui.nexus.casc.config.ConfigBlobStore;
+import ch.sventschui.nexus.casc.config.ConfigCleanupPolicy;
+import ch.sventschui.nexus.casc.config.ConfigRepository;
+import ch.sventschui.nexus.casc.config.ConfigRepositoryEntry;
+import ch.sventschui.nexus.casc.config.ConfigSecurity;
+import ch.sventschui.nexus.casc.config.ConfigSecurityUser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicy;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.security.role.RoleIdentifier;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserStatus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Planning repositories, blob stores, cleanup policies and users against a live state of the same size that shares
+ * half of them with the config, the other half is pruned
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlanBenchmark {
+    @Param({"100", "1000", "5000"})
+    private int entities;
+
+    private Config config;
+    private LiveState live;
+
+    @Setup
+    public void setUp() {
+        ConfigRepository repository = new ConfigRepository();
+        repository.setPruneRepositories(true);
+        repository.setPruneBlobStores(true);
+        repository.setPruneCleanupPolicies(true);
+        repository.setRepositories(new ArrayList<>());
+        repository.setBlobStores(new ArrayList<>());
+        repository.setCleanupPolicies(new ArrayList<>());
+        ConfigSecurity security = new ConfigSecurity();
+        security.setPruneUsers(true);
+        security.setUsers(new ArrayList<>());
+        config = new Config();
+        config.setRepository(repository);
+        config.setSecurity(security);
+
+        List<Configuration> liveRepositories = new ArrayList<>();
+        List<BlobStoreConfiguration> liveBlobStores = new ArrayList<>();
+        List<CleanupPolicy> livePolicies = new ArrayList<>();
+        List<User> liveUsers = new ArrayList<>();
+        for (int i = 0; i < entities; i++) {
+            int shifted = i + entities / 2;
+
+            ConfigRepositoryEntry entry = new ConfigRepositoryEntry();
+            entry.setName("repo-" + i);
+            entry.setRecipeName("maven2-hosted");
+            entry.setAttributes(storage("blob-" + (i % 100)));
+            repository.getRepositories().add(entry);
+            Configuration liveRepository = new Configuration();
+            liveRepository.setRepositoryName("repo-" + shifted);
+            liveRepository.setRecipeName("maven2-hosted");
+            liveRepository.setOnline(true);
+            liveRepository.setAttributes(storage("blob-" + (i % 100)));
+            liveRepositories.add(liveRepository);
+
+            ConfigBlobStore blobStore = new ConfigBlobStore();
+            blobStore.setName("blob-" + i);
+            blobStore.setAttributes(file("blob-" + i));
+            repository.getBlobStores().add(blobStore);
+            BlobStoreConfiguration liveBlobStore = new BlobStoreConfiguration();
+            liveBlobStore.setName("blob-" + shifted);
+            liveBlobStore.setType("File");
+            liveBlobStore.setAttributes(file("blob-" + shifted));
+            liveBlobStores.add(liveBlobStore);
+
+            ConfigCleanupPolicy policy = new ConfigCleanupPolicy();
+            policy.setName("policy-" + i);
+            repository.getCleanupPolicies().add(policy);
+            livePolicies.add(new CleanupPolicy("policy-" + shifted, "", null, "delete", new HashMap<>()));
+
+            ConfigSecurityUser user = new ConfigSecurityUser();
+            user.setUsername("user-" + i);
+            user.setFirstName("user-" + i);
+            user.setRoles(new ArrayList<>());
+            security.getUsers().add(user);
+            User liveUser = new User();
+            liveUser.setUserId("user-" + shifted);
+            liveUser.setFirstName("user-" + shifted);
+            liveUser.setSource("default");
+            liveUser.setStatus(UserStatus.active);
+            liveUser.setRoles(Collections.<RoleIdentifier>emptySet());
+            liveUsers.add(liveUser);
+        }
+
+        live = new LiveState(liveRepositories, liveBlobStores, livePolicies, liveUsers, Collections.emptyList());
+    }
+
+    @Benchmark
+    public Plan plan() {
+        return Planner.plan(config, live);
+    }
+
+    private static Map<String, Map<String, Object>> storage(String blobStoreName) {
+        Map<String, Map<String, Object>> attributes = new HashMap<>();
+        attributes.put("storage", new HashMap<>());
+        attributes.get("storage").put("blobStoreName", blobStoreName);
+        return attributes;
+    }
+
+    private static Map<String, Map<String, Object>> file(String path) {
+        Map<String, Map<String, Object>> attributes = new HashMap<>();
+        attributes.put("file", new HashMap<>());
+        attributes.get("file").put("path", path);
+        return attributes;
+    }
+}
@@ -0,0 +1,55 @@
+package ch.sventschui.nexus.casc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonatype.nexus.security.user.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the obsolete users of a live state of the given size, half of its users are configured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PruneBenchmark {
+    @Param({"10000", "20000", "40000", "80000"})
+    private int liveUsers;
+
+    private List<String> configured;
+    private List<User> live;
+
+    @Setup
+    public void setUp() {
+        configured = new ArrayList<>(liveUsers);
+        live = new ArrayList<>(liveUsers);
+        for (int i = 0; i < liveUsers; i++) {
+            configured.add("user-" + i);
+            User user = new User();
+            user.setUserId("user-" + (i + liveUsers / 2));
+            user.setSource("default");
+            live.add(user);
+        }
+    }
+
+    @Benchmark
+    public List<User> obsolete() {
+        Set<String> names = Reconciliation.names(configured, name -> name);
+        return Reconciliation.obsolete(Reconciliation.index(live, Reconciliation::userKey).values(), User::getUserId, names);
+    }
+}
@@ -0,0 +1,788 @@
+package ch.sventschui.nexus.casc.fakes;
+
+import org.sonatype.nexus.CoreApi;
+import org.sonatype.nexus.blobstore.api.BlobStore;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.blobstore.api.BlobStoreManager;
+import org.sonatype.nexus.capability.CapabilityContext;
+import org.sonatype.nexus.capability.CapabilityIdentity;
+import org.sonatype.nexus.capability.CapabilityReference;
+import org.sonatype.nexus.capability.CapabilityRegistry;
+import org.sonatype.nexus.capability.CapabilityType;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicy;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicyStorage;
+import org.sonatype.nexus.common.app.ApplicationDirectories;
+import org.sonatype.nexus.common.event.EventManager;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.repository.manager.RepositoryManager;
+import org.sonatype.nexus.scheduling.TaskConfiguration;
+import org.sonatype.nexus.scheduling.TaskInfo;
+import org.sonatype.nexus.scheduling.TaskScheduler;
+import org.sonatype.nexus.scheduling.schedule.Cron;
+import org.sonatype.nexus.scheduling.schedule.Schedule;
+import org.sonatype.nexus.scheduling.schedule.ScheduleFactory;
+import org.sonatype.nexus.security.SecurityApi;
+import org.sonatype.nexus.security.SecuritySystem;
+import org.sonatype.nexus.security.authz.AuthorizationConfigurationChanged;
+import org.sonatype.nexus.security.config.CPrivilege;
+import org.sonatype.nexus.security.config.CRole;
+import org.sonatype.nexus.security.config.CUser;
+import org.sonatype.nexus.security.config.SecurityConfigurationManager;
+import org.sonatype.nexus.security.realm.RealmConfiguration;
+import org.sonatype.nexus.security.privilege.NoSuchPrivilegeException;
+import org.sonatype.nexus.security.privilege.Privilege;
+import org.sonatype.nexus.security.realm.RealmManager;
+import org.sonatype.nexus.security.role.NoSuchRoleException;
+import org.sonatype.nexus.security.role.Role;
+import org.sonatype.nexus.security.role.RoleIdentifier;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserNotFoundException;
+import org.sonatype.nexus.security.user.UserSearchCriteria;
+import org.sonatype.nexus.security.user.UserStatus;
+import org.sonatype.nexus.selector.SelectorConfiguration;
+import org.sonatype.nexus.selector.SelectorManager;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory stand-ins for the Nexus managers the plugin talks to.
+ * <p>
+ * Every manager is a {@link Proxy} that forwards calls to a plain object implementing the methods the plugin uses,
+ * methods it doesn't implement return null, false, 0 or an empty collection. Each manager call blocks for the
+ * configured latency first, to approximate the database round trips of a real Nexus.
+ */
+public final class FakeNexus {
+    // marks methods the fakes don't implement
+    private static final Method NOT_IMPLEMENTED;
+
+    static {
+        try {
+            NOT_IMPLEMENTED = Object.class.getMethod("toString");
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final long latencyNanos;
+    private final File workDirectory;
+    private final AtomicLong calls = new AtomicLong();
+
+    private final Map<String, Configuration> repositories = new ConcurrentHashMap<>();
+    private final Map<String, BlobStoreConfiguration> blobStores = new ConcurrentHashMap<>();
+    private final Map<String, CleanupPolicy> cleanupPolicies = new ConcurrentHashMap<>();
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+    private final Map<String, String> passwordHashes = new ConcurrentHashMap<>();
+    private final Set<String> realms = Collections.synchronizedSet(new LinkedHashSet<>());
+    private final Map<String, FakeCapability> capabilities = new ConcurrentHashMap<>();
+    private final Map<String, CRole> roles = new ConcurrentHashMap<>();
+    private final Map<String, CPrivilege> privileges = new ConcurrentHashMap<>();
+    private final Map<String, SelectorConfiguration> selectors = new ConcurrentHashMap<>();
+    private final Map<String, TaskInfo> tasks = new ConcurrentHashMap<>();
+    private final AtomicLong authorizationFlushes = new AtomicLong();
+
+    /**
+     * @param latencyMicros Artificial latency of every manager call
+     * @param workDirectory The directory returned as work directory, fingerprints and the config cache end up there
+     */
+    public FakeNexus(long latencyMicros, File workDirectory) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        this.workDirectory = workDirectory;
+        builtInRoles();
+    }
+
+    /**
+     * Forgets all entities, as if Nexus was freshly installed
+     */
+    public void reset() {
+        repositories.clear();
+        blobStores.clear();
+        cleanupPolicies.clear();
+        users.clear();
+        passwordHashes.clear();
+        realms.clear();
+        capabilities.clear();
+        roles.clear();
+        privileges.clear();
+        selectors.clear();
+        tasks.clear();
+        builtInRoles();
+        calls.set(0);
+        authorizationFlushes.set(0);
+    }
+
+    private void builtInRoles() {
+        for (String id : new String[]{"nx-admin", "nx-anonymous"}) {
+            CRole role = new CRole();
+            role.setId(id);
+            role.setName(id);
+            role.setReadOnly(true);
+            roles.put(id, role);
+        }
+    }
+
+    /**
+     * Number of manager calls since the last {@link #reset()}
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public Map<String, Configuration> getRepositories() {
+        return repositories;
+    }
+
+    public Map<String, User> getUsers() {
+        return users;
+    }
+
+    public Map<String, CRole> getRoles() {
+        return roles;
+    }
+
+    /**
+     * Scheduled tasks by name
+     */
+    public Map<String, TaskInfo> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Number of times the authorization caches were flushed since the last {@link #reset()}
+     */
+    public long getAuthorizationFlushes() {
+        return authorizationFlushes.get();
+    }
+
+    public RepositoryManager repositoryManager() {
+        return manager(RepositoryManager.class, new Repositories());
+    }
+
+    public BlobStoreManager blobStoreManager() {
+        return manager(BlobStoreManager.class, new BlobStores());
+    }
+
+    public CleanupPolicyStorage cleanupPolicyStorage() {
+        return manager(CleanupPolicyStorage.class, new CleanupPolicies());
+    }
+
+    public SecuritySystem securitySystem() {
+        return manager(SecuritySystem.class, new Users());
+    }
+
+    /**
+     * Like the real implementation, the returned SecurityApi exposes the SecuritySystem through getSecuritySystem()
+     */
+    public SecurityApi securityApi() {
+        return manager(SecurityApi.class, new Security(securitySystem()), SecuritySystemAccessor.class);
+    }
+
+    public SecurityConfigurationManager securityConfigurationManager() {
+        return manager(SecurityConfigurationManager.class, new SecurityConfiguration());
+    }
+
+    public RealmManager realmManager() {
+        return manager(RealmManager.class, new Realms());
+    }
+
+    public CapabilityRegistry capabilityRegistry() {
+        return manager(CapabilityRegistry.class, new Capabilities());
+    }
+
+    public SelectorManager selectorManager() {
+        return manager(SelectorManager.class, new Selectors());
+    }
+
+    public EventManager eventManager() {
+        return manager(EventManager.class, new Events());
+    }
+
+    public CoreApi coreApi() {
+        return manager(CoreApi.class, new Object());
+    }
+
+    public TaskScheduler taskScheduler() {
+        return manager(TaskScheduler.class, new Tasks());
+    }
+
+    public ApplicationDirectories applicationDirectories() {
+        return entity(ApplicationDirectories.class, new Directories());
+    }
+
+    public interface SecuritySystemAccessor {
+        SecuritySystem getSecuritySystem();
+    }
+
+    public interface CapabilityIdAccessor {
+        CapabilityIdentity id();
+    }
+
+    private <T> T manager(Class<T> type, Object target, Class<?>... extraTypes) {
+        return proxy(type, target, true, extraTypes);
+    }
+
+    private <T> T entity(Class<T> type, Object target, Class<?>... extraTypes) {
+        return proxy(type, target, false, extraTypes);
+    }
+
+    private <T> T proxy(Class<T> type, Object target, boolean slow, Class<?>... extraTypes) {
+        Class<?>[] types = new Class<?>[extraTypes.length + 1];
+        types[0] = type;
+        System.arraycopy(extraTypes, 0, types, 1, extraTypes.length);
+
+        Map<Method, Method> targets = new ConcurrentHashMap<>();
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(target, args);
+            }
+
+            if (slow) {
+                calls.incrementAndGet();
+                if (latencyNanos > 0) {
+                    LockSupport.parkNanos(latencyNanos);
+                }
+            }
+
+            Method implementation = targets.computeIfAbsent(method, m -> find(target.getClass(), m));
+            if (implementation == NOT_IMPLEMENTED) {
+                return defaultValue(method.getReturnType());
+            }
+
+            try {
+                return implementation.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+
+        return type.cast(Proxy.newProxyInstance(FakeNexus.class.getClassLoader(), types, handler));
+    }
+
+    private static Method find(Class<?> targetClass, Method method) {
+        try {
+            Method implementation = targetClass.getDeclaredMethod(method.getName(), method.getParameterTypes());
+            implementation.setAccessible(true);
+            return implementation;
+        } catch (NoSuchMethodException e) {
+            return NOT_IMPLEMENTED;
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type.isAssignableFrom(ArrayList.class)) {
+            return new ArrayList<>();
+        } else if (type.isAssignableFrom(HashSet.class)) {
+            return new HashSet<>();
+        } else if (type.isAssignableFrom(HashMap.class)) {
+            return new HashMap<>();
+        }
+        return null;
+    }
+
+    private Repository repository(Configuration configuration) {
+        return entity(Repository.class, new Object() {
+            String getName() {
+                return configuration.getRepositoryName();
+            }
+
+            Configuration getConfiguration() {
+                return configuration;
+            }
+        });
+    }
+
+    private BlobStore blobStore(BlobStoreConfiguration configuration) {
+        return entity(BlobStore.class, new Object() {
+            BlobStoreConfiguration getBlobStoreConfiguration() {
+                return configuration;
+            }
+        });
+    }
+
+    private CapabilityReference capability(FakeCapability capability) {
+        CapabilityContext context = entity(CapabilityContext.class, capability);
+        return entity(CapabilityReference.class, new Object() {
+            CapabilityContext context() {
+                return context;
+            }
+
+            CapabilityIdentity id() {
+                return capability.id;
+            }
+        }, CapabilityIdAccessor.class);
+    }
+
+    private final class Repositories {
+        Iterable<Repository> browse() {
+            return repositories.values().stream().map(FakeNexus.this::repository).collect(Collectors.toList());
+        }
+
+        boolean exists(String name) {
+            return repositories.containsKey(name);
+        }
+
+        Repository get(String name) {
+            Configuration configuration = repositories.get(name);
+            return configuration != null ? repository(configuration) : null;
+        }
+
+        Repository create(Configuration configuration) {
+            if (repositories.putIfAbsent(configuration.getRepositoryName(), configuration) != null) {
+                throw new IllegalStateException("Repository " + configuration.getRepositoryName() + " already exists");
+            }
+            return repository(configuration);
+        }
+
+        Repository update(Configuration configuration) {
+            repositories.put(configuration.getRepositoryName(), configuration);
+            return repository(configuration);
+        }
+
+        void delete(String name) {
+            repositories.remove(name);
+        }
+    }
+
+    private final class BlobStores {
+        Iterable<BlobStore> browse() {
+            return blobStores.values().stream().map(FakeNexus.this::blobStore).collect(Collectors.toList());
+        }
+
+        boolean exists(String name) {
+            return blobStores.containsKey(name);
+        }
+
+        BlobStore get(String name) {
+            BlobStoreConfiguration configuration = blobStores.get(name);
+            return configuration != null ? blobStore(configuration) : null;
+        }
+
+        BlobStore create(BlobStoreConfiguration configuration) {
+            blobStores.put(configuration.getName(), configuration);
+            return blobStore(configuration);
+        }
+
+        BlobStore update(BlobStoreConfiguration configuration) {
+            return create(configuration);
+        }
+
+        void delete(String name) {
+            blobStores.remove(name);
+        }
+    }
+
+    private final class CleanupPolicies {
+        CleanupPolicy add(CleanupPolicy policy) {
+            cleanupPolicies.put(policy.getName(), policy);
+            return policy;
+        }
+
+        CleanupPolicy update(CleanupPolicy policy) {
+            return add(policy);
+        }
+
+        void remove(CleanupPolicy policy) {
+            cleanupPolicies.remove(policy.getName());
+        }
+
+        CleanupPolicy get(String name) {
+            return cleanupPolicies.get(name);
+        }
+
+        boolean exists(String name) {
+            return cleanupPolicies.containsKey(name);
+        }
+
+        List<CleanupPolicy> getAll() {
+            return new ArrayList<>(cleanupPolicies.values());
+        }
+    }
+
+    private final class Users {
+        User getUser(String userId) throws UserNotFoundException {
+            User user = users.get(userId);
+            if (user == null) {
+                throw new UserNotFoundException(userId);
+            }
+            return user;
+        }
+
+        User getUser(String userId, String source) throws UserNotFoundException {
+            return getUser(userId);
+        }
+
+        User updateUser(User user) {
+            users.put(user.getUserId(), user);
+            return user;
+        }
+
+        void deleteUser(String userId, String source) {
+            users.remove(userId);
+        }
+
+        Set<User> searchUsers(UserSearchCriteria criteria) {
+            return users.values().stream()
+                    .filter(user -> criteria.getUserId() == null || user.getUserId().startsWith(criteria.getUserId()))
+                    .filter(user -> criteria.getSource() == null || criteria.getSource().equals(user.getSource()))
+                    .collect(Collectors.toSet());
+        }
+
+        void changePassword(String userId, String password) throws UserNotFoundException {
+            getUser(userId);
+            passwordHashes.put(userId, hash(password));
+        }
+
+        Set<Role> listRoles(String source) {
+            return roles.values().stream().map(role -> {
+                Role result = new Role();
+                result.setRoleId(role.getId());
+                result.setSource(source);
+                result.setName(role.getName());
+                result.setDescription(role.getDescription());
+                result.setReadOnly(role.isReadOnly());
+                result.setPrivileges(new HashSet<>(role.getPrivileges()));
+                result.setRoles(new HashSet<>(role.getRoles()));
+                return result;
+            }).collect(Collectors.toSet());
+        }
+
+        Set<Privilege> listPrivileges() {
+            return privileges.values().stream().map(privilege -> {
+                Privilege result = new Privilege();
+                result.setId(privilege.getId());
+                result.setName(privilege.getName());
+                result.setDescription(privilege.getDescription());
+                result.setType(privilege.getType());
+                result.setReadOnly(privilege.isReadOnly());
+                result.setProperties(new HashMap<>(privilege.getProperties()));
+                return result;
+            }).collect(Collectors.toSet());
+        }
+    }
+
+    private final class Security {
+        private final SecuritySystem securitySystem;
+
+        Security(SecuritySystem securitySystem) {
+            this.securitySystem = securitySystem;
+        }
+
+        SecuritySystem getSecuritySystem() {
+            return securitySystem;
+        }
+
+        User addUser(String id, String firstName, String lastName, String email, boolean active, String password,
+                     List<String> roleIds) {
+            User user = new User();
+            user.setUserId(id);
+            user.setSource("default");
+            user.setFirstName(firstName);
+            user.setLastName(lastName);
+            user.setEmailAddress(email);
+            user.setStatus(active ? UserStatus.active : UserStatus.disabled);
+            user.setRoles(roleIds.stream().map(role -> new RoleIdentifier("default", role)).collect(Collectors.toSet()));
+            users.put(id, user);
+            passwordHashes.put(id, hash(password));
+            return user;
+        }
+    }
+
+    private final class SecurityConfiguration {
+        CUser readUser(String id) throws UserNotFoundException {
+            User user = users.get(id);
+            if (user == null) {
+                throw new UserNotFoundException(id);
+            }
+            CUser cuser = new CUser();
+            cuser.setId(id);
+            cuser.setFirstName(user.getFirstName());
+            cuser.setLastName(user.getLastName());
+            cuser.setEmail(user.getEmailAddress());
+            cuser.setPassword(passwordHashes.get(id));
+            return cuser;
+        }
+
+        void updateUser(CUser user) throws UserNotFoundException {
+            readUser(user.getId());
+            passwordHashes.put(user.getId(), user.getPassword());
+        }
+
+        void createRole(CRole role) {
+            roles.put(role.getId(), role);
+        }
+
+        CRole readRole(String id) throws NoSuchRoleException {
+            CRole role = roles.get(id);
+            if (role == null) {
+                throw new NoSuchRoleException(id);
+            }
+            return role;
+        }
+
+        void updateRole(CRole role) throws NoSuchRoleException {
+            readRole(role.getId());
+            roles.put(role.getId(), role);
+        }
+
+        boolean deleteRole(String id) throws NoSuchRoleException {
+            readRole(id);
+            roles.remove(id);
+            return true;
+        }
+
+        void createPrivilege(CPrivilege privilege) {
+            privileges.put(privilege.getId(), privilege);
+        }
+
+        CPrivilege readPrivilege(String id) throws NoSuchPrivilegeException {
+            CPrivilege privilege = privileges.get(id);
+            if (privilege == null) {
+                throw new NoSuchPrivilegeException(id);
+            }
+            return privilege;
+        }
+
+        void updatePrivilege(CPrivilege privilege) throws NoSuchPrivilegeException {
+            readPrivilege(privilege.getId());
+            privileges.put(privilege.getId(), privilege);
+        }
+
+        boolean deletePrivilege(String id) throws NoSuchPrivilegeException {
+            readPrivilege(id);
+            privileges.remove(id);
+            return true;
+        }
+    }
+
+    private final class Selectors {
+        List<SelectorConfiguration> browse() {
+            return new ArrayList<>(selectors.values());
+        }
+
+        void create(SelectorConfiguration selector) {
+            selectors.put(selector.getName(), selector);
+        }
+
+        void update(SelectorConfiguration selector) {
+            selectors.put(selector.getName(), selector);
+        }
+
+        void delete(SelectorConfiguration selector) {
+            selectors.remove(selector.getName());
+        }
+    }
+
+    private final class Events {
+        void post(Object event) {
+            if (event instanceof AuthorizationConfigurationChanged) {
+                authorizationFlushes.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Stands in for the salted, iterated hash Nexus computes, the cost of hashing is part of the latency
+     */
+    private static String hash(String password) {
+        return "$fake$" + Integer.toHexString(String.valueOf(password).hashCode());
+    }
+
+    private final class Realms {
+        void enableRealm(String name, boolean enable) {
+            realms.add(name);
+        }
+
+        void enableRealm(String name) {
+            realms.add(name);
+        }
+
+        void disableRealm(String name) {
+            realms.remove(name);
+        }
+
+        boolean isRealmEnabled(String name) {
+            return realms.contains(name);
+        }
+
+        RealmConfiguration getConfiguration() {
+            RealmConfiguration configuration = new RealmConfiguration();
+            synchronized (realms) {
+                configuration.setRealmNames(new ArrayList<>(realms));
+            }
+            return configuration;
+        }
+    }
+
+    private final class Capabilities {
+        CapabilityReference add(CapabilityType type, boolean enabled, String notes, Map<String, String> properties) {
+            FakeCapability capability = new FakeCapability(CapabilityIdentity.capabilityIdentity(UUID.randomUUID().toString()),
+                    type, enabled, notes, properties);
+            capabilities.put(capability.id.toString(), capability);
+            return capability(capability);
+        }
+
+        CapabilityReference update(CapabilityIdentity id, boolean enabled, String notes, Map<String, String> properties) {
+            FakeCapability existing = capabilities.get(id.toString());
+            FakeCapability capability = new FakeCapability(id, existing.type, enabled, notes, properties);
+            capabilities.put(id.toString(), capability);
+            return capability(capability);
+        }
+
+        CapabilityReference remove(CapabilityIdentity id) {
+            FakeCapability removed = capabilities.remove(id.toString());
+            return removed != null ? capability(removed) : null;
+        }
+
+        CapabilityReference get(CapabilityIdentity id) {
+            FakeCapability capability = capabilities.get(id.toString());
+            return capability != null ? capability(capability) : null;
+        }
+
+        Collection<? extends CapabilityReference> getAll() {
+            return capabilities.values().stream().map(FakeNexus.this::capability).collect(Collectors.toList());
+        }
+    }
+
+    private static final class FakeCapability {
+        private final CapabilityIdentity id;
+        private final CapabilityType type;
+        private final boolean enabled;
+        private final String notes;
+        private final Map<String, String> properties;
+
+        private FakeCapability(CapabilityIdentity id, CapabilityType type, boolean enabled, String notes,
+                               Map<String, String> properties) {
+            this.id = id;
+            this.type = type;
+            this.enabled = enabled;
+            this.notes = notes;
+            this.properties = properties != null ? new HashMap<>(properties) : new HashMap<>();
+        }
+
+        CapabilityType type() {
+            return type;
+        }
+
+        Map<String, String> properties() {
+            return properties;
+        }
+
+        boolean isEnabled() {
+            return enabled;
+        }
+
+        boolean isActive() {
+            return enabled;
+        }
+
+        String notes() {
+            return notes;
+        }
+
+        CapabilityIdentity id() {
+            return id;
+        }
+    }
+
+    private final class Tasks {
+        TaskConfiguration createTaskConfigurationInstance(String typeId) {
+            TaskConfiguration configuration = new TaskConfiguration();
+            configuration.setTypeId(typeId);
+            return configuration;
+        }
+
+        TaskInfo scheduleTask(TaskConfiguration configuration, Schedule schedule) {
+            TaskInfo task = task(configuration, schedule);
+            tasks.put(configuration.getName(), task);
+            return task;
+        }
+
+        ScheduleFactory getScheduleFactory() {
+            return entity(ScheduleFactory.class, new Object() {
+                Cron cron(Date startAt, String cronExpression) {
+                    return new Cron(startAt, cronExpression);
+                }
+            });
+        }
+
+        List<TaskInfo> listsTasks() {
+            return new ArrayList<>(tasks.values());
+        }
+    }
+
+    private TaskInfo task(TaskConfiguration configuration, Schedule schedule) {
+        return entity(TaskInfo.class, new Object() {
+            String getId() {
+                return configuration.getName();
+            }
+
+            String getName() {
+                return configuration.getName();
+            }
+
+            String getTypeId() {
+                return configuration.getTypeId();
+            }
+
+            TaskConfiguration getConfiguration() {
+                return configuration;
+            }
+
+            Schedule getSchedule() {
+                return schedule;
+            }
+
+            boolean remove() {
+                return tasks.remove(configuration.getName()) != null;
+            }
+        });
+    }
+
+    private final class Directories {
+        File getWorkDirectory() {
+            return workDirectory;
+        }
+
+        File getWorkDirectory(String path) {
+            return getWorkDirectory(path, true);
+        }
+
+        File getWorkDirectory(String path, boolean create) {
+            File directory = new File(workDirectory, path);
+            if (create) {
+                directory.mkdirs();
+            }
+            return directory;
+        }
+
+        File getTemporaryDirectory() {
+            return getWorkDirectory("tmp");
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package ch.sventschui.nexus.casc;
+
+import org.sonatype.goodies.common.ComponentSupport;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only journal of the operations of an apply, one line per planned, completed and failed operation.
+ * <p>
+ * If an apply did not finish, e.g. because Nexus was killed, the next apply of the same config skips the operations
+ * the journal records as completed. Records are synced to disk in batches, losing the last batch in a crash only
+ * means that a few operations are applied again, which is harmless as applying an entity is idempotent.
+ * The journal only holds the last apply, it is truncated when an apply of a different config begins or the last
+ * apply ended.
+ */
+public class ApplyJournal extends ComponentSupport {
+    static final int SYNC_RECORDS = 256;
+    static final long SYNC_INTERVAL_NANOS = 100_000_000L;
+
+    private final Path file;
+    private final Set<String> completedBefore = new HashSet<>();
+    private final Map<String, String> createdOfflineBefore = new LinkedHashMap<>();
+    private FileChannel channel;
+    private final StringBuilder pending = new StringBuilder();
+    private int pendingRecords;
+    private long lastSync;
+
+    public ApplyJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Begins journaling the apply of the given config, resuming the previous apply if it did not end and applied the
+     * same config
+     */
+    public synchronized void begin(String configHash) {
+        close();
+        completedBefore.clear();
+        createdOfflineBefore.clear();
+
+        try {
+            Files.createDirectories(file.getParent());
+            boolean resume = Files.exists(file) && readUnfinished(configHash);
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    resume ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+            if (resume) {
+                log.info("Resuming the interrupted apply of the config, skipping {} completed operations", completedBefore.size());
+            }
+            append("BEGIN", configHash);
+            sync();
+        } catch (IOException e) {
+            log.warn("Failed to open the apply journal {}, an interrupted apply will start over", file, e);
+            close();
+        }
+    }
+
+    /**
+     * Returns true if the interrupted apply that is resumed completed the given operation
+     */
+    public synchronized boolean completedBefore(String id) {
+        return completedBefore.contains(id);
+    }
+
+    public synchronized int getResumed() {
+        return completedBefore.size();
+    }
+
+    /**
+     * Repositories the interrupted apply created offline, by name, with the definition to fingerprint once they are
+     * online
+     */
+    public synchronized Map<String, String> getCreatedOffline() {
+        return new LinkedHashMap<>(createdOfflineBefore);
+    }
+
+    /**
+     * Records a repository that is created offline, before it is created, so that a resumed apply still brings it
+     * online
+     */
+    public synchronized void createdOffline(String repository, String definition) {
+        append("OFFLINE", repository, definition);
+        try {
+            sync();
+        } catch (IOException e) {
+            log.warn("Failed to write the apply journal {}", file, e);
+        }
+    }
+
+    public synchronized void planned(String id) {
+        append("PLAN", id);
+    }
+
+    public synchronized void completed(String id) {
+        append("DONE", id);
+    }
+
+    public synchronized void failed(String id, String reason) {
+        append("FAIL", id, reason);
+    }
+
+    /**
+     * Marks the apply as finished, the next apply starts a new journal
+     */
+    public synchronized void end() {
+        append("END");
+        try {
+            sync();
+        } catch (IOException e) {
+            log.warn("Failed to write the apply journal {}", file, e);
+        }
+        close();
+    }
+
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            sync();
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close the apply journal {}", file, e);
+        }
+        channel = null;
+        pending.setLength(0);
+        pendingRecords = 0;
+    }
+
+    /**
+     * Reads the operations completed by the journaled apply, returns false if it ended or applied another config
+     */
+    private boolean readUnfinished(String configHash) throws IOException {
+        String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        // a record is only complete with its line break, the last one might have been torn by a crash
+        String[] lines = content.substring(0, content.lastIndexOf('\n') + 1).split("\n");
+
+        boolean matches = false;
+        Set<String> completed = new HashSet<>();
+        Map<String, String> offline = new LinkedHashMap<>();
+        for (String line : lines) {
+            String[] fields = line.split(" ");
+            switch (fields[0]) {
+                case "BEGIN":
+                    matches = fields.length > 1 && decode(fields[1]).equals(configHash);
+                    break;
+                case "DONE":
+                    if (fields.length > 1) {
+                        completed.add(decode(fields[1]));
+                    }
+                    break;
+                case "OFFLINE":
+                    if (fields.length > 2) {
+                        offline.put(decode(fields[1]), decode(fields[2]));
+                    }
+                    break;
+                case "END":
+                    return false;
+                default:
+                    break;
+            }
+        }
+
+        if (matches) {
+            completedBefore.addAll(completed);
+            createdOfflineBefore.putAll(offline);
+        }
+        return matches;
+    }
+
+    private void append(String type, String... fields) {
+        if (channel == null) {
+            return;
+        }
+
+        pending.append(type);
+        for (String field : fields) {
+            pending.append(' ').append(encode(field));
+        }
+        pending.append('\n');
+        pendingRecords++;
+
+        if (pendingRecords >= SYNC_RECORDS || System.nanoTime() - lastSync >= SYNC_INTERVAL_NANOS) {
+            try {
+                sync();
+            } catch (IOException e) {
+                log.warn("Failed to write the apply journal {}, no longer journaling this apply", file, e);
+                close();
+            }
+        }
+    }
+
+    private void sync() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        if (pending.length() > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(pending.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            pending.setLength(0);
+            pendingRecords = 0;
+        }
+        channel.force(false);
+        lastSync = System.nanoTime();
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(String.valueOf(value), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package ch.sventschui.nexus.casc;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.sonatype.goodies.common.ComponentSupport;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers for the phases of loading and applying the config and for every applied entity, plus counters of created,
+ * updated, skipped and failed entities. They are registered in the Nexus metrics registry under {@code nexus-casc.*}
+ * (e.g. {@code nexus-casc.parse}, {@code nexus-casc.repository}, {@code nexus-casc.repository.created}) and exposed
+ * through JMX as {@value #OBJECT_NAME}.
+ */
+public class ApplyMetrics extends ComponentSupport implements ApplyMetricsMXBean {
+    static final String PREFIX = "nexus-casc";
+    static final String OBJECT_NAME = "ch.sventschui.nexus.casc:type=ApplyMetrics";
+
+    static final String STARTUP = "startup";
+    static final String CACHE = "cache";
+    static final String LOAD = "load";
+    static final String INTERPOLATE = "interpolate";
+    static final String PARSE = "parse";
+    static final String MERGE = "merge";
+    static final String VALIDATE = "validate";
+    static final String APPLY = "apply";
+    static final String EXPORT = "export";
+
+    private static final String CREATED = "created";
+    private static final String UPDATED = "updated";
+    private static final String SKIPPED = "skipped";
+    private static final String FAILED = "failed";
+
+    private final MetricRegistry registry;
+    private final Map<String, Long> lastDurationMillis = new ConcurrentHashMap<>();
+
+    public ApplyMetrics(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Starts timing a phase or entity kind, the returned phase has to be closed
+     */
+    public Phase time(String name) {
+        return new Phase(name, registry.timer(MetricRegistry.name(PREFIX, name)).time());
+    }
+
+    public void created(String kind) {
+        count(kind, CREATED);
+    }
+
+    public void updated(String kind) {
+        count(kind, UPDATED);
+    }
+
+    public void skipped(String kind) {
+        count(kind, SKIPPED);
+    }
+
+    public void failed(String kind) {
+        count(kind, FAILED);
+    }
+
+    private void count(String kind, String outcome) {
+        registry.counter(MetricRegistry.name(PREFIX, kind, outcome)).inc();
+    }
+
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            log.warn("Failed to register {}", OBJECT_NAME, e);
+        }
+    }
+
+    public void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            log.warn("Failed to unregister {}", OBJECT_NAME, e);
+        }
+        registry.removeMatching((name, metric) -> name.startsWith(PREFIX + "."));
+    }
+
+    @Override
+    public Map<String, Long> getLastDurationMillis() {
+        return new TreeMap<>(lastDurationMillis);
+    }
+
+    @Override
+    public Map<String, Double> getMeanDurationMillis() {
+        Map<String, Double> mean = new TreeMap<>();
+        timers().forEach((name, timer) -> mean.put(name, timer.getSnapshot().getMean() / TimeUnit.MILLISECONDS.toNanos(1)));
+        return mean;
+    }
+
+    @Override
+    public Map<String, Long> getMaxDurationMillis() {
+        Map<String, Long> max = new TreeMap<>();
+        timers().forEach((name, timer) -> max.put(name, TimeUnit.NANOSECONDS.toMillis(timer.getSnapshot().getMax())));
+        return max;
+    }
+
+    @Override
+    public Map<String, Long> getCreated() {
+        return counters(CREATED);
+    }
+
+    @Override
+    public Map<String, Long> getUpdated() {
+        return counters(UPDATED);
+    }
+
+    @Override
+    public Map<String, Long> getSkipped() {
+        return counters(SKIPPED);
+    }
+
+    @Override
+    public Map<String, Long> getFailed() {
+        return counters(FAILED);
+    }
+
+    private Map<String, Timer> timers() {
+        Map<String, Timer> timers = new TreeMap<>();
+        registry.getTimers().forEach((name, timer) -> {
+            if (name.startsWith(PREFIX + ".")) {
+                timers.put(name.substring(PREFIX.length() + 1), timer);
+            }
+        });
+        return timers;
+    }
+
+    private Map<String, Long> counters(String outcome) {
+        Map<String, Long> counters = new TreeMap<>();
+        String suffix = "." + outcome;
+        registry.getCounters().forEach((name, counter) -> {
+            if (name.startsWith(PREFIX + ".") && name.endsWith(suffix)) {
+                counters.put(name.substring(PREFIX.length() + 1, name.length() - suffix.length()), counter.getCount());
+            }
+        });
+        return counters;
+    }
+
+    public final class Phase implements AutoCloseable {
+        private final String name;
+        private final Timer.Context context;
+
+        private Phase(String name, Timer.Context context) {
+            this.name = name;
+            this.context = context;
+        }
+
+        @Override
+        public void close() {
+            lastDurationMillis.put(name, TimeUnit.NANOSECONDS.toMillis(context.stop()));
+        }
+    }
+}
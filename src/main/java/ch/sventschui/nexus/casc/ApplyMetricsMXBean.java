@@ -0,0 +1,23 @@
+package ch.sventschui.nexus.casc;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link ApplyMetrics}. Durations are keyed by phase ({@code startup}, {@code load}, {@code parse}, ...)
+ * or entity kind ({@code repository}, {@code user}, ...), counters by entity kind.
+ */
+public interface ApplyMetricsMXBean {
+    Map<String, Long> getLastDurationMillis();
+
+    Map<String, Double> getMeanDurationMillis();
+
+    Map<String, Long> getMaxDurationMillis();
+
+    Map<String, Long> getCreated();
+
+    Map<String, Long> getUpdated();
+
+    Map<String, Long> getSkipped();
+
+    Map<String, Long> getFailed();
+}
@@ -0,0 +1,376 @@
+package ch.sventschui.nexus.casc;
+
+import org.sonatype.goodies.common.ComponentSupport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs apply work as a dependency graph on a bounded worker pool.
+ * <p>
+ * Every piece of work has an id, the manager it talks to and the ids of the work it depends on. Work only starts
+ * once all its dependencies finished (successfully or not, failures are logged like they always were), and at most
+ * {@code limit} pieces of work run concurrently against the same manager. Work of a manager at its limit waits in the
+ * manager's queue instead of occupying a worker, so independent work keeps the workers busy.
+ * <p>
+ * Work can be added before or after {@link #start()}, which allows applying entities while the config is still being
+ * read. Dependencies on ids that were not added by the time {@link #finish()} is called are ignored, e.g. a
+ * repository using a blob store that is not part of the config.
+ */
+public class ApplyScheduler extends ComponentSupport {
+    private final int workers;
+    private final Map<String, Manager> managers = new HashMap<>();
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    // nodes waiting for ids that were not added yet
+    private final Map<String, List<Node>> unresolved = new HashMap<>();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private ExecutorService executor;
+    private ApplyStats stats;
+    private ApplyJournal journal;
+    private int done;
+
+    public ApplyScheduler(int workers) {
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Limits the number of concurrent calls to a manager, managers without limit are only bounded by the pool size
+     */
+    public ApplyScheduler limit(String manager, int concurrency) {
+        managers.put(manager, new Manager(Math.max(1, Math.min(concurrency, workers))));
+        return this;
+    }
+
+    /**
+     * Times every piece of work by its kind (the part of the id before the first colon) and counts work that
+     * failed with an exception
+     */
+    public ApplyScheduler stats(ApplyStats stats) {
+        this.stats = stats;
+        return this;
+    }
+
+    /**
+     * Records planned, completed and failed work in the journal and skips work the journal records as completed by
+     * an interrupted apply of the same config
+     */
+    public ApplyScheduler journal(ApplyJournal journal) {
+        this.journal = journal;
+        return this;
+    }
+
+    public synchronized void add(String id, String manager, Collection<String> dependsOn, Runnable work) {
+        if (nodes.containsKey(id)) {
+            log.warn("{} is configured more than once, only applying its first occurrence", id);
+            return;
+        }
+
+        Node node = new Node(id, manager, work);
+        if (journal != null) {
+            if (journal.completedBefore(id)) {
+                // still part of the graph, so that work depending on it can run
+                node.resumed = true;
+            } else {
+                journal.planned(id);
+            }
+        }
+        for (String dependency : new LinkedHashSet<>(dependsOn)) {
+            Node other = nodes.get(dependency);
+            if (dependency.equals(id) || (other != null && other.state == State.DONE)) {
+                continue;
+            }
+
+            node.dependsOn.add(dependency);
+            if (other != null) {
+                other.dependents.add(node);
+            } else {
+                unresolved.computeIfAbsent(dependency, k -> new ArrayList<>()).add(node);
+            }
+        }
+
+        List<Node> waiting = unresolved.remove(id);
+        if (waiting != null) {
+            node.dependents.addAll(waiting);
+        }
+
+        nodes.put(id, node);
+
+        if (executor != null && node.dependsOn.isEmpty()) {
+            submit(node);
+        }
+    }
+
+    public synchronized boolean contains(String id) {
+        return nodes.containsKey(id);
+    }
+
+    /**
+     * Ids of all added work whose id starts with the given prefix
+     */
+    public synchronized List<String> ids(String prefix) {
+        List<String> ids = new ArrayList<>();
+        nodes.keySet().stream().filter(id -> id.startsWith(prefix)).forEach(ids::add);
+        return ids;
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public synchronized int getDone() {
+        return done;
+    }
+
+    public synchronized int getTotal() {
+        return nodes.size();
+    }
+
+    /**
+     * Runs all added work and blocks until it finished
+     */
+    public void run() throws InterruptedException {
+        start();
+        finish();
+    }
+
+    /**
+     * Starts running work whose dependencies are satisfied, work added later starts as soon as possible
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+
+        executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "casc-apply-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        submitReady();
+    }
+
+    /**
+     * Marks the graph as complete and blocks until all work finished. Dependencies that were never added are
+     * dropped and dependency cycles are broken so that every piece of work runs eventually.
+     */
+    public synchronized void finish() throws InterruptedException {
+        start();
+
+        unresolved.forEach((id, waiting) -> waiting.forEach(node -> node.dependsOn.remove(id)));
+        unresolved.clear();
+
+        Set<String> cyclic = cyclicNodes();
+        for (String id : cyclic) {
+            log.error("{} is part of a dependency cycle, applying it without waiting for the other members of the cycle", id);
+            nodes.get(id).dependsOn.removeIf(cyclic::contains);
+        }
+
+        submitReady();
+
+        try {
+            while (done < nodes.size()) {
+                wait();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void submitReady() {
+        nodes.values().stream()
+                .filter(node -> node.state == State.WAITING && node.dependsOn.isEmpty())
+                .forEach(this::submit);
+    }
+
+    private void submit(Node node) {
+        node.state = State.SUBMITTED;
+        Manager manager = node.resumed ? null : managers.get(node.manager);
+        if (manager != null) {
+            if (manager.running >= manager.limit) {
+                manager.queued.add(node);
+                return;
+            }
+            manager.running++;
+        }
+        dispatch(node);
+    }
+
+    private void dispatch(Node node) {
+        executor.execute(() -> {
+            try {
+                execute(node);
+            } finally {
+                completed(node);
+            }
+        });
+    }
+
+    private synchronized void completed(Node node) {
+        node.state = State.DONE;
+        Manager manager = node.resumed ? null : managers.get(node.manager);
+        if (manager != null) {
+            Node next = manager.queued.poll();
+            if (next != null) {
+                dispatch(next);
+            } else {
+                manager.running--;
+            }
+        }
+        for (Node dependent : node.dependents) {
+            dependent.dependsOn.remove(node.id);
+            if (dependent.state == State.WAITING && dependent.dependsOn.isEmpty()) {
+                submit(dependent);
+            }
+        }
+        done++;
+        notifyAll();
+    }
+
+    private void execute(Node node) {
+        if (node.resumed) {
+            log.debug("{} was applied before the restart, skipping", node.id);
+            return;
+        }
+
+        ApplyMetrics.Phase phase = stats != null ? stats.time(kind(node.id)) : null;
+        int failedBefore = stats != null ? stats.getFailedOnThread() : 0;
+        try {
+            node.work.run();
+            if (journal != null) {
+                if (stats != null && stats.getFailedOnThread() > failedBefore) {
+                    journal.failed(node.id, "failed, see the log");
+                } else {
+                    journal.completed(node.id);
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to apply {}", node.id, e);
+            failed.incrementAndGet();
+            if (stats != null) {
+                stats.failed(kind(node.id));
+            }
+            if (journal != null) {
+                journal.failed(node.id, String.valueOf(e));
+            }
+        } finally {
+            if (phase != null) {
+                phase.close();
+            }
+        }
+    }
+
+    /**
+     * The kind of work, e.g. {@code repository} for {@code repository:maven-central} and {@code prune.users} for
+     * {@code prune:users}
+     */
+    static String kind(String id) {
+        int separator = id.indexOf(':');
+        if (separator < 0) {
+            return id;
+        }
+        return id.startsWith("prune:") ? "prune." + id.substring(separator + 1) : id.substring(0, separator);
+    }
+
+    /**
+     * Ids of all waiting nodes that (transitively) depend on themselves
+     */
+    private Set<String> cyclicNodes() {
+        Map<String, Integer> pending = new HashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+        Deque<String> ready = new ArrayDeque<>();
+
+        nodes.values().stream().filter(node -> node.state == State.WAITING).forEach(node -> {
+            // dependencies that are already running will finish on their own
+            int waitingDependencies = (int) node.dependsOn.stream().filter(id -> nodes.get(id).state == State.WAITING).count();
+            pending.put(node.id, waitingDependencies);
+            node.dependsOn.forEach(id -> dependents.computeIfAbsent(id, k -> new ArrayList<>()).add(node.id));
+            if (waitingDependencies == 0) {
+                ready.add(node.id);
+            }
+        });
+
+        while (!ready.isEmpty()) {
+            String id = ready.poll();
+            pending.remove(id);
+            for (String dependent : dependents.getOrDefault(id, new ArrayList<>())) {
+                if (pending.containsKey(dependent) && pending.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        // what remains are cycle members and nodes that depend on a cycle
+        Set<String> cyclic = new LinkedHashSet<>();
+        for (String id : pending.keySet()) {
+            if (reaches(id, id, pending.keySet(), new HashSet<>())) {
+                cyclic.add(id);
+            }
+        }
+        return cyclic;
+    }
+
+    private boolean reaches(String from, String target, Set<String> candidates, Set<String> visited) {
+        for (String dependency : nodes.get(from).dependsOn) {
+            if (dependency.equals(target)) {
+                return true;
+            }
+            if (candidates.contains(dependency) && visited.add(dependency) && reaches(dependency, target, candidates, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private enum State {
+        WAITING, SUBMITTED, DONE
+    }
+
+    /**
+     * Work running against a manager with a limit and the work waiting for one of them to finish
+     */
+    private static final class Manager {
+        private final int limit;
+        private final Deque<Node> queued = new ArrayDeque<>();
+        private int running;
+
+        private Manager(int limit) {
+            this.limit = limit;
+        }
+    }
+
+    private static final class Node {
+        private final String id;
+        private final String manager;
+        private final Set<String> dependsOn = new LinkedHashSet<>();
+        private final Runnable work;
+        private final List<Node> dependents = new ArrayList<>();
+        private State state = State.WAITING;
+        private boolean resumed;
+
+        private Node(String id, String manager, Runnable work) {
+            this.id = id;
+            this.manager = manager;
+            this.work = work;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package ch.sventschui.nexus.casc;
+
+import org.slf4j.Logger;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Number of created, updated, skipped and failed entities per kind during one apply. Every count and timing is
+ * also reported to the {@link ApplyMetrics} that outlive the apply.
+ */
+public class ApplyStats {
+    private final ApplyMetrics metrics;
+    private final Map<String, AtomicInteger> created = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> updated = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> skipped = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> failed = new ConcurrentHashMap<>();
+    private final ThreadLocal<int[]> failedOnThread = ThreadLocal.withInitial(() -> new int[1]);
+
+    public ApplyStats(ApplyMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public ApplyMetrics.Phase time(String kind) {
+        return metrics.time(kind);
+    }
+
+    public void created(String kind) {
+        increment(created, kind);
+        metrics.created(kind);
+    }
+
+    public void updated(String kind) {
+        increment(updated, kind);
+        metrics.updated(kind);
+    }
+
+    public void skipped(String kind) {
+        increment(skipped, kind);
+        metrics.skipped(kind);
+    }
+
+    public void failed(String kind) {
+        failedOnThread.get()[0]++;
+        increment(failed, kind);
+        metrics.failed(kind);
+    }
+
+    public int getCreated(String kind) {
+        return get(created, kind);
+    }
+
+    public int getUpdated(String kind) {
+        return get(updated, kind);
+    }
+
+    public int getSkipped(String kind) {
+        return get(skipped, kind);
+    }
+
+    public int getFailed(String kind) {
+        return get(failed, kind);
+    }
+
+    /**
+     * Number of failures of all kinds
+     */
+    public int getFailed() {
+        return failed.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    /**
+     * Number of failures reported by the calling thread, entities report failures on the thread applying them
+     */
+    public int getFailedOnThread() {
+        return failedOnThread.get()[0];
+    }
+
+    private static void increment(Map<String, AtomicInteger> counts, String kind) {
+        counts.computeIfAbsent(kind, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private static int get(Map<String, AtomicInteger> counts, String kind) {
+        AtomicInteger count = counts.get(kind);
+        return count == null ? 0 : count.get();
+    }
+
+    public void log(Logger log) {
+        Set<String> kinds = new TreeSet<>(created.keySet());
+        kinds.addAll(updated.keySet());
+        kinds.addAll(skipped.keySet());
+        kinds.addAll(failed.keySet());
+
+        kinds.forEach(kind -> log.info("{}: created {}, updated {}, skipped {} unchanged, failed {}", kind,
+                getCreated(kind), getUpdated(kind), getSkipped(kind), getFailed(kind)));
+    }
+}
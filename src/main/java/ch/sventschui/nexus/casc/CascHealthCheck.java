@@ -0,0 +1,41 @@
+package ch.sventschui.nexus.casc;
+
+import com.codahale.metrics.health.HealthCheck;
+
+/**
+ * Reports a node as healthy once its config was applied, so that a load balancer only routes to configured nodes
+ */
+public class CascHealthCheck extends HealthCheck {
+    public static final String NAME = "nexus-casc";
+
+    private final CascStatus status;
+
+    public CascHealthCheck(CascStatus status) {
+        this.status = status;
+    }
+
+    @Override
+    protected Result check() {
+        ResultBuilder result = status.isReady() ? Result.builder().healthy() : Result.builder().unhealthy();
+
+        String message = status.getMessage();
+        if (message == null) {
+            message = status.getState() == CascStatus.State.APPLYING
+                    ? "Applying config (" + status.getDone() + "/" + status.getTotal() + ")"
+                    : "Config " + status.getState().name().toLowerCase();
+        }
+
+        result.withMessage(message)
+                .withDetail("state", status.getState().name())
+                .withDetail("done", status.getDone())
+                .withDetail("total", status.getTotal())
+                .withDetail("failures", status.getFailures());
+        if (status.getConfigHash() != null) {
+            result.withDetail("configHash", status.getConfigHash());
+        }
+        if (status.getLastApplied() != null) {
+            result.withDetail("lastApplied", status.getLastApplied().toInstant().toString());
+        }
+        return result.build();
+    }
+}
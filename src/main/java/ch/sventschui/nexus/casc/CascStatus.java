@@ -0,0 +1,111 @@
+package ch.sventschui.nexus.casc;
+
+import java.util.Date;
+
+/**
+ * Progress of the current apply and the outcome of the last one, reported by the {@link CascHealthCheck}.
+ * <p>
+ * A node is ready once a config was applied completely without failures. It stays ready while a changed config or
+ * drift is re-applied and only becomes unready again if such an apply fails.
+ */
+public class CascStatus {
+    public enum State {
+        /**
+         * No config is applied, e.g. because NEXUS_CASC_CONFIG is not set
+         */
+        DISABLED,
+        /**
+         * The config was not applied yet
+         */
+        PENDING,
+        APPLYING,
+        APPLIED,
+        FAILED
+    }
+
+    private volatile State state = State.PENDING;
+    private volatile boolean ready;
+    private volatile ApplyScheduler scheduler;
+    private volatile String configHash;
+    private volatile int failures;
+    private volatile String message;
+    private volatile Date lastApplied;
+
+    public void disabled(String message) {
+        this.message = message;
+        this.ready = true;
+        this.state = State.DISABLED;
+    }
+
+    public void applying(ApplyScheduler scheduler) {
+        this.scheduler = scheduler;
+        this.state = State.APPLYING;
+    }
+
+    /**
+     * Records the outcome of a complete apply
+     *
+     * @param configHash The hash of the applied config
+     * @param failures   The number of entities that failed to apply
+     */
+    public void applied(String configHash, int failures) {
+        this.configHash = configHash;
+        this.failures = failures;
+        this.lastApplied = new Date();
+        if (failures == 0) {
+            this.message = null;
+            this.ready = true;
+            this.state = State.APPLIED;
+        } else {
+            this.message = failures + " entities failed to apply";
+            this.ready = false;
+            this.state = State.FAILED;
+        }
+    }
+
+    public void failed(String message) {
+        this.message = message;
+        this.ready = false;
+        this.state = State.FAILED;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Number of pieces of work of the current or last apply that finished so far
+     */
+    public int getDone() {
+        ApplyScheduler current = scheduler;
+        return current == null ? 0 : current.getDone();
+    }
+
+    /**
+     * Number of pieces of work of the current or last apply, grows while a config is streamed
+     */
+    public int getTotal() {
+        ApplyScheduler current = scheduler;
+        return current == null ? 0 : current.getTotal();
+    }
+
+    public String getConfigHash() {
+        return configHash;
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Date getLastApplied() {
+        return lastApplied;
+    }
+}
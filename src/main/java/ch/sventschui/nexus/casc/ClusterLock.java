@@ -0,0 +1,253 @@
+package ch.sventschui.nexus.casc;
+
+import org.sonatype.goodies.common.ComponentSupport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Makes the nodes of a cluster sharing a database apply the config one at a time, through files in a directory all
+ * nodes share.
+ * <p>
+ * The node that creates {@code casc.lock} applies the config, the others wait. The lock is a lease: its holder touches
+ * it every third of the lease and a lock that wasn't touched for a whole lease (e.g. because its holder died) is taken
+ * over by the next node. Once the config was applied without failures, the holder records the hash of the config and
+ * the fingerprint of the resulting live state in {@code casc.applied}. Waiting nodes only verify that their config
+ * and live state match that record instead of applying the config again. Leases are compared to the modification time
+ * of the lock, the clocks of the nodes have to roughly agree.
+ */
+public class ClusterLock extends ComponentSupport implements Closeable {
+    static final String LOCK = "casc.lock";
+    static final String APPLIED = "casc.applied";
+
+    private final Path lock;
+    private final Path applied;
+    private final long leaseMillis;
+    private final long pollMillis;
+    private final String token;
+    private final ScheduledExecutorService heartbeat;
+    private ScheduledFuture<?> beat;
+
+    /**
+     * @param directory   The directory shared by all nodes
+     * @param leaseMillis How long a lock that isn't touched by its holder is valid
+     * @param pollMillis  How often waiting nodes check the lock and the record of the last apply
+     */
+    public ClusterLock(Path directory, long leaseMillis, long pollMillis) throws IOException {
+        Files.createDirectories(directory);
+        this.lock = directory.resolve(LOCK);
+        this.applied = directory.resolve(APPLIED);
+        this.leaseMillis = leaseMillis;
+        this.pollMillis = pollMillis;
+        // the process (pid@host) for humans looking at the lock, the random part tells instances on one host apart
+        this.token = ManagementFactory.getRuntimeMXBean().getName() + "/" + UUID.randomUUID();
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "casc-cluster-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Blocks until this node holds the lock or another node applied the config with the given hash
+     *
+     * @param configHash        The hash of the config to apply
+     * @param liveStateMatches  Whether the fingerprint of the live state recorded by another node matches the live
+     *                          state this node sees, only called for records of the same config
+     * @return true if this node holds the lock and has to apply the config, false if another node applied it
+     */
+    public boolean acquireOrAwait(String configHash, Predicate<String> liveStateMatches) throws IOException, InterruptedException {
+        Properties rejected = null;
+        boolean waiting = false;
+        while (true) {
+            Properties record = readApplied();
+            // checking the live state reads all of it, only check every record once
+            if (record != null && !record.equals(rejected)) {
+                if (configHash.equals(record.getProperty("configHash"))
+                        && liveStateMatches.test(record.getProperty("liveState"))) {
+                    return false;
+                }
+                rejected = record;
+            }
+
+            if (tryAcquire()) {
+                // the holder might have recorded its apply after the record was read
+                Properties latest = readApplied();
+                if (latest != null && !latest.equals(rejected) && configHash.equals(latest.getProperty("configHash"))
+                        && liveStateMatches.test(latest.getProperty("liveState"))) {
+                    release();
+                    return false;
+                }
+                return true;
+            }
+
+            if (!waiting) {
+                log.info("{} is applying the config, waiting for it to finish", holder());
+                waiting = true;
+            }
+            Thread.sleep(pollMillis);
+        }
+    }
+
+    /**
+     * Creates the lock or takes over an expired one
+     *
+     * @return true if this node holds the lock now
+     */
+    synchronized boolean tryAcquire() throws IOException {
+        if (create()) {
+            return true;
+        }
+
+        String holder;
+        FileTime touched;
+        try {
+            holder = read(lock);
+            touched = Files.getLastModifiedTime(lock);
+        } catch (NoSuchFileException e) {
+            // released in the meantime, try again with the next poll
+            return false;
+        }
+        if (System.currentTimeMillis() - touched.toMillis() < leaseMillis) {
+            return false;
+        }
+
+        // only one node can move the expired lock away, the others find it missing
+        Path expired = lock.resolveSibling(LOCK + "." + UUID.randomUUID());
+        try {
+            Files.move(lock, expired, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (!holder.equals(read(expired))) {
+            // another node took the lock over between reading and moving it, give it back
+            try {
+                Files.move(expired, lock);
+            } catch (FileAlreadyExistsException e) {
+                Files.delete(expired);
+            }
+            return false;
+        }
+        Files.delete(expired);
+        log.warn("Took over the cluster lock of {}, it was not renewed for {} ms", holder, leaseMillis);
+        return create();
+    }
+
+    private boolean create() throws IOException {
+        try {
+            Files.write(lock, token.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+        long interval = Math.max(1, leaseMillis / 3);
+        beat = heartbeat.scheduleWithFixedDelay(this::renew, interval, interval, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private synchronized void renew() {
+        if (beat == null) {
+            // released while this renewal was due
+            return;
+        }
+        try {
+            if (token.equals(read(lock))) {
+                Files.setLastModifiedTime(lock, FileTime.fromMillis(System.currentTimeMillis()));
+                return;
+            }
+        } catch (NoSuchFileException e) {
+            // lost, see below
+        } catch (IOException e) {
+            log.warn("Failed to renew the cluster lock {}", lock, e);
+            return;
+        }
+        log.error("Lost the cluster lock {}, another node took it over while this node was applying the config", lock);
+        beat.cancel(false);
+        beat = null;
+    }
+
+    /**
+     * Records that the config with the given hash was applied, must be called while holding the lock
+     *
+     * @param configHash The hash of the applied config
+     * @param liveState  The fingerprint of the live state after applying the config
+     */
+    public void recordApplied(String configHash, String liveState) throws IOException {
+        Properties record = new Properties();
+        record.setProperty("configHash", configHash);
+        record.setProperty("liveState", liveState);
+        record.setProperty("node", token);
+
+        Path tmp = applied.resolveSibling(APPLIED + "." + UUID.randomUUID());
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            record.store(writer, null);
+        }
+        Files.move(tmp, applied, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Releases the lock if this node holds it
+     */
+    public synchronized void release() {
+        if (beat != null) {
+            beat.cancel(false);
+            beat = null;
+        }
+        try {
+            if (token.equals(read(lock))) {
+                Files.delete(lock);
+            }
+        } catch (NoSuchFileException e) {
+            // not held
+        } catch (IOException e) {
+            log.error("Failed to release the cluster lock {}, other nodes take over once it expires", lock, e);
+        }
+    }
+
+    private Properties readApplied() throws IOException {
+        Properties record = new Properties();
+        try (Reader reader = Files.newBufferedReader(applied, StandardCharsets.UTF_8)) {
+            record.load(reader);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        // the node that applied the config doesn't matter when comparing records
+        record.remove("node");
+        return record;
+    }
+
+    private String holder() {
+        try {
+            return read(lock);
+        } catch (IOException e) {
+            return "Another node";
+        }
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        release();
+        heartbeat.shutdownNow();
+    }
+}
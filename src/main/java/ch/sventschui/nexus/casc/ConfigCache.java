@@ -0,0 +1,247 @@
+package ch.sventschui.nexus.casc;
+
+import org.sonatype.goodies.common.ComponentSupport;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Caches the merged config document, so that a restart with unchanged fragments skips parsing and merging them.
+ * <p>
+ * The cache file records the hash of the config fragments and the names of the env vars and files they referenced.
+ * The document is cached before it is interpolated, so changed env vars or referenced files don't invalidate it and
+ * their values are never written to the cache. It is still encrypted with AES-GCM under a key derived from a
+ * per-install key and the fragments, as fragments may contain literal secrets. A changed fragment is detected by its
+ * hash and counts as a cache miss.
+ */
+public class ConfigCache extends ComponentSupport {
+    private static final int MAGIC = 0x43415343;
+    // caches written with the implicit serialVersionUIDs of the config classes are discarded
+    private static final int VERSION = 3;
+    private static final int GCM_TAG_BITS = 128;
+    private static final int IV_BYTES = 12;
+
+    private final Path file;
+    private final Path keyFile;
+    private final SecureRandom random = new SecureRandom();
+
+    public ConfigCache(Path directory) {
+        this.file = directory.resolve("config.cache");
+        this.keyFile = directory.resolve("install.key");
+    }
+
+    /**
+     * Returns the cached config for the given fragments or null if there is none for their current content
+     *
+     * @param loader The loader that constructs the config from the cached document
+     */
+    public ConfigLoader.Loaded load(List<Path> sources, ConfigLoader loader) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            Header header = Header.read(in);
+            if (header == null || !header.sourcesHash.equals(sourcesHash(sources))) {
+                log.debug("Config cache {} is outdated", file);
+                return null;
+            }
+
+            byte[] iv = new byte[in.readInt()];
+            in.readFully(iv);
+            byte[] encrypted = new byte[in.readInt()];
+            in.readFully(encrypted);
+
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key(header), new GCMParameterSpec(GCM_TAG_BITS, iv));
+            cipher.updateAAD(header.bytes());
+
+            Entry entry;
+            try (ObjectInputStream objects = new EntryInputStream(
+                    new GZIPInputStream(new ByteArrayInputStream(cipher.doFinal(encrypted))))) {
+                entry = (Entry) objects.readObject();
+            }
+
+            List<Path> referencedFiles = new ArrayList<>();
+            header.files.forEach(path -> referencedFiles.add(Paths.get(path)));
+            log.info("Loaded config from cache {}", file);
+            return loader.loaded(entry.document, sources, referencedFiles, header.variables);
+        } catch (IOException | ClassNotFoundException | GeneralSecurityException | RuntimeException e) {
+            log.warn("Failed to read config cache {}, loading the config", file, e);
+            return null;
+        }
+    }
+
+    public void store(ConfigLoader.Loaded loaded) {
+        Header header = new Header();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try {
+            header.sourcesHash = sourcesHash(loaded.getSources());
+            header.variables = new ArrayList<>(loaded.getReferencedVariables());
+            loaded.getReferencedFiles().forEach(path -> header.files.add(path.toString()));
+
+            ByteArrayOutputStream plain = new ByteArrayOutputStream();
+            try (ObjectOutputStream objects = new ObjectOutputStream(new GZIPOutputStream(plain))) {
+                objects.writeObject(new Entry(loaded.getDocument()));
+            }
+
+            byte[] iv = new byte[IV_BYTES];
+            random.nextBytes(iv);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key(header), new GCMParameterSpec(GCM_TAG_BITS, iv));
+            cipher.updateAAD(header.bytes());
+            byte[] encrypted = cipher.doFinal(plain.toByteArray());
+
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+                header.write(out);
+                out.writeInt(iv.length);
+                out.write(iv);
+                out.writeInt(encrypted.length);
+                out.write(encrypted);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            log.warn("Failed to write config cache {}", file, e);
+        }
+    }
+
+    /**
+     * Derives the cache key from the install key and the fragments
+     */
+    private SecretKeySpec key(Header header) throws IOException, GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(InstallKey.load(keyFile), "HmacSHA256"));
+        update(mac, header.sourcesHash);
+        return new SecretKeySpec(mac.doFinal(), "AES");
+    }
+
+    private static void update(Mac mac, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        mac.update((byte) (bytes.length >>> 24));
+        mac.update((byte) (bytes.length >>> 16));
+        mac.update((byte) (bytes.length >>> 8));
+        mac.update((byte) bytes.length);
+        mac.update(bytes);
+    }
+
+    private static String sourcesHash(List<Path> sources) throws IOException {
+        StringBuilder hashes = new StringBuilder();
+        for (Path source : sources) {
+            hashes.append(source.toAbsolutePath()).append('=').append(sha256(Files.readAllBytes(source))).append('\n');
+        }
+        return Fingerprints.sha256(hashes.toString());
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static final class Header {
+        private String sourcesHash;
+        private List<String> variables = new ArrayList<>();
+        private final List<String> files = new ArrayList<>();
+
+        static Header read(DataInputStream in) throws IOException {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+
+            Header header = new Header();
+            header.sourcesHash = in.readUTF();
+            for (int i = in.readInt(); i > 0; i--) {
+                header.variables.add(in.readUTF());
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                header.files.add(in.readUTF());
+            }
+            return header;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(sourcesHash);
+            out.writeInt(variables.size());
+            for (String variable : variables) {
+                out.writeUTF(variable);
+            }
+            out.writeInt(files.size());
+            for (String path : files) {
+                out.writeUTF(path);
+            }
+        }
+
+        byte[] bytes() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                write(out);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    private static final class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Map<String, Object> document;
+
+        private Entry(Map<String, Object> document) {
+            this.document = document;
+        }
+    }
+
+    /**
+     * Resolves classes through the plugin's class loader and only accepts what YAML values and the plugin's own
+     * classes consist of
+     */
+    private static final class EntryInputStream extends ObjectInputStream {
+        EntryInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String name = desc.getName();
+            if (!name.startsWith("java.") && !name.startsWith("[") && !name.startsWith("ch.sventschui.nexus.casc.")) {
+                throw new InvalidClassException(name, "not allowed in the config cache");
+            }
+            return Class.forName(name, false, ConfigCache.class.getClassLoader());
+        }
+    }
+}
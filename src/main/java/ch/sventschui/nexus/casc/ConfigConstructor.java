@@ -0,0 +1,307 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.Config;
+import ch.sventschui.nexus.casc.config.ConfigBlobStore;
+import ch.sventschui.nexus.casc.config.ConfigCapability;
+import ch.sventschui.nexus.casc.config.ConfigCleanupPolicy;
+import ch.sventschui.nexus.casc.config.ConfigRepositoryEntry;
+import ch.sventschui.nexus.casc.config.ConfigSecurityUser;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.constructor.AbstractConstruct;
+import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.nodes.MappingNode;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.NodeTuple;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.SequenceNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.representer.Representer;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Constructs the {@link Config} from the merged document, interpolating scalars as they are constructed instead of
+ * interpolating the text of the fragments. A resolved value always stays a single scalar, a secret containing
+ * {@code :}, {@code #} or line breaks can't change the structure of the config.
+ * <p>
+ * The users, blob stores, cleanup policies, repositories and capabilities are {@link LazyList}s: an entity is only
+ * constructed and interpolated when the apply code first reads it and is kept afterwards. Sections that are not
+ * applied never resolve their references.
+ */
+final class ConfigConstructor extends Constructor {
+    private static final Set<Class<?>> LAZY = new HashSet<>(Arrays.asList(ConfigSecurityUser.class, ConfigBlobStore.class,
+            ConfigCleanupPolicy.class, ConfigRepositoryEntry.class, ConfigCapability.class));
+
+    private final Interpolator interpolator;
+    private final Interpolator.Resolution resolution;
+    private final int parallelism;
+    private final ApplyMetrics metrics;
+    private final Resolver resolver = new Resolver();
+
+    private ConfigConstructor(Interpolator interpolator, Interpolator.Resolution resolution, int parallelism, ApplyMetrics metrics) {
+        super(Config.class);
+        this.interpolator = interpolator;
+        this.resolution = resolution;
+        this.parallelism = parallelism;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Constructs the config from a document parsed by {@link Parser}, resolving references through the given resolution
+     */
+    static Config construct(Map<String, Object> document, Interpolator interpolator, Interpolator.Resolution resolution,
+                            int parallelism, ApplyMetrics metrics) {
+        Node node = new DocumentRepresenter().represent(document);
+        node.setTag(new Tag(Config.class));
+        return (Config) new ConfigConstructor(interpolator, resolution, parallelism, metrics).constructDocument(node);
+    }
+
+    /**
+     * All scalars of a document that contain references, in the order they appear
+     */
+    static List<String> templates(Object value) {
+        List<String> templates = new ArrayList<>();
+        collect(value, templates, Collections.newSetFromMap(new IdentityHashMap<>()));
+        return templates;
+    }
+
+    private static void collect(Object value, List<String> templates, Set<Object> visited) {
+        if (value instanceof Template) {
+            templates.add(((Template) value).value);
+        } else if (value instanceof Map && visited.add(value)) {
+            ((Map<?, ?>) value).forEach((k, v) -> {
+                collect(k, templates, visited);
+                collect(v, templates, visited);
+            });
+        } else if (value instanceof Iterable && visited.add(value)) {
+            ((Iterable<?>) value).forEach(element -> collect(element, templates, visited));
+        } else if (value instanceof String && ((String) value).indexOf('$') >= 0) {
+            templates.add((String) value);
+        }
+    }
+
+    @Override
+    protected Object constructObject(Node node) {
+        // the constructor of the property sets the element type of a list on its elements
+        if (node instanceof SequenceNode && !((SequenceNode) node).getValue().isEmpty()
+                && LAZY.contains(((SequenceNode) node).getValue().get(0).getType())) {
+            return new LazyList<>(this, ((SequenceNode) node).getValue());
+        }
+        return super.constructObject(interpolate(node));
+    }
+
+    private Node interpolate(Node node) {
+        if (!(node instanceof ScalarNode) || !Tag.STR.equals(node.getTag())) {
+            return node;
+        }
+
+        ScalarNode scalar = (ScalarNode) node;
+        String value = scalar.getValue();
+        if (value.indexOf('$') < 0) {
+            return node;
+        }
+
+        String interpolated = interpolator.interpolate(value, resolution);
+        if (interpolated.equals(value)) {
+            return node;
+        }
+
+        Tag tag = Tag.STR;
+        if (scalar.getScalarStyle() == DumperOptions.ScalarStyle.PLAIN) {
+            // resolve the tag from the interpolated value, so that ${PORT:8081} becomes an int
+            interpolated = interpolated.trim();
+            tag = resolver.resolve(NodeId.scalar, interpolated, true);
+        }
+
+        ScalarNode result = new ScalarNode(tag, true, interpolated, scalar.getStartMark(), scalar.getEndMark(), scalar.getScalarStyle());
+        result.setType(node.getType());
+        return result;
+    }
+
+    /**
+     * Constructs a single entity of a lazy list with a fresh constructor, so that entities can be constructed
+     * concurrently and the constructor's state doesn't outlive the entity
+     */
+    private Object constructLazily(Node node) {
+        return new ConfigConstructor(interpolator, resolution, parallelism, metrics).constructDocument(node);
+    }
+
+    /**
+     * Resolves all references of the given entities at once and in parallel, before the first of them is constructed
+     */
+    private void prefetch(List<Node> nodes) {
+        List<String> templates = new ArrayList<>();
+        Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        nodes.forEach(node -> collectNodes(node, templates, visited));
+        if (templates.isEmpty()) {
+            return;
+        }
+
+        ApplyMetrics.Phase phase = metrics.time(ApplyMetrics.INTERPOLATE);
+        try {
+            resolution.prefetch(templates, parallelism);
+        } catch (InterruptedException e) {
+            // the references are resolved one by one instead
+            Thread.currentThread().interrupt();
+        } finally {
+            phase.close();
+        }
+    }
+
+    private static void collectNodes(Node node, List<String> templates, Set<Node> visited) {
+        if (!visited.add(node)) {
+            return;
+        }
+        if (node instanceof ScalarNode) {
+            String value = ((ScalarNode) node).getValue();
+            if (Tag.STR.equals(node.getTag()) && value.indexOf('$') >= 0) {
+                templates.add(value);
+            }
+        } else if (node instanceof SequenceNode) {
+            ((SequenceNode) node).getValue().forEach(child -> collectNodes(child, templates, visited));
+        } else if (node instanceof MappingNode) {
+            for (NodeTuple tuple : ((MappingNode) node).getValue()) {
+                collectNodes(tuple.getKeyNode(), templates, visited);
+                collectNodes(tuple.getValueNode(), templates, visited);
+            }
+        }
+    }
+
+    /**
+     * A list whose elements are constructed from their nodes when they are first read. Serializes as a plain list
+     * of the constructed elements.
+     */
+    static final class LazyList<T> extends AbstractList<T> implements RandomAccess, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final transient ConfigConstructor constructor;
+        private final transient List<Node> nodes;
+        private final transient Object[] elements;
+        private transient boolean prefetched;
+
+        private LazyList(ConfigConstructor constructor, List<Node> nodes) {
+            this.constructor = constructor;
+            this.nodes = nodes;
+            this.elements = new Object[nodes.size()];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized T get(int index) {
+            if (elements[index] == null) {
+                if (!prefetched) {
+                    prefetched = true;
+                    constructor.prefetch(nodes);
+                }
+                elements[index] = constructor.constructLazily(nodes.get(index));
+            }
+            return (T) elements[index];
+        }
+
+        @Override
+        public int size() {
+            return nodes.size();
+        }
+
+        private Object writeReplace() {
+            return new ArrayList<>(this);
+        }
+    }
+
+    /**
+     * Parses fragments without interpolating them: strings that contain references are kept as {@link Template}s,
+     * which remember whether the scalar was plain. Map keys stay strings.
+     */
+    static final class Parser extends SafeConstructor {
+        Parser() {
+            yamlConstructors.put(Tag.STR, new AbstractConstruct() {
+                @Override
+                public Object construct(Node node) {
+                    String value = constructScalar((ScalarNode) node);
+                    if (value.indexOf('$') < 0) {
+                        return value;
+                    }
+                    return new Template(value, ((ScalarNode) node).getScalarStyle() == DumperOptions.ScalarStyle.PLAIN);
+                }
+            });
+        }
+
+        @Override
+        protected void constructMapping2ndStep(MappingNode node, Map<Object, Object> mapping) {
+            super.constructMapping2ndStep(node, mapping);
+            if (mapping.keySet().stream().anyMatch(key -> key instanceof Template)) {
+                Map<Object, Object> entries = new LinkedHashMap<>(mapping);
+                mapping.clear();
+                entries.forEach((key, value) -> mapping.put(key instanceof Template ? ((Template) key).value : key, value));
+            }
+        }
+    }
+
+    /**
+     * A string scalar that contains references and is interpolated when the config is constructed
+     */
+    static final class Template implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final String value;
+        private final boolean plain;
+
+        Template(String value, boolean plain) {
+            this.value = value;
+            this.plain = plain;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Template)) {
+                return false;
+            }
+            Template other = (Template) o;
+            return plain == other.plain && value.equals(other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(value, plain);
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    /**
+     * Turns a parsed document back into nodes without writing and parsing it as text, templates keep the style of
+     * their scalar
+     */
+    private static final class DocumentRepresenter extends Representer {
+        DocumentRepresenter() {
+            setDefaultScalarStyle(DumperOptions.ScalarStyle.PLAIN);
+            setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+            representers.put(Template.class, data -> {
+                Template template = (Template) data;
+                return new ScalarNode(Tag.STR, true, template.value, null, null,
+                        template.plain ? DumperOptions.ScalarStyle.PLAIN : DumperOptions.ScalarStyle.DOUBLE_QUOTED);
+            });
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package ch.sventschui.nexus.casc;
+
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicy;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.security.privilege.Privilege;
+import org.sonatype.nexus.security.role.Role;
+import org.sonatype.nexus.security.role.RoleIdentifier;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserManager;
+import org.sonatype.nexus.security.user.UserStatus;
+import org.sonatype.nexus.selector.SelectorConfiguration;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.emitter.Emitter;
+import org.yaml.snakeyaml.events.DocumentEndEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.ImplicitTuple;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceEndEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.events.StreamEndEvent;
+import org.yaml.snakeyaml.events.StreamStartEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Writes live entities as a config in the schema of {@link ch.sventschui.nexus.casc.config.Config}.
+ * <p>
+ * Entities are written as YAML events while they are browsed, only the entity being written is held in memory and
+ * nothing but references to the live entities is collected (to sort them by name, which keeps exports of the same
+ * state identical). Values of attributes that look like secrets (see {@link #SECRET_KEYS}) are not exported, an env var
+ * reference like {@code ${REPOSITORY_MAVEN_CENTRAL_HTTPCLIENT_AUTHENTICATION_PASSWORD}} is written instead. Passwords
+ * of users can't be exported at all, existing users don't need one to be applied. Any other {@code $} that would start
+ * a reference is written as {@code ${$}}, so that values like regular expressions are not interpolated when the export
+ * is applied.
+ */
+public class ConfigExporter {
+    /**
+     * Parts of attribute names whose values are secrets, compared to the lowercase name without separators
+     */
+    static final List<String> SECRET_KEYS = Collections.unmodifiableList(Arrays.asList(
+            "password", "passwd", "passphrase", "secret", "token", "apikey", "accesskey", "privatekey", "credential"));
+
+    private final Emitter emitter;
+    private final Resolver resolver = new Resolver();
+
+    public ConfigExporter(Writer writer) {
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setIndent(2);
+        this.emitter = new Emitter(writer, options);
+    }
+
+    /**
+     * Writes the whole config
+     *
+     * @param realms           The names of the active realms, in their order
+     * @param contentSelectors Content selectors, only CSEL selectors are written
+     * @param privileges       Privileges, read-only built-in privileges are not written
+     * @param roles            Roles of the default source, read-only built-in roles are not written
+     * @param users            Users of all sources, only users of the default source are written
+     */
+    public void export(Iterable<BlobStoreConfiguration> blobStores, Iterable<CleanupPolicy> cleanupPolicies,
+                       Iterable<Configuration> repositories, Collection<String> realms,
+                       Iterable<SelectorConfiguration> contentSelectors, Iterable<Privilege> privileges,
+                       Iterable<Role> roles, Iterable<User> users,
+                       Iterable<LiveState.Capability> capabilities) throws IOException {
+        emitter.emit(new StreamStartEvent(null, null));
+        emitter.emit(new DocumentStartEvent(null, null, false, null, null));
+        startMapping();
+
+        scalar("repository");
+        startMapping();
+        scalar("blobStores");
+        startSequence();
+        for (BlobStoreConfiguration blobStore : sorted(blobStores, BlobStoreConfiguration::getName)) {
+            startMapping();
+            entry("name", blobStore.getName());
+            entry("type", blobStore.getType());
+            entry("attributes", redacted(blobStore.getAttributes(), "blobStore", blobStore.getName()));
+            endMapping();
+        }
+        endSequence();
+        scalar("cleanupPolicies");
+        startSequence();
+        for (CleanupPolicy policy : sorted(cleanupPolicies, CleanupPolicy::getName)) {
+            startMapping();
+            entry("name", policy.getName());
+            entry("format", policy.getFormat());
+            entry("notes", policy.getNotes());
+            entry("mode", policy.getMode());
+            entry("criteria", policy.getCriteria());
+            endMapping();
+        }
+        endSequence();
+        scalar("repositories");
+        startSequence();
+        for (Configuration repository : sorted(repositories, Configuration::getRepositoryName)) {
+            startMapping();
+            entry("name", repository.getRepositoryName());
+            entry("recipeName", repository.getRecipeName());
+            entry("online", repository.isOnline());
+            entry("attributes", redacted(repository.getAttributes(), "repository", repository.getRepositoryName()));
+            endMapping();
+        }
+        endSequence();
+        endMapping();
+
+        scalar("security");
+        startMapping();
+        scalar("realms");
+        startSequence();
+        for (String realm : realms) {
+            startMapping();
+            entry("name", realm);
+            entry("enabled", true);
+            endMapping();
+        }
+        endSequence();
+        scalar("contentSelectors");
+        startSequence();
+        for (SelectorConfiguration selector : sorted(contentSelectors, SelectorConfiguration::getName)) {
+            if (!"csel".equals(selector.getType())) {
+                continue;
+            }
+            startMapping();
+            entry("name", selector.getName());
+            entry("description", selector.getDescription());
+            entry("expression", selector.getAttributes() == null ? null : selector.getAttributes().get("expression"));
+            endMapping();
+        }
+        endSequence();
+        scalar("privileges");
+        startSequence();
+        for (Privilege privilege : sorted(privileges, Privilege::getId)) {
+            if (privilege.isReadOnly()) {
+                continue;
+            }
+            startMapping();
+            entry("name", privilege.getId());
+            entry("description", privilege.getDescription());
+            entry("type", privilege.getType());
+            entry("properties", privilege.getProperties());
+            endMapping();
+        }
+        endSequence();
+        scalar("roles");
+        startSequence();
+        for (Role role : sorted(roles, Role::getRoleId)) {
+            if (role.isReadOnly()) {
+                continue;
+            }
+            startMapping();
+            entry("id", role.getRoleId());
+            entry("name", role.getName());
+            entry("description", role.getDescription());
+            entry("privileges", role.getPrivileges() == null ? null : new TreeSet<>(role.getPrivileges()));
+            entry("roles", role.getRoles() == null ? null : new TreeSet<>(role.getRoles()));
+            endMapping();
+        }
+        endSequence();
+        scalar("users");
+        startSequence();
+        for (User user : sorted(users, User::getUserId)) {
+            if (!UserManager.DEFAULT_SOURCE.equals(user.getSource())) {
+                continue;
+            }
+            startMapping();
+            entry("username", user.getUserId());
+            entry("firstName", user.getFirstName());
+            entry("lastName", user.getLastName());
+            entry("email", user.getEmailAddress());
+            entry("active", user.getStatus() != UserStatus.disabled);
+            scalar("roles");
+            startSequence();
+            for (RoleIdentifier role : sorted(user.getRoles(), Fingerprints::roleKey)) {
+                startMapping();
+                entry("source", role.getSource());
+                entry("role", role.getRoleId());
+                endMapping();
+            }
+            endSequence();
+            endMapping();
+        }
+        endSequence();
+        endMapping();
+
+        scalar("capabilities");
+        startSequence();
+        for (LiveState.Capability capability : sorted(capabilities, LiveState.Capability::getType)) {
+            startMapping();
+            entry("type", capability.getType());
+            entry("enabled", capability.isEnabled());
+            entry("notes", capability.getNotes());
+            entry("attributes", redacted(capability.getProperties(), "capability", capability.getType()));
+            endMapping();
+        }
+        endSequence();
+
+        endMapping();
+        emitter.emit(new DocumentEndEvent(null, null, false));
+        emitter.emit(new StreamEndEvent(null, null));
+    }
+
+    /**
+     * References to the entities, sorted by name
+     */
+    private static <T> List<T> sorted(Iterable<T> entities, Function<T, String> name) {
+        List<T> sorted = new ArrayList<>();
+        if (entities != null) {
+            entities.forEach(sorted::add);
+        }
+        sorted.sort(Comparator.comparing(name, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return sorted;
+    }
+
+    /**
+     * The attributes with secrets replaced by env var references named after the entity and the attribute
+     */
+    static Object redacted(Map<String, ?> attributes, String kind, String name) {
+        if (attributes == null) {
+            return null;
+        }
+        Map<String, Object> redacted = new TreeMap<>();
+        attributes.forEach((key, value) -> {
+            if (value instanceof Map) {
+                @SuppressWarnings("unchecked")
+                Map<String, ?> nested = (Map<String, ?>) value;
+                redacted.put(key, redacted(nested, kind, name + "_" + key));
+            } else if (value != null && isSecret(key)) {
+                redacted.put(key, new EnvReference((kind + "_" + name + "_" + key).replaceAll("[^A-Za-z0-9]+", "_").toUpperCase(Locale.ENGLISH)));
+            } else {
+                redacted.put(key, value);
+            }
+        });
+        return redacted;
+    }
+
+    static boolean isSecret(String key) {
+        String normalized = key.toLowerCase(Locale.ENGLISH).replaceAll("[^a-z0-9]", "");
+        return SECRET_KEYS.stream().anyMatch(normalized::contains);
+    }
+
+    private void entry(String key, Object value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        scalar(escaped(key));
+        value(value);
+    }
+
+    private void value(Object value) throws IOException {
+        if (value instanceof Map) {
+            startMapping();
+            for (Map.Entry<String, Object> entry : stringKeys((Map<?, ?>) value).entrySet()) {
+                entry(entry.getKey(), entry.getValue());
+            }
+            endMapping();
+        } else if (value instanceof Iterable) {
+            startSequence();
+            for (Object element : (Iterable<?>) value) {
+                if (element != null) {
+                    value(element);
+                }
+            }
+            endSequence();
+        } else if (value instanceof Number || value instanceof Boolean) {
+            emitter.emit(new ScalarEvent(null, null, new ImplicitTuple(true, false), value.toString(), null, null,
+                    DumperOptions.ScalarStyle.PLAIN));
+        } else if (value instanceof EnvReference) {
+            scalar(value.toString());
+        } else {
+            scalar(escaped(String.valueOf(value)));
+        }
+    }
+
+    /**
+     * The string as the interpolator reads it back, a {@code $} followed by a name or {@code {} is written as
+     * {@code ${$}}, any other {@code $} is literal anyway
+     */
+    static String escaped(String value) {
+        if (value.indexOf('$') < 0) {
+            return value;
+        }
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '$' && i + 1 < value.length()
+                    && (value.charAt(i + 1) == '{' || Interpolator.Reference.isNameChar(value.charAt(i + 1)))) {
+                escaped.append(Interpolator.Template.ESCAPED_DOLLAR);
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+
+    /**
+     * A string, quoted if it would be read as another type, e.g. {@code "1440"} or {@code "true"}
+     */
+    private void scalar(String value) throws IOException {
+        boolean plain = Tag.STR.equals(resolver.resolve(NodeId.scalar, value, true));
+        emitter.emit(new ScalarEvent(null, null, new ImplicitTuple(plain, true), value, null, null,
+                DumperOptions.ScalarStyle.PLAIN));
+    }
+
+    private static Map<String, Object> stringKeys(Map<?, ?> map) {
+        Map<String, Object> result = new TreeMap<>();
+        map.forEach((key, value) -> result.put(String.valueOf(key), value));
+        return result;
+    }
+
+    /**
+     * A reference to the env var a redacted secret is read from when the export is applied
+     */
+    static final class EnvReference {
+        private final String name;
+
+        EnvReference(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return "${" + name + "}";
+        }
+    }
+
+    private void startMapping() throws IOException {
+        emitter.emit(new MappingStartEvent(null, null, true, null, null, DumperOptions.FlowStyle.BLOCK));
+    }
+
+    private void endMapping() throws IOException {
+        emitter.emit(new MappingEndEvent(null, null));
+    }
+
+    private void startSequence() throws IOException {
+        emitter.emit(new SequenceStartEvent(null, null, true, null, null, DumperOptions.FlowStyle.BLOCK));
+    }
+
+    private void endSequence() throws IOException {
+        emitter.emit(new SequenceEndEvent(null, null));
+    }
+}
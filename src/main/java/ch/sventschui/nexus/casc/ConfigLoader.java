@@ -0,0 +1,410 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.Config;
+import com.codahale.metrics.MetricRegistry;
+import org.sonatype.goodies.common.ComponentSupport;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Loads the config from a single file, a directory of {@code *.yml}/{@code *.yaml} fragments or a glob matching
+ * fragments (e.g. {@code /etc/nexus/casc/*.yml}).
+ * <p>
+ * Fragments are read and parsed in parallel and then merged in the order of their file names:
+ * <ul>
+ * <li>maps are merged key by key</li>
+ * <li>users, realms, roles, privileges, content selectors, blob stores, cleanup policies, repositories, capabilities
+ * and tasks are merged by their name/username/id/type, the same entity may only be defined in several fragments if all
+ * definitions are identical</li>
+ * <li>any other value (e.g. {@code core.baseUrl} or the prune flags) may only be set in several fragments if all of
+ * them set the same value</li>
+ * </ul>
+ * All conflicts are reported at once and nothing is applied if there is any. Fragments are merged before they are
+ * interpolated, references are resolved when the apply reads the values containing them (see
+ * {@link ConfigConstructor}).
+ */
+public class ConfigLoader extends ComponentSupport {
+    private static final Map<String, String> KEYED_LISTS = new HashMap<>();
+
+    static {
+        KEYED_LISTS.put("security.users", "username");
+        KEYED_LISTS.put("security.realms", "name");
+        KEYED_LISTS.put("security.contentSelectors", "name");
+        KEYED_LISTS.put("security.privileges", "name");
+        KEYED_LISTS.put("security.roles", "id");
+        KEYED_LISTS.put("repository.blobStores", "name");
+        KEYED_LISTS.put("repository.cleanupPolicies", "name");
+        KEYED_LISTS.put("repository.repositories", "name");
+        KEYED_LISTS.put("capabilities", "type");
+        KEYED_LISTS.put("tasks.tasks", "name");
+    }
+
+    private final Interpolator interpolator;
+    private final int parallelism;
+    private final ApplyMetrics metrics;
+
+    public ConfigLoader(Interpolator interpolator, int parallelism) {
+        this(interpolator, parallelism, new ApplyMetrics(new MetricRegistry()));
+    }
+
+    public ConfigLoader(Interpolator interpolator, int parallelism, ApplyMetrics metrics) {
+        this.interpolator = interpolator;
+        this.parallelism = Math.max(1, parallelism);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Resolves the config location to the fragments it consists of, sorted by path
+     */
+    public List<Path> sources(String location) throws IOException {
+        int glob = firstGlobChar(location);
+
+        if (glob < 0) {
+            Path path = Paths.get(location);
+            if (!Files.isDirectory(path)) {
+                return Collections.singletonList(path);
+            }
+
+            try (Stream<Path> files = Files.list(path)) {
+                return files
+                        .filter(Files::isRegularFile)
+                        .filter(file -> file.getFileName().toString().endsWith(".yml") || file.getFileName().toString().endsWith(".yaml"))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        }
+
+        // walk the directory in front of the first glob character and match everything below it
+        int separator = location.lastIndexOf('/', glob);
+        Path base = Paths.get(separator < 0 ? "." : separator == 0 ? "/" : location.substring(0, separator));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + (separator < 0 ? "./" + location : location));
+
+        if (!Files.isDirectory(base)) {
+            return Collections.emptyList();
+        }
+
+        try (Stream<Path> files = Files.walk(base)) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(matcher::matches)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Reads, parses and merges the given fragments
+     *
+     * @throws IOException              If a fragment can not be read
+     * @throws IllegalArgumentException If fragments conflict with each other
+     */
+    public Loaded load(List<Path> sources) throws IOException {
+        ApplyMetrics.Phase phase = metrics.time(ApplyMetrics.LOAD);
+        try {
+            return loadFragments(sources);
+        } finally {
+            phase.close();
+        }
+    }
+
+    private Loaded loadFragments(List<Path> sources) throws IOException {
+        if (sources.isEmpty()) {
+            throw new IOException("No config fragments found");
+        }
+
+        List<Fragment> fragments = inParallel(sources, source -> parse(source, new String(Files.readAllBytes(source), StandardCharsets.UTF_8)));
+
+        Map<String, Object> document;
+        ApplyMetrics.Phase phase = metrics.time(ApplyMetrics.MERGE);
+        try {
+            document = merge(fragments);
+        } finally {
+            phase.close();
+        }
+
+        List<Path> referencedFiles = new ArrayList<>();
+        List<String> referencedVariables = new ArrayList<>();
+        fragments.forEach(fragment -> {
+            fragment.referencedFiles.stream().filter(file -> !referencedFiles.contains(file)).forEach(referencedFiles::add);
+            fragment.referencedVariables.stream().filter(name -> !referencedVariables.contains(name)).forEach(referencedVariables::add);
+        });
+
+        return loaded(document, sources, referencedFiles, referencedVariables);
+    }
+
+    /**
+     * Constructs the config of a merged document, its references are resolved once they are read
+     */
+    Loaded loaded(Map<String, Object> document, List<Path> sources, List<Path> referencedFiles, List<String> referencedVariables) {
+        Interpolator.Resolution resolution = interpolator.newResolution();
+        Config config;
+        ApplyMetrics.Phase phase = metrics.time(ApplyMetrics.PARSE);
+        try {
+            config = ConfigConstructor.construct(document, interpolator, resolution, parallelism, metrics);
+        } finally {
+            phase.close();
+        }
+        return new Loaded(config, document, sources, referencedFiles, referencedVariables, interpolator, resolution);
+    }
+
+    /**
+     * Runs the task for all inputs, in parallel if there are several, and returns the results in the order of the inputs
+     */
+    private <I, T> List<T> inParallel(List<I> inputs, Task<I, T> task) throws IOException {
+        List<T> results = new ArrayList<>();
+        if (inputs.size() == 1) {
+            results.add(task.run(inputs.get(0)));
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, inputs.size()));
+        try {
+            List<Future<T>> futures = new ArrayList<>();
+            inputs.forEach(input -> futures.add(executor.submit(() -> task.run(input))));
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading config fragments", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private interface Task<I, T> {
+        T run(I input) throws IOException;
+    }
+
+    private Fragment parse(Path source, String raw) {
+        Object document;
+        ApplyMetrics.Phase phase = metrics.time(ApplyMetrics.PARSE);
+        try {
+            document = new Yaml(new ConfigConstructor.Parser()).load(raw);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Failed to parse " + source + ": " + e.getMessage(), e);
+        } finally {
+            phase.close();
+        }
+
+        if (document != null && !(document instanceof Map)) {
+            throw new IllegalArgumentException(source + " must contain a map at the top level");
+        }
+
+        return new Fragment(source, document == null ? new LinkedHashMap<>() : castMap(document),
+                interpolator.referencedFiles(raw), interpolator.referencedVariables(raw));
+    }
+
+    /**
+     * Merges the fragments in the given order
+     *
+     * @throws IllegalArgumentException If fragments conflict with each other
+     */
+    static Map<String, Object> merge(List<Fragment> fragments) {
+        Map<String, Object> merged = new LinkedHashMap<>();
+        Map<String, Path> origins = new HashMap<>();
+        List<String> conflicts = new ArrayList<>();
+
+        for (Fragment fragment : fragments) {
+            mergeMap(merged, fragment.document, "", fragment.source, origins, conflicts);
+        }
+
+        if (!conflicts.isEmpty()) {
+            throw new IllegalArgumentException("Conflicting config fragments:\n  " + String.join("\n  ", conflicts));
+        }
+
+        return merged;
+    }
+
+    private static void mergeMap(Map<String, Object> target, Map<String, Object> source, String path, Path origin,
+                                 Map<String, Path> origins, List<String> conflicts) {
+        source.forEach((key, value) -> {
+            String childPath = path.isEmpty() ? key : path + "." + key;
+            Object existing = target.get(key);
+
+            if (!target.containsKey(key)) {
+                target.put(key, value);
+                origins.put(childPath, origin);
+            } else if (existing instanceof Map && value instanceof Map) {
+                mergeMap(castMap(existing), castMap(value), childPath, origin, origins, conflicts);
+            } else if (KEYED_LISTS.containsKey(childPath) && existing instanceof List && value instanceof List) {
+                target.put(key, mergeKeyedList(castList(existing), castList(value), childPath, KEYED_LISTS.get(childPath),
+                        origin, origins, conflicts));
+            } else if (!Fingerprints.of(existing).equals(Fingerprints.of(value))) {
+                conflicts.add(childPath + " is set to different values in " + origin(origins, childPath) + " and " + origin);
+            }
+        });
+    }
+
+    private static List<Object> mergeKeyedList(List<Object> target, List<Object> source, String path, String keyName,
+                                               Path origin, Map<String, Path> origins, List<String> conflicts) {
+        Map<String, Object> byKey = new LinkedHashMap<>();
+        List<Object> merged = new ArrayList<>(target);
+        for (Object entry : target) {
+            byKey.put(entryKey(entry, keyName), entry);
+        }
+
+        for (Object entry : source) {
+            String key = entryKey(entry, keyName);
+            String entryPath = path + "[" + key + "]";
+            Object existing = byKey.get(key);
+
+            if (existing == null) {
+                byKey.put(key, entry);
+                merged.add(entry);
+                origins.put(entryPath, origin);
+            } else if (!Fingerprints.of(existing).equals(Fingerprints.of(entry))) {
+                conflicts.add(entryPath + " is defined differently in " + origin(origins, entryPath) + " and " + origin);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * The fragment that first set the value at the given path or one of its parents
+     */
+    private static Path origin(Map<String, Path> origins, String path) {
+        String current = path;
+        while (!origins.containsKey(current)) {
+            int parent = Math.max(current.lastIndexOf('.'), current.lastIndexOf('['));
+            if (parent < 0) {
+                return null;
+            }
+            current = current.substring(0, parent);
+        }
+        return origins.get(current);
+    }
+
+    private static String entryKey(Object entry, String keyName) {
+        return entry instanceof Map ? String.valueOf(((Map<?, ?>) entry).get(keyName)) : String.valueOf(entry);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> castMap(Object map) {
+        return (Map<String, Object>) map;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> castList(Object list) {
+        return (List<Object>) list;
+    }
+
+    private static int firstGlobChar(String location) {
+        for (int i = 0; i < location.length(); i++) {
+            char c = location.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static final class Fragment {
+        private final Path source;
+        private final Map<String, Object> document;
+        private final List<Path> referencedFiles;
+        private final List<String> referencedVariables;
+
+        Fragment(Path source, Map<String, Object> document, List<Path> referencedFiles, List<String> referencedVariables) {
+            this.source = source;
+            this.document = document;
+            this.referencedFiles = referencedFiles;
+            this.referencedVariables = referencedVariables;
+        }
+    }
+
+    public static final class Loaded {
+        private final Config config;
+        private final Map<String, Object> document;
+        private final List<Path> sources;
+        private final List<Path> referencedFiles;
+        private final List<String> referencedVariables;
+        private final Interpolator interpolator;
+        private final Interpolator.Resolution resolution;
+
+        Loaded(Config config, Map<String, Object> document, List<Path> sources, List<Path> referencedFiles,
+               List<String> referencedVariables, Interpolator interpolator, Interpolator.Resolution resolution) {
+            this.config = config;
+            this.document = document;
+            this.sources = sources;
+            this.referencedFiles = referencedFiles;
+            this.referencedVariables = referencedVariables;
+            this.interpolator = interpolator;
+            this.resolution = resolution;
+        }
+
+        public Config getConfig() {
+            return config;
+        }
+
+        /**
+         * The merged config as plain maps and lists, values containing references are not interpolated
+         */
+        public Map<String, Object> getDocument() {
+            return document;
+        }
+
+        /**
+         * Fingerprint of a top level section of the config that changes when the section or what its references
+         * resolve to changes, without reading the files it references
+         */
+        public String fingerprint(String section) {
+            Object value = document.get(section);
+            return Fingerprints.of(value, interpolator.inputs(ConfigConstructor.templates(value), resolution));
+        }
+
+        /**
+         * Fingerprint of the whole config and of what its references resolve to. It only depends on content, so it
+         * identifies the config across the nodes of a cluster, but reads every referenced file.
+         */
+        public String contentFingerprint() {
+            return Fingerprints.of(document, interpolator.contents(ConfigConstructor.templates(document), resolution));
+        }
+
+        public List<Path> getSources() {
+            return sources;
+        }
+
+        /**
+         * Files referenced through {@code ${file:...}} by any of the fragments
+         */
+        public List<Path> getReferencedFiles() {
+            return referencedFiles;
+        }
+
+        /**
+         * Env vars referenced by any of the fragments
+         */
+        public List<String> getReferencedVariables() {
+            return referencedVariables;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.Config;
+import ch.sventschui.nexus.casc.config.ConfigBlobStore;
+import ch.sventschui.nexus.casc.config.ConfigCapability;
+import ch.sventschui.nexus.casc.config.ConfigCleanupPolicy;
+import ch.sventschui.nexus.casc.config.ConfigRepositoryEntry;
+import ch.sventschui.nexus.casc.config.ConfigSecurityUser;
+import org.sonatype.goodies.common.ComponentSupport;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.nodes.MappingNode;
+import org.yaml.snakeyaml.nodes.Node;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.NodeTuple;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.SequenceNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads a config file event by event instead of materializing the whole document first.
+ * <p>
+ * Entries of the large lists (users, blob stores, cleanup policies, repositories and capabilities) are constructed
+ * one at a time and handed to a {@link Listener} as soon as they are complete, they are not kept in memory
+ * afterwards. Everything else is small and returned as a {@link Config} in which the streamed lists are empty.
+ * <p>
+ * Scalars are interpolated as they are read. Unlike interpolating the whole file, interpolated values can't introduce
+ * YAML structure and surrounding whitespace of plain scalars (e.g. the trailing newline of a secret file) is removed.
+ */
+public class ConfigStreamReader extends ComponentSupport {
+    static final Map<String, Class<?>> STREAMED_LISTS = new HashMap<>();
+
+    private static final Set<String> STREAMED_PARENTS = new HashSet<>(Arrays.asList("", "security", "repository"));
+
+    static {
+        STREAMED_LISTS.put("security.users", ConfigSecurityUser.class);
+        STREAMED_LISTS.put("repository.blobStores", ConfigBlobStore.class);
+        STREAMED_LISTS.put("repository.cleanupPolicies", ConfigCleanupPolicy.class);
+        STREAMED_LISTS.put("repository.repositories", ConfigRepositoryEntry.class);
+        STREAMED_LISTS.put("capabilities", ConfigCapability.class);
+    }
+
+    public interface Listener {
+        /**
+         * Called for every entry of a streamed list in document order
+         *
+         * @param list  The path of the list, e.g. {@code repository.repositories}
+         * @param entry The constructed entry, e.g. a {@link ConfigRepositoryEntry}
+         */
+        void entry(String list, Object entry);
+    }
+
+    private final Interpolator interpolator;
+    // the same reference in many scalars is resolved once
+    private final Interpolator.Resolution resolution;
+    private final Resolver resolver = new Resolver();
+    private final EntryConstructor constructor = new EntryConstructor();
+    private final Map<String, Node> anchors = new HashMap<>();
+    private final Set<Path> referencedFiles = new LinkedHashSet<>();
+
+    public ConfigStreamReader(Interpolator interpolator) {
+        this.interpolator = interpolator;
+        this.resolution = interpolator.newResolution();
+    }
+
+    /**
+     * Reads the config, calling the listener for every streamed entry before returning the rest of the config
+     */
+    public Config read(Reader reader, Listener listener) {
+        anchors.clear();
+        referencedFiles.clear();
+
+        Iterator<Event> events = new Yaml().parse(reader).iterator();
+        expect(events, Event.ID.StreamStart);
+
+        Event event = events.next();
+        if (event.is(Event.ID.StreamEnd)) {
+            return new Config();
+        }
+        if (!event.is(Event.ID.DocumentStart)) {
+            throw new YAMLException("Expected a document but got " + event);
+        }
+
+        Event first = events.next();
+        Config config = first.is(Event.ID.DocumentEnd)
+                ? new Config()
+                : constructor.construct(compose(events, first, "", listener), Config.class);
+
+        anchors.clear();
+        return config;
+    }
+
+    /**
+     * Files referenced through {@code ${file:...}} by the last read config
+     */
+    public List<Path> getReferencedFiles() {
+        return new ArrayList<>(referencedFiles);
+    }
+
+    /**
+     * Composes the node starting with the given event. Lists at {@link #STREAMED_LISTS} paths are streamed to the
+     * listener and composed as empty sequences.
+     */
+    private Node compose(Iterator<Event> events, Event event, String path, Listener listener) {
+        Class<?> entryType = STREAMED_LISTS.get(path);
+
+        if (entryType != null && event.is(Event.ID.SequenceStart)) {
+            SequenceStartEvent start = (SequenceStartEvent) event;
+            Event next = events.next();
+            while (!next.is(Event.ID.SequenceEnd)) {
+                listener.entry(path, constructor.construct(compose(events, next, null, listener), entryType));
+                next = events.next();
+            }
+            return new SequenceNode(Tag.SEQ, true, new ArrayList<>(), start.getStartMark(), next.getEndMark(), start.getFlowStyle());
+        }
+
+        if (path != null && STREAMED_PARENTS.contains(path) && event.is(Event.ID.MappingStart)) {
+            MappingStartEvent start = (MappingStartEvent) event;
+            List<NodeTuple> tuples = new ArrayList<>();
+            Event next = events.next();
+            while (!next.is(Event.ID.MappingEnd)) {
+                Node key = compose(events, next, null, listener);
+                String childPath = key instanceof ScalarNode
+                        ? (path.isEmpty() ? "" : path + ".") + ((ScalarNode) key).getValue()
+                        : null;
+                tuples.add(new NodeTuple(key, compose(events, events.next(), childPath, listener)));
+                next = events.next();
+            }
+            return anchor(start, new MappingNode(tag(start, NodeId.mapping), true, tuples, start.getStartMark(), next.getEndMark(), start.getFlowStyle()));
+        }
+
+        return compose(events, event);
+    }
+
+    /**
+     * Composes a node the way SnakeYAML's composer does, interpolating scalars on the way
+     */
+    private Node compose(Iterator<Event> events, Event event) {
+        if (event.is(Event.ID.Alias)) {
+            Node node = anchors.get(((AliasEvent) event).getAnchor());
+            if (node == null) {
+                throw new YAMLException("Found undefined alias " + ((AliasEvent) event).getAnchor());
+            }
+            return node;
+        }
+
+        if (event.is(Event.ID.Scalar)) {
+            ScalarEvent scalar = (ScalarEvent) event;
+            String value = scalar.getValue();
+
+            if (value.indexOf('$') >= 0) {
+                referencedFiles.addAll(interpolator.referencedFiles(value));
+                String interpolated = interpolator.interpolate(value, resolution);
+                if (!interpolated.equals(value)) {
+                    value = scalar.isPlain() ? interpolated.trim() : interpolated;
+                }
+            }
+
+            Tag tag;
+            if (scalar.getTag() == null || scalar.getTag().equals("!")) {
+                // resolve the tag from the interpolated value, so that ${PORT:8081} becomes an int
+                tag = resolver.resolve(NodeId.scalar, value, scalar.getImplicit().canOmitTagInPlainScalar());
+            } else {
+                tag = new Tag(scalar.getTag());
+            }
+            return anchor(scalar, new ScalarNode(tag, true, value, scalar.getStartMark(), scalar.getEndMark(), scalar.getScalarStyle()));
+        }
+
+        if (event.is(Event.ID.SequenceStart)) {
+            SequenceStartEvent start = (SequenceStartEvent) event;
+            List<Node> children = new ArrayList<>();
+            SequenceNode node = new SequenceNode(tag(start, NodeId.sequence), true, children, start.getStartMark(), null, start.getFlowStyle());
+            anchor(start, node);
+            Event next = events.next();
+            while (!next.is(Event.ID.SequenceEnd)) {
+                children.add(compose(events, next));
+                next = events.next();
+            }
+            node.setEndMark(next.getEndMark());
+            return node;
+        }
+
+        if (event.is(Event.ID.MappingStart)) {
+            MappingStartEvent start = (MappingStartEvent) event;
+            List<NodeTuple> tuples = new ArrayList<>();
+            MappingNode node = new MappingNode(tag(start, NodeId.mapping), true, tuples, start.getStartMark(), null, start.getFlowStyle());
+            anchor(start, node);
+            Event next = events.next();
+            while (!next.is(Event.ID.MappingEnd)) {
+                Node key = compose(events, next);
+                tuples.add(new NodeTuple(key, compose(events, events.next())));
+                next = events.next();
+            }
+            node.setEndMark(next.getEndMark());
+            return node;
+        }
+
+        throw new YAMLException("Unexpected event " + event);
+    }
+
+    private Tag tag(CollectionStartEvent event, NodeId nodeId) {
+        if (event.getTag() == null || event.getTag().equals("!")) {
+            return resolver.resolve(nodeId, null, event.getImplicit());
+        }
+        return new Tag(event.getTag());
+    }
+
+    private Node anchor(NodeEvent event, Node node) {
+        if (event.getAnchor() != null) {
+            anchors.put(event.getAnchor(), node);
+        }
+        return node;
+    }
+
+    private static void expect(Iterator<Event> events, Event.ID id) {
+        Event event = events.next();
+        if (!event.is(id)) {
+            throw new YAMLException("Expected " + id + " but got " + event);
+        }
+    }
+
+    /**
+     * Constructs single nodes into config classes. Every call is a complete document for SnakeYAML, so nothing is
+     * retained between entries.
+     */
+    private static final class EntryConstructor extends Constructor {
+        <T> T construct(Node node, Class<T> type) {
+            node.setType(type);
+            return type.cast(constructDocument(node));
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.*;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.security.privilege.Privilege;
+import org.sonatype.nexus.security.role.Role;
+import org.sonatype.nexus.security.user.UserManager;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Checks a {@link Config} against a {@link LiveState} for errors that would otherwise only show up while applying it,
+ * after other entities were already changed: missing or mistyped values, changes Nexus doesn't allow (like the recipe of
+ * a repository) and references to blob stores, cleanup policies, repositories, content selectors, privileges and roles
+ * that neither exist nor are configured, as well as roles that nest each other.
+ * <p>
+ * Entities that are pruned are not available as references. All errors are collected in a single pass.
+ */
+public final class ConfigValidator {
+    static final String CONTENT_SELECTOR_PRIVILEGE = "repository-content-selector";
+
+    private ConfigValidator() {
+    }
+
+    public static List<String> validate(Config config, LiveState live) {
+        return validate(config, live, new HashSet<>(Arrays.asList("core", "security", "repository", "capabilities", "tasks")));
+    }
+
+    /**
+     * Validates the given top level sections only, references between entities never cross sections
+     */
+    public static List<String> validate(Config config, LiveState live, Set<String> sections) {
+        List<String> errors = new ArrayList<>();
+
+        if (config.getCore() != null && sections.contains("core")) {
+            validateCore(errors, config.getCore());
+        }
+        if (config.getSecurity() != null && sections.contains("security")) {
+            validateSecurity(errors, config.getSecurity(), live);
+        }
+        if (config.getRepository() != null && sections.contains("repository")) {
+            validateRepository(errors, config.getRepository(), live);
+        }
+        if (config.getCapabilities() != null && sections.contains("capabilities")) {
+            for (int i = 0; i < config.getCapabilities().size(); i++) {
+                if (blank(config.getCapabilities().get(i).getType())) {
+                    errors.add("capabilities[" + i + "]: type is missing");
+                }
+            }
+        }
+        if (config.getTasks() != null && sections.contains("tasks")) {
+            validateTasks(errors, config.getTasks());
+        }
+
+        return errors;
+    }
+
+    private static void validateCore(List<String> errors, ConfigCore core) {
+        validateUrl(errors, "core.baseUrl", core.getBaseUrl());
+        validateUrl(errors, "core.httpProxy", core.getHttpProxy());
+        validateUrl(errors, "core.httpsProxy", core.getHttpsProxy());
+    }
+
+    private static void validateUrl(List<String> errors, String path, String url) {
+        if (url == null || url.trim().isEmpty()) {
+            return;
+        }
+        try {
+            new URL(url.trim());
+        } catch (MalformedURLException e) {
+            errors.add(path + ": " + url + " is not a valid URL");
+        }
+    }
+
+    private static void validateTasks(List<String> errors, ConfigTasks tasks) {
+        TaskStaggerer staggerer = new TaskStaggerer(tasks.getStagger());
+        if (tasks.getTasks() != null) {
+            Set<String> names = new HashSet<>();
+            for (int i = 0; i < tasks.getTasks().size(); i++) {
+                ConfigTask task = tasks.getTasks().get(i);
+                if (blank(task.getName())) {
+                    errors.add("tasks.tasks[" + i + "]: name is missing");
+                    continue;
+                }
+
+                String path = "tasks.tasks[" + task.getName() + "]";
+                if (!names.add(task.getName())) {
+                    errors.add(path + ": name is not unique");
+                }
+                if (blank(task.getType())) {
+                    errors.add(path + ": type is missing");
+                } else if (blank(task.getCron()) && !staggerer.staggers(task.getType())) {
+                    errors.add(path + ": cron is missing and no stagger window covers type " + task.getType());
+                }
+            }
+            staggerer.crons(tasks.getTasks());
+        }
+        errors.addAll(staggerer.getErrors());
+    }
+
+    private static void validateSecurity(List<String> errors, ConfigSecurity security, LiveState live) {
+        if (security.getRealms() != null) {
+            for (int i = 0; i < security.getRealms().size(); i++) {
+                if (blank(security.getRealms().get(i).getName())) {
+                    errors.add("security.realms[" + i + "]: name is missing");
+                }
+            }
+        }
+
+        RoleGraph roles = validateAuthorization(errors, security, live);
+
+        if (security.getUsers() == null) {
+            return;
+        }
+
+        for (int i = 0; i < security.getUsers().size(); i++) {
+            ConfigSecurityUser user = security.getUsers().get(i);
+            if (blank(user.getUsername())) {
+                errors.add("security.users[" + i + "]: username is missing");
+                continue;
+            }
+
+            String path = "security.users[" + user.getUsername() + "]";
+            if (user.getPassword() == null && user.getPasswordHash() == null && !live.getUsersById().containsKey(user.getUsername())) {
+                errors.add(path + ": password or passwordHash is required to create the user");
+            }
+            if (user.getRoles() == null) {
+                errors.add(path + ": roles are missing");
+                continue;
+            }
+            for (int j = 0; j < user.getRoles().size(); j++) {
+                ConfigSecurityRole role = user.getRoles().get(j);
+                if (role == null || blank(role.getRole())) {
+                    errors.add(path + ".roles[" + j + "]: role is missing");
+                } else if (roles != null && defaultSource(role.getSource()) && !roles.contains(role.getRole())) {
+                    errors.add(path + ".roles[" + j + "]: role " + role.getRole() + " is neither configured nor exists");
+                }
+            }
+        }
+    }
+
+    /**
+     * Validates content selectors, privileges and roles
+     *
+     * @return The roles once the config is applied, null if the live state has no authorization state
+     */
+    private static RoleGraph validateAuthorization(List<String> errors, ConfigSecurity security, LiveState live) {
+        boolean checkReferences = live.getRoles() != null;
+
+        if (security.getContentSelectors() != null) {
+            for (int i = 0; i < security.getContentSelectors().size(); i++) {
+                ConfigSecurityContentSelector selector = security.getContentSelectors().get(i);
+                if (blank(selector.getName())) {
+                    errors.add("security.contentSelectors[" + i + "]: name is missing");
+                } else if (blank(selector.getExpression())) {
+                    errors.add("security.contentSelectors[" + selector.getName() + "]: expression is missing");
+                }
+            }
+        }
+
+        Set<String> selectors = available(security.getContentSelectors() == null ? null : Reconciliation.names(security.getContentSelectors(), ConfigSecurityContentSelector::getName),
+                checkReferences ? live.getContentSelectors().keySet() : new HashSet<>(), security.getPruneContentSelectors());
+        if (security.getPrivileges() != null) {
+            for (int i = 0; i < security.getPrivileges().size(); i++) {
+                ConfigSecurityPrivilege privilege = security.getPrivileges().get(i);
+                if (blank(privilege.getName())) {
+                    errors.add("security.privileges[" + i + "]: name is missing");
+                    continue;
+                }
+
+                String path = "security.privileges[" + privilege.getName() + "]";
+                Privilege existing = checkReferences ? live.getPrivileges().get(privilege.getName()) : null;
+                if (existing != null && existing.isReadOnly()) {
+                    errors.add(path + ": can not change the built-in privilege");
+                }
+                if (blank(privilege.getType())) {
+                    errors.add(path + ": type is missing");
+                } else if (CONTENT_SELECTOR_PRIVILEGE.equals(privilege.getType()) && checkReferences) {
+                    String selector = privilege.getProperties() == null ? null : privilege.getProperties().get("contentSelector");
+                    if (selector == null || !selectors.contains(selector)) {
+                        errors.add(path + ".properties.contentSelector: content selector " + selector + " is neither configured nor exists");
+                    }
+                }
+            }
+        }
+
+        if (!checkReferences) {
+            return null;
+        }
+
+        Set<String> privileges = available(security.getPrivileges() == null ? null : Reconciliation.names(security.getPrivileges(), ConfigSecurityPrivilege::getName),
+                live.getPrivileges().keySet(), security.getPrunePrivileges());
+        if (security.getRoles() == null) {
+            return RoleGraph.of(live.getRoles().values(), new ArrayList<>(), false);
+        }
+
+        for (int i = 0; i < security.getRoles().size(); i++) {
+            ConfigSecurityRoleDefinition role = security.getRoles().get(i);
+            if (blank(role.getId())) {
+                errors.add("security.roles[" + i + "]: id is missing");
+                continue;
+            }
+
+            String path = "security.roles[" + role.getId() + "]";
+            Role existing = live.getRoles().get(role.getId());
+            if (existing != null && existing.isReadOnly()) {
+                errors.add(path + ": can not change the built-in role");
+            }
+            for (String privilege : role.getPrivileges() == null ? new ArrayList<String>() : role.getPrivileges()) {
+                if (!privileges.contains(privilege)) {
+                    errors.add(path + ".privileges: privilege " + privilege + " is neither configured nor exists");
+                }
+            }
+        }
+
+        RoleGraph roles = RoleGraph.of(live.getRoles().values(), security.getRoles(),
+                security.getPruneRoles() != null && security.getPruneRoles());
+        roles.getMissing().forEach((role, missing) -> missing.forEach(nested ->
+                errors.add("security.roles[" + role + "].roles: role " + nested + " is neither configured nor exists")));
+        roles.cycles().forEach(cycle ->
+                errors.add("security.roles[" + cycle.get(0) + "].roles: roles can not nest each other: " + String.join(" -> ", cycle)));
+        return roles;
+    }
+
+    private static void validateRepository(List<String> errors, ConfigRepository repository, LiveState live) {
+        Set<String> blobStores = available(repository.getBlobStores() == null ? null : Reconciliation.names(repository.getBlobStores(), ConfigBlobStore::getName),
+                live.getBlobStores().keySet(), repository.getPruneBlobStores());
+        Set<String> cleanupPolicies = available(repository.getCleanupPolicies() == null ? null : Reconciliation.names(repository.getCleanupPolicies(), ConfigCleanupPolicy::getName),
+                live.getCleanupPolicies().keySet(), repository.getPruneCleanupPolicies());
+        Set<String> repositories = available(repository.getRepositories() == null ? null : Reconciliation.names(repository.getRepositories(), ConfigRepositoryEntry::getName),
+                live.getRepositories().keySet(), repository.getPruneRepositories());
+
+        if (repository.getBlobStores() != null) {
+            for (int i = 0; i < repository.getBlobStores().size(); i++) {
+                validateBlobStore(errors, i, repository.getBlobStores().get(i), live);
+            }
+        }
+
+        if (repository.getCleanupPolicies() != null) {
+            for (int i = 0; i < repository.getCleanupPolicies().size(); i++) {
+                ConfigCleanupPolicy policy = repository.getCleanupPolicies().get(i);
+                if (blank(policy.getName())) {
+                    errors.add("repository.cleanupPolicies[" + i + "]: name is missing");
+                } else if (blank(policy.getFormat())) {
+                    errors.add("repository.cleanupPolicies[" + policy.getName() + "]: format is missing");
+                }
+            }
+        }
+
+        if (repository.getRepositories() != null) {
+            for (int i = 0; i < repository.getRepositories().size(); i++) {
+                validateRepository(errors, i, repository.getRepositories().get(i), live, blobStores, cleanupPolicies, repositories);
+            }
+        }
+    }
+
+    private static void validateBlobStore(List<String> errors, int index, ConfigBlobStore blobStore, LiveState live) {
+        if (blank(blobStore.getName())) {
+            errors.add("repository.blobStores[" + index + "]: name is missing");
+            return;
+        }
+
+        String path = "repository.blobStores[" + blobStore.getName() + "]";
+        Map<?, ?> file = section(errors, path, blobStore.getAttributes(), "file");
+        Object filePath = file == null ? null : file.get("path");
+        if (!(filePath instanceof String)) {
+            errors.add(path + ".attributes.file.path: must be a string");
+            return;
+        }
+
+        BlobStoreConfiguration existing = live.getBlobStores().get(blobStore.getName());
+        if (existing == null) {
+            return;
+        }
+        if (!Objects.equals(blobStore.getType(), existing.getType())) {
+            errors.add(path + ".type: can not change the type from " + existing.getType() + " to " + blobStore.getType());
+        }
+        Map<String, Object> existingFile = existing.getAttributes() == null ? null : existing.getAttributes().get("file");
+        Object existingPath = existingFile == null ? null : existingFile.get("path");
+        if (existingPath != null && !existingPath.equals(filePath)) {
+            errors.add(path + ".attributes.file.path: can not change the path from " + existingPath + " to " + filePath);
+        }
+    }
+
+    private static void validateRepository(List<String> errors, int index, ConfigRepositoryEntry entry, LiveState live,
+                                           Set<String> blobStores, Set<String> cleanupPolicies, Set<String> repositories) {
+        if (blank(entry.getName())) {
+            errors.add("repository.repositories[" + index + "]: name is missing");
+            return;
+        }
+
+        String path = "repository.repositories[" + entry.getName() + "]";
+        if (blank(entry.getRecipeName())) {
+            errors.add(path + ": recipeName is missing");
+        } else {
+            Configuration existing = live.getRepositories().get(entry.getName());
+            if (existing != null && !entry.getRecipeName().equals(existing.getRecipeName())) {
+                errors.add(path + ".recipeName: can not change the recipe from " + existing.getRecipeName() + " to " + entry.getRecipeName());
+            }
+        }
+
+        Map<?, ?> storage = section(errors, path, entry.getAttributes(), "storage");
+        Object blobStoreName = storage == null ? null : storage.get("blobStoreName");
+        if (blobStoreName != null) {
+            if (!(blobStoreName instanceof String)) {
+                errors.add(path + ".attributes.storage.blobStoreName: must be a string");
+            } else if (!blobStores.contains(blobStoreName)) {
+                errors.add(path + ".attributes.storage.blobStoreName: blob store " + blobStoreName + " is neither configured nor exists");
+            }
+        }
+
+        Map<?, ?> cleanup = section(errors, path, entry.getAttributes(), "cleanup");
+        Object policyName = cleanup == null ? null : cleanup.get("policyName");
+        for (Object policy : values(errors, path + ".attributes.cleanup.policyName", policyName)) {
+            if (!cleanupPolicies.contains(policy)) {
+                errors.add(path + ".attributes.cleanup.policyName: cleanup policy " + policy + " is neither configured nor exists");
+            }
+        }
+
+        Map<?, ?> group = section(errors, path, entry.getAttributes(), "group");
+        Object memberNames = group == null ? null : group.get("memberNames");
+        for (Object member : values(errors, path + ".attributes.group.memberNames", memberNames)) {
+            if (!repositories.contains(member)) {
+                errors.add(path + ".attributes.group.memberNames: repository " + member + " is neither configured nor exists");
+            }
+        }
+    }
+
+    /**
+     * A section of the attributes, YAML doesn't ensure that it is a map
+     */
+    private static Map<?, ?> section(List<String> errors, String path, Map<String, ? extends Map<String, Object>> attributes, String name) {
+        Object section = attributes == null ? null : ((Map<?, ?>) attributes).get(name);
+        if (section == null || section instanceof Map) {
+            return (Map<?, ?>) section;
+        }
+        errors.add(path + ".attributes." + name + ": must be a map");
+        return null;
+    }
+
+    /**
+     * The strings of a value that may be a single string or a collection of strings
+     */
+    private static List<Object> values(List<String> errors, String path, Object value) {
+        List<Object> values = new ArrayList<>();
+        if (value == null) {
+            return values;
+        }
+        if (value instanceof String) {
+            values.add(value);
+            return values;
+        }
+        if (!(value instanceof Collection)) {
+            errors.add(path + ": must be a list of strings");
+            return values;
+        }
+        for (Object element : (Collection<?>) value) {
+            if (element instanceof String) {
+                values.add(element);
+            } else {
+                errors.add(path + ": must be a list of strings, found " + element);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Names that can be referenced: the configured ones and, unless they are pruned, the existing ones
+     */
+    private static Set<String> available(Set<String> configured, Set<String> existing, Boolean prune) {
+        Set<String> available = new HashSet<>();
+        if (configured != null) {
+            available.addAll(configured);
+        }
+        if (configured == null || prune == null || !prune) {
+            available.addAll(existing);
+        }
+        return available;
+    }
+
+    /**
+     * Roles of users are looked up in the default source unless another source is given
+     */
+    private static boolean defaultSource(String source) {
+        return blank(source) || UserManager.DEFAULT_SOURCE.equals(source);
+    }
+
+    private static boolean blank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
@@ -0,0 +1,140 @@
+package ch.sventschui.nexus.casc;
+
+import org.sonatype.goodies.common.ComponentSupport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Watches the config file and the files it references and calls a listener once a burst of changes settled.
+ * <p>
+ * The directories containing the files are watched rather than the files themselves: Kubernetes mounts ConfigMaps
+ * and Secrets through a symlink that is swapped atomically, which only shows up as events on other entries of the
+ * directory. Every event in a watched directory therefore (re)starts the debounce timer, the listener has to figure
+ * out whether anything relevant changed.
+ */
+public class ConfigWatcher extends ComponentSupport implements Closeable {
+    private final WatchService watchService;
+    private final Runnable listener;
+    private final long debounceMillis;
+    private final ScheduledExecutorService executor;
+    private final Map<Path, WatchKey> watchedDirectories = new HashMap<>();
+    private final Thread thread;
+
+    private ScheduledFuture<?> pending;
+
+    public ConfigWatcher(Runnable listener, long debounceMillis) throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.listener = listener;
+        this.debounceMillis = debounceMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "casc-reload");
+            t.setDaemon(true);
+            return t;
+        });
+        this.thread = new Thread(this::watch, "casc-watch");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Watches exactly the directories of the given files, directories no longer needed are unregistered
+     */
+    public synchronized void watch(Collection<Path> files) {
+        Set<Path> directories = new HashSet<>();
+        files.forEach(file -> {
+            Path directory = file.toAbsolutePath().getParent();
+            if (directory != null) {
+                directories.add(directory);
+            }
+        });
+
+        watchedDirectories.entrySet().removeIf(entry -> {
+            if (!directories.contains(entry.getKey())) {
+                entry.getValue().cancel();
+                return true;
+            }
+            return false;
+        });
+
+        for (Path directory : directories) {
+            if (!watchedDirectories.containsKey(directory)) {
+                try {
+                    watchedDirectories.put(directory, directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE));
+                    log.debug("Watching {} for config changes", directory);
+                } catch (IOException e) {
+                    log.error("Can not watch {} for config changes", directory, e);
+                }
+            }
+        }
+
+        if (!thread.isAlive()) {
+            thread.start();
+        }
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                key.pollEvents();
+                key.reset();
+                schedule();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private synchronized void schedule() {
+        if (executor.isShutdown()) {
+            return;
+        }
+        if (pending != null) {
+            pending.cancel(false);
+        }
+        pending = executor.schedule(() -> {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.error("Failed to reload config", e);
+            }
+        }, debounceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        watchService.close();
+
+        // let a running reload finish, but don't start pending ones
+        synchronized (this) {
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            executor.shutdown();
+        }
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
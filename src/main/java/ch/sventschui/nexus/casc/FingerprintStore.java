@@ -0,0 +1,76 @@
+package ch.sventschui.nexus.casc;
+
+import org.sonatype.goodies.common.ComponentSupport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers what was last applied for every entity, so that an entity whose configured definition and live state
+ * are both unchanged since then can be skipped.
+ * <p>
+ * Entries are keyed by entity kind and name (e.g. {@code repository:maven-central}) and hold the fingerprint of the
+ * configured definition together with the fingerprint of the live state read back after applying it.
+ */
+public class FingerprintStore extends ComponentSupport {
+    private static final String SEPARATOR = "|";
+
+    private final Path file;
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+
+    public FingerprintStore(Path file) {
+        this.file = file;
+    }
+
+    public void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            log.warn("Failed to read applied fingerprints from {}, applying everything", file, e);
+            return;
+        }
+
+        properties.stringPropertyNames().forEach(key -> entries.put(key, properties.getProperty(key)));
+        log.debug("Loaded {} applied fingerprints from {}", entries.size(), file);
+    }
+
+    public void save() {
+        Properties properties = new Properties();
+        properties.putAll(entries);
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "Nexus CasC last applied fingerprints");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Failed to write applied fingerprints to {}", file, e);
+        }
+    }
+
+    public boolean matches(String key, String definition, String live) {
+        return (definition + SEPARATOR + live).equals(entries.get(key));
+    }
+
+    public void record(String key, String definition, String live) {
+        entries.put(key, definition + SEPARATOR + live);
+    }
+
+    public void forget(String key) {
+        entries.remove(key);
+    }
+}
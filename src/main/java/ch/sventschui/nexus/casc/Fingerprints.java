@@ -0,0 +1,183 @@
+package ch.sventschui.nexus.casc;
+
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.capability.CapabilityContext;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicy;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.security.privilege.Privilege;
+import org.sonatype.nexus.security.role.Role;
+import org.sonatype.nexus.security.role.RoleIdentifier;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.selector.SelectorConfiguration;
+
+import java.math.BigDecimal;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Content hashes of config and live entities. Values are hashed in a canonical form: map keys and set elements are
+ * sorted, lists keep their order and numbers are compared by value (so {@code 1440} and {@code 1440.0} hash equally).
+ */
+public final class Fingerprints {
+    private Fingerprints() {
+    }
+
+    public static String of(Object... parts) {
+        StringBuilder canonical = new StringBuilder();
+        for (Object part : parts) {
+            canonicalize(part, canonical);
+            canonical.append(';');
+        }
+        return sha256(canonical.toString());
+    }
+
+    public static String of(Configuration configuration) {
+        return of(configuration.getRecipeName(), configuration.isOnline(), configuration.getAttributes());
+    }
+
+    public static String of(BlobStoreConfiguration configuration) {
+        return of(configuration.getType(), configuration.getAttributes());
+    }
+
+    public static String of(CleanupPolicy policy) {
+        return of(policy.getFormat(), policy.getNotes(), policy.getMode(), policy.getCriteria());
+    }
+
+    public static String of(User user) {
+        Set<String> roles = user.getRoles() == null ? null : user.getRoles().stream()
+                .map(Fingerprints::roleKey)
+                .collect(Collectors.toSet());
+        return of(user.getFirstName(), user.getLastName(), user.getEmailAddress(), String.valueOf(user.getStatus()), roles);
+    }
+
+    public static String of(Role role) {
+        return role(role.getName(), role.getDescription(), role.getPrivileges(), role.getRoles());
+    }
+
+    /**
+     * Fingerprint of a role from its parts, configured roles are compared to live ones through it
+     */
+    public static String role(String name, String description, Collection<String> privileges, Collection<String> roles) {
+        return of(name, description, privileges == null ? null : new HashSet<>(privileges), roles == null ? null : new HashSet<>(roles));
+    }
+
+    public static String of(Privilege privilege) {
+        return of(privilege.getName(), privilege.getDescription(), privilege.getType(), privilege.getProperties());
+    }
+
+    public static String of(SelectorConfiguration selector) {
+        return of(selector.getType(), selector.getDescription(), selector.getAttributes());
+    }
+
+    public static String of(CapabilityContext context) {
+        return of(context.isEnabled(), context.notes(), context.properties());
+    }
+
+    static String roleKey(RoleIdentifier role) {
+        return role.getSource() + "/" + role.getRoleId();
+    }
+
+    static void canonicalize(Object value, StringBuilder out) {
+        if (value == null) {
+            out.append('~');
+        } else if (value instanceof Map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> sorted.put(String.valueOf(k), v));
+            out.append('{');
+            sorted.forEach((k, v) -> {
+                canonicalize(k, out);
+                out.append('=');
+                canonicalize(v, out);
+                out.append(',');
+            });
+            out.append('}');
+        } else if (value instanceof Set) {
+            List<String> elements = new ArrayList<>();
+            for (Object element : (Set<?>) value) {
+                StringBuilder sb = new StringBuilder();
+                canonicalize(element, sb);
+                elements.add(sb.toString());
+            }
+            elements.sort(null);
+            out.append('<');
+            elements.forEach(element -> out.append(element).append(','));
+            out.append('>');
+        } else if (value instanceof Collection) {
+            out.append('[');
+            for (Object element : (Collection<?>) value) {
+                canonicalize(element, out);
+                out.append(',');
+            }
+            out.append(']');
+        } else if (value instanceof Number) {
+            out.append('n').append(canonicalNumber((Number) value));
+        } else if (value instanceof Boolean) {
+            out.append('b').append(value);
+        } else {
+            String str = value instanceof Enum ? ((Enum<?>) value).name() : value.toString();
+            out.append('s').append(str.length()).append(':').append(str);
+        }
+    }
+
+    static String canonicalNumber(Number number) {
+        try {
+            BigDecimal decimal = new BigDecimal(number.toString()).stripTrailingZeros();
+            return decimal.signum() == 0 ? "0" : decimal.toPlainString();
+        } catch (NumberFormatException e) {
+            // NaN and infinities
+            return number.toString();
+        }
+    }
+
+    /**
+     * Keyed fingerprint of a secret, the secret can't be brute forced from it without the key
+     */
+    static String hmac(byte[] key, String... parts) {
+        Mac mac;
+        try {
+            mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+
+        for (String part : parts) {
+            byte[] bytes = String.valueOf(part).getBytes(StandardCharsets.UTF_8);
+            mac.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) ':');
+            mac.update(bytes);
+        }
+        return hex(mac.doFinal());
+    }
+
+    static String sha256(String str) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+
+        return hex(digest.digest(str.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static String hex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
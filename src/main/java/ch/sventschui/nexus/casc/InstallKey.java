@@ -0,0 +1,49 @@
+package ch.sventschui.nexus.casc;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+
+/**
+ * A random key generated once per installation and stored next to the data it protects, readable by the owner only.
+ */
+final class InstallKey {
+    private static final int KEY_BYTES = 32;
+
+    private InstallKey() {
+    }
+
+    static synchronized byte[] load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            byte[] key = new byte[KEY_BYTES];
+            new SecureRandom().nextBytes(key);
+
+            Files.createDirectories(file.getParent());
+            try {
+                // restrict the permissions before the key is written
+                try {
+                    Files.createFile(file, PosixFilePermissions.asFileAttribute(
+                            EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE)));
+                } catch (UnsupportedOperationException e) {
+                    Files.createFile(file);
+                }
+                Files.write(file, key, StandardOpenOption.TRUNCATE_EXISTING);
+                return key;
+            } catch (FileAlreadyExistsException e) {
+                // created concurrently, use that one
+            }
+        }
+
+        byte[] key = Files.readAllBytes(file);
+        if (key.length != KEY_BYTES) {
+            throw new IOException("Invalid key in " + file);
+        }
+        return key;
+    }
+}
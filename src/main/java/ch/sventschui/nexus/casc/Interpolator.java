@@ -1,69 +1,462 @@
 package ch.sventschui.nexus.casc;
 
+import ch.sventschui.nexus.casc.resolver.EnvResolver;
+import ch.sventschui.nexus.casc.resolver.FileResolver;
+import ch.sventschui.nexus.casc.resolver.PropertiesResolver;
+import ch.sventschui.nexus.casc.resolver.Resolver;
+import ch.sventschui.nexus.casc.resolver.SecretResolver;
 import org.sonatype.goodies.common.ComponentSupport;
 
+import javax.inject.Inject;
 import javax.inject.Named;
-import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Resolves {@code $VAR}, {@code ${VAR}}, {@code ${VAR:default}}, {@code ${VAR:"default"}} and {@code ${name:argument}}
+ * references, where {@code name} is the name of a {@link Resolver} like {@code file}, in a single pass. {@code ${$}} is
+ * a literal {@code $}. Parsed
+ * templates of whole documents are cached by the SHA-256 of their content so that interpolating the same document
+ * again only has to resolve the references, short strings like single scalars are cheaper to parse again.
+ * <p>
+ * References are resolved through a {@link Resolution}, which resolves every distinct reference at most once. Loading
+ * the config uses a single resolution per load, the references of a list of entities are prefetched in parallel when
+ * the first of them is read.
+ */
 @Named
 public class Interpolator extends ComponentSupport {
+    private static final int TEMPLATE_CACHE_SIZE = 16;
+    private static final int TEMPLATE_CACHE_MIN_LENGTH = 1024;
+
+    private final Map<String, Template> templates = Collections.synchronizedMap(
+            new LinkedHashMap<String, Template>(TEMPLATE_CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+                    return size() > TEMPLATE_CACHE_SIZE;
+                }
+            });
+
+    private final Map<String, Resolver> resolvers = new HashMap<>();
+    private final Resolver env;
+
+    public Interpolator() {
+        this(Arrays.asList(new EnvResolver(), new FileResolver(), new SecretResolver(), new PropertiesResolver()));
+    }
+
+    @Inject
+    public Interpolator(List<Resolver> resolvers) {
+        resolvers.forEach(resolver -> this.resolvers.putIfAbsent(resolver.getName(), resolver));
+        this.env = this.resolvers.computeIfAbsent(EnvResolver.NAME, name -> new EnvResolver());
+    }
+
+    /**
+     * Starts a new run, values resolved through it are cached until it is discarded
+     */
+    public Resolution newResolution() {
+        return new Resolution();
+    }
+
     public String interpolate(String str) {
-        String pattern = "\\$(([A-Z0-9_]+)|\\{([^:}]+)(:(\"([^\"}]*)\"|([^}]*)))?})";
-        Pattern expr = Pattern.compile(pattern, Pattern.CASE_INSENSITIVE);
-        Matcher matcher = expr.matcher(str);
-        while (matcher.find()) {
-            String varName = matcher.group(2);
-            if (varName == null) {
-                varName = matcher.group(3);
-            }
-            String defaultValue = matcher.group(6);
-            if (defaultValue == null) {
-                defaultValue = matcher.group(7);
+        return interpolate(str, newResolution());
+    }
+
+    public String interpolate(String str, Resolution resolution) {
+        if (str.indexOf('$') < 0) {
+            return str;
+        }
+        return render(template(str), resolution);
+    }
+
+    /**
+     * Paths of all files referenced in the given document, e.g. through {@code ${file:/path}}
+     */
+    public List<Path> referencedFiles(String str) {
+        List<Path> files = new ArrayList<>();
+        if (str.indexOf('$') < 0) {
+            return files;
+        }
+        for (Object segment : template(str).segments) {
+            if (segment instanceof Reference) {
+                Reference reference = (Reference) segment;
+                Resolver resolver = resolver(reference.name);
+                Path file = resolver != null && resolver != env ? resolver.getFile(reference.defaultValue) : null;
+                if (file != null && !files.contains(file)) {
+                    files.add(file);
+                }
             }
+        }
+        return files;
+    }
 
-            String value = null;
+    /**
+     * Names of all env vars referenced in the given document, upper cased like they are looked up
+     */
+    public List<String> referencedVariables(String str) {
+        List<String> variables = new ArrayList<>();
+        if (str.indexOf('$') < 0) {
+            return variables;
+        }
+        for (Object segment : template(str).segments) {
+            if (segment instanceof Reference) {
+                Lookup lookup = lookup((Reference) segment);
+                if (lookup.resolver == env && lookup.argument != null && !variables.contains(lookup.argument.toUpperCase())) {
+                    variables.add(lookup.argument.toUpperCase());
+                }
+            }
+        }
+        return variables;
+    }
 
-            if ("file".equalsIgnoreCase(varName)) {
-                if (defaultValue == null || defaultValue.trim().isEmpty()) {
-                    log.error("Missing filename in {}", str);
+    /**
+     * Fingerprint of what the references in the given strings resolve to. Referenced files are not read, they are
+     * represented by their size and modification time, which change whenever a file is written or replaced.
+     */
+    public String inputs(Collection<String> strs, Resolution resolution) {
+        Map<String, String> inputs = new TreeMap<>();
+        for (String str : strs) {
+            if (str.indexOf('$') < 0) {
+                continue;
+            }
+            for (Object segment : template(str).segments) {
+                if (!(segment instanceof Reference)) {
                     continue;
                 }
+                Lookup lookup = lookup((Reference) segment);
+                if (lookup.argument == null || inputs.containsKey(lookup.key())) {
+                    continue;
+                }
+                Path file = lookup.resolver != env ? lookup.resolver.getFile(lookup.argument) : null;
+                inputs.put(lookup.key(), file != null ? stat(file) : String.valueOf(resolution.resolve(lookup)));
+            }
+        }
+        return Fingerprints.of(inputs);
+    }
+
+    /**
+     * Fingerprint of the values the references in the given strings resolve to. Unlike {@link #inputs} referenced
+     * files are read (once per resolution), so nodes that resolve the same values get the same fingerprint no matter
+     * when their files were written.
+     */
+    public String contents(Collection<String> strs, Resolution resolution) {
+        Map<String, String> contents = new TreeMap<>();
+        for (String str : strs) {
+            if (str.indexOf('$') < 0) {
+                continue;
+            }
+            for (Object segment : template(str).segments) {
+                if (segment instanceof Reference && !contents.containsKey(((Reference) segment).source)) {
+                    String value = resolution.value((Reference) segment);
+                    contents.put(((Reference) segment).source, value != null ? Fingerprints.sha256(value) : "<unresolved>");
+                }
+            }
+        }
+        return Fingerprints.of(contents);
+    }
+
+    private static String stat(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return attributes.size() + "@" + attributes.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            return "<missing>";
+        }
+    }
+
+    private Template template(String str) {
+        if (str.length() < TEMPLATE_CACHE_MIN_LENGTH) {
+            return Template.parse(str);
+        }
+        String hash = Fingerprints.sha256(str);
+        Template template = templates.get(hash);
+        if (template == null) {
+            template = Template.parse(str);
+            templates.put(hash, template);
+        }
+        return template;
+    }
+
+    private String render(Template template, Resolution resolution) {
+        StringBuilder out = new StringBuilder(template.length);
+
+        for (Object segment : template.segments) {
+            if (segment instanceof String) {
+                out.append((String) segment);
+                continue;
+            }
+
+            Reference reference = (Reference) segment;
+            String value = resolution.value(reference);
+            out.append(value != null ? value : reference.source);
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * The resolver and argument a reference is resolved with, env vars fall back to the default of the reference
+     */
+    private Lookup lookup(Reference reference) {
+        Resolver resolver = resolver(reference.name);
+        if (resolver != null) {
+            return new Lookup(resolver, reference.defaultValue, null);
+        }
+        return new Lookup(env, reference.name, reference.defaultValue);
+    }
+
+    /**
+     * The resolver a reference names. Names match exactly, so {@code ${SECRET:changeme}} stays the env var
+     * {@code SECRET} with a default. Only {@code file} is matched in any case, as it was before resolvers existed.
+     */
+    private Resolver resolver(String name) {
+        Resolver resolver = resolvers.get(name);
+        if (resolver == null && FileResolver.NAME.equalsIgnoreCase(name)) {
+            resolver = resolvers.get(FileResolver.NAME);
+        }
+        return resolver;
+    }
+
+    private static final class Lookup {
+        private final Resolver resolver;
+        private final String argument;
+        private final String defaultValue;
+
+        private Lookup(Resolver resolver, String argument, String defaultValue) {
+            this.resolver = resolver;
+            this.argument = argument;
+            this.defaultValue = defaultValue;
+        }
 
-                File f = new File(defaultValue);
+        String key() {
+            return resolver.getName() + ":" + (EnvResolver.NAME.equals(resolver.getName()) ? argument.toUpperCase() : argument);
+        }
+    }
+
+    /**
+     * Values resolved during one run, e.g. one load of the config. Every distinct reference is resolved at most once,
+     * no matter how many documents or scalars contain it.
+     */
+    public final class Resolution {
+        private final Map<String, CompletableFuture<String>> values = new ConcurrentHashMap<>();
+        private final Set<String> warned = ConcurrentHashMap.newKeySet();
+
+        private Resolution() {
+        }
 
-                if (!f.exists()) {
-                    log.error("File {} does not exist", f.getAbsolutePath());
+        /**
+         * Resolves all distinct references of the given documents, resolving up to {@code parallelism} at once
+         */
+        public void prefetch(Collection<String> documents, int parallelism) throws InterruptedException {
+            Map<String, Lookup> lookups = new LinkedHashMap<>();
+            for (String document : documents) {
+                if (document.indexOf('$') < 0) {
                     continue;
                 }
+                for (Object segment : template(document).segments) {
+                    if (segment instanceof Reference) {
+                        Lookup lookup = lookup((Reference) segment);
+                        if (lookup.argument != null) {
+                            lookups.putIfAbsent(lookup.key(), lookup);
+                        }
+                    }
+                }
+            }
 
-                try {
-                    value = new String(Files.readAllBytes(Paths.get(f.getAbsolutePath())), StandardCharsets.UTF_8);
-                } catch (IOException e) {
-                    log.error("Failed to read file {}", defaultValue);
+            if (lookups.size() <= 1 || parallelism <= 1) {
+                lookups.values().forEach(this::resolve);
+                return;
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, lookups.size()));
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                lookups.values().forEach(lookup -> futures.add(executor.submit(() -> resolve(lookup))));
+                for (Future<?> future : futures) {
+                    future.get();
                 }
-            } else {
-                value = System.getenv(varName.toUpperCase());
+            } catch (ExecutionException e) {
+                // resolve() handles all failures itself
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                executor.shutdownNow();
             }
+        }
+
+        private String value(Reference reference) {
+            Lookup lookup = lookup(reference);
+            String value = lookup.argument != null ? resolve(lookup) : null;
+
+            if (value == null && lookup.resolver == env) {
+                if (lookup.defaultValue == null) {
+                    if (warned.add(lookup.key())) {
+                        log.warn("Found no value to interpolate variable {}", reference.name);
+                    }
+                    return null;
+                }
+                return lookup.defaultValue;
+            }
+
+            return value;
+        }
 
+        private String resolve(Lookup lookup) {
+            String key = lookup.key();
+            CompletableFuture<String> value = values.get(key);
             if (value == null) {
-                if (defaultValue == null) {
-                    log.warn("Found no value to interpoalte variable {}", varName);
+                CompletableFuture<String> created = new CompletableFuture<>();
+                value = values.putIfAbsent(key, created);
+                if (value == null) {
+                    value = created;
+                    try {
+                        created.complete(lookup.resolver.resolve(lookup.argument));
+                    } catch (IOException | RuntimeException e) {
+                        log.error("Failed to resolve ${{}:{}}", lookup.resolver.getName(), lookup.argument, e);
+                        created.complete(null);
+                    }
+                }
+            }
+            return value.join();
+        }
+    }
+
+    /**
+     * A document split into literal text ({@link String}) and {@link Reference} segments.
+     */
+    static final class Template {
+        /**
+         * A literal {@code $}. There is no env var named {@code $}, so configs didn't contain it before it was an escape
+         * ({@code $$} did, e.g. in passwords, and keeps its meaning).
+         */
+        static final String ESCAPED_DOLLAR = "${$}";
+
+        private final List<Object> segments;
+        private final int length;
+
+        private Template(List<Object> segments, int length) {
+            this.segments = segments;
+            this.length = length;
+        }
+
+        static Template parse(String str) {
+            List<Object> segments = new ArrayList<>();
+            int literalStart = 0;
+            int pos = str.indexOf('$');
+
+            while (pos >= 0) {
+                if (str.startsWith(ESCAPED_DOLLAR, pos)) {
+                    segments.add(str.substring(literalStart, pos + 1));
+                    literalStart = pos + ESCAPED_DOLLAR.length();
+                    pos = str.indexOf('$', literalStart);
+                    continue;
+                }
+
+                Reference reference = Reference.parse(str, pos);
+
+                if (reference == null) {
+                    pos = str.indexOf('$', pos + 1);
                     continue;
                 }
 
-                value = defaultValue;
+                if (pos > literalStart) {
+                    segments.add(str.substring(literalStart, pos));
+                }
+                segments.add(reference);
+
+                literalStart = pos + reference.source.length();
+                pos = str.indexOf('$', literalStart);
+            }
+
+            if (literalStart < str.length()) {
+                segments.add(str.substring(literalStart));
+            }
+
+            return new Template(segments, str.length());
+        }
+    }
+
+    static final class Reference {
+        private final String source;
+        private final String name;
+        private final String defaultValue;
+
+        private Reference(String source, String name, String defaultValue) {
+            this.source = source;
+            this.name = name;
+            this.defaultValue = defaultValue;
+        }
+
+        /**
+         * Parses the reference starting at the {@code $} at {@code start}, or returns null if there is none.
+         */
+        static Reference parse(String str, int start) {
+            int pos = start + 1;
+            if (pos >= str.length()) {
+                return null;
+            }
+
+            if (str.charAt(pos) != '{') {
+                int end = pos;
+                while (end < str.length() && isNameChar(str.charAt(end))) {
+                    end++;
+                }
+
+                if (end == pos) {
+                    return null;
+                }
+
+                return new Reference(str.substring(start, end), str.substring(pos, end), null);
+            }
+
+            int nameStart = pos + 1;
+            int nameEnd = nameStart;
+            while (nameEnd < str.length() && str.charAt(nameEnd) != ':' && str.charAt(nameEnd) != '}') {
+                nameEnd++;
+            }
+
+            if (nameEnd == nameStart || nameEnd >= str.length()) {
+                return null;
             }
 
-            Pattern subexpr = Pattern.compile(Pattern.quote(matcher.group(0)));
-            str = subexpr.matcher(str).replaceAll(value);
+            String name = str.substring(nameStart, nameEnd);
+
+            if (str.charAt(nameEnd) == '}') {
+                return new Reference(str.substring(start, nameEnd + 1), name, null);
+            }
+
+            int end = str.indexOf('}', nameEnd + 1);
+            if (end < 0) {
+                return null;
+            }
+
+            String defaultValue = str.substring(nameEnd + 1, end);
+            if (defaultValue.length() >= 2
+                    && defaultValue.charAt(0) == '"'
+                    && defaultValue.indexOf('"', 1) == defaultValue.length() - 1) {
+                defaultValue = defaultValue.substring(1, defaultValue.length() - 1);
+            }
+
+            return new Reference(str.substring(start, end + 1), name, defaultValue);
         }
 
-        return str;
+        static boolean isNameChar(char c) {
+            return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_';
+        }
     }
 }
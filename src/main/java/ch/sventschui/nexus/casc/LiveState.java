@@ -0,0 +1,340 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.Config;
+import ch.sventschui.nexus.casc.config.ConfigBlobStore;
+import ch.sventschui.nexus.casc.config.ConfigCapability;
+import ch.sventschui.nexus.casc.config.ConfigCleanupPolicy;
+import ch.sventschui.nexus.casc.config.ConfigRepository;
+import ch.sventschui.nexus.casc.config.ConfigRepositoryEntry;
+import ch.sventschui.nexus.casc.config.ConfigSecurity;
+import ch.sventschui.nexus.casc.config.ConfigSecurityContentSelector;
+import ch.sventschui.nexus.casc.config.ConfigSecurityPrivilege;
+import ch.sventschui.nexus.casc.config.ConfigSecurityRoleDefinition;
+import ch.sventschui.nexus.casc.config.ConfigSecurityUser;
+import org.sonatype.nexus.blobstore.api.BlobStore;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.blobstore.api.BlobStoreManager;
+import org.sonatype.nexus.capability.CapabilityContext;
+import org.sonatype.nexus.capability.CapabilityReference;
+import org.sonatype.nexus.capability.CapabilityRegistry;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicy;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicyStorage;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.repository.manager.RepositoryManager;
+import org.sonatype.nexus.security.SecuritySystem;
+import org.sonatype.nexus.security.authz.NoSuchAuthorizationManagerException;
+import org.sonatype.nexus.security.privilege.Privilege;
+import org.sonatype.nexus.security.role.Role;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserManager;
+import org.sonatype.nexus.security.user.UserSearchCriteria;
+import org.sonatype.nexus.selector.SelectorConfiguration;
+import org.sonatype.nexus.selector.SelectorManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * A snapshot of the live Nexus state relevant to CasC, read once and indexed by name.
+ */
+public class LiveState {
+    private final Map<String, Configuration> repositories = new LinkedHashMap<>();
+    private final Map<String, BlobStoreConfiguration> blobStores = new LinkedHashMap<>();
+    private final Map<String, CleanupPolicy> cleanupPolicies = new LinkedHashMap<>();
+    private final List<User> users;
+    private final Map<String, User> usersById = new LinkedHashMap<>();
+    private final Map<String, Capability> capabilities = new LinkedHashMap<>();
+    private final Map<String, Role> roles;
+    private final Map<String, Privilege> privileges;
+    private final Map<String, SelectorConfiguration> contentSelectors;
+
+    /**
+     * A state without the authorization state, references to roles, privileges and content selectors are not checked
+     * against it
+     */
+    public LiveState(
+            Collection<Configuration> repositories,
+            Collection<BlobStoreConfiguration> blobStores,
+            Collection<CleanupPolicy> cleanupPolicies,
+            Collection<User> users,
+            Collection<Capability> capabilities) {
+        this(repositories, blobStores, cleanupPolicies, users, capabilities, null, null, null);
+    }
+
+    public LiveState(
+            Collection<Configuration> repositories,
+            Collection<BlobStoreConfiguration> blobStores,
+            Collection<CleanupPolicy> cleanupPolicies,
+            Collection<User> users,
+            Collection<Capability> capabilities,
+            Collection<Role> roles,
+            Collection<Privilege> privileges,
+            Collection<SelectorConfiguration> contentSelectors) {
+        repositories.forEach(repository -> this.repositories.put(repository.getRepositoryName(), repository));
+        blobStores.forEach(blobStore -> this.blobStores.put(blobStore.getName(), blobStore));
+        cleanupPolicies.forEach(policy -> this.cleanupPolicies.put(policy.getName(), policy));
+        this.users = new ArrayList<>(users);
+        users.forEach(user -> this.usersById.putIfAbsent(user.getUserId(), user));
+        // like the apply, only the first capability of a type is considered
+        capabilities.forEach(capability -> this.capabilities.putIfAbsent(capability.getType(), capability));
+        this.roles = roles == null ? null : Reconciliation.index(roles, Role::getRoleId);
+        this.privileges = privileges == null ? null : Reconciliation.index(privileges, Privilege::getId);
+        this.contentSelectors = contentSelectors == null ? null : Reconciliation.index(contentSelectors, SelectorConfiguration::getName);
+    }
+
+    public static LiveState read(
+            RepositoryManager repositoryManager,
+            BlobStoreManager blobStoreManager,
+            CleanupPolicyStorage cleanupPolicyStorage,
+            SecuritySystem securitySystem,
+            CapabilityRegistry capabilityRegistry,
+            SelectorManager selectorManager) {
+        return read(repositoryManager, blobStoreManager, cleanupPolicyStorage, securitySystem, capabilityRegistry,
+                selectorManager, null);
+    }
+
+    /**
+     * @param userSource The only user source to read, all sources (LDAP included) if null
+     */
+    public static LiveState read(
+            RepositoryManager repositoryManager,
+            BlobStoreManager blobStoreManager,
+            CleanupPolicyStorage cleanupPolicyStorage,
+            SecuritySystem securitySystem,
+            CapabilityRegistry capabilityRegistry,
+            SelectorManager selectorManager,
+            String userSource) {
+        List<Configuration> repositories = new ArrayList<>();
+        for (Repository repository : repositoryManager.browse()) {
+            repositories.add(repository.getConfiguration());
+        }
+
+        List<BlobStoreConfiguration> blobStores = new ArrayList<>();
+        for (BlobStore blobStore : blobStoreManager.browse()) {
+            blobStores.add(blobStore.getBlobStoreConfiguration());
+        }
+
+        List<Capability> capabilities = new ArrayList<>();
+        for (CapabilityReference reference : capabilityRegistry.getAll()) {
+            CapabilityContext context = reference.context();
+            capabilities.add(Capability.of(context));
+        }
+
+        Collection<Role> roles;
+        try {
+            roles = securitySystem.listRoles(UserManager.DEFAULT_SOURCE);
+        } catch (NoSuchAuthorizationManagerException e) {
+            throw new IllegalStateException("The default authorization manager is missing", e);
+        }
+
+        UserSearchCriteria criteria = new UserSearchCriteria();
+        criteria.setSource(userSource);
+
+        return new LiveState(
+                repositories,
+                blobStores,
+                cleanupPolicyStorage.getAll(),
+                securitySystem.searchUsers(criteria),
+                capabilities,
+                roles,
+                securitySystem.listPrivileges(),
+                selectorManager.browse()
+        );
+    }
+
+    public Map<String, Configuration> getRepositories() {
+        return Collections.unmodifiableMap(repositories);
+    }
+
+    public Map<String, BlobStoreConfiguration> getBlobStores() {
+        return Collections.unmodifiableMap(blobStores);
+    }
+
+    public Map<String, CleanupPolicy> getCleanupPolicies() {
+        return Collections.unmodifiableMap(cleanupPolicies);
+    }
+
+    /**
+     * All users of all sources
+     */
+    public List<User> getUsers() {
+        return Collections.unmodifiableList(users);
+    }
+
+    /**
+     * Users by user id, if several sources know the same user id the first one wins
+     */
+    public Map<String, User> getUsersById() {
+        return Collections.unmodifiableMap(usersById);
+    }
+
+    /**
+     * Roles of the default source by id, null if the state was created without the authorization state
+     */
+    public Map<String, Role> getRoles() {
+        return roles == null ? null : Collections.unmodifiableMap(roles);
+    }
+
+    /**
+     * Privileges by id, null if the state was created without the authorization state
+     */
+    public Map<String, Privilege> getPrivileges() {
+        return privileges == null ? null : Collections.unmodifiableMap(privileges);
+    }
+
+    /**
+     * Content selectors by name, null if the state was created without the authorization state
+     */
+    public Map<String, SelectorConfiguration> getContentSelectors() {
+        return contentSelectors == null ? null : Collections.unmodifiableMap(contentSelectors);
+    }
+
+    /**
+     * A single hash over all entities, changes whenever any of them is added, removed or changed
+     */
+    public String fingerprint() {
+        return fingerprint(null);
+    }
+
+    /**
+     * A hash over the entities a config manages, see {@link #managed(Config)}. Entities the config doesn't know
+     * (e.g. created in the UI) don't change it, unless the config prunes their kind.
+     *
+     * @param managed Names of the managed entities by kind, all entities if null
+     */
+    public String fingerprint(Map<String, Set<String>> managed) {
+        Map<String, String> entities = new HashMap<>();
+        put(entities, managed, "repository", repositories, Fingerprints::of);
+        put(entities, managed, "blobStore", blobStores, Fingerprints::of);
+        put(entities, managed, "cleanupPolicy", cleanupPolicies, Fingerprints::of);
+        Map<String, User> users = new LinkedHashMap<>();
+        this.users.stream()
+                .filter(user -> managed == null || UserManager.DEFAULT_SOURCE.equals(user.getSource()))
+                .forEach(user -> users.put(managed == null ? Reconciliation.userKey(user) : user.getUserId(), user));
+        put(entities, managed, "user", users, Fingerprints::of);
+        put(entities, managed, "capability", capabilities,
+                capability -> Fingerprints.of(capability.isEnabled(), capability.getNotes(), capability.getProperties()));
+        if (roles != null) {
+            put(entities, managed, "role", roles, Fingerprints::of);
+            put(entities, managed, "privilege", privileges, Fingerprints::of);
+            put(entities, managed, "contentSelector", contentSelectors, Fingerprints::of);
+        }
+        return Fingerprints.of(entities);
+    }
+
+    private static <T> void put(Map<String, String> entities, Map<String, Set<String>> managed, String kind,
+                                Map<String, T> live, Function<T, String> fingerprint) {
+        if (managed != null && !managed.containsKey(kind)) {
+            return;
+        }
+        Set<String> names = managed == null ? null : managed.get(kind);
+        live.forEach((name, entity) -> {
+            if (names == null || names.contains(name)) {
+                entities.put(kind + ":" + name, fingerprint.apply(entity));
+            }
+        });
+    }
+
+    /**
+     * Names of the entities the config manages by kind. The value is null for kinds the config prunes, all entities
+     * of those are managed. Users are those of the default source, users of other sources (like LDAP) are never
+     * managed.
+     */
+    public static Map<String, Set<String>> managed(Config config) {
+        Map<String, Set<String>> managed = new HashMap<>();
+        ConfigRepository repository = config.getRepository();
+        if (repository != null) {
+            managed(managed, "repository", repository.getRepositories(), ConfigRepositoryEntry::getName, repository.getPruneRepositories());
+            managed(managed, "blobStore", repository.getBlobStores(), ConfigBlobStore::getName, repository.getPruneBlobStores());
+            managed(managed, "cleanupPolicy", repository.getCleanupPolicies(), ConfigCleanupPolicy::getName, repository.getPruneCleanupPolicies());
+        }
+        ConfigSecurity security = config.getSecurity();
+        if (security != null) {
+            managed(managed, "user", security.getUsers(), ConfigSecurityUser::getUsername, security.getPruneUsers());
+            managed(managed, "role", security.getRoles(), ConfigSecurityRoleDefinition::getId, security.getPruneRoles());
+            managed(managed, "privilege", security.getPrivileges(), ConfigSecurityPrivilege::getName, security.getPrunePrivileges());
+            managed(managed, "contentSelector", security.getContentSelectors(), ConfigSecurityContentSelector::getName,
+                    security.getPruneContentSelectors());
+        }
+        managed(managed, "capability", config.getCapabilities(), ConfigCapability::getType, false);
+        return managed;
+    }
+
+    private static <T> void managed(Map<String, Set<String>> managed, String kind, List<T> entities,
+                                    Function<T, String> name, Boolean prune) {
+        if (entities != null) {
+            managed.put(kind, Boolean.TRUE.equals(prune) ? null : Reconciliation.names(entities, name));
+        }
+    }
+
+    /**
+     * Capabilities by type
+     */
+    public Map<String, Capability> getCapabilities() {
+        return Collections.unmodifiableMap(capabilities);
+    }
+
+    public static class Capability {
+        private final String type;
+        private final boolean enabled;
+        private final String notes;
+        private final Map<String, String> properties;
+
+        public Capability(String type, boolean enabled, String notes, Map<String, String> properties) {
+            this.type = type;
+            this.enabled = enabled;
+            this.notes = notes;
+            this.properties = properties;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public String getNotes() {
+            return notes;
+        }
+
+        public Map<String, String> getProperties() {
+            return properties;
+        }
+
+        public static Capability of(CapabilityContext context) {
+            return new Capability(context.type().toString(), context.isEnabled(), context.notes(), context.properties());
+        }
+
+        /**
+         * Whether applying the given config would leave this capability as it is. Missing notes and properties are
+         * treated as empty, an unset enabled flag keeps the current state.
+         */
+        public boolean matches(ConfigCapability config) {
+            return (config.getEnabled() == null || config.getEnabled() == enabled)
+                    && emptyIfNull(config.getNotes()).equals(emptyIfNull(notes))
+                    && stringValues(config.getAttributes()).equals(stringValues(properties));
+        }
+
+        private static String emptyIfNull(String s) {
+            return s == null ? "" : s;
+        }
+
+        private static Map<String, String> stringValues(Map<String, ?> map) {
+            Map<String, String> values = new HashMap<>();
+            if (map != null) {
+                map.forEach((key, value) -> values.put(key, value == null ? null : String.valueOf(value)));
+            }
+            return values;
+        }
+    }
+}
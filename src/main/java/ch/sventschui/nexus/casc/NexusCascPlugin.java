@@ -1,6 +1,8 @@
 package ch.sventschui.nexus.casc;
 
 import ch.sventschui.nexus.casc.config.*;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheckRegistry;
 import org.eclipse.sisu.Description;
 import org.sonatype.nexus.CoreApi;
 import org.sonatype.nexus.blobstore.api.BlobStore;
@@ -9,36 +11,78 @@ import org.sonatype.nexus.blobstore.api.BlobStoreManager;
 import org.sonatype.nexus.capability.*;
 import org.sonatype.nexus.cleanup.storage.CleanupPolicy;
 import org.sonatype.nexus.cleanup.storage.CleanupPolicyStorage;
+import org.sonatype.nexus.common.app.ApplicationDirectories;
 import org.sonatype.nexus.common.app.ManagedLifecycle;
+import org.sonatype.nexus.common.event.EventManager;
 import org.sonatype.nexus.common.stateguard.StateGuardLifecycleSupport;
 import org.sonatype.nexus.repository.Repository;
 import org.sonatype.nexus.repository.config.Configuration;
 import org.sonatype.nexus.repository.manager.RepositoryManager;
+import org.sonatype.nexus.scheduling.TaskConfiguration;
+import org.sonatype.nexus.scheduling.TaskInfo;
+import org.sonatype.nexus.scheduling.TaskScheduler;
+import org.sonatype.nexus.scheduling.schedule.Cron;
 import org.sonatype.nexus.security.SecurityApi;
 import org.sonatype.nexus.security.SecuritySystem;
+import org.sonatype.nexus.security.authz.AuthorizationConfigurationChanged;
+import org.sonatype.nexus.security.authz.NoSuchAuthorizationManagerException;
+import org.sonatype.nexus.security.config.CPrivilege;
+import org.sonatype.nexus.security.config.CRole;
+import org.sonatype.nexus.security.config.CUser;
+import org.sonatype.nexus.security.config.SecurityConfigurationManager;
+import org.sonatype.nexus.security.realm.RealmConfiguration;
+import org.sonatype.nexus.security.privilege.NoSuchPrivilegeException;
+import org.sonatype.nexus.security.privilege.Privilege;
 import org.sonatype.nexus.security.realm.RealmManager;
-import org.sonatype.nexus.security.role.RoleIdentifier;
+import org.sonatype.nexus.security.role.NoSuchRoleException;
+import org.sonatype.nexus.security.role.Role;
 import org.sonatype.nexus.security.user.*;
-import org.yaml.snakeyaml.Yaml;
-import org.yaml.snakeyaml.constructor.Constructor;
+import org.sonatype.nexus.selector.SelectorConfiguration;
+import org.sonatype.nexus.selector.SelectorManager;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 @Named("cascPlugin")
 @Description("Casc Plugin")
@@ -55,6 +99,54 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
     private final BlobStoreManager blobStoreManager;
     private final RealmManager realmManager;
     private final CapabilityRegistry capabilityRegistry;
+    private final ApplicationDirectories applicationDirectories;
+    private final TaskScheduler taskScheduler;
+    private final SelectorManager selectorManager;
+    private final EventManager eventManager;
+
+    private static final Map<Class<?>, MethodHandle> CAPABILITY_ID_ACCESSORS = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, MethodHandle> SECURITY_SYSTEM_ACCESSORS = new ConcurrentHashMap<>();
+
+    private static final String CORE_API = "coreApi";
+    private static final String BLOB_STORE_MANAGER = "blobStoreManager";
+    private static final String CLEANUP_POLICY_STORAGE = "cleanupPolicyStorage";
+    private static final String REPOSITORY_MANAGER = "repositoryManager";
+    private static final String SECURITY_SYSTEM = "securitySystem";
+    private static final String SECURITY_CONFIGURATION_MANAGER = "securityConfigurationManager";
+    private static final String SELECTOR_MANAGER = "selectorManager";
+    private static final String REALM_MANAGER = "realmManager";
+    private static final String CAPABILITY_REGISTRY = "capabilityRegistry";
+    private static final String TASK_SCHEDULER = "taskScheduler";
+
+    // the type of content selectors using CSEL expressions
+    private static final String CSEL = "csel";
+
+    private static final List<String> SECTIONS = Arrays.asList("core", "security", "repository", "capabilities", "tasks");
+
+    private final ReentrantLock applyLock = new ReentrantLock();
+    private Map<String, String> appliedSections = new HashMap<>();
+    private ConfigWatcher watcher;
+    private String configLocation;
+    private ConfigLoader configLoader;
+    private ConfigCache configCache;
+    private ApplyJournal journal;
+    private ClusterLock clusterLock;
+    private String appliedLiveState;
+    private Map<String, Set<String>> appliedManaged;
+
+    private FingerprintStore fingerprints;
+    private final ApplyMetrics metrics;
+    private final SecurityConfigurationManager securityConfigurationManager;
+    private byte[] installKey;
+    private ApplyStats stats;
+
+    private final HealthCheckRegistry healthCheckRegistry;
+    private final CascStatus status = new CascStatus();
+    private ExecutorService startup;
+    // only the initial background apply creates repositories offline, later reloads create them online right away
+    private volatile boolean startingUp;
+    // repositories created offline in async mode, by name, with the definition to fingerprint once they are online
+    private final Map<String, String> offlineRepositories = new ConcurrentHashMap<>();
 
     @Inject
     public NexusCascPlugin(
@@ -65,7 +157,14 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
             final RepositoryManager repositoryManager,
             final BlobStoreManager blobStoreManager,
             final RealmManager realmManager,
-            final CapabilityRegistry capabilityRegistry) throws IllegalAccessException, NoSuchMethodException, InvocationTargetException {
+            final CapabilityRegistry capabilityRegistry,
+            final ApplicationDirectories applicationDirectories,
+            final TaskScheduler taskScheduler,
+            final MetricRegistry metricRegistry,
+            final SecurityConfigurationManager securityConfigurationManager,
+            final HealthCheckRegistry healthCheckRegistry,
+            final SelectorManager selectorManager,
+            final EventManager eventManager) throws IllegalAccessException, NoSuchMethodException, InvocationTargetException {
         this.coreApi = coreApi;
         this.securityApi = securityApi;
         this.securitySystem = resolveSecuritySystem(securityApi);
@@ -75,419 +174,1975 @@ public class NexusCascPlugin extends StateGuardLifecycleSupport {
         this.repositoryManager = repositoryManager;
         this.realmManager = realmManager;
         this.capabilityRegistry = capabilityRegistry;
+        this.applicationDirectories = applicationDirectories;
+        this.taskScheduler = taskScheduler;
+        this.metrics = new ApplyMetrics(metricRegistry);
+        this.securityConfigurationManager = securityConfigurationManager;
+        this.healthCheckRegistry = healthCheckRegistry;
+        this.selectorManager = selectorManager;
+        this.eventManager = eventManager;
     }
 
     @Override
     protected void doStart() throws Exception {
+        metrics.register();
+        healthCheckRegistry.register(CascHealthCheck.NAME, new CascHealthCheck(status));
+        ApplyMetrics.Phase phase = metrics.time(ApplyMetrics.STARTUP);
+        try {
+            startCasc();
+        } finally {
+            phase.close();
+        }
+    }
+
+    private void startCasc() throws Exception {
+        if ("export".equalsIgnoreCase(System.getenv("NEXUS_CASC_MODE"))) {
+            ApplyMetrics.Phase phase = metrics.time(ApplyMetrics.EXPORT);
+            try {
+                exportConfig();
+            } finally {
+                phase.close();
+            }
+            status.disabled("Only exporting the config");
+            return;
+        }
+
         String configFile = System.getenv("NEXUS_CASC_CONFIG");
 
         if (configFile == null) {
             log.error("Env var NEXUS_CASC_CONFIG not found");
+            status.disabled("NEXUS_CASC_CONFIG is not set");
             return;
         }
 
-        Config config;
-        Yaml yaml = new Yaml(new Constructor(Config.class));
+        startWith(configFile);
+    }
+
+    /**
+     * Loads and applies the config at the given location, the benchmarks start the plugin through this method
+     *
+     * @param configFile The config file, directory or glob
+     */
+    void startWith(String configFile) throws Exception {
+        configLoader = new ConfigLoader(interpolator, workers(), metrics);
+
+        // the plan skips passwords that were applied before, just like the apply
+        fingerprints = new FingerprintStore(
+                applicationDirectories.getWorkDirectory("casc").toPath().resolve("fingerprints.properties"));
+        fingerprints.load();
+
         try {
-            String yml = interpolator.interpolate(new String(Files.readAllBytes(Paths.get(configFile))));
-            config = yaml.load(yml);
+            installKey = InstallKey.load(applicationDirectories.getWorkDirectory("casc").toPath().resolve("install.key"));
         } catch (IOException e) {
-            log.error("Failed to load config file from {}", configFile, e);
+            log.error("Failed to read the install key, passwords of users with updateExistingPassword are set on every apply", e);
+        }
+
+        if ("plan".equalsIgnoreCase(System.getenv("NEXUS_CASC_MODE"))) {
+            try {
+                writePlan(configLoader.load(configLoader.sources(configFile)).getConfig());
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to load config from {}", configFile, e);
+            }
+            status.disabled("Only writing a plan");
             return;
         }
 
-        ConfigCore core = config.getCore();
-        if (core != null) {
-            applyBaseUrlConfig(core);
-            applyProxyConfig(core);
+        if (!"false".equalsIgnoreCase(System.getenv("NEXUS_CASC_CACHE"))) {
+            configCache = new ConfigCache(applicationDirectories.getWorkDirectory("casc").toPath());
         }
 
-        ConfigSecurity security = config.getSecurity();
-        if (security != null) {
-            applySecurityConfig(security);
+        if (!"false".equalsIgnoreCase(System.getenv("NEXUS_CASC_JOURNAL"))) {
+            journal = new ApplyJournal(applicationDirectories.getWorkDirectory("casc").toPath().resolve("journal.log"));
         }
 
-        ConfigRepository repository = config.getRepository();
-        if (repository != null) {
-            applyRepositoryConfig(repository);
+        String clusterDir = System.getenv("NEXUS_CASC_CLUSTER_DIR");
+        if (clusterDir != null && !clusterDir.trim().isEmpty()) {
+            try {
+                clusterLock = new ClusterLock(Paths.get(clusterDir.trim()), clusterLease(), 1000);
+            } catch (IOException e) {
+                log.error("Failed to use the cluster directory {}, applying without coordinating with the other nodes", clusterDir, e);
+            }
         }
 
-        List<ConfigCapability> capabilities = config.getCapabilities();
-        if (capabilities != null) {
-            applyCapabilitiesConfig(capabilities);
+        this.configLocation = configFile;
+
+        if ("true".equalsIgnoreCase(System.getenv("NEXUS_CASC_WATCH"))) {
+            watcher = new ConfigWatcher(() -> apply(configLocation), watchDebounce());
         }
-    }
 
-    private void applyBaseUrlConfig(ConfigCore core) {
-        if (core.getBaseUrl() != null) {
-            String baseUrl = core.getBaseUrl().trim();
-            log.debug("Setting baseUrl to {}", baseUrl);
-            coreApi.baseUrl(baseUrl);
+        if ("true".equalsIgnoreCase(System.getenv("NEXUS_CASC_ASYNC"))) {
+            // don't hold up the start of Nexus, new repositories stay offline until the whole config is applied
+            startup = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "casc-startup");
+                thread.setDaemon(true);
+                return thread;
+            });
+            startingUp = true;
+            startup.execute(() -> {
+                try {
+                    apply(configLocation);
+                    scheduleReconciliation();
+                } catch (RuntimeException e) {
+                    log.error("Failed to apply {}", configLocation, e);
+                    status.failed("Failed to apply the config");
+                } finally {
+                    startingUp = false;
+                }
+            });
+            log.info("Applying {} in the background", configLocation);
+            return;
         }
+
+        apply(configLocation);
+        scheduleReconciliation();
     }
 
-    private void applyProxyConfig(ConfigCore core) {
-        if (core.getHttpProxy() != null && !core.getHttpProxy().trim().isEmpty()) {
-            // TODO: support basic & ntlm auth
-            try {
-                String proxyUrlString = core.getHttpProxy().trim();
-                URL proxyUrl = new URL(proxyUrlString);
-                log.info("Setting httpProxy to {} {}", proxyUrl.getHost(), proxyUrl.getPort());
-                coreApi.httpProxy(proxyUrl.getHost(), proxyUrl.getPort());
-            } catch (MalformedURLException e) {
-                log.error("Failed to parse http proxy URL {}", core.getHttpProxy().trim(), e);
+    @Override
+    protected void doStop() throws Exception {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+        if (startup != null) {
+            startup.shutdownNow();
+            if (!startup.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Applying the config did not stop in time");
             }
+            startup = null;
         }
+        if (journal != null) {
+            journal.close();
+        }
+        if (clusterLock != null) {
+            clusterLock.close();
+        }
+        healthCheckRegistry.unregister(CascHealthCheck.NAME);
+        metrics.unregister();
+    }
 
-        if (core.getHttpsProxy() != null && !core.getHttpsProxy().trim().isEmpty()) {
-            // TODO: support basic & ntlm auth
+    /**
+     * Loads the config and applies all sections that changed since the last apply. On the first apply all
+     * sections are applied.
+     *
+     * @param configFile The config file, directory or glob
+     */
+    private void apply(String configFile) {
+        applyLock.lock();
+        try {
+            ConfigLoader.Loaded loaded;
             try {
-                String proxyUrlString = core.getHttpProxy().trim();
-                URL proxyUrl = new URL(proxyUrlString);
-                log.info("Setting httpsProxy to {} {}", proxyUrl.getHost(), proxyUrl.getPort());
-                coreApi.httpsProxy(proxyUrl.getHost(), proxyUrl.getPort());
-            } catch (MalformedURLException e) {
-                log.error("Failed to parse https proxy URL {}", core.getHttpsProxy().trim(), e);
-            }
-        }
+                List<Path> sources = configLoader.sources(configFile);
+                if (watcher != null) {
+                    // watch the fragments before loading them so that fixing a broken one triggers a reload
+                    watcher.watch(sources);
+                }
 
-        if (core.getNonProxyHosts() != null && !core.getNonProxyHosts().trim().isEmpty()) {
-            String noProxyHostsString = core.getNonProxyHosts().trim();
-            String[] noProxyHosts = Arrays.stream(noProxyHostsString.split(","))
-                    .map(String::trim)
-                    .filter(host -> !host.isEmpty())
-                    .toArray(String[]::new);
+                if ("true".equalsIgnoreCase(System.getenv("NEXUS_CASC_STREAMING"))) {
+                    if (sources.size() == 1) {
+                        // sections can't be compared without reading the whole file, the next apply applies everything
+                        applyStreaming(sources.get(0));
+                        appliedSections = new HashMap<>();
+                        return;
+                    }
+                    log.warn("NEXUS_CASC_STREAMING only supports a single config file, loading {} fragments instead", sources.size());
+                }
 
-            log.info("Setting nonProxyHosts to {}", String.join(",", noProxyHosts));
-            coreApi.nonProxyHosts(noProxyHosts);
-        }
-    }
+                loaded = null;
+                if (configCache != null) {
+                    ApplyMetrics.Phase phase = metrics.time(ApplyMetrics.CACHE);
+                    try {
+                        loaded = configCache.load(sources, configLoader);
+                    } finally {
+                        phase.close();
+                    }
+                }
+                if (loaded == null) {
+                    loaded = configLoader.load(sources);
+                    if (configCache != null) {
+                        configCache.store(loaded);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to load config from {}", configFile, e);
+                status.failed("Failed to load the config");
+                return;
+            }
 
-    private void applyCapabilitiesConfig(List<ConfigCapability> capabilities) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
-        for (ConfigCapability capabilityConfig : capabilities) {
-            CapabilityType type = CapabilityType.capabilityType(capabilityConfig.getType());
-            log.info("type={}", type.toString());
-            CapabilityReference existing = capabilityRegistry.getAll().stream()
-                    .filter(cap -> cap.context().type().equals(type))
-                    .findFirst()
-                    .orElse(null);
+            if (watcher != null) {
+                List<Path> watched = new ArrayList<>(loaded.getSources());
+                watched.addAll(loaded.getReferencedFiles());
+                watcher.watch(watched);
+            }
 
-            if (existing != null) {
-                boolean enabled = capabilityConfig.getEnabled() == null ? existing.context().isEnabled() : capabilityConfig.getEnabled();
-                CapabilityIdentity id = getCapabilityId(existing);
+            Config config = loaded.getConfig();
+            Map<String, String> sections = sectionFingerprints(loaded);
 
-                log.info("Updating capability of type {} and id {}", capabilityConfig.getType(), id);
+            Set<String> changed = sections.keySet().stream()
+                    .filter(section -> !sections.get(section).equals(appliedSections.get(section)))
+                    .collect(Collectors.toSet());
 
-                capabilityRegistry.update(
-                        id,
-                        enabled,
-                        capabilityConfig.getNotes(),
-                        capabilityConfig.getAttributes()
-                );
-            } else {
-                log.info("Creating capability of type {}", capabilityConfig.getType());
+            if (changed.isEmpty()) {
+                log.info("Config file {} did not change, nothing to apply", configFile);
+                return;
+            }
 
-                boolean enabled = capabilityConfig.getEnabled() == null ? true : capabilityConfig.getEnabled();
-                capabilityRegistry.add(
-                        type,
-                        enabled,
-                        capabilityConfig.getNotes(),
-                        capabilityConfig.getAttributes()
-                );
+            if (!appliedSections.isEmpty()) {
+                log.info("Re-applying changed sections {} of {}", changed, configFile);
             }
-        }
-    }
 
-    private CapabilityIdentity getCapabilityId(CapabilityReference existing) throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-        Method m = existing.getClass().getMethod("id");
-        return (CapabilityIdentity) m.invoke(existing);
-    }
+            // the section fingerprints contain the modification times of the referenced files, which differ between
+            // nodes, so the nodes of a cluster identify the config by its content (reading every referenced file)
+            String configHash = clusterLock != null ? loaded.contentFingerprint() : Fingerprints.of(new TreeMap<>(sections));
+            Map<String, Set<String>> managed = LiveState.managed(config);
+            if (!leadApply(configHash, managed)) {
+                appliedSections = sections;
+                return;
+            }
 
-    private void applyRepositoryConfig(ConfigRepository repository) {
-        if (repository.getBlobStores() != null) {
-            repository.getBlobStores().forEach(configBlobStore -> {
-                if (configBlobStore.getAttributes().get("file") == null
-                        || configBlobStore.getAttributes().get("file").get("path") == null
-                        || !(configBlobStore.getAttributes().get("file").get("path") instanceof String)) {
-                    log.error(".attributes.file.path of blob store {} must be a string!", configBlobStore.getName());
+            try {
+                LiveState live = readLiveState();
+                // find every error before anything is written instead of failing halfway through the apply, unchanged
+                // sections were validated when they were applied and are not read (nor interpolated) again
+                List<String> errors;
+                ApplyMetrics.Phase phase = metrics.time(ApplyMetrics.VALIDATE);
+                try {
+                    errors = ConfigValidator.validate(config, live, changed);
+                } finally {
+                    phase.close();
+                }
+                if (!errors.isEmpty()) {
+                    errors.forEach(error -> log.error("Invalid config: {}", error));
+                    log.error("Config {} has {} errors, nothing was applied", configFile, errors.size());
+                    status.failed("The config has " + errors.size() + " errors");
                     return;
                 }
 
-                BlobStore existingBlobStore = blobStoreManager.get(configBlobStore.getName());
+                apply(config, changed, configHash, live);
+                status.applied(configHash, stats.getFailed());
+                appliedSections = sections;
+                appliedManaged = managed;
+                appliedLiveState = managedLiveState(managed);
+                if (stats.getFailed() == 0) {
+                    recordApplied(configHash);
+                }
+            } finally {
+                releaseClusterLock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while applying {}", configFile);
+        } finally {
+            applyLock.unlock();
+        }
+    }
 
-                if (existingBlobStore != null) {
-                    BlobStoreConfiguration existingBlobStoreConfig = existingBlobStore.getBlobStoreConfiguration();
+    /**
+     * Re-applies the whole config if the live state drifted from what the last apply left behind, e.g. because
+     * settings were changed in the UI. Checking for drift only reads and hashes the live state the config manages.
+     */
+    public void reconcile() {
+        if (configLocation == null) {
+            log.warn("Config was never applied, nothing to reconcile");
+            return;
+        }
 
-                    if (!configBlobStore.getAttributes().get("file").get("path").equals(
-                            existingBlobStoreConfig.getAttributes().get("file").get("path")
-                    )) {
-                        log.error("Can not update .attributes.file.path for blob stores. Blob store {}, current path: {}, new path {}",
-                                configBlobStore.getName(), existingBlobStoreConfig.getAttributes().get("file").get("path"),
-                                configBlobStore.getAttributes().get("file").get("path"));
-                        return;
-                    }
+        applyLock.lock();
+        try {
+            if (managedLiveState(appliedManaged).equals(appliedLiveState)) {
+                log.info("Live state matches the applied config, nothing to reconcile");
+                return;
+            }
 
-                    if (!configBlobStore.getType().equals(existingBlobStoreConfig.getType())) {
-                        log.error("Can not update type of blob stores. Blob store {}, current type: {}, new type {}",
-                                configBlobStore.getName(), existingBlobStoreConfig.getType(),
-                                configBlobStore.getType());
-                        return;
-                    }
+            log.info("Live state drifted from the applied config, re-applying {}", configLocation);
+            appliedSections = new HashMap<>();
+            apply(configLocation);
+        } finally {
+            applyLock.unlock();
+        }
+    }
 
-                    existingBlobStoreConfig.setAttributes(configBlobStore.getAttributes());
+    private LiveState readLiveState() {
+        return LiveState.read(repositoryManager, blobStoreManager, cleanupPolicyStorage, securitySystem, capabilityRegistry,
+                selectorManager);
+    }
 
-                    try {
-                        blobStoreManager.update(existingBlobStoreConfig);
-                    } catch (Exception e) {
-                        log.error("Could not update blob store {}", configBlobStore.getName(), e);
-                    }
-                } else {
-                    BlobStoreConfiguration config = new BlobStoreConfiguration();
-                    config.setName(configBlobStore.getName());
-                    config.setAttributes(configBlobStore.getAttributes());
-                    config.setType(configBlobStore.getType());
-                    try {
-                        blobStoreManager.create(config);
-                    } catch (Exception e) {
-                        log.error("Could not create blob store {}", configBlobStore.getName(), e);
-                    }
-                }
-            });
-        } else if (repository.getPruneBlobStores() != null && repository.getPruneBlobStores()) {
-            log.warn("repository.pruneBlobStores has no effect when no blob stores are configured!");
+    /**
+     * Hash of the live entities the config manages, see {@link LiveState#managed}. Users are only read from the
+     * default source, don't query other sources like LDAP.
+     *
+     * @param managed Names of the managed entities by kind, all entities if null
+     */
+    private String managedLiveState(Map<String, Set<String>> managed) {
+        return LiveState.read(repositoryManager, blobStoreManager, cleanupPolicyStorage, securitySystem, capabilityRegistry,
+                selectorManager, UserManager.DEFAULT_SOURCE).fingerprint(managed);
+    }
 
-        }
+    /**
+     * Schedules the {@link ReconcileTask} according to NEXUS_CASC_RECONCILE_CRON or removes it if the env var is not set
+     */
+    private void scheduleReconciliation() {
+        String cron = System.getenv("NEXUS_CASC_RECONCILE_CRON");
+        List<TaskInfo> existing = taskScheduler.listsTasks().stream()
+                .filter(task -> ReconcileTaskDescriptor.TYPE_ID.equals(task.getTypeId()))
+                .collect(Collectors.toList());
 
-        if (repository.getCleanupPolicies() != null) {
-            repository.getCleanupPolicies().forEach(cp -> {
-                CleanupPolicy existingCp = cleanupPolicyStorage.get(cp.getName());
-
-                if (existingCp != null) {
-                    existingCp.setCriteria(cp.getCriteria());
-                    existingCp.setFormat(cp.getFormat());
-                    existingCp.setNotes(cp.getNotes());
-                    existingCp.setMode(cp.getMode());
-                    cleanupPolicyStorage.update(existingCp);
-                } else {
-                    cleanupPolicyStorage.add(new CleanupPolicy(cp.getName(), cp.getNotes(), cp.getFormat(), cp.getMode(), cp.getCriteria()));
-                }
+        if (cron == null || cron.trim().isEmpty()) {
+            existing.forEach(task -> {
+                log.info("Removing reconciliation task {} as NEXUS_CASC_RECONCILE_CRON is not set", task.getId());
+                task.remove();
             });
-
-            if (repository.getPruneCleanupPolicies() != null && repository.getPruneCleanupPolicies()) {
-                cleanupPolicyStorage.getAll().forEach(existingCp -> {
-                    if (repository.getCleanupPolicies().stream().noneMatch(cp -> existingCp.getName().equals(cp.getName()))) {
-                        log.info("Pruning cleanup policy {}", existingCp.getName());
-                        cleanupPolicyStorage.remove(existingCp);
-                    }
-                });
-            }
-        } else if (repository.getPruneCleanupPolicies() != null && repository.getPruneCleanupPolicies()) {
-            log.warn("repository.pruneCleanupPolicies has no effect when no cleanup policies are configured!");
+            return;
         }
 
-        if (repository.getRepositories() != null) {
-            repository.getRepositories().forEach(repoConfig -> {
-                Repository existingRepo = repositoryManager.get(repoConfig.getName());
+        TaskInfo current = existing.isEmpty() ? null : existing.get(0);
+        if (current != null && current.getSchedule() instanceof Cron
+                && cron.trim().equals(((Cron) current.getSchedule()).getCronExpression())) {
+            return;
+        }
 
-                if (existingRepo != null) {
-                    if (!existingRepo.getConfiguration().getRecipeName().equals(repoConfig.getRecipeName())) {
-                        log.error("Can not change recipeName of repo {}", repoConfig.getName());
-                        return;
-                    }
+        TaskConfiguration configuration = current != null
+                ? current.getConfiguration()
+                : taskScheduler.createTaskConfigurationInstance(ReconcileTaskDescriptor.TYPE_ID);
+        configuration.setName(ReconcileTaskDescriptor.NAME);
 
-                    Configuration configuration = existingRepo.getConfiguration();
-                    configuration.setAttributes(repoConfig.getAttributes());
+        try {
+            taskScheduler.scheduleTask(configuration, taskScheduler.getScheduleFactory().cron(new Date(), cron.trim()));
+            log.info("Scheduled reconciliation with cron {}", cron.trim());
+        } catch (RuntimeException e) {
+            log.error("Failed to schedule reconciliation with cron {}", cron, e);
+        }
+    }
 
-                    patchRepoAttributes(repoConfig.getAttributes());
+    /**
+     * Applies the given sections of the config
+     *
+     * @param config     The config
+     * @param sections   The top level sections to apply
+     * @param configHash The hash of the config, identifies the config in the journal
+     * @param live       The live state the config was validated against, roles, privileges and content selectors are
+     *                   compared to it
+     */
+    private void apply(Config config, Set<String> sections, String configHash, LiveState live) throws InterruptedException {
+        beginJournal(configHash);
+        stats = new ApplyStats(metrics);
+        ApplyScheduler scheduler = newScheduler();
+        status.applying(scheduler);
 
-                    if (repoConfig.getOnline() != null) {
-                        configuration.setOnline(repoConfig.getOnline());
-                    }
+        ConfigCore core = config.getCore();
+        if (core != null && sections.contains("core")) {
+            applyCoreConfig(scheduler, core);
+        }
 
-                    try {
-                        repositoryManager.update(configuration);
-                    } catch (Exception e) {
-                        log.error("Failed to update repo {}", repoConfig.getName(), e);
-                    }
-                } else {
-                    Configuration configuration = new Configuration();
-                    configuration.setRepositoryName(repoConfig.getName());
-                    configuration.setRecipeName(repoConfig.getRecipeName());
-                    configuration.setAttributes(repoConfig.getAttributes());
-                    configuration.setOnline(repoConfig.getOnline() != null ? repoConfig.getOnline() : true);
+        ConfigSecurity security = config.getSecurity();
+        if (security != null && sections.contains("security")) {
+            applySecurityConfig(scheduler, security, live);
+        }
 
-                    patchRepoAttributes(repoConfig.getAttributes());
+        ConfigRepository repository = config.getRepository();
+        if (repository != null && sections.contains("repository")) {
+            applyRepositoryConfig(scheduler, repository);
+        }
 
-                    try {
-                        repositoryManager.create(configuration);
-                    } catch (Exception e) {
-                        log.error("Failed to create repo {}", repoConfig.getName(), e);
-                    }
-                }
-            });
+        List<ConfigCapability> capabilities = config.getCapabilities();
+        if (capabilities != null && sections.contains("capabilities")) {
+            applyCapabilitiesConfig(scheduler, capabilities);
+        }
 
-            if (repository.getPruneRepositories() != null && repository.getPruneRepositories()) {
-                repositoryManager.browse().forEach(existingRepo -> {
-                    if (repository.getRepositories().stream().noneMatch(repo -> existingRepo.getName().equals(repo.getName()))) {
-                        log.info("Pruning repository {}", existingRepo.getName());
-                        log.info(existingRepo.getConfiguration().toString());
-                        try {
-                            repositoryManager.delete(existingRepo.getName());
-                        } catch (Exception e) {
-                            log.error("Failed to delete repo {}", existingRepo.getName(), e);
-                        }
-                    }
-                });
-            }
-        } else if (repository.getPruneRepositories() != null && repository.getPruneRepositories()) {
-            log.warn("repository.pruneRepositories has no effect when no repositories are configured!");
+        ConfigTasks tasks = config.getTasks();
+        if (tasks != null && sections.contains("tasks")) {
+            applyTasksConfig(scheduler, tasks);
         }
 
-        // we prune blob stores here as pruned repos might rely on them
-        if (repository.getBlobStores() != null && repository.getPruneBlobStores() != null && repository.getPruneBlobStores()) {
-            blobStoreManager.browse().forEach(existingBlobStore -> {
-                String name = existingBlobStore.getBlobStoreConfiguration().getName();
-                if (repository.getBlobStores().stream().noneMatch(blobStore -> blobStore.getName().equals(name))) {
-                    log.info("pruning blob store {}", name);
-                    try {
-                        blobStoreManager.delete(name);
-                    } catch (Exception e) {
-                        log.error("Failed to prune blob store {}", name, e);
-                    }
-                }
-            });
+        ApplyMetrics.Phase phase = metrics.time(ApplyMetrics.APPLY);
+        try {
+            scheduler.run();
+        } finally {
+            phase.close();
         }
+
+        bringOnline();
+        fingerprints.save();
+        endJournal();
+        stats.log(log);
     }
 
-    private void patchRepoAttributes(Map<String, Map<String, Object>> attributes) {
-        Map<String, Object> cleanup = attributes.get("cleanup");
+    /**
+     * Applies a single config file while it is read. Users, blob stores, cleanup policies, repositories and
+     * capabilities are scheduled as soon as their entry was read, everything that needs the whole config (like
+     * pruning) is scheduled once the file was read completely. Nothing is pruned if the file can't be read.
+     *
+     * @param configFile The config file
+     */
+    private void applyStreaming(Path configFile) throws InterruptedException {
+        String configHash;
+        try {
+            // the journal needs the hash before the first entry is applied, hashing is cheap compared to applying
+            configHash = sha256(configFile);
+        } catch (IOException e) {
+            log.error("Failed to read config file {}", configFile, e);
+            status.failed("Failed to read the config");
+            return;
+        }
 
-        if (cleanup != null) {
-            Object policyName = cleanup.get("policyName");
+        // the managed entities are only known once the file was read, all entities are compared
+        if (!leadApply(configHash, null)) {
+            return;
+        }
 
-            if (policyName != null) {
-                if (policyName instanceof String) {
-                    log.warn("repository.repositories[].attributes.cleanup.policyName should be a list as of Nexus 3.19.1, converting it for you");
-                    HashSet<Object> set = new HashSet<>();
-                    set.add(policyName);
-                    cleanup.put("policyName", set);
-                } else if (policyName instanceof List) {
-                    cleanup.put("policyName", new HashSet<>((Collection<Object>) policyName));
-                }
+        try {
+            boolean complete = applyStreaming(configFile, configHash);
+            appliedManaged = null;
+            appliedLiveState = managedLiveState(null);
+            if (complete) {
+                recordApplied(configHash);
             }
+        } finally {
+            releaseClusterLock();
         }
     }
 
     /**
-     * Hack approach to SecurityApiImpl.getSecuritySystem as we can't use that class as otherwise
-     * the osgi subsystem will yell at us 🤦‍
+     * @return true if the whole file was read and applied without failures
      */
-    private SecuritySystem resolveSecuritySystem(SecurityApi securityApi) throws InvocationTargetException, IllegalAccessException, NoSuchMethodException {
-        Method m = securityApi.getClass().getMethod("getSecuritySystem");
-        return (SecuritySystem) m.invoke(securityApi);
-    }
+    private boolean applyStreaming(Path configFile, String configHash) throws InterruptedException {
+        beginJournal(configHash);
+        stats = new ApplyStats(metrics);
+        ApplyScheduler scheduler = newScheduler();
+        status.applying(scheduler);
+        ApplyMetrics.Phase phase = metrics.time(ApplyMetrics.APPLY);
+        scheduler.start();
 
-    /**
-     * Apply all configs related to security
-     *
-     * @param security The security config
-     */
-    private void applySecurityConfig(ConfigSecurity security) {
-        if (security.getAnonymousAccess() != null) {
-            securityApi.setAnonymousAccess(security.getAnonymousAccess());
-        }
+        Map<String, CapabilityReference> existingCapabilities = capabilityIndex();
+        Map<String, Set<String>> names = new HashMap<>();
+        ConfigStreamReader reader = new ConfigStreamReader(interpolator);
 
-        if (security.getRealms() != null) {
-            security.getRealms().forEach(realm -> {
-                if (realm.getEnabled() != null) {
-                    if (realm.getEnabled()) {
-                        realmManager.enableRealm(realm.getName(), true);
-                    } else {
-                        realmManager.disableRealm(realm.getName());
-                    }
-                } else {
-                    log.warn("Passing a realm with enabled: null doesn't make sense...");
+        Config config = null;
+        try (Reader in = Files.newBufferedReader(configFile, StandardCharsets.UTF_8)) {
+            config = reader.read(in, (list, entry) -> {
+                if (entry instanceof ConfigSecurityUser) {
+                    ConfigSecurityUser user = (ConfigSecurityUser) entry;
+                    names.computeIfAbsent(list, k -> new HashSet<>()).add(user.getUsername());
+                    // roles are read after the users, the user waits for those it has
+                    scheduleUser(scheduler, user, null);
+                } else if (entry instanceof ConfigBlobStore) {
+                    ConfigBlobStore blobStore = (ConfigBlobStore) entry;
+                    names.computeIfAbsent(list, k -> new HashSet<>()).add(blobStore.getName());
+                    scheduleBlobStore(scheduler, blobStore);
+                } else if (entry instanceof ConfigCleanupPolicy) {
+                    ConfigCleanupPolicy cleanupPolicy = (ConfigCleanupPolicy) entry;
+                    names.computeIfAbsent(list, k -> new HashSet<>()).add(cleanupPolicy.getName());
+                    scheduleCleanupPolicy(scheduler, cleanupPolicy);
+                } else if (entry instanceof ConfigRepositoryEntry) {
+                    ConfigRepositoryEntry repoConfig = (ConfigRepositoryEntry) entry;
+                    names.computeIfAbsent(list, k -> new HashSet<>()).add(repoConfig.getName());
+                    scheduleRepository(scheduler, repoConfig);
+                } else if (entry instanceof ConfigCapability) {
+                    scheduleCapability(scheduler, (ConfigCapability) entry, existingCapabilities);
                 }
             });
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to read config file {}, only applying the entries read so far", configFile, e);
         }
 
-        if (security.getUsers() != null) {
-            security.getUsers().forEach(userConfig -> {
-                User existingUser = null;
-                try {
-                    existingUser = securitySystem.getUser(userConfig.getUsername());
-                } catch (UserNotFoundException e) {
-                    // ignore
+        if (config != null) {
+            if (config.getCore() != null) {
+                applyCoreConfig(scheduler, config.getCore());
+            }
+
+            ConfigSecurity security = config.getSecurity();
+            if (security != null) {
+                applySecuritySettings(scheduler, security);
+                if (security.getContentSelectors() != null || security.getPrivileges() != null || security.getRoles() != null) {
+                    applyAuthorization(scheduler, security, readLiveState());
                 }
+                pruneSecurityConfig(scheduler, security, security.getUsers() == null ? null
+                        : names.getOrDefault("security.users", new HashSet<>()));
+            }
 
-                if (existingUser != null) {
-                    log.info("User {} already exists. Patching it...", userConfig.getUsername());
-                    existingUser.setFirstName(userConfig.getFirstName());
-                    existingUser.setLastName(userConfig.getLastName());
-                    existingUser.setEmailAddress(userConfig.getEmail());
-
-                    if (userConfig.getActive() != null) {
-                        if (userConfig.getActive()) {
-                            if (existingUser.getStatus() == UserStatus.disabled) {
-                                log.info("Reactivating user {}", existingUser.getUserId());
-                                existingUser.setStatus(UserStatus.active);
-                            } else if (existingUser.getStatus() != UserStatus.active) {
-                                log.error("Can not activate user {} ({}) with state {}", existingUser.getUserId(), existingUser.getSource(), existingUser.getStatus());
-                            }
-                        } else {
-                            if (existingUser.getStatus() != UserStatus.disabled) {
-                                log.info("Disabling user {} ({}) with state {}", existingUser.getUserId(), existingUser.getSource(), existingUser.getStatus());
-                                existingUser.setStatus(UserStatus.disabled);
-                            }
-                        }
-                    }
+            ConfigRepository repository = config.getRepository();
+            if (repository != null) {
+                pruneRepositoryConfig(scheduler, repository,
+                        repository.getBlobStores() == null ? null : names.getOrDefault("repository.blobStores", new HashSet<>()),
+                        repository.getCleanupPolicies() == null ? null : names.getOrDefault("repository.cleanupPolicies", new HashSet<>()),
+                        repository.getRepositories() == null ? null : names.getOrDefault("repository.repositories", new HashSet<>()));
+            }
 
-                    if (userConfig.getUpdateExistingPassword() != null && userConfig.getUpdateExistingPassword()) {
-                        try {
-                            securitySystem.changePassword(existingUser.getUserId(), userConfig.getPassword());
-                        } catch (UserNotFoundException e) {
-                            log.error("Failed to update password of user {}", existingUser.getUserId(), e);
-                        }
-                    }
+            if (config.getTasks() != null) {
+                applyTasksConfig(scheduler, config.getTasks());
+            }
+        }
 
-                    existingUser.setRoles(userConfig.getRoles().stream().map(r -> new RoleIdentifier(r.getSource(), r.getRole())).collect(Collectors.toSet()));
-                    try {
-                        securitySystem.updateUser(existingUser);
-                    } catch (UserNotFoundException | NoSuchUserManagerException e) {
-                        log.error("Could not update user {}", userConfig.getUsername(), e);
-                    }
-                } else {
-                    log.info("User {} does not yet exist. Creating it...", userConfig.getUsername());
-                    securityApi.addUser(
-                            userConfig.getUsername(),
-                            userConfig.getFirstName(),
-                            userConfig.getLastName(),
-                            userConfig.getEmail(),
-                            userConfig.getActive() != null ? userConfig.getActive() : true,
-                            userConfig.getPassword(),
-                            userConfig.getRoles().stream().map(ConfigSecurityRole::getRole).collect(Collectors.toList())
-                    );
-                }
-            });
+        if (watcher != null) {
+            List<Path> watched = new ArrayList<>(reader.getReferencedFiles());
+            watched.add(configFile);
+            watcher.watch(watched);
+        }
 
-            if (security.getPruneUsers() != null && security.getPruneUsers()) {
-                Set<User> existingUsers = securitySystem.searchUsers(new UserSearchCriteria());
-
-                existingUsers.forEach(existingUser -> {
-                    if (security.getUsers().stream().noneMatch(u -> existingUser.getUserId().equals(u.getUsername()))) {
-                        log.info("Pruning user {} ...", existingUser.getUserId());
-                        try {
-                            securitySystem.deleteUser(existingUser.getUserId(), existingUser.getSource());
-                        } catch (NoSuchUserManagerException | UserNotFoundException e) {
-                            log.error("Failed to prune user {} ({})", existingUser.getUserId(), existingUser.getSource(), e);
-                        }
-                    }
-                });
+        try {
+            scheduler.finish();
+        } finally {
+            phase.close();
+        }
+
+        bringOnline();
+        fingerprints.save();
+        stats.log(log);
+
+        if (config != null) {
+            endJournal();
+            status.applied(configHash, stats.getFailed());
+        } else {
+            // entries that were applied don't need to be applied again once the file can be read
+            if (journal != null) {
+                journal.close();
             }
-        } else if (security.getPruneUsers() != null && security.getPruneUsers()) {
-            log.error("security.pruneUsers has no effect when not specifying any users!");
+            status.failed("Failed to read the config");
         }
+        return config != null && stats.getFailed() == 0;
     }
 
+    /**
+     * Waits until this node may apply the config with the given hash if NEXUS_CASC_CLUSTER_DIR is set. If another
+     * node of the cluster applied the same config in the meantime, this node only verifies that its live state matches
+     * what that node recorded.
+     *
+     * @param managed Names of the entities the config manages by kind, all entities if null
+     * @return true if this node has to apply the config, it then holds the cluster lock until
+     * {@link #releaseClusterLock()}
+     */
+    private boolean leadApply(String configHash, Map<String, Set<String>> managed) throws InterruptedException {
+        if (clusterLock == null) {
+            return true;
+        }
+
+        AtomicReference<String> live = new AtomicReference<>();
+        try {
+            if (clusterLock.acquireOrAwait(configHash, recorded -> {
+                live.set(managedLiveState(managed));
+                return live.get().equals(recorded);
+            })) {
+                return true;
+            }
+        } catch (IOException e) {
+            log.error("Failed to coordinate with the cluster, applying the config on this node", e);
+            return true;
+        }
 
+        log.info("Config {} was applied by another node and the live state matches, nothing to apply", configHash);
+        appliedManaged = managed;
+        appliedLiveState = live.get();
+        status.applied(configHash, 0);
+        return false;
+    }
+
+    /**
+     * Records the config as applied for the other nodes of the cluster, they don't apply it again
+     */
+    private void recordApplied(String configHash) {
+        if (clusterLock == null) {
+            return;
+        }
+        try {
+            clusterLock.recordApplied(configHash, appliedLiveState);
+        } catch (IOException e) {
+            log.error("Failed to record the applied config, other nodes of the cluster will apply it again", e);
+        }
+    }
+
+    private void releaseClusterLock() {
+        if (clusterLock != null) {
+            clusterLock.release();
+        }
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            byte[] buffer = new byte[8192];
+            while (in.read(buffer) >= 0) {
+                // only digesting
+            }
+        }
+        return Fingerprints.hex(digest.digest());
+    }
+
+    /**
+     * Starts journaling an apply, resuming an interrupted apply of the same config
+     */
+    private void beginJournal(String configHash) {
+        if (journal != null) {
+            journal.begin(configHash);
+            offlineRepositories.putAll(journal.getCreatedOffline());
+        }
+    }
+
+    private void endJournal() {
+        if (journal != null) {
+            journal.end();
+        }
+    }
+
+    /**
+     * Brings the repositories online that were created offline while applying the config in the background
+     */
+    private void bringOnline() {
+        offlineRepositories.forEach((name, definition) -> {
+            Repository repository = repositoryManager.get(name);
+            if (repository == null) {
+                return;
+            }
+
+            String key = "repository:" + name;
+            Configuration configuration = repository.getConfiguration();
+            configuration.setOnline(true);
+            try {
+                repositoryManager.update(configuration);
+                fingerprints.record(key, definition, Fingerprints.of(repositoryManager.get(name).getConfiguration()));
+                log.info("Repository {} is online", name);
+            } catch (Exception e) {
+                log.error("Failed to bring repo {} online", name, e);
+                fingerprints.forget(key);
+                stats.failed("repository");
+            }
+        });
+        offlineRepositories.clear();
+    }
+
+    private ApplyScheduler newScheduler() {
+        return new ApplyScheduler(workers())
+                .stats(stats)
+                .journal(journal)
+                .limit(CORE_API, 1)
+                .limit(BLOB_STORE_MANAGER, 1)
+                .limit(CLEANUP_POLICY_STORAGE, 2)
+                .limit(REPOSITORY_MANAGER, 4)
+                .limit(SECURITY_SYSTEM, 2)
+                .limit(SECURITY_CONFIGURATION_MANAGER, 1)
+                .limit(SELECTOR_MANAGER, 1)
+                .limit(REALM_MANAGER, 1)
+                .limit(CAPABILITY_REGISTRY, 1)
+                .limit(TASK_SCHEDULER, 1);
+    }
+
+    /**
+     * Fingerprints of the top level sections of the interpolated config
+     */
+    private static Map<String, String> sectionFingerprints(ConfigLoader.Loaded loaded) {
+        Map<String, String> sections = new HashMap<>();
+        for (String section : SECTIONS) {
+            sections.put(section, loaded.fingerprint(section));
+        }
+        return sections;
+    }
+
+    private long watchDebounce() {
+        String debounce = System.getenv("NEXUS_CASC_WATCH_DEBOUNCE");
+        if (debounce != null) {
+            try {
+                return Long.parseLong(debounce.trim());
+            } catch (NumberFormatException e) {
+                log.error("Env var NEXUS_CASC_WATCH_DEBOUNCE must be a number of milliseconds, got {}", debounce);
+            }
+        }
+        return 2000;
+    }
+
+    /**
+     * Milliseconds a cluster lock stays valid without being renewed, configured in seconds through
+     * NEXUS_CASC_CLUSTER_LEASE
+     */
+    private long clusterLease() {
+        String lease = System.getenv("NEXUS_CASC_CLUSTER_LEASE");
+        if (lease != null) {
+            try {
+                return TimeUnit.SECONDS.toMillis(Long.parseLong(lease.trim()));
+            } catch (NumberFormatException e) {
+                log.error("Env var NEXUS_CASC_CLUSTER_LEASE must be a number of seconds, got {}", lease);
+            }
+        }
+        return TimeUnit.SECONDS.toMillis(60);
+    }
+
+    /**
+     * Computes what applying the config would change and writes it as JSON instead of applying it
+     *
+     * @param config The config to plan
+     */
+    private void writePlan(Config config) {
+        LiveState live = readLiveState();
+        ConfigValidator.validate(config, live).forEach(error -> log.error("Invalid config: {}", error));
+        Plan plan = Planner.plan(config, live, user -> passwordChanges(user.getUsername(), user));
+
+        String planFile = System.getenv("NEXUS_CASC_PLAN_FILE");
+        Path path = planFile != null
+                ? Paths.get(planFile)
+                : applicationDirectories.getWorkDirectory("casc").toPath().resolve("plan.json");
+
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            plan.writeJson(writer);
+        } catch (IOException e) {
+            log.error("Failed to write plan to {}", path, e);
+            return;
+        }
+
+        plan.getOperations().forEach(operation -> log.info("Plan: {}", operation));
+        log.info("Plan with {} creates, {} updates, {} deletes and {} unchanged entities written to {}, nothing was applied",
+                plan.count(Plan.Action.CREATE), plan.count(Plan.Action.UPDATE), plan.count(Plan.Action.DELETE),
+                plan.getUnchanged(), path);
+    }
+
+    /**
+     * Writes the live blob stores, cleanup policies, repositories, realms, content selectors, privileges, roles, users
+     * and capabilities as a config to NEXUS_CASC_EXPORT_FILE, without applying anything
+     */
+    private void exportConfig() {
+        String exportFile = System.getenv("NEXUS_CASC_EXPORT_FILE");
+        Path path = exportFile != null
+                ? Paths.get(exportFile)
+                : applicationDirectories.getWorkDirectory("casc").toPath().resolve("export.yml");
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try {
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                exportTo(writer);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to export the config to {}", path, e);
+            return;
+        }
+        log.info("Exported the config to {}, nothing was applied", path);
+    }
+
+    /**
+     * Writes the live state as a config, the benchmarks export through this method
+     */
+    void exportTo(Writer writer) throws IOException {
+        // only users of the default source can be configured, don't query other sources like LDAP
+        UserSearchCriteria criteria = new UserSearchCriteria();
+        criteria.setSource(UserManager.DEFAULT_SOURCE);
+        RealmConfiguration realms = realmManager.getConfiguration();
+        Set<Role> roles;
+        try {
+            roles = securitySystem.listRoles(UserManager.DEFAULT_SOURCE);
+        } catch (NoSuchAuthorizationManagerException e) {
+            throw new IllegalStateException("The default authorization manager is missing", e);
+        }
+
+        new ConfigExporter(writer).export(
+                mapped(blobStoreManager.browse(), BlobStore::getBlobStoreConfiguration),
+                cleanupPolicyStorage.getAll(),
+                mapped(repositoryManager.browse(), Repository::getConfiguration),
+                realms == null ? Collections.emptyList() : realms.getRealmNames(),
+                selectorManager.browse(),
+                securitySystem.listPrivileges(),
+                roles,
+                securitySystem.searchUsers(criteria),
+                mapped(capabilityRegistry.getAll(), reference -> LiveState.Capability.of(reference.context())));
+    }
+
+    /**
+     * A view of the given entities that converts them while they are iterated
+     */
+    private static <S, T> Iterable<T> mapped(Iterable<? extends S> entities, Function<S, T> mapper) {
+        return () -> StreamSupport.stream(entities.spliterator(), false).<T>map(mapper).iterator();
+    }
+
+    /**
+     * Number of threads applying the config, configured through NEXUS_CASC_WORKERS. 1 applies everything serially.
+     */
+    private int workers() {
+        String workers = System.getenv("NEXUS_CASC_WORKERS");
+        if (workers != null) {
+            try {
+                return Integer.parseInt(workers.trim());
+            } catch (NumberFormatException e) {
+                log.error("Env var NEXUS_CASC_WORKERS must be a number, got {}", workers);
+            }
+        }
+        return Math.min(4, Runtime.getRuntime().availableProcessors());
+    }
+
+    private void applyCoreConfig(ApplyScheduler scheduler, ConfigCore core) {
+        scheduler.add("core", CORE_API, Collections.emptyList(), () -> {
+            applyBaseUrlConfig(core);
+            applyProxyConfig(core);
+        });
+    }
+
+    private void applyBaseUrlConfig(ConfigCore core) {
+        if (core.getBaseUrl() != null) {
+            String baseUrl = core.getBaseUrl().trim();
+            log.debug("Setting baseUrl to {}", baseUrl);
+            coreApi.baseUrl(baseUrl);
+        }
+    }
+
+    private void applyProxyConfig(ConfigCore core) {
+        if (core.getHttpProxy() != null && !core.getHttpProxy().trim().isEmpty()) {
+            // TODO: support basic & ntlm auth
+            try {
+                String proxyUrlString = core.getHttpProxy().trim();
+                URL proxyUrl = new URL(proxyUrlString);
+                log.info("Setting httpProxy to {} {}", proxyUrl.getHost(), proxyUrl.getPort());
+                coreApi.httpProxy(proxyUrl.getHost(), proxyUrl.getPort());
+            } catch (MalformedURLException e) {
+                log.error("Failed to parse http proxy URL {}", core.getHttpProxy().trim(), e);
+            }
+        }
+
+        if (core.getHttpsProxy() != null && !core.getHttpsProxy().trim().isEmpty()) {
+            // TODO: support basic & ntlm auth
+            try {
+                String proxyUrlString = core.getHttpProxy().trim();
+                URL proxyUrl = new URL(proxyUrlString);
+                log.info("Setting httpsProxy to {} {}", proxyUrl.getHost(), proxyUrl.getPort());
+                coreApi.httpsProxy(proxyUrl.getHost(), proxyUrl.getPort());
+            } catch (MalformedURLException e) {
+                log.error("Failed to parse https proxy URL {}", core.getHttpsProxy().trim(), e);
+            }
+        }
+
+        if (core.getNonProxyHosts() != null && !core.getNonProxyHosts().trim().isEmpty()) {
+            String noProxyHostsString = core.getNonProxyHosts().trim();
+            String[] noProxyHosts = Arrays.stream(noProxyHostsString.split(","))
+                    .map(String::trim)
+                    .filter(host -> !host.isEmpty())
+                    .toArray(String[]::new);
+
+            log.info("Setting nonProxyHosts to {}", String.join(",", noProxyHosts));
+            coreApi.nonProxyHosts(noProxyHosts);
+        }
+    }
+
+    private void applyCapabilitiesConfig(ApplyScheduler scheduler, List<ConfigCapability> capabilities) {
+        Map<String, CapabilityReference> existingByType = capabilityIndex();
+        capabilities.forEach(capabilityConfig -> scheduleCapability(scheduler, capabilityConfig, existingByType));
+    }
+
+    /**
+     * Existing capabilities by type, like before only the first capability of a type is updated
+     */
+    private Map<String, CapabilityReference> capabilityIndex() {
+        return Reconciliation.index(capabilityRegistry.getAll(), cap -> cap.context().type().toString());
+    }
+
+    private void scheduleCapability(ApplyScheduler scheduler, ConfigCapability capabilityConfig, Map<String, CapabilityReference> existingByType) {
+        scheduler.add("capability:" + capabilityConfig.getType(), CAPABILITY_REGISTRY, Collections.emptyList(), () -> {
+            try {
+                applyCapability(capabilityConfig, existingByType.get(capabilityConfig.getType()));
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                log.error("Could not apply capability of type {}", capabilityConfig.getType(), e);
+                stats.failed("capability");
+            }
+        });
+    }
+
+    private void applyCapability(ConfigCapability capabilityConfig, CapabilityReference existing) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        CapabilityType type = CapabilityType.capabilityType(capabilityConfig.getType());
+        log.info("type={}", type.toString());
+
+        String key = "capability:" + capabilityConfig.getType();
+        String definition = Fingerprints.of(capabilityConfig.getEnabled(), capabilityConfig.getNotes(), capabilityConfig.getAttributes());
+
+        if (existing != null) {
+            if (fingerprints.matches(key, definition, Fingerprints.of(existing.context()))) {
+                log.debug("Capability of type {} is unchanged, skipping", capabilityConfig.getType());
+                stats.skipped("capability");
+                return;
+            }
+
+            // updating a capability re-activates it, so only do it when something really differs
+            if (LiveState.Capability.of(existing.context()).matches(capabilityConfig)) {
+                log.debug("Capability of type {} matches its live configuration, skipping update", capabilityConfig.getType());
+                fingerprints.record(key, definition, Fingerprints.of(existing.context()));
+                stats.skipped("capability");
+                return;
+            }
+
+            boolean enabled = capabilityConfig.getEnabled() == null ? existing.context().isEnabled() : capabilityConfig.getEnabled();
+            CapabilityIdentity id = getCapabilityId(existing);
+
+            log.info("Updating capability of type {} and id {}", capabilityConfig.getType(), id);
+
+            CapabilityReference updated = capabilityRegistry.update(
+                    id,
+                    enabled,
+                    capabilityConfig.getNotes(),
+                    capabilityConfig.getAttributes()
+            );
+            fingerprints.record(key, definition, Fingerprints.of(updated.context()));
+        } else {
+            log.info("Creating capability of type {}", capabilityConfig.getType());
+
+            boolean enabled = capabilityConfig.getEnabled() == null ? true : capabilityConfig.getEnabled();
+            CapabilityReference created = capabilityRegistry.add(
+                    type,
+                    enabled,
+                    capabilityConfig.getNotes(),
+                    capabilityConfig.getAttributes()
+            );
+            fingerprints.record(key, definition, Fingerprints.of(created.context()));
+        }
+        if (existing != null) {
+            stats.updated("capability");
+        } else {
+            stats.created("capability");
+        }
+    }
+
+    private CapabilityIdentity getCapabilityId(CapabilityReference existing) throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
+        return (CapabilityIdentity) invokeAccessor(CAPABILITY_ID_ACCESSORS, existing, "id");
+    }
+
+    /**
+     * Invokes a public no-arg method of an implementation class we can't link against. The method is looked up once
+     * per class and cached as a {@link MethodHandle}.
+     */
+    static Object invokeAccessor(Map<Class<?>, MethodHandle> accessors, Object target, String name) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+        MethodHandle accessor = accessors.get(target.getClass());
+        if (accessor == null) {
+            accessor = MethodHandles.lookup().unreflect(target.getClass().getMethod(name));
+            accessors.put(target.getClass(), accessor);
+        }
+
+        try {
+            return accessor.invoke(target);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new InvocationTargetException(e);
+        }
+    }
+
+    /**
+     * Schedules the configured tasks, tasks without a cron are staggered across the window of their type (see
+     * {@link TaskStaggerer}). Tasks wait for the blob store or repository they work on.
+     *
+     * @param scheduler The scheduler to add the work to
+     * @param tasks     The tasks config
+     */
+    private void applyTasksConfig(ApplyScheduler scheduler, ConfigTasks tasks) {
+        TaskStaggerer staggerer = new TaskStaggerer(tasks.getStagger());
+        Map<String, String> staggered = tasks.getTasks() == null ? Collections.emptyMap() : staggerer.crons(tasks.getTasks());
+        staggerer.getErrors().forEach(error -> log.error("Invalid task stagger: {}", error));
+
+        Map<String, TaskInfo> existing = Reconciliation.index(taskScheduler.listsTasks(), TaskInfo::getName);
+
+        if (tasks.getTasks() != null) {
+            for (ConfigTask task : tasks.getTasks()) {
+                String cron = task.getCron() != null && !task.getCron().trim().isEmpty()
+                        ? task.getCron().trim()
+                        : staggered.get(task.getName());
+                scheduler.add("task:" + task.getName(), TASK_SCHEDULER, taskDependencies(task),
+                        () -> applyTask(task, cron, existing.get(task.getName())));
+            }
+        }
+
+        if (tasks.getPruneTasks() != null && tasks.getPruneTasks()) {
+            if (tasks.getTasks() != null) {
+                Set<String> names = Reconciliation.names(tasks.getTasks(), ConfigTask::getName);
+                scheduler.add("prune:tasks", TASK_SCHEDULER, scheduler.ids("task:"), () -> pruneTasks(names));
+            } else {
+                log.error("tasks.pruneTasks has no effect when not specifying any tasks!");
+            }
+        }
+    }
+
+    private static List<String> taskDependencies(ConfigTask task) {
+        List<String> dependencies = new ArrayList<>();
+        if (task.getProperties() != null) {
+            if (task.getProperties().get("blobstoreName") != null) {
+                dependencies.add("blobStore:" + task.getProperties().get("blobstoreName"));
+            }
+            if (task.getProperties().get("repositoryName") != null) {
+                dependencies.add("repository:" + task.getProperties().get("repositoryName"));
+            }
+        }
+        return dependencies;
+    }
+
+    private void applyTask(ConfigTask task, String cron, TaskInfo existing) {
+        if (cron == null) {
+            log.error("Task {} has no cron and could not be staggered, skipping", task.getName());
+            stats.failed("task");
+            return;
+        }
+        if (existing != null && !existing.getTypeId().equals(task.getType())) {
+            log.error("Task {} exists with type {}, it can't be changed to {}", task.getName(), existing.getTypeId(), task.getType());
+            stats.failed("task");
+            return;
+        }
+
+        boolean enabled = task.getEnabled() == null || task.getEnabled();
+        Map<String, String> properties = task.getProperties() == null ? Collections.emptyMap() : task.getProperties();
+
+        if (existing != null && existing.getSchedule() instanceof Cron
+                && cron.equals(((Cron) existing.getSchedule()).getCronExpression())
+                && existing.getConfiguration().isEnabled() == enabled
+                && properties.entrySet().stream().allMatch(property ->
+                        Objects.equals(property.getValue(), existing.getConfiguration().getString(property.getKey())))) {
+            log.debug("Task {} is unchanged, skipping", task.getName());
+            stats.skipped("task");
+            return;
+        }
+
+        TaskConfiguration configuration = existing != null
+                ? existing.getConfiguration()
+                : taskScheduler.createTaskConfigurationInstance(task.getType());
+        configuration.setName(task.getName());
+        configuration.setEnabled(enabled);
+        properties.forEach(configuration::setString);
+
+        log.info("{} task {} of type {} with cron {}", existing != null ? "Updating" : "Creating", task.getName(),
+                task.getType(), cron);
+        taskScheduler.scheduleTask(configuration, taskScheduler.getScheduleFactory().cron(new Date(), cron));
+        if (existing != null) {
+            stats.updated("task");
+        } else {
+            stats.created("task");
+        }
+    }
+
+    /**
+     * Removes the tasks that are visible in the UI and not configured, except the reconciliation task
+     */
+    private void pruneTasks(Set<String> tasks) {
+        Reconciliation.obsolete(taskScheduler.listsTasks(), TaskInfo::getName, tasks).forEach(task -> {
+            if (!task.getConfiguration().isVisible() || ReconcileTaskDescriptor.TYPE_ID.equals(task.getTypeId())) {
+                return;
+            }
+            log.info("Pruning task {} of type {}", task.getName(), task.getTypeId());
+            task.remove();
+        });
+    }
+
+    /**
+     * Schedules blob stores, cleanup policies and repositories. Repositories wait for the blob store and cleanup
+     * policies they use, group repositories wait for their members and pruning waits for everything it might affect.
+     *
+     * @param scheduler  The scheduler to add the work to
+     * @param repository The repository config
+     */
+    private void applyRepositoryConfig(ApplyScheduler scheduler, ConfigRepository repository) {
+        if (repository.getBlobStores() != null) {
+            repository.getBlobStores().forEach(configBlobStore -> scheduleBlobStore(scheduler, configBlobStore));
+        }
+
+        if (repository.getCleanupPolicies() != null) {
+            repository.getCleanupPolicies().forEach(cp -> scheduleCleanupPolicy(scheduler, cp));
+        }
+
+        if (repository.getRepositories() != null) {
+            repository.getRepositories().forEach(repoConfig -> scheduleRepository(scheduler, repoConfig));
+        }
+
+        pruneRepositoryConfig(scheduler, repository,
+                repository.getBlobStores() == null ? null : Reconciliation.names(repository.getBlobStores(), ConfigBlobStore::getName),
+                repository.getCleanupPolicies() == null ? null : Reconciliation.names(repository.getCleanupPolicies(), ConfigCleanupPolicy::getName),
+                repository.getRepositories() == null ? null : Reconciliation.names(repository.getRepositories(), ConfigRepositoryEntry::getName));
+    }
+
+    private void scheduleBlobStore(ApplyScheduler scheduler, ConfigBlobStore configBlobStore) {
+        scheduler.add("blobStore:" + configBlobStore.getName(), BLOB_STORE_MANAGER, Collections.emptyList(),
+                () -> applyBlobStore(configBlobStore));
+    }
+
+    private void scheduleCleanupPolicy(ApplyScheduler scheduler, ConfigCleanupPolicy cp) {
+        scheduler.add("cleanupPolicy:" + cp.getName(), CLEANUP_POLICY_STORAGE, Collections.emptyList(),
+                () -> applyCleanupPolicy(cp));
+    }
+
+    private void scheduleRepository(ApplyScheduler scheduler, ConfigRepositoryEntry repoConfig) {
+        scheduler.add("repository:" + repoConfig.getName(), REPOSITORY_MANAGER, repositoryDependencies(repoConfig),
+                () -> applyRepository(repoConfig));
+    }
+
+    /**
+     * Schedules pruning of blob stores, cleanup policies and repositories once all of them were added to the scheduler
+     *
+     * @param scheduler       The scheduler to add the work to
+     * @param repository      The repository config
+     * @param blobStores      Names of the configured blob stores, null if none are configured
+     * @param cleanupPolicies Names of the configured cleanup policies, null if none are configured
+     * @param repositories    Names of the configured repositories, null if none are configured
+     */
+    private void pruneRepositoryConfig(ApplyScheduler scheduler, ConfigRepository repository, Set<String> blobStores,
+                                       Set<String> cleanupPolicies, Set<String> repositories) {
+        if (blobStores == null && repository.getPruneBlobStores() != null && repository.getPruneBlobStores()) {
+            log.warn("repository.pruneBlobStores has no effect when no blob stores are configured!");
+        }
+
+        if (cleanupPolicies == null && repository.getPruneCleanupPolicies() != null && repository.getPruneCleanupPolicies()) {
+            log.warn("repository.pruneCleanupPolicies has no effect when no cleanup policies are configured!");
+        }
+
+        if (repository.getPruneRepositories() != null && repository.getPruneRepositories()) {
+            if (repositories != null) {
+                scheduler.add("prune:repositories", REPOSITORY_MANAGER, scheduler.ids("repository:"),
+                        () -> pruneRepositories(repositories));
+            } else {
+                log.warn("repository.pruneRepositories has no effect when no repositories are configured!");
+            }
+        }
+
+        // cleanup policies are pruned once no repository uses them anymore
+        if (cleanupPolicies != null && repository.getPruneCleanupPolicies() != null && repository.getPruneCleanupPolicies()) {
+            List<String> dependencies = scheduler.ids("cleanupPolicy:");
+            dependencies.addAll(scheduler.ids("repository:"));
+            dependencies.add("prune:repositories");
+            scheduler.add("prune:cleanupPolicies", CLEANUP_POLICY_STORAGE, dependencies,
+                    () -> pruneCleanupPolicies(cleanupPolicies));
+        }
+
+        // we prune blob stores last as pruned repos might rely on them
+        if (blobStores != null && repository.getPruneBlobStores() != null && repository.getPruneBlobStores()) {
+            List<String> dependencies = scheduler.ids("blobStore:");
+            dependencies.addAll(scheduler.ids("repository:"));
+            dependencies.add("prune:repositories");
+            scheduler.add("prune:blobStores", BLOB_STORE_MANAGER, dependencies,
+                    () -> pruneBlobStores(blobStores));
+        }
+    }
+
+    private List<String> repositoryDependencies(ConfigRepositoryEntry repoConfig) {
+        List<String> dependencies = new ArrayList<>();
+        Map<String, Map<String, Object>> attributes = repoConfig.getAttributes();
+        if (attributes == null) {
+            return dependencies;
+        }
+
+        Map<String, Object> storage = attributes.get("storage");
+        if (storage != null && storage.get("blobStoreName") != null) {
+            dependencies.add("blobStore:" + storage.get("blobStoreName"));
+        }
+
+        Map<String, Object> cleanup = attributes.get("cleanup");
+        Object policyName = cleanup != null ? cleanup.get("policyName") : null;
+        if (policyName instanceof Collection) {
+            ((Collection<?>) policyName).forEach(name -> dependencies.add("cleanupPolicy:" + name));
+        } else if (policyName != null) {
+            dependencies.add("cleanupPolicy:" + policyName);
+        }
+
+        Map<String, Object> group = attributes.get("group");
+        Object memberNames = group != null ? group.get("memberNames") : null;
+        if (memberNames instanceof Collection) {
+            ((Collection<?>) memberNames).forEach(name -> dependencies.add("repository:" + name));
+        }
+
+        return dependencies;
+    }
+
+    private void applyBlobStore(ConfigBlobStore configBlobStore) {
+        if (configBlobStore.getAttributes().get("file") == null
+                || configBlobStore.getAttributes().get("file").get("path") == null
+                || !(configBlobStore.getAttributes().get("file").get("path") instanceof String)) {
+            log.error(".attributes.file.path of blob store {} must be a string!", configBlobStore.getName());
+            stats.failed("blobStore");
+            return;
+        }
+
+        BlobStore existingBlobStore = blobStoreManager.get(configBlobStore.getName());
+        String key = "blobStore:" + configBlobStore.getName();
+        String definition = Fingerprints.of(configBlobStore.getType(), configBlobStore.getAttributes());
+
+        if (existingBlobStore != null) {
+            BlobStoreConfiguration existingBlobStoreConfig = existingBlobStore.getBlobStoreConfiguration();
+
+            if (fingerprints.matches(key, definition, Fingerprints.of(existingBlobStoreConfig))) {
+                log.debug("Blob store {} is unchanged, skipping", configBlobStore.getName());
+                stats.skipped("blobStore");
+                return;
+            }
+
+            if (!configBlobStore.getAttributes().get("file").get("path").equals(
+                    existingBlobStoreConfig.getAttributes().get("file").get("path")
+            )) {
+                log.error("Can not update .attributes.file.path for blob stores. Blob store {}, current path: {}, new path {}",
+                        configBlobStore.getName(), existingBlobStoreConfig.getAttributes().get("file").get("path"),
+                        configBlobStore.getAttributes().get("file").get("path"));
+                stats.failed("blobStore");
+                return;
+            }
+
+            if (!configBlobStore.getType().equals(existingBlobStoreConfig.getType())) {
+                log.error("Can not update type of blob stores. Blob store {}, current type: {}, new type {}",
+                        configBlobStore.getName(), existingBlobStoreConfig.getType(),
+                        configBlobStore.getType());
+                stats.failed("blobStore");
+                return;
+            }
+
+            existingBlobStoreConfig.setAttributes(configBlobStore.getAttributes());
+
+            try {
+                blobStoreManager.update(existingBlobStoreConfig);
+            } catch (Exception e) {
+                log.error("Could not update blob store {}", configBlobStore.getName(), e);
+                fingerprints.forget(key);
+                stats.failed("blobStore");
+                return;
+            }
+        } else {
+            BlobStoreConfiguration config = new BlobStoreConfiguration();
+            config.setName(configBlobStore.getName());
+            config.setAttributes(configBlobStore.getAttributes());
+            config.setType(configBlobStore.getType());
+            try {
+                blobStoreManager.create(config);
+            } catch (Exception e) {
+                log.error("Could not create blob store {}", configBlobStore.getName(), e);
+                stats.failed("blobStore");
+                return;
+            }
+        }
+
+        BlobStore applied = blobStoreManager.get(configBlobStore.getName());
+        if (applied != null) {
+            fingerprints.record(key, definition, Fingerprints.of(applied.getBlobStoreConfiguration()));
+        }
+        if (existingBlobStore != null) {
+            stats.updated("blobStore");
+        } else {
+            stats.created("blobStore");
+        }
+    }
+
+    private void applyCleanupPolicy(ConfigCleanupPolicy cp) {
+        CleanupPolicy existingCp = cleanupPolicyStorage.get(cp.getName());
+        String key = "cleanupPolicy:" + cp.getName();
+        String definition = Fingerprints.of(cp.getFormat(), cp.getNotes(), cp.getMode(), cp.getCriteria());
+
+        if (existingCp != null) {
+            if (fingerprints.matches(key, definition, Fingerprints.of(existingCp))) {
+                log.debug("Cleanup policy {} is unchanged, skipping", cp.getName());
+                stats.skipped("cleanupPolicy");
+                return;
+            }
+
+            existingCp.setCriteria(cp.getCriteria());
+            existingCp.setFormat(cp.getFormat());
+            existingCp.setNotes(cp.getNotes());
+            existingCp.setMode(cp.getMode());
+            cleanupPolicyStorage.update(existingCp);
+            fingerprints.record(key, definition, Fingerprints.of(existingCp));
+            stats.updated("cleanupPolicy");
+        } else {
+            CleanupPolicy newCp = new CleanupPolicy(cp.getName(), cp.getNotes(), cp.getFormat(), cp.getMode(), cp.getCriteria());
+            cleanupPolicyStorage.add(newCp);
+            fingerprints.record(key, definition, Fingerprints.of(newCp));
+            stats.created("cleanupPolicy");
+        }
+    }
+
+    private void pruneCleanupPolicies(Set<String> cleanupPolicies) {
+        Reconciliation.obsolete(cleanupPolicyStorage.getAll(), CleanupPolicy::getName, cleanupPolicies).forEach(existingCp -> {
+            log.info("Pruning cleanup policy {}", existingCp.getName());
+            cleanupPolicyStorage.remove(existingCp);
+            fingerprints.forget("cleanupPolicy:" + existingCp.getName());
+        });
+    }
+
+    private void applyRepository(ConfigRepositoryEntry repoConfig) {
+        Repository existingRepo = repositoryManager.get(repoConfig.getName());
+        String key = "repository:" + repoConfig.getName();
+        String definition = Fingerprints.of(repoConfig.getRecipeName(), repoConfig.getOnline(), repoConfig.getAttributes());
+
+        if (existingRepo != null) {
+            if (!existingRepo.getConfiguration().getRecipeName().equals(repoConfig.getRecipeName())) {
+                log.error("Can not change recipeName of repo {}", repoConfig.getName());
+                stats.failed("repository");
+                return;
+            }
+
+            if (fingerprints.matches(key, definition, Fingerprints.of(existingRepo.getConfiguration()))) {
+                log.debug("Repository {} is unchanged, skipping", repoConfig.getName());
+                stats.skipped("repository");
+                return;
+            }
+
+            Configuration configuration = existingRepo.getConfiguration();
+            boolean online = repoConfig.getOnline() != null ? repoConfig.getOnline() : configuration.isOnline();
+
+            // updating a repository restarts its facets, so only do it when something really differs
+            if (online == configuration.isOnline()
+                    && RepositoryAttributes.equivalent(repoConfig.getRecipeName(), repoConfig.getAttributes(), configuration.getAttributes())) {
+                log.debug("Repository {} matches its live configuration, skipping update", repoConfig.getName());
+                fingerprints.record(key, definition, Fingerprints.of(configuration));
+                stats.skipped("repository");
+                return;
+            }
+
+            configuration.setAttributes(repoConfig.getAttributes());
+
+            patchRepoAttributes(repoConfig.getAttributes());
+
+            if (repoConfig.getOnline() != null) {
+                configuration.setOnline(repoConfig.getOnline());
+            }
+
+            try {
+                repositoryManager.update(configuration);
+            } catch (Exception e) {
+                log.error("Failed to update repo {}", repoConfig.getName(), e);
+                fingerprints.forget(key);
+                stats.failed("repository");
+                return;
+            }
+        } else {
+            Configuration configuration = new Configuration();
+            configuration.setRepositoryName(repoConfig.getName());
+            configuration.setRecipeName(repoConfig.getRecipeName());
+            configuration.setAttributes(repoConfig.getAttributes());
+            configuration.setOnline(repoConfig.getOnline() != null ? repoConfig.getOnline() : true);
+
+            if (startingUp && configuration.isOnline()) {
+                // serve the repository only once everything it relies on, like users and capabilities, is applied
+                configuration.setOnline(false);
+                offlineRepositories.put(repoConfig.getName(), definition);
+                if (journal != null) {
+                    journal.createdOffline(repoConfig.getName(), definition);
+                }
+            }
+
+            patchRepoAttributes(repoConfig.getAttributes());
+
+            try {
+                repositoryManager.create(configuration);
+            } catch (Exception e) {
+                log.error("Failed to create repo {}", repoConfig.getName(), e);
+                offlineRepositories.remove(repoConfig.getName());
+                stats.failed("repository");
+                return;
+            }
+        }
+
+        Repository applied = repositoryManager.get(repoConfig.getName());
+        if (applied != null) {
+            fingerprints.record(key, definition, Fingerprints.of(applied.getConfiguration()));
+        }
+        if (existingRepo != null) {
+            stats.updated("repository");
+        } else {
+            stats.created("repository");
+        }
+    }
+
+    private void pruneRepositories(Set<String> repositories) {
+        Reconciliation.obsolete(repositoryManager.browse(), Repository::getName, repositories).forEach(existingRepo -> {
+            log.info("Pruning repository {}", existingRepo.getName());
+            log.info(existingRepo.getConfiguration().toString());
+            try {
+                repositoryManager.delete(existingRepo.getName());
+                fingerprints.forget("repository:" + existingRepo.getName());
+            } catch (Exception e) {
+                log.error("Failed to delete repo {}", existingRepo.getName(), e);
+            }
+        });
+    }
+
+    private void pruneBlobStores(Set<String> blobStores) {
+        Reconciliation.obsolete(blobStoreManager.browse(), blobStore -> blobStore.getBlobStoreConfiguration().getName(), blobStores).forEach(existingBlobStore -> {
+            String name = existingBlobStore.getBlobStoreConfiguration().getName();
+            log.info("pruning blob store {}", name);
+            try {
+                blobStoreManager.delete(name);
+                fingerprints.forget("blobStore:" + name);
+            } catch (Exception e) {
+                log.error("Failed to prune blob store {}", name, e);
+            }
+        });
+    }
+
+    private void patchRepoAttributes(Map<String, Map<String, Object>> attributes) {
+        Map<String, Object> cleanup = attributes.get("cleanup");
+
+        if (cleanup != null) {
+            Object policyName = cleanup.get("policyName");
+
+            if (policyName != null) {
+                if (policyName instanceof String) {
+                    log.warn("repository.repositories[].attributes.cleanup.policyName should be a list as of Nexus 3.19.1, converting it for you");
+                    HashSet<Object> set = new HashSet<>();
+                    set.add(policyName);
+                    cleanup.put("policyName", set);
+                } else if (policyName instanceof List) {
+                    cleanup.put("policyName", new HashSet<>((Collection<Object>) policyName));
+                }
+            }
+        }
+    }
+
+    /**
+     * Hack approach to SecurityApiImpl.getSecuritySystem as we can't use that class as otherwise
+     * the osgi subsystem will yell at us 🤦‍
+     */
+    private SecuritySystem resolveSecuritySystem(SecurityApi securityApi) throws InvocationTargetException, IllegalAccessException, NoSuchMethodException {
+        return (SecuritySystem) invokeAccessor(SECURITY_SYSTEM_ACCESSORS, securityApi, "getSecuritySystem");
+    }
+
+    /**
+     * Apply all configs related to security
+     *
+     * @param scheduler The scheduler to add the work to
+     * @param security  The security config
+     * @param live      The live state to compare roles, privileges and content selectors to
+     */
+    private void applySecurityConfig(ApplyScheduler scheduler, ConfigSecurity security, LiveState live) {
+        applySecuritySettings(scheduler, security);
+
+        if (security.getUsers() != null) {
+            Set<String> roles = security.getRoles() == null ? Collections.emptySet()
+                    : Reconciliation.names(security.getRoles(), ConfigSecurityRoleDefinition::getId);
+            security.getUsers().forEach(userConfig -> scheduleUser(scheduler, userConfig, roles));
+        }
+
+        // after the users, pruning roles waits for the users to no longer have them
+        applyAuthorization(scheduler, security, live);
+
+        pruneSecurityConfig(scheduler, security, security.getUsers() == null ? null
+                : Reconciliation.names(security.getUsers(), ConfigSecurityUser::getUsername));
+    }
+
+    private void applySecuritySettings(ApplyScheduler scheduler, ConfigSecurity security) {
+        if (security.getAnonymousAccess() != null) {
+            scheduler.add("anonymousAccess", SECURITY_SYSTEM, Collections.emptyList(),
+                    () -> securityApi.setAnonymousAccess(security.getAnonymousAccess()));
+        }
+
+        if (security.getRealms() != null) {
+            // realms are enabled one after the other as their order matters
+            String previous = null;
+            for (ConfigSecurityRealm realm : security.getRealms()) {
+                String id = "realm:" + realm.getName();
+                scheduler.add(id, REALM_MANAGER,
+                        previous != null ? Collections.singletonList(previous) : Collections.emptyList(),
+                        () -> applyRealm(realm));
+                previous = id;
+            }
+        }
+    }
+
+    /**
+     * @param roles Ids of the configured roles, the user is applied once the configured roles it has were applied.
+     *              Null if the roles are not known yet (while streaming), the user then waits for all roles of the
+     *              default source it has, roles that are never scheduled are dropped by {@link ApplyScheduler#finish()}
+     */
+    private void scheduleUser(ApplyScheduler scheduler, ConfigSecurityUser userConfig, Set<String> roles) {
+        List<String> dependsOn = new ArrayList<>();
+        if (userConfig.getRoles() != null) {
+            userConfig.getRoles().stream()
+                    .filter(role -> role != null && role.getRole() != null)
+                    .filter(role -> roles != null ? roles.contains(role.getRole())
+                            : role.getSource() == null || UserManager.DEFAULT_SOURCE.equals(role.getSource()))
+                    .forEach(role -> dependsOn.add("role:" + role.getRole()));
+        }
+        scheduler.add("user:" + userConfig.getUsername(), SECURITY_SYSTEM, dependsOn, () -> applyUser(userConfig));
+    }
+
+    /**
+     * Schedules pruning of users once all users were added to the scheduler
+     *
+     * @param scheduler The scheduler to add the work to
+     * @param security  The security config
+     * @param users     Names of the configured users, null if no users are configured
+     */
+    private void pruneSecurityConfig(ApplyScheduler scheduler, ConfigSecurity security, Set<String> users) {
+        if (security.getPruneUsers() == null || !security.getPruneUsers()) {
+            return;
+        }
+
+        if (users != null) {
+            scheduler.add("prune:users", SECURITY_SYSTEM, scheduler.ids("user:"), () -> pruneUsers(users));
+        } else {
+            log.error("security.pruneUsers has no effect when not specifying any users!");
+        }
+    }
+
+    /**
+     * Schedules the content selectors, privileges and roles that differ from the given live state and prunes the
+     * ones that are not configured. Privileges and roles are written to the security configuration directly and the
+     * authorization caches are flushed once all of them were written, instead of once per privilege and role.
+     *
+     * @param scheduler The scheduler to add the work to, after the users
+     * @param security  The security config
+     * @param live      The live state including the authorization state
+     */
+    private void applyAuthorization(ApplyScheduler scheduler, ConfigSecurity security, LiveState live) {
+        AtomicBoolean changed = new AtomicBoolean();
+
+        if (security.getContentSelectors() != null) {
+            for (ConfigSecurityContentSelector selector : security.getContentSelectors()) {
+                scheduler.add("contentSelector:" + selector.getName(), SELECTOR_MANAGER, Collections.emptyList(),
+                        () -> applyContentSelector(selector, live.getContentSelectors().get(selector.getName())));
+            }
+        }
+
+        if (security.getPrivileges() != null) {
+            for (ConfigSecurityPrivilege privilege : security.getPrivileges()) {
+                String selector = privilege.getProperties() == null ? null : privilege.getProperties().get("contentSelector");
+                scheduler.add("privilege:" + privilege.getName(), SECURITY_CONFIGURATION_MANAGER,
+                        selector != null ? Collections.singletonList("contentSelector:" + selector) : Collections.emptyList(),
+                        () -> {
+                            if (applyPrivilege(privilege, live.getPrivileges().get(privilege.getName()))) {
+                                changed.set(true);
+                            }
+                        });
+            }
+        }
+
+        if (security.getRoles() != null) {
+            Map<String, ConfigSecurityRoleDefinition> roles = Reconciliation.index(security.getRoles(), ConfigSecurityRoleDefinition::getId);
+            // nested roles first, a role is written once the roles and privileges it references were written
+            for (String id : RoleGraph.of(Collections.emptyList(), security.getRoles(), false).order()) {
+                ConfigSecurityRoleDefinition role = roles.get(id);
+                List<String> dependsOn = new ArrayList<>();
+                if (role.getPrivileges() != null) {
+                    role.getPrivileges().forEach(privilege -> dependsOn.add("privilege:" + privilege));
+                }
+                if (role.getRoles() != null) {
+                    role.getRoles().forEach(nested -> dependsOn.add("role:" + nested));
+                }
+                scheduler.add("role:" + id, SECURITY_CONFIGURATION_MANAGER, dependsOn, () -> {
+                    if (applyRole(role, live.getRoles().get(id))) {
+                        changed.set(true);
+                    }
+                });
+            }
+        }
+
+        if (security.getPruneRoles() != null && security.getPruneRoles()) {
+            if (security.getRoles() != null) {
+                List<String> dependsOn = scheduler.ids("role:");
+                dependsOn.addAll(scheduler.ids("user:"));
+                dependsOn.add("prune:users");
+                Set<String> roles = Reconciliation.names(security.getRoles(), ConfigSecurityRoleDefinition::getId);
+                scheduler.add("prune:roles", SECURITY_CONFIGURATION_MANAGER, dependsOn, () -> {
+                    if (pruneRoles(live.getRoles().values(), roles)) {
+                        changed.set(true);
+                    }
+                });
+            } else {
+                log.error("security.pruneRoles has no effect when not specifying any roles!");
+            }
+        }
+
+        if (security.getPrunePrivileges() != null && security.getPrunePrivileges()) {
+            if (security.getPrivileges() != null) {
+                List<String> dependsOn = scheduler.ids("privilege:");
+                dependsOn.addAll(scheduler.ids("role:"));
+                dependsOn.add("prune:roles");
+                Set<String> privileges = Reconciliation.names(security.getPrivileges(), ConfigSecurityPrivilege::getName);
+                scheduler.add("prune:privileges", SECURITY_CONFIGURATION_MANAGER, dependsOn, () -> {
+                    if (prunePrivileges(live.getPrivileges().values(), privileges)) {
+                        changed.set(true);
+                    }
+                });
+            } else {
+                log.error("security.prunePrivileges has no effect when not specifying any privileges!");
+            }
+        }
+
+        if (security.getPruneContentSelectors() != null && security.getPruneContentSelectors()) {
+            if (security.getContentSelectors() != null) {
+                List<String> dependsOn = scheduler.ids("contentSelector:");
+                dependsOn.addAll(scheduler.ids("privilege:"));
+                dependsOn.add("prune:privileges");
+                Set<String> selectors = Reconciliation.names(security.getContentSelectors(), ConfigSecurityContentSelector::getName);
+                scheduler.add("prune:contentSelectors", SELECTOR_MANAGER, dependsOn,
+                        () -> pruneContentSelectors(live.getContentSelectors().values(), selectors));
+            } else {
+                log.error("security.pruneContentSelectors has no effect when not specifying any content selectors!");
+            }
+        }
+
+        List<String> written = scheduler.ids("privilege:");
+        written.addAll(scheduler.ids("role:"));
+        written.addAll(scheduler.ids("prune:roles"));
+        written.addAll(scheduler.ids("prune:privileges"));
+        if (written.isEmpty()) {
+            return;
+        }
+        scheduler.add("authorization:flush", SECURITY_SYSTEM, written, () -> {
+            if (changed.get()) {
+                log.info("Flushing the authorization caches");
+                eventManager.post(new AuthorizationConfigurationChanged());
+            }
+        });
+    }
+
+    private void applyContentSelector(ConfigSecurityContentSelector selectorConfig, SelectorConfiguration existing) {
+        Map<String, String> attributes = Collections.singletonMap("expression", selectorConfig.getExpression());
+        if (existing != null && Fingerprints.of(CSEL, selectorConfig.getDescription(), attributes).equals(Fingerprints.of(existing))) {
+            log.debug("Content selector {} is unchanged, skipping", selectorConfig.getName());
+            stats.skipped("contentSelector");
+            return;
+        }
+
+        try {
+            if (existing == null) {
+                log.info("Content selector {} does not yet exist. Creating it...", selectorConfig.getName());
+                SelectorConfiguration selector = new SelectorConfiguration();
+                selector.setName(selectorConfig.getName());
+                selector.setType(CSEL);
+                selector.setDescription(selectorConfig.getDescription());
+                selector.setAttributes(attributes);
+                selectorManager.create(selector);
+                stats.created("contentSelector");
+            } else {
+                log.info("Content selector {} differs from its configuration. Updating it...", selectorConfig.getName());
+                existing.setType(CSEL);
+                existing.setDescription(selectorConfig.getDescription());
+                existing.setAttributes(attributes);
+                selectorManager.update(existing);
+                stats.updated("contentSelector");
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to apply content selector {}", selectorConfig.getName(), e);
+            stats.failed("contentSelector");
+        }
+    }
+
+    /**
+     * @return true if the privilege was written
+     */
+    private boolean applyPrivilege(ConfigSecurityPrivilege privilegeConfig, Privilege existing) {
+        String id = privilegeConfig.getName();
+        Map<String, String> properties = privilegeConfig.getProperties() == null ? new HashMap<>() : privilegeConfig.getProperties();
+        if (existing != null && Fingerprints.of(id, privilegeConfig.getDescription(), privilegeConfig.getType(), properties)
+                .equals(Fingerprints.of(existing))) {
+            log.debug("Privilege {} is unchanged, skipping", id);
+            stats.skipped("privilege");
+            return false;
+        }
+
+        try {
+            CPrivilege privilege = existing == null ? new CPrivilege() : securityConfigurationManager.readPrivilege(id);
+            privilege.setId(id);
+            privilege.setName(id);
+            privilege.setDescription(privilegeConfig.getDescription());
+            privilege.setType(privilegeConfig.getType());
+            privilege.setProperties(new HashMap<>(properties));
+            if (existing == null) {
+                log.info("Privilege {} does not yet exist. Creating it...", id);
+                securityConfigurationManager.createPrivilege(privilege);
+                stats.created("privilege");
+            } else {
+                log.info("Privilege {} differs from its configuration. Updating it...", id);
+                securityConfigurationManager.updatePrivilege(privilege);
+                stats.updated("privilege");
+            }
+            return true;
+        } catch (NoSuchPrivilegeException | RuntimeException e) {
+            log.error("Failed to apply privilege {}", id, e);
+            stats.failed("privilege");
+            return false;
+        }
+    }
+
+    /**
+     * @return true if the role was written
+     */
+    private boolean applyRole(ConfigSecurityRoleDefinition roleConfig, Role existing) {
+        String id = roleConfig.getId();
+        String name = roleConfig.getName() != null ? roleConfig.getName() : id;
+        Set<String> privileges = roleConfig.getPrivileges() == null ? new HashSet<>() : new HashSet<>(roleConfig.getPrivileges());
+        Set<String> roles = roleConfig.getRoles() == null ? new HashSet<>() : new HashSet<>(roleConfig.getRoles());
+        if (existing != null && Fingerprints.role(name, roleConfig.getDescription(), privileges, roles)
+                .equals(Fingerprints.of(existing))) {
+            log.debug("Role {} is unchanged, skipping", id);
+            stats.skipped("role");
+            return false;
+        }
+
+        try {
+            CRole role = existing == null ? new CRole() : securityConfigurationManager.readRole(id);
+            role.setId(id);
+            role.setName(name);
+            role.setDescription(roleConfig.getDescription());
+            role.setPrivileges(privileges);
+            role.setRoles(roles);
+            if (existing == null) {
+                log.info("Role {} does not yet exist. Creating it...", id);
+                securityConfigurationManager.createRole(role);
+                stats.created("role");
+            } else {
+                log.info("Role {} differs from its configuration. Updating it...", id);
+                securityConfigurationManager.updateRole(role);
+                stats.updated("role");
+            }
+            return true;
+        } catch (NoSuchRoleException | RuntimeException e) {
+            log.error("Failed to apply role {}", id, e);
+            stats.failed("role");
+            return false;
+        }
+    }
+
+    /**
+     * @return true if a role was deleted
+     */
+    private boolean pruneRoles(Collection<Role> live, Set<String> roles) {
+        boolean pruned = false;
+        for (Role role : Reconciliation.obsolete(live, Role::getRoleId, roles)) {
+            if (role.isReadOnly()) {
+                continue;
+            }
+            log.info("Pruning role {} ...", role.getRoleId());
+            try {
+                securityConfigurationManager.deleteRole(role.getRoleId());
+                pruned = true;
+            } catch (NoSuchRoleException | RuntimeException e) {
+                log.error("Failed to prune role {}", role.getRoleId(), e);
+            }
+        }
+        return pruned;
+    }
+
+    /**
+     * @return true if a privilege was deleted
+     */
+    private boolean prunePrivileges(Collection<Privilege> live, Set<String> privileges) {
+        boolean pruned = false;
+        for (Privilege privilege : Reconciliation.obsolete(live, Privilege::getId, privileges)) {
+            if (privilege.isReadOnly()) {
+                continue;
+            }
+            log.info("Pruning privilege {} ...", privilege.getId());
+            try {
+                securityConfigurationManager.deletePrivilege(privilege.getId());
+                pruned = true;
+            } catch (NoSuchPrivilegeException | RuntimeException e) {
+                log.error("Failed to prune privilege {}", privilege.getId(), e);
+            }
+        }
+        return pruned;
+    }
+
+    private void pruneContentSelectors(Collection<SelectorConfiguration> live, Set<String> selectors) {
+        for (SelectorConfiguration selector : Reconciliation.obsolete(live, SelectorConfiguration::getName, selectors)) {
+            log.info("Pruning content selector {} ...", selector.getName());
+            try {
+                selectorManager.delete(selector);
+            } catch (RuntimeException e) {
+                log.error("Failed to prune content selector {}", selector.getName(), e);
+            }
+        }
+    }
+
+    private void applyRealm(ConfigSecurityRealm realm) {
+        if (realm.getEnabled() != null) {
+            if (realm.getEnabled()) {
+                realmManager.enableRealm(realm.getName(), true);
+            } else {
+                realmManager.disableRealm(realm.getName());
+            }
+        } else {
+            log.warn("Passing a realm with enabled: null doesn't make sense...");
+        }
+    }
+
+    private void applyUser(ConfigSecurityUser userConfig) {
+        User existingUser = null;
+        try {
+            existingUser = securitySystem.getUser(userConfig.getUsername());
+        } catch (UserNotFoundException e) {
+            // ignore
+        }
+
+        String key = "user:" + userConfig.getUsername();
+        String definition = Fingerprints.of(userConfig.getFirstName(), userConfig.getLastName(), userConfig.getEmail(),
+                userConfig.getActive(), userConfig.getRoles().stream()
+                        .map(r -> r.getSource() + "/" + r.getRole())
+                        .collect(Collectors.toList()));
+        boolean updatePassword = userConfig.getUpdateExistingPassword() != null && userConfig.getUpdateExistingPassword();
+
+        if (userConfig.getPasswordHash() != null && !userConfig.getPasswordHash().startsWith("$shiro1$")) {
+            log.warn("passwordHash of user {} is not in the $shiro1$ format Nexus uses, the user might not be able to log in",
+                    userConfig.getUsername());
+        }
+
+        if (existingUser != null) {
+            if (fingerprints.matches(key, definition, Fingerprints.of(existingUser))) {
+                // passwords are not part of the user's fingerprint, they are checked on their own
+                if (updatePassword && applyPassword(existingUser.getUserId(), userConfig)) {
+                    stats.updated("user");
+                } else {
+                    log.debug("User {} is unchanged, skipping", userConfig.getUsername());
+                    stats.skipped("user");
+                }
+                return;
+            }
+
+            List<String> differences = UserDiff.diff(userConfig, existingUser);
+            if (differences.isEmpty()) {
+                // writing an unchanged user would still invalidate the security caches
+                fingerprints.record(key, definition, Fingerprints.of(existingUser));
+                if (updatePassword && applyPassword(existingUser.getUserId(), userConfig)) {
+                    stats.updated("user");
+                } else {
+                    log.debug("User {} matches its configuration, skipping", userConfig.getUsername());
+                    stats.skipped("user");
+                }
+                return;
+            }
+
+            log.debug("User {} differs from its configuration: {}", userConfig.getUsername(), differences);
+            log.info("User {} already exists. Patching it...", userConfig.getUsername());
+            existingUser.setFirstName(userConfig.getFirstName());
+            existingUser.setLastName(userConfig.getLastName());
+            existingUser.setEmailAddress(userConfig.getEmail());
+
+            if (userConfig.getActive() != null) {
+                if (userConfig.getActive()) {
+                    if (existingUser.getStatus() == UserStatus.disabled) {
+                        log.info("Reactivating user {}", existingUser.getUserId());
+                        existingUser.setStatus(UserStatus.active);
+                    } else if (existingUser.getStatus() != UserStatus.active) {
+                        log.error("Can not activate user {} ({}) with state {}", existingUser.getUserId(), existingUser.getSource(), existingUser.getStatus());
+                    }
+                } else {
+                    if (existingUser.getStatus() != UserStatus.disabled) {
+                        log.info("Disabling user {} ({}) with state {}", existingUser.getUserId(), existingUser.getSource(), existingUser.getStatus());
+                        existingUser.setStatus(UserStatus.disabled);
+                    }
+                }
+            }
+
+            if (updatePassword) {
+                applyPassword(existingUser.getUserId(), userConfig);
+            }
+
+            existingUser.setRoles(UserDiff.roles(userConfig));
+            try {
+                securitySystem.updateUser(existingUser);
+                fingerprints.record(key, definition, Fingerprints.of(existingUser));
+                stats.updated("user");
+            } catch (UserNotFoundException | NoSuchUserManagerException e) {
+                log.error("Could not update user {}", userConfig.getUsername(), e);
+                fingerprints.forget(key);
+                stats.failed("user");
+                return;
+            }
+        } else {
+            log.info("User {} does not yet exist. Creating it...", userConfig.getUsername());
+            User createdUser = securityApi.addUser(
+                    userConfig.getUsername(),
+                    userConfig.getFirstName(),
+                    userConfig.getLastName(),
+                    userConfig.getEmail(),
+                    userConfig.getActive() != null ? userConfig.getActive() : true,
+                    // a user with a password hash gets a random password that is replaced by the hash right away
+                    userConfig.getPasswordHash() != null ? UUID.randomUUID().toString() : userConfig.getPassword(),
+                    userConfig.getRoles().stream().map(ConfigSecurityRole::getRole).collect(Collectors.toList())
+            );
+            fingerprints.record(key, definition, Fingerprints.of(createdUser));
+
+            if (userConfig.getPasswordHash() != null) {
+                applyPassword(createdUser.getUserId(), userConfig);
+            } else {
+                recordPassword(createdUser.getUserId(), userConfig);
+            }
+            stats.created("user");
+        }
+    }
+
+    /**
+     * Sets the configured password hash or password of an existing user, unless exactly this password was applied
+     * before and the password was not changed in Nexus since then. Setting a plaintext password makes Nexus hash it,
+     * which is expensive, a password hash is stored as is.
+     *
+     * @param userId     The id of the user
+     * @param userConfig The user config
+     * @return true if the password was set
+     */
+    private boolean applyPassword(String userId, ConfigSecurityUser userConfig) {
+        String key = "password:" + userConfig.getUsername();
+
+        if (!passwordChanges(userId, userConfig)) {
+            log.debug("Password of user {} is unchanged, skipping", userId);
+            return false;
+        }
+
+        try {
+            if (userConfig.getPasswordHash() != null) {
+                CUser user = securityConfigurationManager.readUser(userId);
+                user.setPassword(userConfig.getPasswordHash());
+                securityConfigurationManager.updateUser(user);
+            } else {
+                securitySystem.changePassword(userId, userConfig.getPassword());
+            }
+        } catch (UserNotFoundException | RuntimeException e) {
+            log.error("Failed to update password of user {}", userId, e);
+            fingerprints.forget(key);
+            return false;
+        }
+
+        recordPassword(userId, userConfig);
+        return true;
+    }
+
+    /**
+     * Whether the configured password (hash) differs from the one applied before or was changed in Nexus since then
+     */
+    private boolean passwordChanges(String userId, ConfigSecurityUser userConfig) {
+        String definition = passwordFingerprint(userConfig);
+        return definition == null
+                || !fingerprints.matches("password:" + userConfig.getUsername(), definition, livePasswordFingerprint(userId));
+    }
+
+    private void recordPassword(String userId, ConfigSecurityUser userConfig) {
+        String definition = passwordFingerprint(userConfig);
+        if (definition != null) {
+            fingerprints.record("password:" + userConfig.getUsername(), definition, livePasswordFingerprint(userId));
+        }
+    }
+
+    /**
+     * Fingerprint of the configured password (hash), keyed with the install key and salted with the username so that
+     * neither the password nor whether two users share a password can be derived from it. Null if there is no
+     * install key.
+     */
+    private String passwordFingerprint(ConfigSecurityUser userConfig) {
+        if (installKey == null) {
+            return null;
+        }
+        return userConfig.getPasswordHash() != null
+                ? Fingerprints.hmac(installKey, userConfig.getUsername(), "hash", userConfig.getPasswordHash())
+                : Fingerprints.hmac(installKey, userConfig.getUsername(), "password", userConfig.getPassword());
+    }
+
+    /**
+     * Fingerprint of the password hash Nexus stores for the user, so that a password changed in Nexus is set again
+     */
+    private String livePasswordFingerprint(String userId) {
+        try {
+            return Fingerprints.hmac(installKey, userId, "live", securityConfigurationManager.readUser(userId).getPassword());
+        } catch (UserNotFoundException | RuntimeException e) {
+            // not a user of the default realm
+            return "";
+        }
+    }
+
+    private void pruneUsers(Set<String> users) {
+        // the same user id might exist in several sources, each of them is pruned
+        Map<String, User> existingUsers = Reconciliation.index(securitySystem.searchUsers(new UserSearchCriteria()), Reconciliation::userKey);
+
+        Reconciliation.obsolete(existingUsers.values(), User::getUserId, users).forEach(existingUser -> {
+            log.info("Pruning user {} ...", existingUser.getUserId());
+            try {
+                securitySystem.deleteUser(existingUser.getUserId(), existingUser.getSource());
+                fingerprints.forget("user:" + existingUser.getUserId());
+            } catch (NoSuchUserManagerException | UserNotFoundException e) {
+                log.error("Failed to prune user {} ({})", existingUser.getUserId(), existingUser.getSource(), e);
+            }
+        });
+    }
 }
@@ -0,0 +1,106 @@
+package ch.sventschui.nexus.casc;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ordered list of the operations an apply would perform.
+ */
+public class Plan {
+    public enum Action {
+        CREATE, UPDATE, DELETE
+    }
+
+    private final List<Operation> operations = new ArrayList<>();
+    private int unchanged;
+
+    public void add(Action action, String kind, String name, String detail) {
+        operations.add(new Operation(action, kind, name, detail));
+    }
+
+    public void unchanged() {
+        unchanged++;
+    }
+
+    public List<Operation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public long count(Action action) {
+        return operations.stream().filter(operation -> operation.getAction() == action).count();
+    }
+
+    public void writeJson(Writer writer) throws IOException {
+        try (JsonGenerator json = new JsonFactory().createGenerator(writer)) {
+            json.useDefaultPrettyPrinter();
+            json.writeStartObject();
+
+            json.writeObjectFieldStart("summary");
+            json.writeNumberField("create", count(Action.CREATE));
+            json.writeNumberField("update", count(Action.UPDATE));
+            json.writeNumberField("delete", count(Action.DELETE));
+            json.writeNumberField("unchanged", unchanged);
+            json.writeEndObject();
+
+            json.writeArrayFieldStart("operations");
+            for (Operation operation : operations) {
+                json.writeStartObject();
+                json.writeStringField("action", operation.getAction().name().toLowerCase());
+                json.writeStringField("kind", operation.getKind());
+                json.writeStringField("name", operation.getName());
+                if (operation.getDetail() != null) {
+                    json.writeStringField("detail", operation.getDetail());
+                }
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+
+            json.writeEndObject();
+        }
+    }
+
+    public static class Operation {
+        private final Action action;
+        private final String kind;
+        private final String name;
+        private final String detail;
+
+        Operation(Action action, String kind, String name, String detail) {
+            this.action = action;
+            this.kind = kind;
+            this.name = name;
+            this.detail = detail;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        public String getKind() {
+            return kind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+
+        @Override
+        public String toString() {
+            return action.name().toLowerCase() + " " + kind + " " + name;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.*;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicy;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.security.privilege.Privilege;
+import org.sonatype.nexus.security.role.Role;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.selector.SelectorConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Computes the {@link Plan} of a {@link Config} against a {@link LiveState} without touching Nexus.
+ * <p>
+ * Operations are ordered the way they need to be applied: blob stores, cleanup policies, repositories (group
+ * repositories last), content selectors, privileges, roles (nested roles first), users and capabilities are
+ * created/updated first, then pruned entities are deleted.
+ */
+public final class Planner {
+    private Planner() {
+    }
+
+    /**
+     * Plans the config assuming that the password of every existing user with {@code updateExistingPassword} changes
+     */
+    public static Plan plan(Config config, LiveState live) {
+        return plan(config, live, user -> true);
+    }
+
+    /**
+     * @param passwordChanges Whether applying would set the password of an existing user with
+     *                        {@code updateExistingPassword}, like the apply it skips passwords that were applied before
+     */
+    public static Plan plan(Config config, LiveState live, Predicate<ConfigSecurityUser> passwordChanges) {
+        Plan plan = new Plan();
+        ConfigRepository repository = config.getRepository();
+        ConfigSecurity security = config.getSecurity();
+
+        if (repository != null) {
+            planBlobStores(plan, repository, live);
+            planCleanupPolicies(plan, repository, live);
+            planRepositories(plan, repository, live);
+        }
+
+        if (security != null && live.getRoles() != null) {
+            planAuthorization(plan, security, live);
+        }
+
+        if (security != null && security.getUsers() != null) {
+            planUsers(plan, security.getUsers(), live, passwordChanges);
+        }
+
+        if (config.getCapabilities() != null) {
+            planCapabilities(plan, config.getCapabilities(), live);
+        }
+
+        if (repository != null) {
+            if (repository.getRepositories() != null && isTrue(repository.getPruneRepositories())) {
+                Set<String> names = Reconciliation.names(repository.getRepositories(), ConfigRepositoryEntry::getName);
+                live.getRepositories().keySet().stream()
+                        .filter(name -> !names.contains(name))
+                        .forEach(name -> plan.add(Plan.Action.DELETE, "repository", name, null));
+            }
+
+            if (repository.getCleanupPolicies() != null && isTrue(repository.getPruneCleanupPolicies())) {
+                Set<String> names = Reconciliation.names(repository.getCleanupPolicies(), ConfigCleanupPolicy::getName);
+                live.getCleanupPolicies().keySet().stream()
+                        .filter(name -> !names.contains(name))
+                        .forEach(name -> plan.add(Plan.Action.DELETE, "cleanupPolicy", name, null));
+            }
+
+            if (repository.getBlobStores() != null && isTrue(repository.getPruneBlobStores())) {
+                Set<String> names = Reconciliation.names(repository.getBlobStores(), ConfigBlobStore::getName);
+                live.getBlobStores().keySet().stream()
+                        .filter(name -> !names.contains(name))
+                        .forEach(name -> plan.add(Plan.Action.DELETE, "blobStore", name, null));
+            }
+        }
+
+        if (security != null && security.getUsers() != null && isTrue(security.getPruneUsers())) {
+            Set<String> names = Reconciliation.names(security.getUsers(), ConfigSecurityUser::getUsername);
+            Reconciliation.obsolete(Reconciliation.index(live.getUsers(), Reconciliation::userKey).values(), User::getUserId, names)
+                    .forEach(user -> plan.add(Plan.Action.DELETE, "user", user.getUserId(), "source " + user.getSource()));
+        }
+
+        if (security != null && live.getRoles() != null) {
+            if (security.getRoles() != null && isTrue(security.getPruneRoles())) {
+                Set<String> names = Reconciliation.names(security.getRoles(), ConfigSecurityRoleDefinition::getId);
+                Reconciliation.obsolete(live.getRoles().values(), Role::getRoleId, names).stream()
+                        .filter(role -> !role.isReadOnly())
+                        .forEach(role -> plan.add(Plan.Action.DELETE, "role", role.getRoleId(), null));
+            }
+
+            if (security.getPrivileges() != null && isTrue(security.getPrunePrivileges())) {
+                Set<String> names = Reconciliation.names(security.getPrivileges(), ConfigSecurityPrivilege::getName);
+                Reconciliation.obsolete(live.getPrivileges().values(), Privilege::getId, names).stream()
+                        .filter(privilege -> !privilege.isReadOnly())
+                        .forEach(privilege -> plan.add(Plan.Action.DELETE, "privilege", privilege.getId(), null));
+            }
+
+            if (security.getContentSelectors() != null && isTrue(security.getPruneContentSelectors())) {
+                Set<String> names = Reconciliation.names(security.getContentSelectors(), ConfigSecurityContentSelector::getName);
+                live.getContentSelectors().keySet().stream()
+                        .filter(name -> !names.contains(name))
+                        .forEach(name -> plan.add(Plan.Action.DELETE, "contentSelector", name, null));
+            }
+        }
+
+        return plan;
+    }
+
+    private static void planBlobStores(Plan plan, ConfigRepository repository, LiveState live) {
+        if (repository.getBlobStores() == null) {
+            return;
+        }
+
+        for (ConfigBlobStore blobStore : repository.getBlobStores()) {
+            BlobStoreConfiguration existing = live.getBlobStores().get(blobStore.getName());
+
+            if (existing == null) {
+                plan.add(Plan.Action.CREATE, "blobStore", blobStore.getName(), null);
+            } else if (!Fingerprints.of(blobStore.getType(), blobStore.getAttributes())
+                    .equals(Fingerprints.of(existing.getType(), existing.getAttributes()))) {
+                plan.add(Plan.Action.UPDATE, "blobStore", blobStore.getName(), null);
+            } else {
+                plan.unchanged();
+            }
+        }
+    }
+
+    private static void planCleanupPolicies(Plan plan, ConfigRepository repository, LiveState live) {
+        if (repository.getCleanupPolicies() == null) {
+            return;
+        }
+
+        for (ConfigCleanupPolicy policy : repository.getCleanupPolicies()) {
+            CleanupPolicy existing = live.getCleanupPolicies().get(policy.getName());
+
+            if (existing == null) {
+                plan.add(Plan.Action.CREATE, "cleanupPolicy", policy.getName(), null);
+            } else if (!Objects.equals(policy.getFormat(), existing.getFormat())
+                    || !Objects.equals(policy.getNotes(), existing.getNotes())
+                    || !Objects.equals(policy.getMode(), existing.getMode())
+                    || !stringValues(policy.getCriteria()).equals(stringValues(existing.getCriteria()))) {
+                plan.add(Plan.Action.UPDATE, "cleanupPolicy", policy.getName(), null);
+            } else {
+                plan.unchanged();
+            }
+        }
+    }
+
+    private static void planRepositories(Plan plan, ConfigRepository repository, LiveState live) {
+        if (repository.getRepositories() == null) {
+            return;
+        }
+
+        List<ConfigRepositoryEntry> groups = new ArrayList<>();
+        for (ConfigRepositoryEntry entry : repository.getRepositories()) {
+            if (entry.getRecipeName() != null && entry.getRecipeName().endsWith("-group")) {
+                groups.add(entry);
+            } else {
+                planRepository(plan, entry, live);
+            }
+        }
+        groups.forEach(entry -> planRepository(plan, entry, live));
+    }
+
+    private static void planRepository(Plan plan, ConfigRepositoryEntry entry, LiveState live) {
+        Configuration existing = live.getRepositories().get(entry.getName());
+
+        if (existing == null) {
+            plan.add(Plan.Action.CREATE, "repository", entry.getName(), entry.getRecipeName());
+        } else if (!Objects.equals(existing.getRecipeName(), entry.getRecipeName())) {
+            plan.add(Plan.Action.UPDATE, "repository", entry.getName(),
+                    "recipeName can not be changed from " + existing.getRecipeName() + " to " + entry.getRecipeName());
+        } else if ((entry.getOnline() != null && entry.getOnline() != existing.isOnline())
+                || !RepositoryAttributes.equivalent(entry.getRecipeName(), entry.getAttributes(), existing.getAttributes())) {
+            plan.add(Plan.Action.UPDATE, "repository", entry.getName(), null);
+        } else {
+            plan.unchanged();
+        }
+    }
+
+    private static void planAuthorization(Plan plan, ConfigSecurity security, LiveState live) {
+        if (security.getContentSelectors() != null) {
+            for (ConfigSecurityContentSelector selector : security.getContentSelectors()) {
+                SelectorConfiguration existing = live.getContentSelectors().get(selector.getName());
+
+                if (existing == null) {
+                    plan.add(Plan.Action.CREATE, "contentSelector", selector.getName(), null);
+                } else if (!Objects.equals(selector.getDescription(), existing.getDescription())
+                        || existing.getAttributes() == null
+                        || !Objects.equals(selector.getExpression(), existing.getAttributes().get("expression"))) {
+                    plan.add(Plan.Action.UPDATE, "contentSelector", selector.getName(), null);
+                } else {
+                    plan.unchanged();
+                }
+            }
+        }
+
+        if (security.getPrivileges() != null) {
+            for (ConfigSecurityPrivilege privilege : security.getPrivileges()) {
+                Privilege existing = live.getPrivileges().get(privilege.getName());
+
+                if (existing == null) {
+                    plan.add(Plan.Action.CREATE, "privilege", privilege.getName(), privilege.getType());
+                } else if (!Fingerprints.of(privilege.getName(), privilege.getDescription(), privilege.getType(),
+                        privilege.getProperties() == null ? new HashMap<>() : privilege.getProperties()).equals(Fingerprints.of(existing))) {
+                    plan.add(Plan.Action.UPDATE, "privilege", privilege.getName(), null);
+                } else {
+                    plan.unchanged();
+                }
+            }
+        }
+
+        if (security.getRoles() != null) {
+            Map<String, ConfigSecurityRoleDefinition> roles = Reconciliation.index(security.getRoles(), ConfigSecurityRoleDefinition::getId);
+            for (String id : RoleGraph.of(Collections.emptyList(), security.getRoles(), false).order()) {
+                ConfigSecurityRoleDefinition role = roles.get(id);
+                Role existing = live.getRoles().get(id);
+
+                if (existing == null) {
+                    plan.add(Plan.Action.CREATE, "role", id, null);
+                } else if (!Fingerprints.role(role.getName() != null ? role.getName() : id, role.getDescription(),
+                        role.getPrivileges() == null ? Collections.emptyList() : role.getPrivileges(),
+                        role.getRoles() == null ? Collections.emptyList() : role.getRoles()).equals(Fingerprints.of(existing))) {
+                    plan.add(Plan.Action.UPDATE, "role", id, null);
+                } else {
+                    plan.unchanged();
+                }
+            }
+        }
+    }
+
+    private static void planUsers(Plan plan, List<ConfigSecurityUser> users, LiveState live,
+                                  Predicate<ConfigSecurityUser> passwordChanges) {
+        for (ConfigSecurityUser user : users) {
+            User existing = live.getUsersById().get(user.getUsername());
+
+            if (existing == null) {
+                plan.add(Plan.Action.CREATE, "user", user.getUsername(), null);
+                continue;
+            }
+
+            // the same comparison the apply makes, the plan lists exactly what it writes
+            List<String> changes = new ArrayList<>(UserDiff.diff(user, existing));
+            if (isTrue(user.getUpdateExistingPassword()) && passwordChanges.test(user)) {
+                changes.add("password");
+            }
+
+            if (!changes.isEmpty()) {
+                plan.add(Plan.Action.UPDATE, "user", user.getUsername(), String.join(", ", changes));
+            } else {
+                plan.unchanged();
+            }
+        }
+    }
+
+    private static void planCapabilities(Plan plan, List<ConfigCapability> capabilities, LiveState live) {
+        for (ConfigCapability capability : capabilities) {
+            LiveState.Capability existing = live.getCapabilities().get(capability.getType());
+
+            if (existing == null) {
+                plan.add(Plan.Action.CREATE, "capability", capability.getType(), null);
+            } else if (!existing.matches(capability)) {
+                plan.add(Plan.Action.UPDATE, "capability", capability.getType(), null);
+            } else {
+                plan.unchanged();
+            }
+        }
+    }
+
+    private static Map<String, String> stringValues(Map<String, ?> map) {
+        Map<String, String> values = new HashMap<>();
+        if (map != null) {
+            map.forEach((key, value) -> values.put(key, value == null ? null : String.valueOf(value)));
+        }
+        return values;
+    }
+
+    private static boolean isTrue(Boolean b) {
+        return b != null && b;
+    }
+}
@@ -0,0 +1,30 @@
+package ch.sventschui.nexus.casc;
+
+import org.sonatype.nexus.scheduling.TaskSupport;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Reverts changes made to the live state (e.g. through the UI) by re-applying the config when drift is detected
+ */
+@Named
+public class ReconcileTask extends TaskSupport {
+    private final NexusCascPlugin plugin;
+
+    @Inject
+    public ReconcileTask(final NexusCascPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    protected Object execute() throws Exception {
+        plugin.reconcile();
+        return null;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Reconciling Nexus with the configuration as code";
+    }
+}
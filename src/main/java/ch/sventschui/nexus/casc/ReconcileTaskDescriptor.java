@@ -0,0 +1,18 @@
+package ch.sventschui.nexus.casc;
+
+import org.sonatype.nexus.scheduling.TaskDescriptorSupport;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+@Named
+@Singleton
+public class ReconcileTaskDescriptor extends TaskDescriptorSupport {
+    public static final String TYPE_ID = "casc.reconcile";
+
+    public static final String NAME = "Configuration as Code - Reconcile drift";
+
+    public ReconcileTaskDescriptor() {
+        super(TYPE_ID, ReconcileTask.class, NAME, VISIBLE, EXPOSED);
+    }
+}
@@ -0,0 +1,59 @@
+package ch.sventschui.nexus.casc;
+
+import org.sonatype.nexus.security.user.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Hash based matching of configured against live entities. Every side is indexed once so that reconciling n
+ * configured against m live entities is O(n + m) instead of a nested scan.
+ */
+public final class Reconciliation {
+    private Reconciliation() {
+    }
+
+    /**
+     * Names of all configured entities
+     */
+    public static <T> Set<String> names(Collection<? extends T> configured, Function<? super T, String> name) {
+        Set<String> names = new HashSet<>(configured.size() * 2);
+        configured.forEach(entity -> names.add(name.apply(entity)));
+        return names;
+    }
+
+    /**
+     * Live entities by key, if several entities share a key the first one wins
+     */
+    public static <T> Map<String, T> index(Iterable<? extends T> live, Function<? super T, String> key) {
+        Map<String, T> index = new LinkedHashMap<>();
+        live.forEach(entity -> index.putIfAbsent(key.apply(entity), entity));
+        return index;
+    }
+
+    /**
+     * Live entities whose name is not part of the configured names, in the order of the live entities
+     */
+    public static <T> List<T> obsolete(Iterable<? extends T> live, Function<? super T, String> name, Set<String> configured) {
+        List<T> obsolete = new ArrayList<>();
+        live.forEach(entity -> {
+            if (!configured.contains(name.apply(entity))) {
+                obsolete.add(entity);
+            }
+        });
+        return obsolete;
+    }
+
+    /**
+     * Identifies a user across user sources, the same user id might exist in several sources
+     */
+    public static String userKey(User user) {
+        return user.getSource() + "/" + user.getUserId();
+    }
+}
@@ -0,0 +1,126 @@
+package ch.sventschui.nexus.casc;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Compares configured repository attributes with the attributes of a live repository {@code Configuration}.
+ * <p>
+ * Both sides are brought into a canonical form before comparing them:
+ * <ul>
+ * <li>{@code cleanup.policyName} is compared as a set, as done by the plugin before creating/updating a repository</li>
+ * <li>numbers are compared by value, so {@code 1440} equals {@code 1440.0}</li>
+ * <li>null values, null sections and empty sections are treated as absent</li>
+ * <li>values that equal the recipe default are treated as absent</li>
+ * </ul>
+ */
+public final class RepositoryAttributes {
+    private static final Map<String, Map<String, Object>> ALL_DEFAULTS = defaults(
+            "storage", "strictContentTypeValidation", true
+    );
+
+    private static final Map<String, Map<String, Object>> PROXY_DEFAULTS = defaults(
+            "httpclient", "blocked", false,
+            "negativeCache", "enabled", true,
+            "negativeCache", "timeToLive", 1440,
+            "proxy", "contentMaxAge", 1440,
+            "proxy", "metadataMaxAge", 1440
+    );
+
+    private RepositoryAttributes() {
+    }
+
+    public static boolean equivalent(String recipeName, Map<String, Map<String, Object>> configured, Map<String, Map<String, Object>> live) {
+        return canonicalize(recipeName, configured).equals(canonicalize(recipeName, live));
+    }
+
+    static Map<String, Map<String, String>> canonicalize(String recipeName, Map<String, Map<String, Object>> attributes) {
+        Map<String, Map<String, String>> canonical = new TreeMap<>();
+        if (attributes == null) {
+            return canonical;
+        }
+
+        attributes.forEach((sectionName, section) -> {
+            if (section == null) {
+                return;
+            }
+
+            Map<String, String> canonicalSection = new TreeMap<>();
+            section.forEach((key, value) -> {
+                Object normalized = normalize(sectionName, key, value);
+                if (normalized == null || isDefault(recipeName, sectionName, key, normalized)) {
+                    return;
+                }
+
+                StringBuilder sb = new StringBuilder();
+                Fingerprints.canonicalize(normalized, sb);
+                canonicalSection.put(key, sb.toString());
+            });
+
+            if (!canonicalSection.isEmpty()) {
+                canonical.put(sectionName, canonicalSection);
+            }
+        });
+
+        return canonical;
+    }
+
+    private static Object normalize(String sectionName, String key, Object value) {
+        if (value instanceof Map) {
+            Map<Object, Object> map = new HashMap<>();
+            ((Map<?, ?>) value).forEach((k, v) -> {
+                Object normalized = normalize(sectionName, String.valueOf(k), v);
+                if (normalized != null) {
+                    map.put(k, normalized);
+                }
+            });
+            return map.isEmpty() ? null : map;
+        }
+
+        if ("cleanup".equals(sectionName) && "policyName".equals(key)) {
+            if (value instanceof String) {
+                return Collections.singleton(value);
+            } else if (value instanceof Collection) {
+                return new HashSet<>((Collection<?>) value);
+            }
+        }
+
+        return value;
+    }
+
+    private static boolean isDefault(String recipeName, String sectionName, String key, Object value) {
+        if (matchesDefault(ALL_DEFAULTS, sectionName, key, value)) {
+            return true;
+        }
+
+        return recipeName != null && recipeName.endsWith("-proxy") && matchesDefault(PROXY_DEFAULTS, sectionName, key, value);
+    }
+
+    private static boolean matchesDefault(Map<String, Map<String, Object>> defaults, String sectionName, String key, Object value) {
+        Map<String, Object> section = defaults.get(sectionName);
+        if (section == null || !section.containsKey(key)) {
+            return false;
+        }
+
+        Object defaultValue = section.get(key);
+        if (value instanceof Number && defaultValue instanceof Number) {
+            return Fingerprints.canonicalNumber((Number) value).equals(Fingerprints.canonicalNumber((Number) defaultValue));
+        }
+
+        return Objects.equals(defaultValue, value);
+    }
+
+    private static Map<String, Map<String, Object>> defaults(Object... sectionKeyValues) {
+        Map<String, Map<String, Object>> defaults = new HashMap<>();
+        for (int i = 0; i < sectionKeyValues.length; i += 3) {
+            defaults.computeIfAbsent((String) sectionKeyValues[i], k -> new HashMap<>())
+                    .put((String) sectionKeyValues[i + 1], sectionKeyValues[i + 2]);
+        }
+        return defaults;
+    }
+}
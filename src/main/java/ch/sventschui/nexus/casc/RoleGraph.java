@@ -0,0 +1,250 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.ConfigSecurityRoleDefinition;
+import org.sonatype.nexus.security.role.Role;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The roles of the default source as a graph from every role to the roles nested in it: the live roles with the
+ * configured roles laid over them.
+ * <p>
+ * Role ids are indexed once and nested roles are kept as arrays of indices, so finding cycles, missing nested roles
+ * and the order to write the roles in are linear in the number of roles and nestings. The graph is walked
+ * iteratively, deep nesting can't overflow the stack.
+ */
+public final class RoleGraph {
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, Integer> index = new HashMap<>();
+    private final int[][] nested;
+    private final Map<String, List<String>> missing = new LinkedHashMap<>();
+
+    /**
+     * @param roles The ids of the nested roles by role id
+     */
+    public RoleGraph(Map<String, ? extends Collection<String>> roles) {
+        roles.keySet().forEach(id -> {
+            index.put(id, ids.size());
+            ids.add(id);
+        });
+
+        nested = new int[ids.size()][];
+        roles.forEach((id, children) -> {
+            int[] edges = new int[children == null ? 0 : children.size()];
+            int count = 0;
+            if (children != null) {
+                for (String child : children) {
+                    Integer target = index.get(child);
+                    if (target != null) {
+                        edges[count++] = target;
+                    } else {
+                        missing.computeIfAbsent(id, k -> new ArrayList<>()).add(child);
+                    }
+                }
+            }
+            nested[index.get(id)] = Arrays.copyOf(edges, count);
+        });
+    }
+
+    /**
+     * The graph the roles will form once the config is applied
+     *
+     * @param live       The live roles of the default source
+     * @param configured The configured roles, replace live roles with the same id
+     * @param prune      Whether live roles that are not configured are deleted, read-only roles are never deleted
+     */
+    public static RoleGraph of(Collection<Role> live, Collection<ConfigSecurityRoleDefinition> configured, boolean prune) {
+        Map<String, Collection<String>> roles = new LinkedHashMap<>();
+        live.forEach(role -> {
+            if (!prune || role.isReadOnly()) {
+                roles.put(role.getRoleId(), role.getRoles());
+            }
+        });
+        configured.forEach(role -> {
+            if (role.getId() != null) {
+                roles.put(role.getId(), role.getRoles());
+            }
+        });
+        return new RoleGraph(roles);
+    }
+
+    public boolean contains(String id) {
+        return index.containsKey(id);
+    }
+
+    /**
+     * Nested role ids that are not part of the graph, by the id of the role nesting them
+     */
+    public Map<String, List<String>> getMissing() {
+        return Collections.unmodifiableMap(missing);
+    }
+
+    /**
+     * Every group of roles that nest each other, as a path from the first role of the group back to itself, e.g.
+     * {@code [a, b, a]}. A role nesting itself is {@code [a, a]}.
+     */
+    public List<List<String>> cycles() {
+        int n = ids.size();
+        int[] number = new int[n];
+        int[] low = new int[n];
+        int[] next = new int[n];
+        int[] call = new int[n];
+        int[] stack = new int[n];
+        boolean[] onStack = new boolean[n];
+        boolean[] component = new boolean[n];
+        int counter = 0;
+        int size = 0;
+        List<List<String>> cycles = new ArrayList<>();
+
+        // Tarjan's strongly connected components with an explicit call stack
+        for (int root = 0; root < n; root++) {
+            if (number[root] != 0) {
+                continue;
+            }
+
+            int top = 0;
+            call[0] = root;
+            number[root] = low[root] = ++counter;
+            stack[size++] = root;
+            onStack[root] = true;
+
+            while (top >= 0) {
+                int role = call[top];
+                if (next[role] < nested[role].length) {
+                    int child = nested[role][next[role]++];
+                    if (number[child] == 0) {
+                        number[child] = low[child] = ++counter;
+                        stack[size++] = child;
+                        onStack[child] = true;
+                        call[++top] = child;
+                    } else if (onStack[child]) {
+                        low[role] = Math.min(low[role], number[child]);
+                    }
+                    continue;
+                }
+
+                if (low[role] == number[role]) {
+                    int end = size;
+                    int member;
+                    do {
+                        member = stack[--size];
+                        onStack[member] = false;
+                    } while (member != role);
+
+                    if (end - size > 1 || nests(role, role)) {
+                        int first = role;
+                        for (int i = size; i < end; i++) {
+                            component[stack[i]] = true;
+                            first = Math.min(first, stack[i]);
+                        }
+                        cycles.add(cycle(first, component));
+                        for (int i = size; i < end; i++) {
+                            component[stack[i]] = false;
+                        }
+                    }
+                }
+
+                top--;
+                if (top >= 0) {
+                    low[call[top]] = Math.min(low[call[top]], low[role]);
+                }
+            }
+        }
+        return cycles;
+    }
+
+    /**
+     * All role ids, nested roles before the roles nesting them. Roles that are part of a cycle come last.
+     */
+    public List<String> order() {
+        int n = ids.size();
+        int[] pending = new int[n];
+        List<List<Integer>> parents = new ArrayList<>(n);
+        for (int role = 0; role < n; role++) {
+            parents.add(new ArrayList<>());
+        }
+        for (int role = 0; role < n; role++) {
+            pending[role] = nested[role].length;
+            for (int child : nested[role]) {
+                parents.get(child).add(role);
+            }
+        }
+
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int role = 0; role < n; role++) {
+            if (pending[role] == 0) {
+                ready.add(role);
+            }
+        }
+
+        List<String> order = new ArrayList<>(n);
+        boolean[] done = new boolean[n];
+        while (!ready.isEmpty()) {
+            int role = ready.poll();
+            order.add(ids.get(role));
+            done[role] = true;
+            for (int parent : parents.get(role)) {
+                if (--pending[parent] == 0) {
+                    ready.add(parent);
+                }
+            }
+        }
+
+        for (int role = 0; role < n; role++) {
+            if (!done[role]) {
+                order.add(ids.get(role));
+            }
+        }
+        return order;
+    }
+
+    private boolean nests(int role, int child) {
+        for (int edge : nested[role]) {
+            if (edge == child) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The shortest path from the given role back to itself through the roles of its component
+     */
+    private List<String> cycle(int start, boolean[] component) {
+        Map<Integer, Integer> previous = new HashMap<>();
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+
+        int last = -1;
+        while (!queue.isEmpty() && last < 0) {
+            int role = queue.poll();
+            for (int child : nested[role]) {
+                if (child == start) {
+                    last = role;
+                    break;
+                }
+                if (component[child] && !previous.containsKey(child)) {
+                    previous.put(child, role);
+                    queue.add(child);
+                }
+            }
+        }
+
+        Deque<String> path = new ArrayDeque<>();
+        path.addFirst(ids.get(start));
+        for (int role = last; role != start; role = previous.get(role)) {
+            path.addFirst(ids.get(role));
+        }
+        path.addFirst(ids.get(start));
+        return new ArrayList<>(path);
+    }
+}
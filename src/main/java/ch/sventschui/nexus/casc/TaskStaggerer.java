@@ -0,0 +1,211 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.ConfigTask;
+import ch.sventschui.nexus.casc.config.ConfigTaskStagger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Spreads scheduled tasks that have no cron across the stagger window of their type.
+ * <p>
+ * A window is split into slots of {@code slotMinutes}. Every task prefers the slot its blob store, repository or (for
+ * other tasks) name hashes to and takes the next slot with room if {@code maxConcurrent} tasks of its window already
+ * start in that slot. The slots only depend on the config: the order of the tasks doesn't matter, adding or removing a
+ * task rarely moves the others and all nodes sharing a config compute the same schedule. Disabled tasks get their
+ * preferred slot without taking room in it.
+ */
+public final class TaskStaggerer {
+    private static final int DAY = 24 * 60;
+    private static final Pattern WINDOW = Pattern.compile("(\\d{1,2}):(\\d{2})\\s*-\\s*(\\d{1,2}):(\\d{2})");
+
+    private final Map<String, Window> windows = new HashMap<>();
+    private final List<String> errors = new ArrayList<>();
+
+    /**
+     * @param stagger The stagger windows, invalid windows are reported by {@link #getErrors()} and ignored
+     */
+    public TaskStaggerer(List<ConfigTaskStagger> stagger) {
+        if (stagger == null) {
+            return;
+        }
+
+        for (int i = 0; i < stagger.size(); i++) {
+            String path = "tasks.stagger[" + i + "]";
+            Window window = window(path, stagger.get(i));
+            if (window == null) {
+                continue;
+            }
+            for (String type : stagger.get(i).getTypes()) {
+                Window other = windows.putIfAbsent(type, window);
+                if (other != null) {
+                    errors.add(path + ": type " + type + " is already staggered by " + other.path);
+                }
+            }
+        }
+    }
+
+    private Window window(String path, ConfigTaskStagger stagger) {
+        if (stagger.getTypes() == null || stagger.getTypes().isEmpty()) {
+            errors.add(path + ": types are missing");
+            return null;
+        }
+
+        Matcher matcher = stagger.getWindow() == null ? null : WINDOW.matcher(stagger.getWindow().trim());
+        if (matcher == null || !matcher.matches()
+                || Integer.parseInt(matcher.group(1)) > 23 || Integer.parseInt(matcher.group(2)) > 59
+                || Integer.parseInt(matcher.group(3)) > 23 || Integer.parseInt(matcher.group(4)) > 59) {
+            errors.add(path + ": window " + stagger.getWindow() + " is not of the form HH:mm-HH:mm");
+            return null;
+        }
+        if (stagger.getSlotMinutes() == null || stagger.getSlotMinutes() < 1) {
+            errors.add(path + ": slotMinutes must be at least 1");
+            return null;
+        }
+        if (stagger.getMaxConcurrent() == null || stagger.getMaxConcurrent() < 1) {
+            errors.add(path + ": maxConcurrent must be at least 1");
+            return null;
+        }
+
+        int start = Integer.parseInt(matcher.group(1)) * 60 + Integer.parseInt(matcher.group(2));
+        int end = Integer.parseInt(matcher.group(3)) * 60 + Integer.parseInt(matcher.group(4));
+        // windows may span midnight, a window ending where it starts spans the whole day
+        int length = end > start ? end - start : end - start + DAY;
+        int slots = length / stagger.getSlotMinutes();
+        if (slots == 0) {
+            errors.add(path + ": window " + stagger.getWindow() + " is shorter than slotMinutes");
+            return null;
+        }
+
+        return new Window(path, start, stagger.getSlotMinutes(), slots, stagger.getMaxConcurrent(), stagger.getDaysOfWeek());
+    }
+
+    /**
+     * Errors of the stagger windows and windows too small for their tasks
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    public boolean staggers(String type) {
+        return windows.containsKey(type);
+    }
+
+    /**
+     * The cron expressions of the tasks without a cron whose type is staggered
+     *
+     * @return Cron expressions by task name, tasks that don't fit into their window are missing and reported by
+     * {@link #getErrors()}
+     */
+    public Map<String, String> crons(Collection<ConfigTask> tasks) {
+        Map<Window, List<ConfigTask>> byWindow = new LinkedHashMap<>();
+        for (ConfigTask task : tasks) {
+            if ((task.getCron() == null || task.getCron().trim().isEmpty()) && task.getName() != null
+                    && windows.containsKey(task.getType())) {
+                byWindow.computeIfAbsent(windows.get(task.getType()), k -> new ArrayList<>()).add(task);
+            }
+        }
+
+        Map<String, String> crons = new LinkedHashMap<>();
+        byWindow.forEach((window, staggered) -> {
+            Map<ConfigTask, Integer> preferred = new HashMap<>();
+            staggered.forEach(task -> preferred.put(task, window.preferredSlot(key(task))));
+            staggered.sort(Comparator.<ConfigTask>comparingInt(preferred::get)
+                    .thenComparing(TaskStaggerer::key)
+                    .thenComparing(ConfigTask::getName));
+
+            int[] load = new int[window.slots];
+            int unscheduled = 0;
+            for (ConfigTask task : staggered) {
+                int slot = preferred.get(task);
+                if (task.getEnabled() == null || task.getEnabled()) {
+                    slot = window.freeSlot(load, slot);
+                    if (slot < 0) {
+                        unscheduled++;
+                        continue;
+                    }
+                    load[slot]++;
+                }
+                crons.put(task.getName(), window.cron(slot));
+            }
+
+            if (unscheduled > 0) {
+                errors.add(window.path + ": the window fits " + window.slots * window.maxConcurrent + " tasks but "
+                        + staggered.size() + " are staggered in it, " + unscheduled + " were not scheduled");
+            }
+        });
+        return crons;
+    }
+
+    /**
+     * The entity a task works on, tasks working on the same entity keep their slot relative to each other
+     */
+    private static String key(ConfigTask task) {
+        if (task.getProperties() != null) {
+            if (task.getProperties().get("blobstoreName") != null) {
+                return task.getProperties().get("blobstoreName");
+            }
+            if (task.getProperties().get("repositoryName") != null) {
+                return task.getProperties().get("repositoryName");
+            }
+        }
+        return task.getName();
+    }
+
+    private static final class Window {
+        private final String path;
+        private final int start;
+        private final int slotMinutes;
+        private final int slots;
+        private final int maxConcurrent;
+        private final String daysOfWeek;
+
+        private Window(String path, int start, int slotMinutes, int slots, int maxConcurrent, String daysOfWeek) {
+            this.path = path;
+            this.start = start;
+            this.slotMinutes = slotMinutes;
+            this.slots = slots;
+            this.maxConcurrent = maxConcurrent;
+            this.daysOfWeek = daysOfWeek == null || daysOfWeek.trim().isEmpty() ? null : daysOfWeek.trim();
+        }
+
+        /**
+         * A stable slot for the key, unlike {@link String#hashCode()} the CRC spreads similar names like
+         * {@code maven-1} and {@code maven-2} across the window
+         */
+        private int preferredSlot(String key) {
+            CRC32 crc = new CRC32();
+            crc.update(key.getBytes(StandardCharsets.UTF_8));
+            return (int) (crc.getValue() % slots);
+        }
+
+        /**
+         * The first slot from the preferred one on that has room, -1 if all slots are full
+         */
+        private int freeSlot(int[] load, int preferred) {
+            for (int i = 0; i < slots; i++) {
+                int slot = (preferred + i) % slots;
+                if (load[slot] < maxConcurrent) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private String cron(int slot) {
+            int minute = (start + slot * slotMinutes) % DAY;
+            return daysOfWeek == null
+                    ? String.format("0 %d %d * * ?", minute % 60, minute / 60)
+                    : String.format("0 %d %d ? * %s", minute % 60, minute / 60, daysOfWeek);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.ConfigSecurityUser;
+import org.sonatype.nexus.security.role.RoleIdentifier;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserStatus;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Compares a configured user with a live {@link User}, field by field.
+ * <p>
+ * Roles are compared as a set of {@link RoleIdentifier}, so their order does not matter. The status only differs if
+ * the plugin could change it, i.e. a locked user that is configured to be active is not reported.
+ */
+public final class UserDiff {
+    private UserDiff() {
+    }
+
+    /**
+     * Returns a description of every field that differs, empty if the live user matches its configuration
+     */
+    public static List<String> diff(ConfigSecurityUser configured, User live) {
+        List<String> differences = new ArrayList<>();
+        compare(differences, "firstName", configured.getFirstName(), live.getFirstName());
+        compare(differences, "lastName", configured.getLastName(), live.getLastName());
+        compare(differences, "email", configured.getEmail(), live.getEmailAddress());
+        compare(differences, "status", status(configured.getActive(), live.getStatus()), live.getStatus());
+
+        Set<RoleIdentifier> liveRoles = live.getRoles() != null ? live.getRoles() : new HashSet<>();
+        Set<RoleIdentifier> roles = roles(configured);
+        if (!roles.equals(liveRoles)) {
+            differences.add("roles: " + describe(liveRoles) + " -> " + describe(roles));
+        }
+
+        return differences;
+    }
+
+    static Set<RoleIdentifier> roles(ConfigSecurityUser configured) {
+        if (configured.getRoles() == null) {
+            return new HashSet<>();
+        }
+        return configured.getRoles().stream()
+                .map(r -> new RoleIdentifier(r.getSource(), r.getRole()))
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * The status the user ends up with when applying {@code active}
+     */
+    static UserStatus status(Boolean active, UserStatus current) {
+        if (active == null) {
+            return current;
+        }
+        if (active) {
+            return current == UserStatus.disabled ? UserStatus.active : current;
+        }
+        return UserStatus.disabled;
+    }
+
+    private static void compare(List<String> differences, String field, Object configured, Object live) {
+        if (!Objects.equals(configured, live)) {
+            differences.add(field + ": " + live + " -> " + configured);
+        }
+    }
+
+    private static String describe(Set<RoleIdentifier> roles) {
+        return roles.stream().map(Fingerprints::roleKey).sorted().collect(Collectors.toList()).toString();
+    }
+}
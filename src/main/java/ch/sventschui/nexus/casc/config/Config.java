@@ -1,12 +1,16 @@
 package ch.sventschui.nexus.casc.config;
 
+import java.io.Serializable;
 import java.util.List;
 
-public class Config {
+public class Config implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private ConfigCore core;
     private ConfigRepository repository;
     private ConfigSecurity security;
     private List<ConfigCapability> capabilities;
+    private ConfigTasks tasks;
 
     public ConfigCore getCore() {
         return core;
@@ -39,4 +43,12 @@ public class Config {
     public void setCapabilities(List<ConfigCapability> capabilities) {
         this.capabilities = capabilities;
     }
+
+    public ConfigTasks getTasks() {
+        return tasks;
+    }
+
+    public void setTasks(ConfigTasks tasks) {
+        this.tasks = tasks;
+    }
 }
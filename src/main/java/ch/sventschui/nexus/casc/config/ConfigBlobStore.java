@@ -1,10 +1,13 @@
 package ch.sventschui.nexus.casc.config;
 
+import java.io.Serializable;
 import org.sonatype.nexus.blobstore.file.FileBlobStore;
 
 import java.util.Map;
 
-public class ConfigBlobStore {
+public class ConfigBlobStore implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private String name;
     private Map<String, Map<String, Object>> attributes;
     private String type = FileBlobStore.TYPE;
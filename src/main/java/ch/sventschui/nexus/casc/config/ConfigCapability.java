@@ -1,8 +1,11 @@
 package ch.sventschui.nexus.casc.config;
 
+import java.io.Serializable;
 import java.util.Map;
 
-public class ConfigCapability {
+public class ConfigCapability implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private String type;
     private Boolean enabled;
     private String notes;
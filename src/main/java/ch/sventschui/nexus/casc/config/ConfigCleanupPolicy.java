@@ -1,9 +1,12 @@
 package ch.sventschui.nexus.casc.config;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 
-public class ConfigCleanupPolicy {
+public class ConfigCleanupPolicy implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private String name;
     private String format;
     private String notes = "";
@@ -1,6 +1,10 @@
 package ch.sventschui.nexus.casc.config;
 
-public class ConfigCore {
+import java.io.Serializable;
+
+public class ConfigCore implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private String baseUrl;
     private String httpProxy;
     private String httpsProxy;
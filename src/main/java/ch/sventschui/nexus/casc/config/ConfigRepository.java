@@ -1,8 +1,11 @@
 package ch.sventschui.nexus.casc.config;
 
+import java.io.Serializable;
 import java.util.List;
 
-public class ConfigRepository {
+public class ConfigRepository implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private Boolean pruneBlobStores;
     private List<ConfigBlobStore> blobStores;
     private Boolean pruneCleanupPolicies;
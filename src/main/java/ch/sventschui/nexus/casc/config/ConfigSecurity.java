@@ -1,12 +1,21 @@
 package ch.sventschui.nexus.casc.config;
 
+import java.io.Serializable;
 import java.util.List;
 
-public class ConfigSecurity {
+public class ConfigSecurity implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private Boolean anonymousAccess;
     private Boolean pruneUsers;
     private List<ConfigSecurityUser> users;
     private List<ConfigSecurityRealm> realms;
+    private Boolean pruneContentSelectors;
+    private List<ConfigSecurityContentSelector> contentSelectors;
+    private Boolean prunePrivileges;
+    private List<ConfigSecurityPrivilege> privileges;
+    private Boolean pruneRoles;
+    private List<ConfigSecurityRoleDefinition> roles;
 
     public Boolean getAnonymousAccess() {
         return anonymousAccess;
@@ -39,4 +48,52 @@ public class ConfigSecurity {
     public void setRealms(List<ConfigSecurityRealm> realms) {
         this.realms = realms;
     }
+
+    public Boolean getPruneContentSelectors() {
+        return pruneContentSelectors;
+    }
+
+    public void setPruneContentSelectors(Boolean pruneContentSelectors) {
+        this.pruneContentSelectors = pruneContentSelectors;
+    }
+
+    public List<ConfigSecurityContentSelector> getContentSelectors() {
+        return contentSelectors;
+    }
+
+    public void setContentSelectors(List<ConfigSecurityContentSelector> contentSelectors) {
+        this.contentSelectors = contentSelectors;
+    }
+
+    public Boolean getPrunePrivileges() {
+        return prunePrivileges;
+    }
+
+    public void setPrunePrivileges(Boolean prunePrivileges) {
+        this.prunePrivileges = prunePrivileges;
+    }
+
+    public List<ConfigSecurityPrivilege> getPrivileges() {
+        return privileges;
+    }
+
+    public void setPrivileges(List<ConfigSecurityPrivilege> privileges) {
+        this.privileges = privileges;
+    }
+
+    public Boolean getPruneRoles() {
+        return pruneRoles;
+    }
+
+    public void setPruneRoles(Boolean pruneRoles) {
+        this.pruneRoles = pruneRoles;
+    }
+
+    public List<ConfigSecurityRoleDefinition> getRoles() {
+        return roles;
+    }
+
+    public void setRoles(List<ConfigSecurityRoleDefinition> roles) {
+        this.roles = roles;
+    }
 }
@@ -0,0 +1,35 @@
+package ch.sventschui.nexus.casc.config;
+
+import java.io.Serializable;
+
+public class ConfigSecurityContentSelector implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String name;
+    private String description = "";
+    private String expression;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public void setExpression(String expression) {
+        this.expression = expression;
+    }
+}
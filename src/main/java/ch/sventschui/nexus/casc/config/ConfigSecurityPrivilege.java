@@ -0,0 +1,46 @@
+package ch.sventschui.nexus.casc.config;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ConfigSecurityPrivilege implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String name;
+    private String description = "";
+    private String type;
+    private Map<String, String> properties = new HashMap<>();
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    public void setProperties(Map<String, String> properties) {
+        this.properties = properties;
+    }
+}
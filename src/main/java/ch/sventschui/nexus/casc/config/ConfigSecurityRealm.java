@@ -1,6 +1,10 @@
 package ch.sventschui.nexus.casc.config;
 
-public class ConfigSecurityRealm {
+import java.io.Serializable;
+
+public class ConfigSecurityRealm implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private String name;
     private Boolean enabled;
 
@@ -1,6 +1,10 @@
 package ch.sventschui.nexus.casc.config;
 
-public class ConfigSecurityRole {
+import java.io.Serializable;
+
+public class ConfigSecurityRole implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private String source;
     private String role;
 
@@ -1,12 +1,16 @@
 package ch.sventschui.nexus.casc.config;
 
+import java.io.Serializable;
 import java.util.List;
 
-public class ConfigSecurityUser {
+public class ConfigSecurityUser implements Serializable {
+    private static final long serialVersionUID = 1L;
+
     private String username;
     private String firstName;
     private String lastName;
     private String password;
+    private String passwordHash;
     private Boolean updateExistingPassword;
     private List<ConfigSecurityRole> roles;
     private String email;
@@ -44,6 +48,14 @@ public class ConfigSecurityUser {
         this.password = password;
     }
 
+    public String getPasswordHash() {
+        return passwordHash;
+    }
+
+    public void setPasswordHash(String passwordHash) {
+        this.passwordHash = passwordHash;
+    }
+
     public Boolean getUpdateExistingPassword() {
         return updateExistingPassword;
     }
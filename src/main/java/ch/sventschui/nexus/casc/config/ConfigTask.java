@@ -0,0 +1,58 @@
+package ch.sventschui.nexus.casc.config;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A scheduled task, tasks without a cron are scheduled in the stagger window of their type
+ */
+public class ConfigTask implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String name;
+    private String type;
+    private Boolean enabled;
+    private String cron;
+    private Map<String, String> properties = new HashMap<>();
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getCron() {
+        return cron;
+    }
+
+    public void setCron(String cron) {
+        this.cron = cron;
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    public void setProperties(Map<String, String> properties) {
+        this.properties = properties;
+    }
+}
@@ -0,0 +1,58 @@
+package ch.sventschui.nexus.casc.config;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * A daily window the tasks of the given types are spread across, at most {@code maxConcurrent} of them start in the
+ * same slot of {@code slotMinutes}
+ */
+public class ConfigTaskStagger implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private List<String> types;
+    private String window;
+    private Integer slotMinutes = 30;
+    private Integer maxConcurrent = 1;
+    private String daysOfWeek;
+
+    public List<String> getTypes() {
+        return types;
+    }
+
+    public void setTypes(List<String> types) {
+        this.types = types;
+    }
+
+    public String getWindow() {
+        return window;
+    }
+
+    public void setWindow(String window) {
+        this.window = window;
+    }
+
+    public Integer getSlotMinutes() {
+        return slotMinutes;
+    }
+
+    public void setSlotMinutes(Integer slotMinutes) {
+        this.slotMinutes = slotMinutes;
+    }
+
+    public Integer getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public void setMaxConcurrent(Integer maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    public String getDaysOfWeek() {
+        return daysOfWeek;
+    }
+
+    public void setDaysOfWeek(String daysOfWeek) {
+        this.daysOfWeek = daysOfWeek;
+    }
+}
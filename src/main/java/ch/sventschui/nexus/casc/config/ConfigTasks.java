@@ -0,0 +1,36 @@
+package ch.sventschui.nexus.casc.config;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class ConfigTasks implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private Boolean pruneTasks;
+    private List<ConfigTaskStagger> stagger;
+    private List<ConfigTask> tasks;
+
+    public Boolean getPruneTasks() {
+        return pruneTasks;
+    }
+
+    public void setPruneTasks(Boolean pruneTasks) {
+        this.pruneTasks = pruneTasks;
+    }
+
+    public List<ConfigTaskStagger> getStagger() {
+        return stagger;
+    }
+
+    public void setStagger(List<ConfigTaskStagger> stagger) {
+        this.stagger = stagger;
+    }
+
+    public List<ConfigTask> getTasks() {
+        return tasks;
+    }
+
+    public void setTasks(List<ConfigTask> tasks) {
+        this.tasks = tasks;
+    }
+}
@@ -0,0 +1,23 @@
+package ch.sventschui.nexus.casc.resolver;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Resolves env vars, used for {@code $VAR}, {@code ${VAR}} and {@code ${VAR:default}} as well as {@code ${env:VAR}}
+ */
+@Named(EnvResolver.NAME)
+@Singleton
+public class EnvResolver implements Resolver {
+    public static final String NAME = "env";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String resolve(String argument) {
+        return System.getenv(argument.toUpperCase());
+    }
+}
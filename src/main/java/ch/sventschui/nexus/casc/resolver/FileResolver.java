@@ -0,0 +1,49 @@
+package ch.sventschui.nexus.casc.resolver;
+
+import org.sonatype.goodies.common.ComponentSupport;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Resolves {@code ${file:/path}} to the content of the file
+ */
+@Named(FileResolver.NAME)
+@Singleton
+public class FileResolver extends ComponentSupport implements Resolver {
+    public static final String NAME = "file";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String resolve(String argument) throws IOException {
+        Path file = getFile(argument);
+        if (file == null) {
+            log.error("Missing filename in ${file:}");
+            return null;
+        }
+
+        if (!Files.exists(file)) {
+            log.error("File {} does not exist", file);
+            return null;
+        }
+
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Path getFile(String argument) {
+        if (argument == null || argument.trim().isEmpty()) {
+            return null;
+        }
+        return Paths.get(argument).toAbsolutePath();
+    }
+}
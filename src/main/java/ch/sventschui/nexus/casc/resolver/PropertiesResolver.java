@@ -0,0 +1,71 @@
+package ch.sventschui.nexus.casc.resolver;
+
+import org.sonatype.goodies.common.ComponentSupport;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+
+/**
+ * Resolves {@code ${properties:key}} to the value of {@code key} in the properties file
+ * {@code NEXUS_CASC_PROPERTIES}. The file is only read again once it changed.
+ */
+@Named(PropertiesResolver.NAME)
+@Singleton
+public class PropertiesResolver extends ComponentSupport implements Resolver {
+    public static final String NAME = "properties";
+
+    private Path loadedFile;
+    private String loadedVersion;
+    private Properties properties;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String resolve(String argument) throws IOException {
+        Path file = getFile(argument);
+        if (file == null) {
+            log.error("Env var NEXUS_CASC_PROPERTIES not set, can not resolve ${properties:{}}", argument);
+            return null;
+        }
+
+        if (!Files.isRegularFile(file)) {
+            log.error("Properties file {} does not exist", file);
+            return null;
+        }
+
+        return properties(file).getProperty(argument);
+    }
+
+    @Override
+    public Path getFile(String argument) {
+        String file = System.getenv("NEXUS_CASC_PROPERTIES");
+        return file == null || file.trim().isEmpty() ? null : Paths.get(file).toAbsolutePath();
+    }
+
+    private synchronized Properties properties(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        String version = attributes.lastModifiedTime() + "/" + attributes.size();
+
+        if (!file.equals(loadedFile) || !version.equals(loadedVersion)) {
+            Properties loaded = new Properties();
+            try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                loaded.load(in);
+            }
+            properties = loaded;
+            loadedFile = file;
+            loadedVersion = version;
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,34 @@
+package ch.sventschui.nexus.casc.resolver;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Resolves references of the form {@code ${name:argument}} in the config, e.g. {@code ${file:/path}}.
+ * <p>
+ * Implementations are picked up as named components, so other plugins can contribute resolvers. The interpolator
+ * resolves every distinct reference at most once per load of the config and might call resolvers concurrently.
+ */
+public interface Resolver {
+    /**
+     * The name used in references, e.g. {@code file} for {@code ${file:/path}}. References have to use the name
+     * exactly, names should be lowercase so that they don't hide env vars.
+     */
+    String getName();
+
+    /**
+     * Resolves the argument of a reference
+     *
+     * @return The value or null if there is none
+     */
+    String resolve(String argument) throws IOException;
+
+    /**
+     * The file the value is read from, changes of it are picked up by the config cache and hot reload
+     *
+     * @return The file or null if the value is not read from a file
+     */
+    default Path getFile(String argument) {
+        return null;
+    }
+}
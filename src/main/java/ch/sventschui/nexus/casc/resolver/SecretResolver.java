@@ -0,0 +1,60 @@
+package ch.sventschui.nexus.casc.resolver;
+
+import org.sonatype.goodies.common.ComponentSupport;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Resolves {@code ${secret:name}} to the content of the file {@code name} in the directory of mounted secrets,
+ * {@code NEXUS_CASC_SECRETS_DIR} or {@code /run/secrets} (Docker and Kubernetes secrets)
+ */
+@Named(SecretResolver.NAME)
+@Singleton
+public class SecretResolver extends ComponentSupport implements Resolver {
+    public static final String NAME = "secret";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String resolve(String argument) throws IOException {
+        Path file = getFile(argument);
+        if (file == null) {
+            log.error("Invalid secret name in ${secret:{}}", argument);
+            return null;
+        }
+
+        if (!Files.isRegularFile(file)) {
+            log.error("Secret {} does not exist", file);
+            return null;
+        }
+
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Path getFile(String argument) {
+        if (argument == null || argument.trim().isEmpty()) {
+            return null;
+        }
+
+        Path directory = directory();
+        Path file = directory.resolve(argument).normalize();
+        // secrets must not be read from outside of the directory
+        return file.startsWith(directory) ? file : null;
+    }
+
+    private static Path directory() {
+        String directory = System.getenv("NEXUS_CASC_SECRETS_DIR");
+        return Paths.get(directory == null || directory.trim().isEmpty() ? "/run/secrets" : directory)
+                .toAbsolutePath().normalize();
+    }
+}
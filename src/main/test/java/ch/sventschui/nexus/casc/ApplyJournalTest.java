@@ -0,0 +1,106 @@
+package ch.sventschui.nexus.casc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ApplyJournalTest {
+
+    @Test
+    void resumesInterruptedApplyOfSameConfig(@TempDir Path dir) {
+        Path file = dir.resolve("journal.log");
+        interruptedApply(file, "hash");
+
+        ApplyJournal journal = new ApplyJournal(file);
+        journal.begin("hash");
+
+        assertTrue(journal.completedBefore("repository:a"));
+        assertFalse(journal.completedBefore("repository:b"));
+        assertEquals(Collections.singletonMap("c", "definition"), journal.getCreatedOffline());
+    }
+
+    @Test
+    void startsOverForOtherConfig(@TempDir Path dir) {
+        Path file = dir.resolve("journal.log");
+        interruptedApply(file, "hash");
+
+        ApplyJournal journal = new ApplyJournal(file);
+        journal.begin("other");
+
+        assertFalse(journal.completedBefore("repository:a"));
+        assertTrue(journal.getCreatedOffline().isEmpty());
+    }
+
+    @Test
+    void startsOverAfterEnd(@TempDir Path dir) {
+        Path file = dir.resolve("journal.log");
+        ApplyJournal journal = new ApplyJournal(file);
+        journal.begin("hash");
+        journal.completed("repository:a");
+        journal.end();
+
+        journal = new ApplyJournal(file);
+        journal.begin("hash");
+
+        assertFalse(journal.completedBefore("repository:a"));
+    }
+
+    @Test
+    void ignoresTornRecord(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("journal.log");
+        interruptedApply(file, "hash");
+        Files.write(file, "DONE repository%3Ab".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        ApplyJournal journal = new ApplyJournal(file);
+        journal.begin("hash");
+
+        assertTrue(journal.completedBefore("repository:a"));
+        assertFalse(journal.completedBefore("repository:b"));
+    }
+
+    @Test
+    void schedulerSkipsCompletedWork(@TempDir Path dir) throws InterruptedException {
+        Path file = dir.resolve("journal.log");
+        interruptedApply(file, "hash");
+
+        ApplyJournal journal = new ApplyJournal(file);
+        journal.begin("hash");
+        List<String> applied = Collections.synchronizedList(new ArrayList<>());
+        ApplyScheduler scheduler = new ApplyScheduler(2).journal(journal);
+        scheduler.add("repository:a", "manager", Collections.emptyList(), () -> applied.add("a"));
+        scheduler.add("repository:b", "manager", Collections.singletonList("repository:a"), () -> applied.add("b"));
+        scheduler.run();
+        journal.close();
+
+        assertEquals(Collections.singletonList("b"), applied);
+
+        // b completed in the resumed apply, a in the interrupted one
+        journal = new ApplyJournal(file);
+        journal.begin("hash");
+        assertTrue(journal.completedBefore("repository:a"));
+        assertTrue(journal.completedBefore("repository:b"));
+    }
+
+    private static void interruptedApply(Path file, String configHash) {
+        ApplyJournal journal = new ApplyJournal(file);
+        journal.begin(configHash);
+        journal.planned("repository:a");
+        journal.planned("repository:b");
+        journal.createdOffline("c", "definition");
+        journal.completed("repository:a");
+        journal.failed("repository:b", "failed");
+        journal.close();
+    }
+}
@@ -0,0 +1,35 @@
+package ch.sventschui.nexus.casc;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ApplyMetricsTest {
+
+    @Test
+    void timesAndCountsScheduledWorkByKind() throws Exception {
+        MetricRegistry registry = new MetricRegistry();
+        ApplyMetrics metrics = new ApplyMetrics(registry);
+        ApplyStats stats = new ApplyStats(metrics);
+
+        ApplyScheduler scheduler = new ApplyScheduler(2).stats(stats);
+        scheduler.add("repository:maven-central", "repositoryManager", Collections.emptyList(), () -> stats.created("repository"));
+        scheduler.add("repository:broken", "repositoryManager", Collections.emptyList(), () -> {
+            throw new IllegalStateException("broken");
+        });
+        scheduler.add("prune:users", "securitySystem", Collections.emptyList(), () -> {
+        });
+        scheduler.run();
+
+        assertEquals(2, registry.timer("nexus-casc.repository").getCount());
+        assertEquals(1, registry.timer("nexus-casc.prune.users").getCount());
+        assertEquals(1L, metrics.getCreated().get("repository"));
+        assertEquals(1L, metrics.getFailed().get("repository"));
+        assertEquals(1, stats.getFailed("repository"));
+        assertTrue(metrics.getLastDurationMillis().containsKey("prune.users"));
+    }
+}
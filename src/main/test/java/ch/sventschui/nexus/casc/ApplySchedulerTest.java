@@ -0,0 +1,122 @@
+package ch.sventschui.nexus.casc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ApplySchedulerTest {
+
+    @Test
+    void runsDependenciesFirst() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        ApplyScheduler scheduler = new ApplyScheduler(4);
+
+        scheduler.add("repository:maven-public", "repositoryManager",
+                Arrays.asList("repository:maven-central", "repository:maven-releases", "blobStore:maven"),
+                () -> order.add("repository:maven-public"));
+        scheduler.add("repository:maven-central", "repositoryManager", Collections.singletonList("blobStore:maven"),
+                () -> order.add("repository:maven-central"));
+        scheduler.add("repository:maven-releases", "repositoryManager", Collections.singletonList("blobStore:unknown"),
+                () -> order.add("repository:maven-releases"));
+        scheduler.add("blobStore:maven", "blobStoreManager", Collections.emptyList(),
+                () -> order.add("blobStore:maven"));
+        scheduler.run();
+
+        assertEquals(4, order.size());
+        assertTrue(order.indexOf("blobStore:maven") < order.indexOf("repository:maven-central"), order.toString());
+        assertEquals("repository:maven-public", order.get(3));
+    }
+
+    @Test
+    void limitsConcurrencyPerManager() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ApplyScheduler scheduler = new ApplyScheduler(8).limit("repositoryManager", 2);
+
+        for (int i = 0; i < 20; i++) {
+            scheduler.add("repository:repo-" + i, "repositoryManager", Collections.emptyList(), () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+            });
+        }
+        scheduler.run();
+
+        assertTrue(maxRunning.get() <= 2, "max concurrency was " + maxRunning.get());
+    }
+
+    @Test
+    void limitedWorkDoesNotOccupyWorkers() throws Exception {
+        CountDownLatch usersApplied = new CountDownLatch(1);
+        AtomicBoolean waited = new AtomicBoolean();
+        ApplyScheduler scheduler = new ApplyScheduler(2).limit("blobStoreManager", 1);
+
+        // the first blob store waits for the user, which only gets a worker if the second blob store doesn't take it
+        scheduler.add("blobStore:a", "blobStoreManager", Collections.emptyList(), () -> {
+            try {
+                waited.set(usersApplied.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        scheduler.add("blobStore:b", "blobStoreManager", Collections.emptyList(), () -> {
+        });
+        scheduler.add("user:johndoe", "securitySystem", Collections.emptyList(), usersApplied::countDown);
+        scheduler.run();
+
+        assertTrue(waited.get());
+        assertEquals(3, scheduler.getDone());
+    }
+
+    @Test
+    void failuresAndCyclesDoNotBlockTheRest() throws Exception {
+        List<String> applied = Collections.synchronizedList(new ArrayList<>());
+        ApplyScheduler scheduler = new ApplyScheduler(2);
+
+        scheduler.add("repository:a", "repositoryManager", Collections.singletonList("repository:b"), () -> applied.add("a"));
+        scheduler.add("repository:b", "repositoryManager", Collections.singletonList("repository:a"), () -> applied.add("b"));
+        scheduler.add("repository:c", "repositoryManager", Collections.singletonList("repository:a"), () -> applied.add("c"));
+        scheduler.add("blobStore:broken", "blobStoreManager", Collections.emptyList(), () -> {
+            throw new IllegalStateException("broken");
+        });
+        scheduler.add("repository:d", "repositoryManager", Collections.singletonList("blobStore:broken"), () -> applied.add("d"));
+        scheduler.run();
+
+        assertEquals(4, applied.size(), applied.toString());
+        assertTrue(applied.indexOf("a") < applied.indexOf("c"), applied.toString());
+        assertEquals(1, scheduler.getFailed());
+    }
+
+    @Test
+    void acceptsWorkWhileRunning() throws Exception {
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        ApplyScheduler scheduler = new ApplyScheduler(2);
+        scheduler.start();
+
+        scheduler.add("repository:maven-public", "repositoryManager", Collections.singletonList("repository:maven-central"),
+                () -> order.add("repository:maven-public"));
+        scheduler.add("blobStore:maven", "blobStoreManager", Collections.emptyList(),
+                () -> order.add("blobStore:maven"));
+        scheduler.add("repository:maven-central", "repositoryManager", Collections.singletonList("blobStore:maven"),
+                () -> order.add("repository:maven-central"));
+        scheduler.finish();
+
+        assertEquals(3, order.size());
+        assertTrue(order.indexOf("blobStore:maven") < order.indexOf("repository:maven-central"), order.toString());
+        assertEquals("repository:maven-public", order.get(2));
+    }
+}
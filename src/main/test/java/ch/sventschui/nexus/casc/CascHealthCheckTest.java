@@ -0,0 +1,57 @@
+package ch.sventschui.nexus.casc;
+
+import com.codahale.metrics.health.HealthCheck;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CascHealthCheckTest {
+
+    @Test
+    void unhealthyUntilApplied() throws InterruptedException {
+        CascStatus status = new CascStatus();
+        CascHealthCheck check = new CascHealthCheck(status);
+
+        assertFalse(check.execute().isHealthy());
+
+        ApplyScheduler scheduler = new ApplyScheduler(1);
+        scheduler.add("a", "manager", Collections.emptyList(), () -> {
+        });
+        scheduler.add("b", "manager", Collections.singletonList("a"), () -> {
+        });
+        status.applying(scheduler);
+        assertEquals("Applying config (0/2)", check.execute().getMessage());
+
+        scheduler.run();
+        status.applied("hash", 0);
+
+        HealthCheck.Result result = check.execute();
+        assertTrue(result.isHealthy());
+        assertEquals("hash", result.getDetails().get("configHash"));
+        assertEquals(2, result.getDetails().get("done"));
+    }
+
+    @Test
+    void staysHealthyWhileReapplying() {
+        CascStatus status = new CascStatus();
+        status.applied("hash", 0);
+        status.applying(new ApplyScheduler(1));
+
+        assertTrue(new CascHealthCheck(status).execute().isHealthy());
+    }
+
+    @Test
+    void unhealthyAfterFailures() {
+        CascStatus status = new CascStatus();
+        status.applied("hash", 0);
+        status.applied("other", 2);
+
+        HealthCheck.Result result = new CascHealthCheck(status).execute();
+        assertFalse(result.isHealthy());
+        assertEquals("2 entities failed to apply", result.getMessage());
+    }
+}
@@ -0,0 +1,67 @@
+package ch.sventschui.nexus.casc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClusterLockTest {
+
+    @Test
+    void waitingNodeOnlyVerifiesTheApplyOfTheHolder(@TempDir Path dir) throws Exception {
+        try (ClusterLock leader = new ClusterLock(dir, 60_000, 10);
+             ClusterLock follower = new ClusterLock(dir, 60_000, 10)) {
+            assertTrue(leader.acquireOrAwait("config", live -> false));
+
+            CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return follower.acquireOrAwait("config", "live"::equals);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            Thread.sleep(100);
+            assertFalse(waiting.isDone());
+
+            leader.recordApplied("config", "live");
+            leader.release();
+
+            assertFalse(waiting.get(5, TimeUnit.SECONDS));
+            assertFalse(Files.exists(dir.resolve(ClusterLock.LOCK)));
+        }
+    }
+
+    @Test
+    void appliesAgainIfTheLiveStateDrifted(@TempDir Path dir) throws Exception {
+        try (ClusterLock leader = new ClusterLock(dir, 60_000, 10);
+             ClusterLock follower = new ClusterLock(dir, 60_000, 10)) {
+            assertTrue(leader.acquireOrAwait("config", live -> false));
+            leader.recordApplied("config", "live");
+            leader.release();
+
+            assertTrue(follower.acquireOrAwait("config", "drifted"::equals));
+            assertFalse(leader.tryAcquire());
+        }
+    }
+
+    @Test
+    void takesOverAnExpiredLease(@TempDir Path dir) throws Exception {
+        try (ClusterLock crashed = new ClusterLock(dir, 60_000, 10);
+             ClusterLock other = new ClusterLock(dir, 1_000, 10)) {
+            assertTrue(crashed.tryAcquire());
+            assertFalse(other.tryAcquire());
+
+            Files.setLastModifiedTime(dir.resolve(ClusterLock.LOCK), FileTime.fromMillis(System.currentTimeMillis() - 5_000));
+
+            assertTrue(other.tryAcquire());
+            assertFalse(crashed.tryAcquire());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package ch.sventschui.nexus.casc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ConfigCacheTest {
+    private final ConfigLoader loader = new ConfigLoader(new Interpolator(), 1);
+
+    @Test
+    void cachesTheConfigWithoutInterpolatedSecrets(@TempDir Path dir) throws IOException {
+        Path secret = write(dir.resolve("secret"), "s3cr3t");
+        Path config = write(dir.resolve("nexus.yml"), "security:\n  users:\n    - username: johndoe\n      password: ${file:" + secret + "}\n");
+        List<Path> sources = Collections.singletonList(config);
+        ConfigCache cache = new ConfigCache(dir.resolve("cache"));
+
+        assertNull(cache.load(sources, loader));
+        cache.store(loader.load(sources));
+
+        ConfigLoader.Loaded cached = cache.load(sources, loader);
+        assertNotNull(cached);
+        assertEquals("s3cr3t", cached.getConfig().getSecurity().getUsers().get(0).getPassword());
+        assertEquals(Collections.singletonList(secret.toAbsolutePath()), cached.getReferencedFiles());
+        assertFalse(new String(Files.readAllBytes(dir.resolve("cache/config.cache")), StandardCharsets.ISO_8859_1).contains("s3cr3t"));
+
+        // references are resolved after loading the cache, a changed secret does not need a new cache
+        write(secret, "changed");
+        assertEquals("changed", cache.load(sources, loader).getConfig().getSecurity().getUsers().get(0).getPassword());
+    }
+
+    @Test
+    void missesWhenAFragmentChanged(@TempDir Path dir) throws IOException {
+        Path config = write(dir.resolve("nexus.yml"), "core:\n  baseUrl: http://a\n");
+        List<Path> sources = Collections.singletonList(config);
+        ConfigCache cache = new ConfigCache(dir.resolve("cache"));
+        cache.store(loader.load(sources));
+
+        write(config, "core:\n  baseUrl: http://b\n");
+
+        assertNull(cache.load(sources, loader));
+    }
+
+    private static Path write(Path file, String content) throws IOException {
+        return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,220 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.Config;
+import ch.sventschui.nexus.casc.config.ConfigRepositoryEntry;
+import ch.sventschui.nexus.casc.config.ConfigSecurityContentSelector;
+import ch.sventschui.nexus.casc.config.ConfigSecurityRoleDefinition;
+import ch.sventschui.nexus.casc.config.ConfigSecurityUser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicy;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.security.privilege.Privilege;
+import org.sonatype.nexus.security.role.Role;
+import org.sonatype.nexus.security.role.RoleIdentifier;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserStatus;
+import org.sonatype.nexus.selector.SelectorConfiguration;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfigExporterTest {
+
+    @Test
+    void exportedConfigLoadsAsTheLiveState(@TempDir Path dir) throws IOException {
+        BlobStoreConfiguration blobStore = new BlobStoreConfiguration();
+        blobStore.setName("default");
+        blobStore.setType("File");
+        blobStore.setAttributes(new HashMap<>());
+        blobStore.getAttributes().put("file", new HashMap<>());
+        blobStore.getAttributes().get("file").put("path", "default");
+
+        Configuration repository = new Configuration();
+        repository.setRepositoryName("maven-central");
+        repository.setRecipeName("maven2-proxy");
+        repository.setOnline(true);
+        repository.setAttributes(new HashMap<>());
+        repository.getAttributes().put("proxy", new HashMap<>());
+        repository.getAttributes().get("proxy").put("contentMaxAge", 1440);
+        repository.getAttributes().get("proxy").put("remoteUrl", "1440");
+        Map<String, Object> authentication = new HashMap<>();
+        authentication.put("username", "deployer");
+        authentication.put("password", "s3cr3t");
+        repository.getAttributes().put("httpclient", new HashMap<>());
+        repository.getAttributes().get("httpclient").put("authentication", authentication);
+
+        SelectorConfiguration selector = new SelectorConfiguration();
+        selector.setName("team");
+        selector.setType("csel");
+        selector.setDescription("Team artifacts");
+        selector.setAttributes(Collections.singletonMap("expression", "format == \"maven2\" and path =^ \"/org/team/\""));
+        SelectorConfiguration jexl = new SelectorConfiguration();
+        jexl.setName("legacy");
+        jexl.setType("jexl");
+        jexl.setAttributes(Collections.singletonMap("expression", "true"));
+
+        Privilege teamRead = new Privilege();
+        teamRead.setId("team-read");
+        teamRead.setName("team-read");
+        teamRead.setDescription("Read team artifacts");
+        teamRead.setType("repository-content-selector");
+        teamRead.setProperties(new HashMap<>());
+        teamRead.getProperties().put("contentSelector", "team");
+        teamRead.getProperties().put("repository", "*");
+        teamRead.getProperties().put("actions", "read,browse");
+        Privilege builtIn = new Privilege();
+        builtIn.setId("nx-repository-view-*-*-read");
+        builtIn.setReadOnly(true);
+
+        Role developers = new Role();
+        developers.setRoleId("developers");
+        developers.setSource("default");
+        developers.setName("Developers");
+        developers.setDescription("");
+        developers.setPrivileges(new HashSet<>(Arrays.asList("team-read", "nx-repository-view-*-*-read")));
+        developers.setRoles(Collections.singleton("nx-anonymous"));
+        Role admin = new Role();
+        admin.setRoleId("nx-admin");
+        admin.setReadOnly(true);
+        Role anonymous = new Role();
+        anonymous.setRoleId("nx-anonymous");
+        anonymous.setReadOnly(true);
+
+        StringWriter yaml = new StringWriter();
+        new ConfigExporter(yaml).export(
+                Collections.singletonList(blobStore),
+                Collections.singletonList(new CleanupPolicy("old", "", "maven2", "delete", Collections.singletonMap("lastDownloaded", "30"))),
+                Collections.singletonList(repository),
+                Arrays.asList("NexusAuthenticatingRealm", "NexusAuthorizingRealm"),
+                Arrays.asList(selector, jexl),
+                Arrays.asList(teamRead, builtIn),
+                Arrays.asList(developers, admin, anonymous),
+                Arrays.asList(user("johndoe", "default", UserStatus.disabled), user("ldapuser", "LDAP", UserStatus.active)),
+                Collections.singletonList(new LiveState.Capability("rapture.settings", true, null, Collections.singletonMap("title", "Nexus"))));
+
+        assertFalse(yaml.toString().contains("s3cr3t"), yaml.toString());
+        assertFalse(yaml.toString().contains("ldapuser"), yaml.toString());
+
+        Path file = Files.write(dir.resolve("nexus.yml"), yaml.toString().getBytes(StandardCharsets.UTF_8));
+        ConfigLoader loader = new ConfigLoader(new Interpolator(), 1);
+        Config config = loader.load(loader.sources(file.toString())).getConfig();
+
+        assertEquals("default", config.getRepository().getBlobStores().get(0).getAttributes().get("file").get("path"));
+        assertEquals("30", config.getRepository().getCleanupPolicies().get(0).getCriteria().get("lastDownloaded"));
+
+        ConfigRepositoryEntry entry = config.getRepository().getRepositories().get(0);
+        assertEquals(1440, entry.getAttributes().get("proxy").get("contentMaxAge"));
+        assertEquals("1440", entry.getAttributes().get("proxy").get("remoteUrl"));
+        assertEquals("${REPOSITORY_MAVEN_CENTRAL_HTTPCLIENT_AUTHENTICATION_PASSWORD}",
+                ((Map<?, ?>) entry.getAttributes().get("httpclient").get("authentication")).get("password"));
+
+        assertEquals("NexusAuthorizingRealm", config.getSecurity().getRealms().get(1).getName());
+        assertEquals(1, config.getSecurity().getUsers().size());
+        ConfigSecurityUser user = config.getSecurity().getUsers().get(0);
+        assertEquals("johndoe", user.getUsername());
+        assertFalse(user.getActive());
+        assertEquals("nx-admin", user.getRoles().get(0).getRole());
+
+        assertTrue(config.getCapabilities().get(0).getEnabled());
+        assertEquals("Nexus", config.getCapabilities().get(0).getAttributes().get("title"));
+
+        assertEquals(1, config.getSecurity().getContentSelectors().size());
+        ConfigSecurityContentSelector exportedSelector = config.getSecurity().getContentSelectors().get(0);
+        assertEquals("team", exportedSelector.getName());
+        assertEquals(selector.getAttributes().get("expression"), exportedSelector.getExpression());
+        assertEquals(1, config.getSecurity().getPrivileges().size());
+        assertEquals(teamRead.getProperties(), config.getSecurity().getPrivileges().get(0).getProperties());
+        assertEquals(1, config.getSecurity().getRoles().size());
+        ConfigSecurityRoleDefinition exportedRole = config.getSecurity().getRoles().get(0);
+        assertEquals("Developers", exportedRole.getName());
+        assertEquals(Arrays.asList("nx-repository-view-*-*-read", "team-read"), exportedRole.getPrivileges());
+
+        // applying the export to the state it was exported from changes nothing
+        User johndoe = user("johndoe", "default", UserStatus.disabled);
+        LiveState live = new LiveState(Collections.singletonList(repository), Collections.singletonList(blobStore),
+                Collections.emptyList(), Collections.singletonList(johndoe), Collections.emptyList(),
+                Arrays.asList(developers, admin, anonymous), Arrays.asList(teamRead, builtIn), Arrays.asList(selector, jexl));
+        assertEquals(Collections.emptyList(), ConfigValidator.validate(config, live));
+        assertEquals(0, Planner.plan(config, live).getOperations().stream()
+                .filter(operation -> operation.getKind().equals("role") || operation.getKind().equals("privilege")
+                        || operation.getKind().equals("contentSelector"))
+                .count());
+    }
+
+    @Test
+    void dollarsSurviveAnExportAndReapply(@TempDir Path dir) throws IOException {
+        Configuration repository = new Configuration();
+        repository.setRepositoryName("raw-$PATH");
+        repository.setRecipeName("raw-hosted");
+        repository.setOnline(true);
+        repository.setAttributes(new HashMap<>());
+        repository.getAttributes().put("raw", new HashMap<>());
+        repository.getAttributes().get("raw").put("contentDisposition", "costs $5");
+        repository.getAttributes().get("raw").put("pathPattern", "^/org/(${group}|$HOME)/.*$");
+        repository.getAttributes().get("raw").put("$$", "${PATH:default}");
+
+        StringWriter yaml = new StringWriter();
+        new ConfigExporter(yaml).export(Collections.emptyList(), Collections.emptyList(),
+                Collections.singletonList(repository), Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+
+        Path file = Files.write(dir.resolve("nexus.yml"), yaml.toString().getBytes(StandardCharsets.UTF_8));
+        ConfigLoader loader = new ConfigLoader(new Interpolator(), 1);
+        ConfigRepositoryEntry entry = loader.load(loader.sources(file.toString())).getConfig()
+                .getRepository().getRepositories().get(0);
+
+        assertEquals("raw-$PATH", entry.getName());
+        assertEquals(repository.getAttributes().get("raw"), entry.getAttributes().get("raw"));
+        // only dollars that would start a reference are escaped
+        assertEquals("^/org/(${$}{group}|${$}HOME)/.*$", ConfigExporter.escaped("^/org/(${group}|$HOME)/.*$"));
+        assertEquals("costs $ 5 $", ConfigExporter.escaped("costs $ 5 $"));
+    }
+
+    @Test
+    void redactsAllKindsOfSecrets() {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("bearerToken", "t");
+        attributes.put("apiKey", "k");
+        attributes.put("api_key", "k");
+        attributes.put("secretAccessKey", "s");
+        attributes.put("sessionToken", "t");
+        attributes.put("ntlmPassphrase", "p");
+        attributes.put("credentials", "c");
+        attributes.put("username", "deployer");
+        attributes.put("blobStoreName", "default");
+
+        Map<?, ?> redacted = (Map<?, ?>) ConfigExporter.redacted(attributes, "repository", "npm-proxy");
+
+        assertEquals("${REPOSITORY_NPM_PROXY_BEARERTOKEN}", redacted.get("bearerToken").toString());
+        for (String key : Arrays.asList("apiKey", "api_key", "secretAccessKey", "sessionToken", "ntlmPassphrase", "credentials")) {
+            assertTrue(redacted.get(key) instanceof ConfigExporter.EnvReference, key);
+        }
+        assertEquals("deployer", redacted.get("username"));
+        assertEquals("default", redacted.get("blobStoreName"));
+    }
+
+    private static User user(String id, String source, UserStatus status) {
+        User user = new User();
+        user.setUserId(id);
+        user.setSource(source);
+        user.setFirstName("John");
+        user.setEmailAddress(id + "@example.com");
+        user.setStatus(status);
+        user.addRole(new RoleIdentifier("default", "nx-admin"));
+        return user;
+    }
+}
@@ -0,0 +1,129 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.Config;
+import ch.sventschui.nexus.casc.config.ConfigRepositoryEntry;
+import ch.sventschui.nexus.casc.resolver.Resolver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfigLoaderTest {
+    private final ConfigLoader loader = new ConfigLoader(new Interpolator(), 4);
+
+    @Test
+    void mergesFragmentsOfADirectory(@TempDir Path dir) throws IOException {
+        write(dir.resolve("10-core.yml"), "core:\n  baseUrl: http://nexus\nrepository:\n  pruneRepositories: true\n");
+        write(dir.resolve("20-maven.yml"), "repository:\n  pruneRepositories: true\n  repositories:\n"
+                + "    - name: maven-central\n      recipeName: maven2-proxy\n");
+        write(dir.resolve("30-npm.yaml"), "repository:\n  repositories:\n"
+                + "    - name: npm-proxy\n      recipeName: npm-proxy\n"
+                + "    - name: maven-central\n      recipeName: maven2-proxy\n");
+        write(dir.resolve("README.md"), "not: yaml");
+
+        Config config = loader.load(loader.sources(dir.toString())).getConfig();
+
+        assertEquals("http://nexus", config.getCore().getBaseUrl());
+        assertTrue(config.getRepository().getPruneRepositories());
+        assertEquals(Arrays.asList("maven-central", "npm-proxy"),
+                config.getRepository().getRepositories().stream().map(ConfigRepositoryEntry::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    void reportsConflicts(@TempDir Path dir) throws IOException {
+        write(dir.resolve("a.yml"), "core:\n  baseUrl: http://a\nsecurity:\n  users:\n    - username: johndoe\n      firstName: John\n");
+        write(dir.resolve("b.yml"), "core:\n  baseUrl: http://b\nsecurity:\n  users:\n    - username: johndoe\n      firstName: Johnny\n");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> loader.load(loader.sources(dir.toString())));
+
+        assertTrue(e.getMessage().contains("core.baseUrl is set to different values in " + dir.resolve("a.yml")), e.getMessage());
+        assertTrue(e.getMessage().contains("security.users[johndoe] is defined differently in " + dir.resolve("a.yml")), e.getMessage());
+    }
+
+    @Test
+    void globSelectsMatchingFragments(@TempDir Path dir) throws IOException {
+        Files.createDirectories(dir.resolve("team-a"));
+        Files.createDirectories(dir.resolve("team-b"));
+        write(dir.resolve("team-b/casc.yml"), "core:\n  baseUrl: http://nexus\n");
+        write(dir.resolve("team-a/casc.yml"), "core:\n  baseUrl: http://nexus\n");
+        write(dir.resolve("team-a/other.yml"), "core:\n  baseUrl: http://other\n");
+
+        assertEquals(Arrays.asList(dir.resolve("team-a/casc.yml"), dir.resolve("team-b/casc.yml")),
+                loader.sources(dir + "/*/casc.yml"));
+    }
+
+    @Test
+    void interpolatedValuesStayASingleScalar(@TempDir Path dir) throws IOException {
+        write(dir.resolve("secret"), "s3cr3t: x\n- y # z\n");
+        write(dir.resolve("nexus.yml"), "security:\n  users:\n    - username: johndoe\n      password: ${file:" + dir.resolve("secret") + "}\n"
+                + "repository:\n  repositories:\n    - name: maven-central\n      recipeName: maven2-proxy\n      attributes:\n"
+                + "        proxy:\n          contentMaxAge: ${IDONOTEXIST:1440}\n          remoteUrl: \"${IDONOTEXIST:1440}\"\n");
+
+        Config config = loader.load(loader.sources(dir.resolve("nexus.yml").toString())).getConfig();
+
+        assertEquals("s3cr3t: x\n- y # z", config.getSecurity().getUsers().get(0).getPassword());
+        // plain scalars are typed by their interpolated value, quoted ones stay strings
+        assertEquals(1440, config.getRepository().getRepositories().get(0).getAttributes().get("proxy").get("contentMaxAge"));
+        assertEquals("1440", config.getRepository().getRepositories().get(0).getAttributes().get("proxy").get("remoteUrl"));
+    }
+
+    @Test
+    void resolvesReferencesOnlyWhenTheyAreRead(@TempDir Path dir) throws IOException {
+        List<String> resolved = Collections.synchronizedList(new ArrayList<>());
+        Resolver resolver = new Resolver() {
+            @Override
+            public String getName() {
+                return "test";
+            }
+
+            @Override
+            public String resolve(String argument) {
+                resolved.add(argument);
+                return argument.toUpperCase();
+            }
+        };
+        ConfigLoader loader = new ConfigLoader(new Interpolator(Collections.singletonList(resolver)), 4);
+        write(dir.resolve("nexus.yml"), "security:\n  users:\n    - username: johndoe\n      password: ${test:a}\n"
+                + "    - username: janedoe\n      password: ${test:a}\n"
+                + "repository:\n  repositories:\n    - name: maven-central\n      recipeName: ${test:b}\n");
+
+        Config config = loader.load(loader.sources(dir.resolve("nexus.yml").toString())).getConfig();
+        assertEquals(Collections.emptyList(), resolved);
+
+        assertEquals("A", config.getSecurity().getUsers().get(1).getPassword());
+        assertEquals("A", config.getSecurity().getUsers().get(0).getPassword());
+        assertEquals(Collections.singletonList("a"), resolved);
+    }
+
+    @Test
+    void contentFingerprintOnlyDependsOnContent(@TempDir Path dir) throws IOException {
+        write(dir.resolve("secret"), "s3cr3t");
+        write(dir.resolve("nexus.yml"), "security:\n  users:\n    - username: johndoe\n      password: ${file:" + dir.resolve("secret") + "}\n");
+        List<Path> sources = loader.sources(dir.resolve("nexus.yml").toString());
+        String fingerprint = loader.load(sources).contentFingerprint();
+
+        // another node that mounted the same secret at another time
+        Files.setLastModifiedTime(dir.resolve("secret"), FileTime.fromMillis(0));
+        assertEquals(fingerprint, loader.load(sources).contentFingerprint());
+
+        write(dir.resolve("secret"), "s3cr3T");
+        assertNotEquals(fingerprint, loader.load(sources).contentFingerprint());
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        Files.write(path, content.getBytes());
+    }
+}
@@ -0,0 +1,55 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.Config;
+import ch.sventschui.nexus.casc.config.ConfigRepositoryEntry;
+import ch.sventschui.nexus.casc.config.ConfigSecurityUser;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfigStreamReaderTest {
+    private final ConfigStreamReader reader = new ConfigStreamReader(new Interpolator());
+
+    @Test
+    void streamsEntriesInDocumentOrder() {
+        List<String> entries = new ArrayList<>();
+
+        Config config = reader.read(new StringReader("core:\n  baseUrl: http://nexus\n"
+                + "security:\n  pruneUsers: true\n  users:\n    - username: johndoe\n    - username: janedoe\n"
+                + "repository:\n  repositories:\n    - name: maven-central\n      recipeName: maven2-proxy\n"), (list, entry) -> {
+            if (entry instanceof ConfigSecurityUser) {
+                entries.add(list + ":" + ((ConfigSecurityUser) entry).getUsername());
+            } else {
+                entries.add(list + ":" + ((ConfigRepositoryEntry) entry).getName());
+            }
+        });
+
+        assertEquals(Arrays.asList("security.users:johndoe", "security.users:janedoe", "repository.repositories:maven-central"), entries);
+        assertEquals("http://nexus", config.getCore().getBaseUrl());
+        assertTrue(config.getSecurity().getPruneUsers());
+        assertTrue(config.getSecurity().getUsers().isEmpty());
+        assertTrue(config.getRepository().getRepositories().isEmpty());
+    }
+
+    @Test
+    void interpolatesScalarsBeforeResolvingTheirType() {
+        List<ConfigRepositoryEntry> entries = new ArrayList<>();
+
+        reader.read(new StringReader("repository:\n  repositories:\n"
+                        + "    - name: ${CASC_STREAM_TEST_UNSET:docker-hosted}\n"
+                        + "      online: ${CASC_STREAM_TEST_UNSET:false}\n"
+                        + "      attributes:\n        docker:\n          httpPort: ${CASC_STREAM_TEST_UNSET:8082}\n"),
+                (list, entry) -> entries.add((ConfigRepositoryEntry) entry));
+
+        assertEquals(1, entries.size());
+        assertEquals("docker-hosted", entries.get(0).getName());
+        assertEquals(false, entries.get(0).getOnline());
+        assertEquals(8082, entries.get(0).getAttributes().get("docker").get("httpPort"));
+    }
+}
@@ -0,0 +1,191 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.Config;
+import org.junit.jupiter.api.Test;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.security.privilege.Privilege;
+import org.sonatype.nexus.security.role.Role;
+import org.sonatype.nexus.security.user.User;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfigValidatorTest {
+
+    @Test
+    void validConfig() {
+        Config config = config(
+                "repository:\n" +
+                "  blobStores:\n" +
+                "    - name: maven\n" +
+                "      attributes: {file: {path: maven}}\n" +
+                "  cleanupPolicies:\n" +
+                "    - name: weekly\n" +
+                "      format: maven2\n" +
+                "  repositories:\n" +
+                "    - name: maven-central\n" +
+                "      recipeName: maven2-proxy\n" +
+                "      attributes: {storage: {blobStoreName: maven}, cleanup: {policyName: [weekly]}}\n" +
+                "    - name: maven-public\n" +
+                "      recipeName: maven2-group\n" +
+                "      attributes: {storage: {blobStoreName: default}, group: {memberNames: [maven-central, maven-releases]}}\n" +
+                "security:\n" +
+                "  users:\n" +
+                "    - username: johndoe\n" +
+                "      password: secret\n" +
+                "      roles: [{source: '', role: nx-admin}]\n");
+
+        assertTrue(ConfigValidator.validate(config, live()).isEmpty());
+    }
+
+    @Test
+    void reportsAllErrorsAtOnce() {
+        Config config = config(
+                "core:\n" +
+                "  httpProxy: not a url\n" +
+                "repository:\n" +
+                "  pruneRepositories: true\n" +
+                "  blobStores:\n" +
+                "    - name: default\n" +
+                "      attributes: {file: {path: elsewhere}}\n" +
+                "    - name: broken\n" +
+                "      attributes: {file: {path: 1}}\n" +
+                "  repositories:\n" +
+                "    - name: maven-releases\n" +
+                "      recipeName: maven2-proxy\n" +
+                "    - name: maven-public\n" +
+                "      recipeName: maven2-group\n" +
+                "      attributes:\n" +
+                "        storage: {blobStoreName: missing}\n" +
+                "        cleanup: {policyName: [missing]}\n" +
+                "        group: {memberNames: [maven-releases, maven-central]}\n" +
+                "security:\n" +
+                "  users:\n" +
+                "    - username: johndoe\n" +
+                "      roles: []\n");
+
+        List<String> errors = ConfigValidator.validate(config, live());
+
+        assertEquals(Arrays.asList(
+                "core.httpProxy: not a url is not a valid URL",
+                "security.users[johndoe]: password or passwordHash is required to create the user",
+                "repository.blobStores[default].attributes.file.path: can not change the path from default to elsewhere",
+                "repository.blobStores[broken].attributes.file.path: must be a string",
+                "repository.repositories[maven-releases].recipeName: can not change the recipe from maven2-hosted to maven2-proxy",
+                "repository.repositories[maven-public].attributes.storage.blobStoreName: blob store missing is neither configured nor exists",
+                "repository.repositories[maven-public].attributes.cleanup.policyName: cleanup policy missing is neither configured nor exists",
+                "repository.repositories[maven-public].attributes.group.memberNames: repository maven-central is neither configured nor exists"
+        ), errors);
+    }
+
+    @Test
+    void checksRolesAgainstTheAuthorizationState() {
+        Config config = config(
+                "security:\n" +
+                "  pruneRoles: true\n" +
+                "  contentSelectors:\n" +
+                "    - name: team\n" +
+                "      expression: format == \"maven2\"\n" +
+                "  privileges:\n" +
+                "    - name: team-read\n" +
+                "      type: repository-content-selector\n" +
+                "      properties: {contentSelector: team, repository: '*', actions: read}\n" +
+                "    - name: other-read\n" +
+                "      type: repository-content-selector\n" +
+                "      properties: {contentSelector: other, repository: '*', actions: read}\n" +
+                "  roles:\n" +
+                "    - id: developers\n" +
+                "      privileges: [team-read, nx-repository-view-*-*-read]\n" +
+                "      roles: [leads, nx-anonymous]\n" +
+                "    - id: leads\n" +
+                "      privileges: [missing]\n" +
+                "      roles: [developers]\n" +
+                "    - id: nx-admin\n" +
+                "  users:\n" +
+                "    - username: johndoe\n" +
+                "      roles: [{source: default, role: developers}, {source: default, role: obsolete}, {source: LDAP, role: ops}]\n");
+
+        Role admin = new Role();
+        admin.setRoleId("nx-admin");
+        admin.setReadOnly(true);
+        Role anonymous = new Role();
+        anonymous.setRoleId("nx-anonymous");
+        anonymous.setReadOnly(true);
+        Role obsolete = new Role();
+        obsolete.setRoleId("obsolete");
+        Privilege read = new Privilege();
+        read.setId("nx-repository-view-*-*-read");
+        read.setReadOnly(true);
+        User johndoe = new User();
+        johndoe.setUserId("johndoe");
+
+        LiveState live = new LiveState(Collections.emptyList(), Collections.emptyList(), Collections.emptyList(),
+                Collections.singletonList(johndoe), Collections.emptyList(), Arrays.asList(admin, anonymous, obsolete),
+                Collections.singletonList(read), Collections.emptyList());
+
+        assertEquals(Arrays.asList(
+                "security.privileges[other-read].properties.contentSelector: content selector other is neither configured nor exists",
+                "security.roles[leads].privileges: privilege missing is neither configured nor exists",
+                "security.roles[nx-admin]: can not change the built-in role",
+                "security.roles[developers].roles: roles can not nest each other: developers -> leads -> developers",
+                "security.users[johndoe].roles[1]: role obsolete is neither configured nor exists"
+        ), ConfigValidator.validate(config, live));
+    }
+
+    @Test
+    void checksTasksAndStaggerWindows() {
+        Config config = config(
+                "tasks:\n" +
+                "  stagger:\n" +
+                "    - types: [blobstore.compact]\n" +
+                "      window: '01:00-02:00'\n" +
+                "      slotMinutes: 60\n" +
+                "  tasks:\n" +
+                "    - name: compact-default\n" +
+                "      type: blobstore.compact\n" +
+                "      properties: {blobstoreName: default}\n" +
+                "    - name: compact-npm\n" +
+                "      type: blobstore.compact\n" +
+                "      properties: {blobstoreName: npm}\n" +
+                "    - name: rebuild-index\n" +
+                "      type: repository.rebuild-index\n" +
+                "    - name: compact-npm\n" +
+                "      type: blobstore.compact\n" +
+                "      cron: '0 0 3 * * ?'\n");
+
+        assertEquals(Arrays.asList(
+                "tasks.tasks[rebuild-index]: cron is missing and no stagger window covers type repository.rebuild-index",
+                "tasks.tasks[compact-npm]: name is not unique",
+                "tasks.stagger[0]: the window fits 1 tasks but 2 are staggered in it, 1 were not scheduled"
+        ), ConfigValidator.validate(config, live()));
+    }
+
+    private static Config config(String yaml) {
+        return new Yaml(new Constructor(Config.class)).load(yaml);
+    }
+
+    private static LiveState live() {
+        BlobStoreConfiguration blobStore = new BlobStoreConfiguration();
+        blobStore.setName("default");
+        blobStore.setType("File");
+        blobStore.setAttributes(new HashMap<>());
+        blobStore.getAttributes().put("file", new HashMap<>());
+        blobStore.getAttributes().get("file").put("path", "default");
+
+        Configuration repository = new Configuration();
+        repository.setRepositoryName("maven-releases");
+        repository.setRecipeName("maven2-hosted");
+        repository.setAttributes(new HashMap<>());
+
+        return new LiveState(Collections.singletonList(repository), Collections.singletonList(blobStore),
+                Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+    }
+}
@@ -0,0 +1,38 @@
+package ch.sventschui.nexus.casc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConfigWatcherTest {
+
+    @Test
+    void debouncesBurstsOfChanges(@TempDir Path dir) throws Exception {
+        Path config = dir.resolve("nexus.yml");
+        Files.write(config, "core: {}".getBytes());
+        AtomicInteger reloads = new AtomicInteger();
+
+        try (ConfigWatcher watcher = new ConfigWatcher(reloads::incrementAndGet, 500)) {
+            watcher.watch(Collections.singletonList(config));
+
+            for (int i = 0; i < 5; i++) {
+                Files.write(config, ("core: {baseUrl: 'http://nexus-" + i + "'}").getBytes());
+                Thread.sleep(20);
+            }
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (reloads.get() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            Thread.sleep(1000);
+        }
+
+        assertEquals(1, reloads.get());
+    }
+}
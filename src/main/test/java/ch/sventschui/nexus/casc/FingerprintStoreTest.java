@@ -0,0 +1,66 @@
+package ch.sventschui.nexus.casc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FingerprintStoreTest {
+
+    @Test
+    void survivesARestart(@TempDir Path dir) {
+        Path file = dir.resolve("casc").resolve("fingerprints.properties");
+        FingerprintStore store = new FingerprintStore(file);
+        store.load();
+        store.record("repository:maven-central", "definition", "live");
+        store.record("user:johndoe", "definition", "live");
+        store.forget("user:johndoe");
+        store.save();
+
+        FingerprintStore restarted = new FingerprintStore(file);
+        restarted.load();
+
+        assertTrue(restarted.matches("repository:maven-central", "definition", "live"));
+        assertFalse(restarted.matches("repository:maven-central", "definition", "drifted"));
+        assertFalse(restarted.matches("repository:maven-central", "changed", "live"));
+        assertFalse(restarted.matches("user:johndoe", "definition", "live"));
+        assertFalse(Files.exists(file.resolveSibling("fingerprints.properties.tmp")));
+    }
+
+    @Test
+    void keysWithSeparatorsRoundTrip(@TempDir Path dir) {
+        Path file = dir.resolve("fingerprints.properties");
+        FingerprintStore store = new FingerprintStore(file);
+        store.record("repository:docker = hosted #1", "a|b", "c");
+        store.save();
+
+        FingerprintStore restarted = new FingerprintStore(file);
+        restarted.load();
+
+        assertTrue(restarted.matches("repository:docker = hosted #1", "a|b", "c"));
+    }
+
+    @Test
+    void appliesEverythingIfTheFileIsMissingOrUnreadable(@TempDir Path dir) throws Exception {
+        FingerprintStore missing = new FingerprintStore(dir.resolve("missing.properties"));
+        missing.load();
+        assertFalse(missing.matches("repository:maven-central", "definition", "live"));
+
+        Path directory = dir.resolve("directory.properties");
+        Files.createDirectory(directory);
+        FingerprintStore unreadable = new FingerprintStore(directory);
+        unreadable.load();
+        assertFalse(unreadable.matches("repository:maven-central", "definition", "live"));
+
+        Path garbage = dir.resolve("garbage.properties");
+        Files.write(garbage, "\u0000\u0001not properties".getBytes(StandardCharsets.UTF_8));
+        FingerprintStore corrupt = new FingerprintStore(garbage);
+        corrupt.load();
+        assertFalse(corrupt.matches("repository:maven-central", "definition", "live"));
+    }
+}
@@ -0,0 +1,61 @@
+package ch.sventschui.nexus.casc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class FingerprintsTest {
+
+    @Test
+    void mapKeyOrderDoesNotMatter() {
+        Map<String, Object> ab = new LinkedHashMap<>();
+        ab.put("a", 1);
+        ab.put("b", Collections.singletonMap("c", "d"));
+        Map<String, Object> ba = new LinkedHashMap<>();
+        ba.put("b", Collections.singletonMap("c", "d"));
+        ba.put("a", 1);
+
+        assertEquals(Fingerprints.of(ab), Fingerprints.of(ba));
+    }
+
+    @Test
+    void setOrderDoesNotMatterButListOrderDoes() {
+        assertEquals(Fingerprints.of(new HashSet<>(Arrays.asList("a", "b"))),
+                Fingerprints.of(new HashSet<>(Arrays.asList("b", "a"))));
+        assertNotEquals(Fingerprints.of(Arrays.asList("a", "b")), Fingerprints.of(Arrays.asList("b", "a")));
+    }
+
+    @Test
+    void numbersAreComparedByValue() {
+        assertEquals(Fingerprints.of(1440), Fingerprints.of(1440.0));
+        assertEquals(Fingerprints.of(1440), Fingerprints.of(1440L));
+        assertEquals(Fingerprints.of(0), Fingerprints.of(-0.0));
+        assertEquals("1440", Fingerprints.canonicalNumber(1.44e3));
+        assertNotEquals(Fingerprints.of(1440), Fingerprints.of("1440"));
+        assertNotEquals(Fingerprints.of(1440), Fingerprints.of(1441));
+    }
+
+    @Test
+    void nullDiffersFromAbsent() {
+        Map<String, Object> withNull = new HashMap<>();
+        withNull.put("notes", null);
+
+        assertNotEquals(Fingerprints.of(withNull), Fingerprints.of(Collections.emptyMap()));
+        assertNotEquals(Fingerprints.of((Object) null), Fingerprints.of("~"));
+        assertNotEquals(Fingerprints.of((Object) null), Fingerprints.of(""));
+    }
+
+    @Test
+    void partsDoNotRunIntoEachOther() {
+        assertNotEquals(Fingerprints.of("ab", "c"), Fingerprints.of("a", "bc"));
+        assertNotEquals(Fingerprints.of(Arrays.asList("a,b")), Fingerprints.of(Arrays.asList("a", "b")));
+    }
+}
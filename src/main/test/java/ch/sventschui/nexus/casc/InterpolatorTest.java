@@ -1,10 +1,20 @@
 package ch.sventschui.nexus.casc;
 
+import ch.sventschui.nexus.casc.resolver.EnvResolver;
+import ch.sventschui.nexus.casc.resolver.Resolver;
+import ch.sventschui.nexus.casc.resolver.SecretResolver;
 import org.junit.jupiter.api.Test;
 
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 class InterpolatorTest {
 
@@ -13,6 +23,12 @@ class InterpolatorTest {
         assertEquals("hello world", new Interpolator().interpolate("hello ${file:"+getClass().getClassLoader().getResource("test").getPath()+"}"));
     }
 
+    @Test
+    void referencedFiles() {
+        assertEquals(Arrays.asList(Paths.get("/run/secrets/a"), Paths.get("/run/secrets/b")),
+                new Interpolator().referencedFiles("a: ${file:/run/secrets/a}\nb: ${FILE:/run/secrets/b}\nc: ${HOME}\nd: ${file:}"));
+    }
+
     @Test
     void interpolateWithEnvVar() {
         Map.Entry<String, String> envVar = System.getenv().entrySet().iterator().next();
@@ -35,4 +51,130 @@ class InterpolatorTest {
         assertEquals("hello world", new Interpolator().interpolate("hello ${IDONOTEXIST:world}"));
         assertEquals("hello world", new Interpolator().interpolate("hello ${IDONOTEXIST:\"world\"}"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void interpolateMultipleReferences() {
+        assertEquals("a-b-a", new Interpolator().interpolate("${IDONOTEXIST_A:a}-${IDONOTEXIST_B:b}-${IDONOTEXIST_A:a}"));
+        assertEquals("x: 1\ny: 2\n", new Interpolator().interpolate("x: ${IDONOTEXIST:1}\ny: ${IDONOTEXIST:2}\n"));
+    }
+
+    @Test
+    void interpolateKeepsLiteralDollars() {
+        assertEquals("costs $ 5", new Interpolator().interpolate("costs $ 5"));
+        assertEquals("trailing $", new Interpolator().interpolate("trailing $"));
+        assertEquals("unclosed ${IDONOTEXIST", new Interpolator().interpolate("unclosed ${IDONOTEXIST"));
+        assertEquals("unclosed ${IDONOTEXIST:foo", new Interpolator().interpolate("unclosed ${IDONOTEXIST:foo"));
+        assertEquals("empty ${}", new Interpolator().interpolate("empty ${}"));
+    }
+
+    @Test
+    void escapedDollarIsALiteralDollar() {
+        assertEquals("costs $5 ${IDONOTEXIST} $HOME $", new Interpolator().interpolate("costs ${$}5 ${$}{IDONOTEXIST} ${$}HOME ${$}"));
+        assertEquals("$x", new Interpolator().interpolate("${$}${IDONOTEXIST:x}"));
+    }
+
+    @Test
+    void doubleDollarsAreNoEscape() {
+        assertEquals("pa$$word", new Interpolator().interpolate("pa$$word"));
+        assertEquals("$default", new Interpolator().interpolate("$${IDONOTEXIST:default}"));
+    }
+
+    @Test
+    void interpolateDefaultsContainingSpecialCharacters() {
+        assertEquals("hello $1 \\world", new Interpolator().interpolate("hello ${IDONOTEXIST:$1 \\world}"));
+        assertEquals("hello \"a\"b", new Interpolator().interpolate("hello ${IDONOTEXIST:\"a\"b}"));
+        assertEquals("hello a:b", new Interpolator().interpolate("hello ${IDONOTEXIST:\"a:b\"}"));
+    }
+
+    @Test
+    void interpolateWithNonExistingFile() {
+        assertEquals("hello ${file:/i/do/not/exist}", new Interpolator().interpolate("hello ${file:/i/do/not/exist}"));
+        assertEquals("hello ${file:}", new Interpolator().interpolate("hello ${file:}"));
+    }
+
+    @Test
+    void interpolateSameTemplateTwice() {
+        Interpolator interpolator = new Interpolator();
+        String template = "hello ${file:" + getClass().getClassLoader().getResource("test").getPath() + "} ${IDONOTEXIST:again}";
+
+        assertEquals("hello world again", interpolator.interpolate(template));
+        assertEquals("hello world again", interpolator.interpolate(template));
+    }
+
+    @Test
+    void resolvesEveryReferenceOncePerResolution() throws InterruptedException {
+        AtomicInteger reads = new AtomicInteger();
+        Interpolator interpolator = new Interpolator(Arrays.asList(new EnvResolver(), new Resolver() {
+            @Override
+            public String getName() {
+                return "token";
+            }
+
+            @Override
+            public String resolve(String argument) {
+                reads.incrementAndGet();
+                return argument.toUpperCase();
+            }
+        }));
+
+        List<String> documents = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            documents.add("repo-" + i + ": ${token:a} ${token:b}");
+        }
+
+        Interpolator.Resolution resolution = interpolator.newResolution();
+        resolution.prefetch(documents, 4);
+        assertEquals(2, reads.get());
+
+        for (String document : documents) {
+            assertEquals(document.substring(0, document.indexOf(':')) + ": A B", interpolator.interpolate(document, resolution));
+        }
+        assertEquals(2, reads.get());
+    }
+
+    @Test
+    void interpolatesManyReferencesToTheirDefaults() {
+        StringBuilder template = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            if (i % 2 == 0) {
+                template.append("    remoteUrl: ${CASC_TEST_UNDEFINED_").append(i % 50).append(":\"https://example.org/").append(i % 50).append("\"}\n");
+                expected.append("    remoteUrl: https://example.org/").append(i % 50).append('\n');
+            } else {
+                template.append("    blobStoreName: default-").append(i).append('\n');
+                expected.append("    blobStoreName: default-").append(i).append('\n');
+            }
+        }
+
+        Interpolator interpolator = new Interpolator();
+        assertEquals(expected.toString(), interpolator.interpolate(template.toString()));
+        assertEquals(expected.toString(), interpolator.interpolate(template.toString()));
+    }
+
+    @Test
+    void upperCaseNamesAreEnvVarsWithDefaults() {
+        Interpolator interpolator = new Interpolator();
+
+        assertEquals("changeme", interpolator.interpolate("${SECRET:changeme}"));
+        assertEquals("key", interpolator.interpolate("${PROPERTIES:key}"));
+        assertEquals("fallback", interpolator.interpolate("${Env:fallback}"));
+        assertEquals(Collections.emptyList(), interpolator.referencedFiles("${SECRET:token}"));
+    }
+
+    @Test
+    void fileMatchesInAnyCase() {
+        String path = getClass().getClassLoader().getResource("test").getPath();
+
+        assertEquals("hello world", new Interpolator().interpolate("hello ${FILE:" + path + "}"));
+        assertEquals(Collections.singletonList(Paths.get(path)), new Interpolator().referencedFiles("${File:" + path + "}"));
+    }
+
+    @Test
+    void secretsAreOnlyReadFromTheSecretsDirectory() {
+        SecretResolver resolver = new SecretResolver();
+
+        assertNull(resolver.getFile("../etc/passwd"));
+        assertEquals(Collections.singletonList(Paths.get("/run/secrets/token")),
+                new Interpolator().referencedFiles("${secret:token} ${secret:token}"));
+    }
+}
@@ -0,0 +1,152 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.Config;
+import ch.sventschui.nexus.casc.config.ConfigCapability;
+import ch.sventschui.nexus.casc.config.ConfigSecurity;
+import ch.sventschui.nexus.casc.config.ConfigSecurityUser;
+import org.junit.jupiter.api.Test;
+import org.sonatype.nexus.security.user.User;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LiveStateTest {
+
+    @Test
+    void unchangedCapabilityIsSkipped() {
+        LiveState.Capability live = new LiveState.Capability("OutreachManagementCapability", true, null,
+                Collections.singletonMap("port", "8080"));
+
+        ConfigCapability config = capability(null, "", Collections.singletonMap("port", "8080"));
+        assertTrue(live.matches(config));
+
+        // an unset enabled flag keeps the current state, missing attributes are empty
+        assertTrue(new LiveState.Capability("rapture.settings", false, "", null)
+                .matches(capability(null, null, null)));
+    }
+
+    @Test
+    void changedCapabilityIsUpdated() {
+        LiveState.Capability live = new LiveState.Capability("OutreachManagementCapability", true, "notes",
+                Collections.singletonMap("port", "8080"));
+
+        assertFalse(live.matches(capability(false, "notes", Collections.singletonMap("port", "8080"))));
+        assertFalse(live.matches(capability(true, "other", Collections.singletonMap("port", "8080"))));
+        assertFalse(live.matches(capability(true, "notes", Collections.singletonMap("port", "8081"))));
+        assertFalse(live.matches(capability(true, "notes", Collections.emptyMap())));
+
+        Map<String, String> more = new HashMap<>(live.getProperties());
+        more.put("host", "localhost");
+        assertFalse(live.matches(capability(true, "notes", more)));
+    }
+
+    @Test
+    void driftOnlyCountsManagedEntities() {
+        ConfigSecurityUser johndoe = new ConfigSecurityUser();
+        johndoe.setUsername("johndoe");
+        ConfigSecurity security = new ConfigSecurity();
+        security.setUsers(Collections.singletonList(johndoe));
+        Config config = new Config();
+        config.setSecurity(security);
+        Map<String, Set<String>> managed = LiveState.managed(config);
+
+        String fingerprint = users(user("johndoe", "default", "John")).fingerprint(managed);
+
+        // created in the UI or in LDAP
+        assertEquals(fingerprint, users(user("johndoe", "default", "John"), user("janedoe", "default", "Jane"),
+                user("ldapuser", "LDAP", "Ldap")).fingerprint(managed));
+        assertNotEquals(fingerprint, users(user("johndoe", "default", "Johnny")).fingerprint(managed));
+        assertNotEquals(fingerprint, users().fingerprint(managed));
+
+        // pruned users are all managed
+        security.setPruneUsers(true);
+        managed = LiveState.managed(config);
+        assertNotEquals(users(user("johndoe", "default", "John")).fingerprint(managed),
+                users(user("johndoe", "default", "John"), user("janedoe", "default", "Jane")).fingerprint(managed));
+    }
+
+    @Test
+    void accessorsAreLookedUpOncePerClass() throws Exception {
+        Map<Class<?>, MethodHandle> accessors = new HashMap<>();
+
+        assertEquals("a", NexusCascPlugin.invokeAccessor(accessors, new Target("a"), "id"));
+        MethodHandle cached = accessors.get(Target.class);
+        assertEquals("b", NexusCascPlugin.invokeAccessor(accessors, new Target("b"), "id"));
+
+        assertEquals(1, accessors.size());
+        assertSame(cached, accessors.get(Target.class));
+    }
+
+    @Test
+    void accessorsRethrowErrorsAndWrapExceptions() {
+        Map<Class<?>, MethodHandle> accessors = new HashMap<>();
+
+        OutOfMemoryError error = new OutOfMemoryError();
+        assertSame(error, assertThrows(OutOfMemoryError.class,
+                () -> NexusCascPlugin.invokeAccessor(accessors, new Throwing(error), "id")));
+
+        IllegalStateException exception = new IllegalStateException();
+        assertSame(exception, assertThrows(InvocationTargetException.class,
+                () -> NexusCascPlugin.invokeAccessor(accessors, new Throwing(exception), "id")).getCause());
+
+        assertThrows(NoSuchMethodException.class, () -> NexusCascPlugin.invokeAccessor(accessors, new Target("a"), "missing"));
+    }
+
+    private static LiveState users(User... users) {
+        return new LiveState(Collections.emptyList(), Collections.emptyList(), Collections.emptyList(),
+                Arrays.asList(users), Collections.emptyList());
+    }
+
+    private static User user(String id, String source, String firstName) {
+        User user = new User();
+        user.setUserId(id);
+        user.setSource(source);
+        user.setFirstName(firstName);
+        return user;
+    }
+
+    private static ConfigCapability capability(Boolean enabled, String notes, Map<String, String> attributes) {
+        ConfigCapability capability = new ConfigCapability();
+        capability.setType("OutreachManagementCapability");
+        capability.setEnabled(enabled);
+        capability.setNotes(notes);
+        capability.setAttributes(attributes);
+        return capability;
+    }
+
+    public static class Target {
+        private final String id;
+
+        Target(String id) {
+            this.id = id;
+        }
+
+        public String id() {
+            return id;
+        }
+    }
+
+    public static class Throwing {
+        private final Throwable throwable;
+
+        Throwing(Throwable throwable) {
+            this.throwable = throwable;
+        }
+
+        public String id() throws Throwable {
+            throw throwable;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ch.sventschui.nexus.casc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PasswordFingerprintTest {
+
+    @Test
+    void unchangedPasswordIsNotSetAgain(@TempDir Path dir) throws Exception {
+        TestNexus nexus = new TestNexus(dir.resolve("work").toFile());
+        String config = config(dir, "secret");
+        nexus.plugin().startWith(config);
+
+        nexus.plugin().startWith(config);
+        nexus.plugin().startWith(config);
+
+        assertEquals(0, nexus.getChangedPasswords());
+    }
+
+    @Test
+    void changedPasswordIsSet(@TempDir Path dir) throws Exception {
+        TestNexus nexus = new TestNexus(dir.resolve("work").toFile());
+        nexus.plugin().startWith(config(dir, "secret"));
+
+        String config = config(dir, "changed");
+        nexus.plugin().startWith(config);
+        assertEquals(1, nexus.getChangedPasswords());
+
+        nexus.plugin().startWith(config);
+        assertEquals(1, nexus.getChangedPasswords());
+    }
+
+    @Test
+    void passwordChangedInNexusIsReset(@TempDir Path dir) throws Exception {
+        TestNexus nexus = new TestNexus(dir.resolve("work").toFile());
+        String config = config(dir, "secret");
+        nexus.plugin().startWith(config);
+        String applied = nexus.getPasswordHash("johndoe");
+
+        nexus.changePassword("johndoe", "chosen in the UI");
+        nexus.plugin().startWith(config);
+
+        assertEquals(1, nexus.getChangedPasswords());
+        assertEquals(applied, nexus.getPasswordHash("johndoe"));
+    }
+
+    @Test
+    void regeneratedKeySetsThePasswordOnce(@TempDir Path dir) throws Exception {
+        TestNexus nexus = new TestNexus(dir.resolve("work").toFile());
+        String config = config(dir, "secret");
+        nexus.plugin().startWith(config);
+
+        // e.g. the work directory was restored without the key, fingerprints of the old key don't match
+        Files.delete(dir.resolve("work/casc/install.key"));
+        nexus.plugin().startWith(config);
+        assertEquals(1, nexus.getChangedPasswords());
+
+        nexus.plugin().startWith(config);
+        assertEquals(1, nexus.getChangedPasswords());
+    }
+
+    @Test
+    void unreadableKeySetsThePasswordOnEveryApply(@TempDir Path dir) throws Exception {
+        TestNexus nexus = new TestNexus(dir.resolve("work").toFile());
+        String config = config(dir, "secret");
+        nexus.plugin().startWith(config);
+
+        Files.write(dir.resolve("work/casc/install.key"), "too short".getBytes(StandardCharsets.UTF_8));
+        nexus.plugin().startWith(config);
+        nexus.plugin().startWith(config);
+
+        assertEquals(2, nexus.getChangedPasswords());
+    }
+
+    private static String config(Path dir, String password) throws Exception {
+        Path config = dir.resolve("nexus.yml");
+        Files.write(config, (
+                "security:\n" +
+                "  users:\n" +
+                "    - username: johndoe\n" +
+                "      firstName: John\n" +
+                "      lastName: Doe\n" +
+                "      email: johndoe@example.org\n" +
+                "      password: " + password + "\n" +
+                "      updateExistingPassword: true\n" +
+                "      roles: [{source: default, role: nx-admin}]\n").getBytes(StandardCharsets.UTF_8));
+        return config.toString();
+    }
+}
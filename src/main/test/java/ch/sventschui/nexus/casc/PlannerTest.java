@@ -0,0 +1,212 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.*;
+import org.junit.jupiter.api.Test;
+import org.sonatype.nexus.blobstore.api.BlobStoreConfiguration;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicy;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.security.role.RoleIdentifier;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserStatus;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlannerTest {
+
+    @Test
+    void planOrdersCreatesUpdatesAndDeletes() {
+        Config config = new Config();
+        ConfigRepository repository = new ConfigRepository();
+        repository.setPruneRepositories(true);
+        repository.setRepositories(new ArrayList<>());
+        repository.getRepositories().add(repositoryEntry("maven-public", "maven2-group", "maven"));
+        repository.getRepositories().add(repositoryEntry("maven-central", "maven2-proxy", "maven"));
+        repository.getRepositories().add(repositoryEntry("maven-releases", "maven2-hosted", "maven"));
+        repository.setBlobStores(Collections.singletonList(blobStore("maven")));
+        config.setRepository(repository);
+
+        ConfigSecurity security = new ConfigSecurity();
+        security.setPruneUsers(true);
+        security.setUsers(Collections.singletonList(user("johndoe")));
+        config.setSecurity(security);
+
+        LiveState live = new LiveState(
+                listOf(configuration("maven-releases", "maven2-hosted", "other"), configuration("obsolete", "maven2-hosted", "maven")),
+                Collections.emptyList(),
+                Collections.emptyList(),
+                listOf(liveUser("johndoe"), liveUser("janedoe")),
+                Collections.emptyList()
+        );
+
+        Plan plan = Planner.plan(config, live);
+
+        assertEquals(
+                listOf("create blobStore maven", "create repository maven-central", "update repository maven-releases",
+                        "create repository maven-public", "delete repository obsolete", "delete user janedoe"),
+                plan.getOperations().stream().map(Plan.Operation::toString).collect(Collectors.toList()));
+        assertEquals(1, plan.getUnchanged());
+    }
+
+    @Test
+    void planListsWhatTheApplyChangesOnUsers() {
+        ConfigSecurityUser unchanged = user("johndoe");
+        unchanged.setUpdateExistingPassword(true);
+        ConfigSecurityUser password = user("janedoe");
+        password.setUpdateExistingPassword(true);
+        ConfigSecurityUser renamed = user("jackdoe");
+        renamed.setLastName("Doe");
+        // a locked user can't be activated, the apply leaves it alone
+        ConfigSecurityUser locked = user("jimdoe");
+        locked.setActive(true);
+        User lockedUser = liveUser("jimdoe");
+        lockedUser.setStatus(UserStatus.locked);
+
+        Config config = new Config();
+        ConfigSecurity security = new ConfigSecurity();
+        security.setUsers(listOf(unchanged, password, renamed, locked));
+        config.setSecurity(security);
+        LiveState live = new LiveState(Collections.emptyList(), Collections.emptyList(), Collections.emptyList(),
+                listOf(liveUser("johndoe"), liveUser("janedoe"), liveUser("jackdoe"), lockedUser), Collections.emptyList());
+
+        Plan plan = Planner.plan(config, live, user -> user.getUsername().equals("janedoe"));
+
+        assertEquals(listOf("update user janedoe", "update user jackdoe"),
+                plan.getOperations().stream().map(Plan.Operation::toString).collect(Collectors.toList()));
+        assertEquals("password", plan.getOperations().get(0).getDetail());
+        assertEquals("lastName: null -> Doe", plan.getOperations().get(1).getDetail());
+        assertEquals(2, plan.getUnchanged());
+    }
+
+    @Test
+    void planWritesJson() throws Exception {
+        Config config = new Config();
+        ConfigRepository repository = new ConfigRepository();
+        repository.setBlobStores(Collections.singletonList(blobStore("maven")));
+        config.setRepository(repository);
+
+        StringWriter json = new StringWriter();
+        Planner.plan(config, emptyLiveState()).writeJson(json);
+
+        assertTrue(json.toString().contains("\"create\" : 1"), json.toString());
+        assertTrue(json.toString().contains("\"kind\" : \"blobStore\""), json.toString());
+    }
+
+    @Test
+    void planThousandsOfEntities() {
+        int count = 5000;
+        Config config = new Config();
+        ConfigRepository repository = new ConfigRepository();
+        repository.setPruneRepositories(true);
+        repository.setPruneBlobStores(true);
+        repository.setPruneCleanupPolicies(true);
+        repository.setRepositories(new ArrayList<>());
+        repository.setBlobStores(new ArrayList<>());
+        repository.setCleanupPolicies(new ArrayList<>());
+        ConfigSecurity security = new ConfigSecurity();
+        security.setPruneUsers(true);
+        security.setUsers(new ArrayList<>());
+        config.setRepository(repository);
+        config.setSecurity(security);
+
+        List<Configuration> liveRepositories = new ArrayList<>();
+        List<BlobStoreConfiguration> liveBlobStores = new ArrayList<>();
+        List<CleanupPolicy> livePolicies = new ArrayList<>();
+        List<User> liveUsers = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            repository.getRepositories().add(repositoryEntry("repo-" + i, "maven2-hosted", "blob-" + (i % 100)));
+            liveRepositories.add(configuration("repo-" + (i + count / 2), "maven2-hosted", "blob-" + (i % 100)));
+            repository.getBlobStores().add(blobStore("blob-" + i));
+            BlobStoreConfiguration liveBlobStore = new BlobStoreConfiguration();
+            liveBlobStore.setName("blob-" + (i + count / 2));
+            liveBlobStore.setType("File");
+            liveBlobStore.setAttributes(blobStore("blob-" + (i + count / 2)).getAttributes());
+            liveBlobStores.add(liveBlobStore);
+            ConfigCleanupPolicy policy = new ConfigCleanupPolicy();
+            policy.setName("policy-" + i);
+            repository.getCleanupPolicies().add(policy);
+            livePolicies.add(new CleanupPolicy("policy-" + (i + count / 2), "", null, "delete", new HashMap<>()));
+            security.getUsers().add(user("user-" + i));
+            liveUsers.add(liveUser("user-" + (i + count / 2)));
+        }
+
+        LiveState live = new LiveState(liveRepositories, liveBlobStores, livePolicies, liveUsers, Collections.emptyList());
+
+        Plan plan = Planner.plan(config, live);
+
+        assertEquals(4 * count, plan.count(Plan.Action.CREATE) + plan.getUnchanged());
+        assertEquals(4 * count / 2, plan.count(Plan.Action.DELETE));
+    }
+
+    private static LiveState emptyLiveState() {
+        return new LiveState(Collections.emptyList(), Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyList());
+    }
+
+    private static ConfigRepositoryEntry repositoryEntry(String name, String recipeName, String blobStoreName) {
+        ConfigRepositoryEntry entry = new ConfigRepositoryEntry();
+        entry.setName(name);
+        entry.setRecipeName(recipeName);
+        entry.setAttributes(storage(blobStoreName));
+        return entry;
+    }
+
+    private static Configuration configuration(String name, String recipeName, String blobStoreName) {
+        Configuration configuration = new Configuration();
+        configuration.setRepositoryName(name);
+        configuration.setRecipeName(recipeName);
+        configuration.setOnline(true);
+        configuration.setAttributes(storage(blobStoreName));
+        return configuration;
+    }
+
+    private static Map<String, Map<String, Object>> storage(String blobStoreName) {
+        Map<String, Map<String, Object>> attributes = new HashMap<>();
+        attributes.put("storage", new HashMap<>());
+        attributes.get("storage").put("blobStoreName", blobStoreName);
+        return attributes;
+    }
+
+    private static ConfigBlobStore blobStore(String name) {
+        ConfigBlobStore blobStore = new ConfigBlobStore();
+        blobStore.setName(name);
+        blobStore.setAttributes(new HashMap<>());
+        blobStore.getAttributes().put("file", new HashMap<>());
+        blobStore.getAttributes().get("file").put("path", name);
+        return blobStore;
+    }
+
+    private static ConfigSecurityUser user(String username) {
+        ConfigSecurityUser user = new ConfigSecurityUser();
+        user.setUsername(username);
+        user.setFirstName(username);
+        user.setRoles(new ArrayList<>());
+        return user;
+    }
+
+    private static User liveUser(String username) {
+        User user = new User();
+        user.setUserId(username);
+        user.setFirstName(username);
+        user.setSource("default");
+        user.setStatus(UserStatus.active);
+        user.setRoles(Collections.<RoleIdentifier>emptySet());
+        return user;
+    }
+
+    @SafeVarargs
+    private static <T> List<T> listOf(T... elements) {
+        List<T> list = new ArrayList<>();
+        Collections.addAll(list, elements);
+        return list;
+    }
+}
@@ -0,0 +1,61 @@
+package ch.sventschui.nexus.casc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReconcileTaskTest {
+    private static final String CONFIG =
+            "security:\n" +
+            "  users:\n" +
+            "    - username: johndoe\n" +
+            "      firstName: John\n" +
+            "      lastName: Doe\n" +
+            "      email: johndoe@example.org\n" +
+            "      password: secret\n" +
+            "      roles: [{source: default, role: nx-admin}]\n";
+
+    @Test
+    void unchangedLiveStateIsNotReapplied(@TempDir Path dir) throws Exception {
+        TestNexus nexus = new TestNexus(dir.resolve("work").toFile());
+        NexusCascPlugin plugin = nexus.plugin();
+        plugin.startWith(config(dir));
+        assertEquals(1, nexus.getAddedUsers());
+
+        new ReconcileTask(plugin).execute();
+
+        assertEquals(1, nexus.getAddedUsers());
+        assertEquals(0, nexus.getUpdatedUsers());
+    }
+
+    @Test
+    void driftIsReverted(@TempDir Path dir) throws Exception {
+        TestNexus nexus = new TestNexus(dir.resolve("work").toFile());
+        NexusCascPlugin plugin = nexus.plugin();
+        plugin.startWith(config(dir));
+
+        // changed in the UI
+        nexus.getUsers().get("johndoe").setFirstName("Johnny");
+        new ReconcileTask(plugin).execute();
+
+        assertEquals(1, nexus.getUpdatedUsers());
+        assertEquals("John", nexus.getUsers().get("johndoe").getFirstName());
+
+        // deleted in the UI
+        nexus.getUsers().clear();
+        new ReconcileTask(plugin).execute();
+
+        assertEquals(2, nexus.getAddedUsers());
+    }
+
+    private static String config(Path dir) throws Exception {
+        Path config = dir.resolve("nexus.yml");
+        Files.write(config, CONFIG.getBytes(StandardCharsets.UTF_8));
+        return config.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package ch.sventschui.nexus.casc;
+
+import org.junit.jupiter.api.Test;
+import org.sonatype.nexus.security.user.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReconciliationTest {
+
+    @Test
+    void obsoleteUsersAcrossSources() {
+        List<User> live = Arrays.asList(user("johndoe", "default"), user("janedoe", "default"),
+                user("janedoe", "LDAP"), user("janedoe", "default"));
+
+        List<String> obsolete = Reconciliation.obsolete(Reconciliation.index(live, Reconciliation::userKey).values(),
+                User::getUserId, Reconciliation.names(Arrays.asList("johndoe"), name -> name)).stream()
+                .map(Reconciliation::userKey)
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("default/janedoe", "LDAP/janedoe"), obsolete);
+    }
+
+    @Test
+    void pruneLooksUpEveryLiveUserOnce() {
+        for (int count : new int[]{100, 1_000, 10_000}) {
+            AtomicInteger keys = new AtomicInteger();
+            AtomicInteger names = new AtomicInteger();
+            AtomicInteger lookups = new AtomicInteger();
+
+            List<String> configured = new ArrayList<>();
+            List<User> live = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                configured.add("user-" + i);
+                live.add(user("user-" + (i + count / 2), "default"));
+            }
+
+            Set<String> configuredNames = new HashSet<String>(Reconciliation.names(configured, name -> name)) {
+                @Override
+                public boolean contains(Object o) {
+                    lookups.incrementAndGet();
+                    return super.contains(o);
+                }
+            };
+            List<User> obsolete = Reconciliation.obsolete(
+                    Reconciliation.index(live, user -> {
+                        keys.incrementAndGet();
+                        return Reconciliation.userKey(user);
+                    }).values(),
+                    user -> {
+                        names.incrementAndGet();
+                        return user.getUserId();
+                    },
+                    configuredNames);
+
+            assertEquals(count / 2, obsolete.size());
+            assertEquals(count, keys.get());
+            assertEquals(count, names.get());
+            assertEquals(count, lookups.get());
+        }
+    }
+
+    private static User user(String userId, String source) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setSource(source);
+        return user;
+    }
+}
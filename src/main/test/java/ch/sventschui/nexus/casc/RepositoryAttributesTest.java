@@ -0,0 +1,77 @@
+package ch.sventschui.nexus.casc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RepositoryAttributesTest {
+
+    @Test
+    void equivalentWithPolicyNameListAndSet() {
+        Map<String, Map<String, Object>> configured = attributes("cleanup", "policyName", Arrays.asList("a", "b"));
+        Map<String, Map<String, Object>> live = attributes("cleanup", "policyName", new HashSet<>(Arrays.asList("b", "a")));
+
+        assertTrue(RepositoryAttributes.equivalent("maven2-proxy", configured, live));
+    }
+
+    @Test
+    void equivalentWithPolicyNameString() {
+        Map<String, Map<String, Object>> configured = attributes("cleanup", "policyName", "a");
+        Map<String, Map<String, Object>> live = attributes("cleanup", "policyName", Collections.singleton("a"));
+
+        assertTrue(RepositoryAttributes.equivalent("maven2-proxy", configured, live));
+    }
+
+    @Test
+    void equivalentWithWidenedNumbers() {
+        Map<String, Map<String, Object>> configured = attributes("proxy", "contentMaxAge", -1);
+        Map<String, Map<String, Object>> live = attributes("proxy", "contentMaxAge", -1.0);
+
+        assertTrue(RepositoryAttributes.equivalent("maven2-proxy", configured, live));
+        assertFalse(RepositoryAttributes.equivalent("maven2-proxy", configured, attributes("proxy", "contentMaxAge", 60.0)));
+    }
+
+    @Test
+    void equivalentWithNullSections() {
+        Map<String, Map<String, Object>> configured = attributes("storage", "blobStoreName", "maven");
+        configured.put("httpclient", null);
+        configured.put("routingRules", new HashMap<>(Collections.singletonMap("routingRuleId", null)));
+
+        assertTrue(RepositoryAttributes.equivalent("maven2-proxy", configured, attributes("storage", "blobStoreName", "maven")));
+    }
+
+    @Test
+    void equivalentWithRecipeDefaults() {
+        Map<String, Map<String, Object>> configured = attributes("storage", "blobStoreName", "maven");
+        Map<String, Map<String, Object>> live = attributes("storage", "blobStoreName", "maven");
+        live.get("storage").put("strictContentTypeValidation", true);
+        live.put("negativeCache", new HashMap<>());
+        live.get("negativeCache").put("enabled", true);
+        live.get("negativeCache").put("timeToLive", 1440.0);
+
+        assertTrue(RepositoryAttributes.equivalent("maven2-proxy", configured, live));
+        assertFalse(RepositoryAttributes.equivalent("maven2-hosted", configured, live));
+    }
+
+    @Test
+    void differentWhenNestedValueChanges() {
+        Map<String, Map<String, Object>> configured = attributes("httpclient", "connection", Collections.singletonMap("retries", 1));
+        Map<String, Map<String, Object>> live = attributes("httpclient", "connection", Collections.singletonMap("retries", 2));
+
+        assertFalse(RepositoryAttributes.equivalent("maven2-proxy", configured, live));
+    }
+
+    private static Map<String, Map<String, Object>> attributes(String section, String key, Object value) {
+        Map<String, Map<String, Object>> attributes = new HashMap<>();
+        attributes.put(section, new HashMap<>());
+        attributes.get(section).put(key, value);
+        return attributes;
+    }
+}
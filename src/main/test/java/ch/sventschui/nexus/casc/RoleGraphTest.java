@@ -0,0 +1,101 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.ConfigSecurityRoleDefinition;
+import org.junit.jupiter.api.Test;
+import org.sonatype.nexus.security.role.Role;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoleGraphTest {
+
+    @Test
+    void findsCyclesAndMissingRoles() {
+        Map<String, List<String>> roles = new LinkedHashMap<>();
+        roles.put("developers", Arrays.asList("readers", "deployers"));
+        roles.put("readers", Collections.emptyList());
+        roles.put("deployers", Arrays.asList("leads", "missing"));
+        roles.put("leads", Collections.singletonList("deployers"));
+        roles.put("admins", Collections.singletonList("admins"));
+
+        RoleGraph graph = new RoleGraph(roles);
+
+        assertEquals(Arrays.asList(Arrays.asList("deployers", "leads", "deployers"), Arrays.asList("admins", "admins")),
+                graph.cycles());
+        assertEquals(Collections.singletonMap("deployers", Collections.singletonList("missing")), graph.getMissing());
+    }
+
+    @Test
+    void ordersNestedRolesFirst() {
+        Map<String, List<String>> roles = new LinkedHashMap<>();
+        roles.put("developers", Arrays.asList("readers", "deployers"));
+        roles.put("deployers", Collections.singletonList("readers"));
+        roles.put("readers", Collections.emptyList());
+
+        RoleGraph graph = new RoleGraph(roles);
+
+        assertTrue(graph.cycles().isEmpty());
+        assertEquals(Arrays.asList("readers", "deployers", "developers"), graph.order());
+    }
+
+    @Test
+    void configuredRolesReplaceLiveRoles() {
+        Role cycle = role("readers", false, "developers");
+        Role admin = role("nx-admin", true);
+        Role obsolete = role("obsolete", false);
+
+        ConfigSecurityRoleDefinition readers = new ConfigSecurityRoleDefinition();
+        readers.setId("readers");
+        ConfigSecurityRoleDefinition developers = new ConfigSecurityRoleDefinition();
+        developers.setId("developers");
+        developers.setRoles(Arrays.asList("readers", "nx-admin"));
+
+        RoleGraph graph = RoleGraph.of(Arrays.asList(cycle, admin, obsolete), Arrays.asList(readers, developers), true);
+
+        assertTrue(graph.cycles().isEmpty());
+        assertTrue(graph.getMissing().isEmpty());
+        assertTrue(graph.contains("nx-admin"));
+        assertFalse(graph.contains("obsolete"));
+    }
+
+    @Test
+    void deepNestingScales() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            // a chain much deeper than the stack could hold when walked recursively, closed to a single cycle
+            int count = 200_000;
+            Map<String, List<String>> roles = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                roles.put("role-" + i, Collections.singletonList("role-" + ((i + 1) % count)));
+            }
+
+            List<List<String>> cycles = new RoleGraph(roles).cycles();
+
+            assertEquals(1, cycles.size());
+            assertEquals(count + 1, cycles.get(0).size());
+
+            roles.put("role-" + (count - 1), new ArrayList<>());
+            RoleGraph chain = new RoleGraph(roles);
+            assertTrue(chain.cycles().isEmpty());
+            assertEquals("role-" + (count - 1), chain.order().get(0));
+        });
+    }
+
+    private static Role role(String id, boolean readOnly, String... nested) {
+        Role role = new Role();
+        role.setRoleId(id);
+        role.setReadOnly(readOnly);
+        role.setRoles(new HashSet<>(Arrays.asList(nested)));
+        return role;
+    }
+}
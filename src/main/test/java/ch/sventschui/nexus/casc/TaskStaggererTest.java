@@ -0,0 +1,98 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.ConfigTask;
+import ch.sventschui.nexus.casc.config.ConfigTaskStagger;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TaskStaggererTest {
+
+    @Test
+    void spreadsTasksAcrossTheWindowWithinTheCap() {
+        TaskStaggerer staggerer = new TaskStaggerer(Collections.singletonList(
+                stagger("01:00-03:00", 30, 2, "blobstore.compact")));
+
+        List<ConfigTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(task("compact-" + i, "blobstore.compact", "blobstoreName", "store-" + i));
+        }
+        Map<String, String> crons = staggerer.crons(tasks);
+
+        assertTrue(staggerer.getErrors().isEmpty(), staggerer.getErrors().toString());
+        assertEquals(8, crons.size());
+        Map<String, Integer> perSlot = new HashMap<>();
+        crons.values().forEach(cron -> perSlot.merge(cron, 1, Integer::sum));
+        assertEquals(4, perSlot.size(), perSlot.toString());
+        perSlot.keySet().forEach(cron -> assertTrue(Arrays.asList("0 0 1 * * ?", "0 30 1 * * ?", "0 0 2 * * ?",
+                "0 30 2 * * ?").contains(cron), cron));
+
+        // the same config on another node, in another order
+        List<ConfigTask> reversed = new ArrayList<>(tasks);
+        Collections.reverse(reversed);
+        assertEquals(crons, new TaskStaggerer(Collections.singletonList(
+                stagger("01:00-03:00", 30, 2, "blobstore.compact"))).crons(reversed));
+    }
+
+    @Test
+    void keepsTheSlotOfABlobStoreWhenTasksAreAdded() {
+        ConfigTaskStagger stagger = stagger("22:00-04:00", 15, 1, "blobstore.compact");
+        stagger.setDaysOfWeek("SUN");
+        ConfigTask task = task("compact-default", "blobstore.compact", "blobstoreName", "default");
+
+        String alone = new TaskStaggerer(Collections.singletonList(stagger)).crons(Collections.singletonList(task))
+                .get("compact-default");
+        String withOthers = new TaskStaggerer(Collections.singletonList(stagger)).crons(Arrays.asList(task,
+                task("compact-npm", "blobstore.compact", "blobstoreName", "npm"),
+                task("compact-docker", "blobstore.compact", "blobstoreName", "docker")))
+                .get("compact-default");
+
+        assertEquals(alone, withOthers);
+        assertTrue(alone.endsWith("? * SUN"), alone);
+    }
+
+    @Test
+    void reportsWindowsThatAreTooSmall() {
+        TaskStaggerer staggerer = new TaskStaggerer(Arrays.asList(
+                stagger("01:00-02:00", 30, 1, "repository.rebuild-index"),
+                stagger("25:00-02:00", 30, 1, "blobstore.compact"),
+                stagger("03:00-04:00", 30, 1, "repository.rebuild-index")));
+
+        Map<String, String> crons = staggerer.crons(Arrays.asList(
+                task("index-a", "repository.rebuild-index", "repositoryName", "a"),
+                task("index-b", "repository.rebuild-index", "repositoryName", "b"),
+                task("index-c", "repository.rebuild-index", "repositoryName", "c")));
+
+        assertEquals(2, crons.size());
+        assertEquals(Arrays.asList(
+                "tasks.stagger[1]: window 25:00-02:00 is not of the form HH:mm-HH:mm",
+                "tasks.stagger[2]: type repository.rebuild-index is already staggered by tasks.stagger[0]",
+                "tasks.stagger[0]: the window fits 2 tasks but 3 are staggered in it, 1 were not scheduled"),
+                staggerer.getErrors());
+    }
+
+    private static ConfigTaskStagger stagger(String window, int slotMinutes, int maxConcurrent, String... types) {
+        ConfigTaskStagger stagger = new ConfigTaskStagger();
+        stagger.setTypes(Arrays.asList(types));
+        stagger.setWindow(window);
+        stagger.setSlotMinutes(slotMinutes);
+        stagger.setMaxConcurrent(maxConcurrent);
+        return stagger;
+    }
+
+    private static ConfigTask task(String name, String type, String property, String value) {
+        ConfigTask task = new ConfigTask();
+        task.setName(name);
+        task.setType(type);
+        task.getProperties().put(property, value);
+        return task;
+    }
+}
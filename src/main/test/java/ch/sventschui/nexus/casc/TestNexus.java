@@ -0,0 +1,270 @@
+package ch.sventschui.nexus.casc;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheckRegistry;
+import org.sonatype.nexus.CoreApi;
+import org.sonatype.nexus.blobstore.api.BlobStoreManager;
+import org.sonatype.nexus.capability.CapabilityRegistry;
+import org.sonatype.nexus.cleanup.storage.CleanupPolicyStorage;
+import org.sonatype.nexus.common.app.ApplicationDirectories;
+import org.sonatype.nexus.common.event.EventManager;
+import org.sonatype.nexus.repository.manager.RepositoryManager;
+import org.sonatype.nexus.scheduling.TaskScheduler;
+import org.sonatype.nexus.security.SecurityApi;
+import org.sonatype.nexus.security.SecuritySystem;
+import org.sonatype.nexus.security.config.CUser;
+import org.sonatype.nexus.security.config.SecurityConfigurationManager;
+import org.sonatype.nexus.security.realm.RealmManager;
+import org.sonatype.nexus.security.role.Role;
+import org.sonatype.nexus.security.role.RoleIdentifier;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserNotFoundException;
+import org.sonatype.nexus.security.user.UserSearchCriteria;
+import org.sonatype.nexus.security.user.UserStatus;
+import org.sonatype.nexus.selector.SelectorManager;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * A Nexus with users and the built-in admin role only, for tests that run the plugin. Like the fakes of the benchmarks, every manager is a
+ * {@link Proxy} forwarding to a plain object, methods it doesn't implement return null, false, 0 or an empty
+ * collection.
+ */
+final class TestNexus {
+    private final File workDirectory;
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+    private final Map<String, String> passwordHashes = new ConcurrentHashMap<>();
+    private final AtomicInteger addedUsers = new AtomicInteger();
+    private final AtomicInteger updatedUsers = new AtomicInteger();
+    private final AtomicInteger changedPasswords = new AtomicInteger();
+
+    TestNexus(File workDirectory) {
+        this.workDirectory = workDirectory;
+    }
+
+    /**
+     * A new plugin, like after a restart of Nexus
+     */
+    NexusCascPlugin plugin() throws Exception {
+        SecuritySystem securitySystem = proxy(SecuritySystem.class, new Users());
+        return new NexusCascPlugin(
+                proxy(CoreApi.class, new Object()),
+                proxy(SecurityApi.class, new Security(securitySystem), SecuritySystemAccessor.class),
+                proxy(CleanupPolicyStorage.class, new Object()),
+                new Interpolator(),
+                proxy(RepositoryManager.class, new Object()),
+                proxy(BlobStoreManager.class, new Object()),
+                proxy(RealmManager.class, new Object()),
+                proxy(CapabilityRegistry.class, new Object()),
+                proxy(ApplicationDirectories.class, new Directories()),
+                proxy(TaskScheduler.class, new Object()),
+                new MetricRegistry(),
+                proxy(SecurityConfigurationManager.class, new SecurityConfiguration()),
+                new HealthCheckRegistry(),
+                proxy(SelectorManager.class, new Object()),
+                proxy(EventManager.class, new Object()));
+    }
+
+    Map<String, User> getUsers() {
+        return users;
+    }
+
+    /**
+     * Changes the password like a user in the UI would
+     */
+    void changePassword(String userId, String password) {
+        passwordHashes.put(userId, hash(password));
+    }
+
+    String getPasswordHash(String userId) {
+        return passwordHashes.get(userId);
+    }
+
+    int getAddedUsers() {
+        return addedUsers.get();
+    }
+
+    int getUpdatedUsers() {
+        return updatedUsers.get();
+    }
+
+    int getChangedPasswords() {
+        return changedPasswords.get();
+    }
+
+    public interface SecuritySystemAccessor {
+        SecuritySystem getSecuritySystem();
+    }
+
+    private static <T> T proxy(Class<T> type, Object target, Class<?>... extraTypes) {
+        Class<?>[] types = new Class<?>[extraTypes.length + 1];
+        types[0] = type;
+        System.arraycopy(extraTypes, 0, types, 1, extraTypes.length);
+
+        return type.cast(Proxy.newProxyInstance(TestNexus.class.getClassLoader(), types, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(target, args);
+            }
+
+            Method implementation;
+            try {
+                implementation = target.getClass().getDeclaredMethod(method.getName(), method.getParameterTypes());
+            } catch (NoSuchMethodException e) {
+                return defaultValue(method.getReturnType());
+            }
+            implementation.setAccessible(true);
+            try {
+                return implementation.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type.isAssignableFrom(ArrayList.class)) {
+            return new ArrayList<>();
+        } else if (type.isAssignableFrom(HashSet.class)) {
+            return new HashSet<>();
+        } else if (type.isAssignableFrom(HashMap.class)) {
+            return new HashMap<>();
+        }
+        return null;
+    }
+
+    private static String hash(String password) {
+        return "$fake$" + Integer.toHexString(String.valueOf(password).hashCode());
+    }
+
+    private final class Users {
+        User getUser(String userId) throws UserNotFoundException {
+            User user = users.get(userId);
+            if (user == null) {
+                throw new UserNotFoundException(userId);
+            }
+            return user;
+        }
+
+        User getUser(String userId, String source) throws UserNotFoundException {
+            return getUser(userId);
+        }
+
+        User updateUser(User user) {
+            updatedUsers.incrementAndGet();
+            users.put(user.getUserId(), user);
+            return user;
+        }
+
+        Set<User> searchUsers(UserSearchCriteria criteria) {
+            return users.values().stream()
+                    .filter(user -> criteria.getUserId() == null || user.getUserId().startsWith(criteria.getUserId()))
+                    .filter(user -> criteria.getSource() == null || criteria.getSource().equals(user.getSource()))
+                    .collect(Collectors.toSet());
+        }
+
+        void changePassword(String userId, String password) throws UserNotFoundException {
+            getUser(userId);
+            changedPasswords.incrementAndGet();
+            passwordHashes.put(userId, hash(password));
+        }
+
+        Set<Role> listRoles(String source) {
+            Role admin = new Role();
+            admin.setRoleId("nx-admin");
+            admin.setName("nx-admin");
+            admin.setSource(source);
+            admin.setReadOnly(true);
+            return Collections.singleton(admin);
+        }
+    }
+
+    private final class Security {
+        private final SecuritySystem securitySystem;
+
+        Security(SecuritySystem securitySystem) {
+            this.securitySystem = securitySystem;
+        }
+
+        SecuritySystem getSecuritySystem() {
+            return securitySystem;
+        }
+
+        User addUser(String id, String firstName, String lastName, String email, boolean active, String password,
+                     List<String> roleIds) {
+            addedUsers.incrementAndGet();
+            User user = new User();
+            user.setUserId(id);
+            user.setSource("default");
+            user.setFirstName(firstName);
+            user.setLastName(lastName);
+            user.setEmailAddress(email);
+            user.setStatus(active ? UserStatus.active : UserStatus.disabled);
+            user.setRoles(roleIds.stream().map(role -> new RoleIdentifier("default", role)).collect(Collectors.toSet()));
+            users.put(id, user);
+            passwordHashes.put(id, hash(password));
+            return user;
+        }
+    }
+
+    private final class SecurityConfiguration {
+        CUser readUser(String id) throws UserNotFoundException {
+            User user = users.get(id);
+            if (user == null) {
+                throw new UserNotFoundException(id);
+            }
+            CUser cuser = new CUser();
+            cuser.setId(id);
+            cuser.setFirstName(user.getFirstName());
+            cuser.setLastName(user.getLastName());
+            cuser.setEmail(user.getEmailAddress());
+            cuser.setPassword(passwordHashes.get(id));
+            return cuser;
+        }
+
+        void updateUser(CUser user) throws UserNotFoundException {
+            readUser(user.getId());
+            passwordHashes.put(user.getId(), user.getPassword());
+        }
+    }
+
+    private final class Directories {
+        File getWorkDirectory() {
+            return workDirectory;
+        }
+
+        File getWorkDirectory(String path) {
+            return getWorkDirectory(path, true);
+        }
+
+        File getWorkDirectory(String path, boolean create) {
+            File directory = new File(workDirectory, path);
+            if (create) {
+                directory.mkdirs();
+            }
+            return directory;
+        }
+
+        File getTemporaryDirectory() {
+            return getWorkDirectory("tmp");
+        }
+    }
+}
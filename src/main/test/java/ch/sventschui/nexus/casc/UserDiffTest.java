@@ -0,0 +1,77 @@
+package ch.sventschui.nexus.casc;
+
+import ch.sventschui.nexus.casc.config.ConfigSecurityRole;
+import ch.sventschui.nexus.casc.config.ConfigSecurityUser;
+import org.junit.jupiter.api.Test;
+import org.sonatype.nexus.security.role.RoleIdentifier;
+import org.sonatype.nexus.security.user.User;
+import org.sonatype.nexus.security.user.UserStatus;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserDiffTest {
+
+    @Test
+    void noDifferenceWithRolesInOtherOrder() {
+        User live = live(UserStatus.active, new RoleIdentifier("default", "b"), new RoleIdentifier("default", "a"));
+
+        assertTrue(UserDiff.diff(configured(true, "a", "b"), live).isEmpty());
+    }
+
+    @Test
+    void noDifferenceWithoutActive() {
+        User live = live(UserStatus.disabled, new RoleIdentifier("default", "a"));
+
+        assertTrue(UserDiff.diff(configured(null, "a"), live).isEmpty());
+    }
+
+    @Test
+    void reportsChangedFields() {
+        User live = live(UserStatus.active, new RoleIdentifier("default", "a"));
+        live.setEmailAddress("old@example.com");
+
+        assertEquals(Arrays.asList(
+                "email: old@example.com -> jane@example.com",
+                "status: active -> disabled",
+                "roles: [default/a] -> [default/a, default/b]"
+        ), UserDiff.diff(configured(false, "a", "b"), live));
+    }
+
+    @Test
+    void ignoresStatusThatCanNotBeChanged() {
+        User live = live(UserStatus.locked, new RoleIdentifier("default", "a"));
+
+        assertTrue(UserDiff.diff(configured(true, "a"), live).isEmpty());
+    }
+
+    private static ConfigSecurityUser configured(Boolean active, String... roles) {
+        ConfigSecurityUser user = new ConfigSecurityUser();
+        user.setUsername("jane");
+        user.setFirstName("Jane");
+        user.setLastName("Doe");
+        user.setEmail("jane@example.com");
+        user.setActive(active);
+        user.setRoles(Arrays.stream(roles).map(role -> {
+            ConfigSecurityRole r = new ConfigSecurityRole();
+            r.setSource("default");
+            r.setRole(role);
+            return r;
+        }).collect(java.util.stream.Collectors.toList()));
+        return user;
+    }
+
+    private static User live(UserStatus status, RoleIdentifier... roles) {
+        User user = new User();
+        user.setUserId("jane");
+        user.setFirstName("Jane");
+        user.setLastName("Doe");
+        user.setEmailAddress("jane@example.com");
+        user.setStatus(status);
+        user.setRoles(new HashSet<>(Arrays.asList(roles)));
+        return user;
+    }
+}